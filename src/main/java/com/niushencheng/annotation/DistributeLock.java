@@ -47,4 +47,30 @@ public @interface DistributeLock {
 
     /** 锁超时时间，默认120秒超时 */
     long expire() default 120 * 1000;   // unit -->> ms
+
+    /**
+     * 是否为层级锁, 解析后的key按'/'分隔为从根到叶的路径
+     *      e.g: "'tenant:' + #tenantId + '/order:' + #orderId"
+     * 持有祖先节点时排斥所有后代节点，不同的子节点之间互不影响
+     *
+     * 注意！！！
+     * 层级锁的key在所有方法间共享，不再拼接类名和name；
+     * 只有基于LockStore的锁管理支持，且存储需要支持原子计数；expire不能超过锁管理的hierarchyHorizonMillis，
+     * 见 {@link com.niushencheng.support.HierarchicalLock}
+     */
+    boolean hierarchical() default false;
+
+    /**
+     * 单飞模式，适用于幂等的计算，如重建缓存
+     * 持有者执行完后发布结果，在它执行期间到达的调用者拿到锁后直接返回该结果，不再重复执行；
+     * 执行抛出异常时不发布，等待者照常执行
+     *
+     * 注意！！！
+     * 到达时间和结果的完成时间按各自节点的时钟比较，节点之间需要做好时钟同步；
+     * STORE模式下返回值需要能被jackson按方法的返回类型反序列化
+     */
+    SingleFlight singleFlight() default SingleFlight.NONE;
+
+    /** 单飞模式下结果保留的时间，需要覆盖等待者排队拿锁的时间 */
+    long resultTtl() default 5 * 1000;   // unit -->> ms
 }
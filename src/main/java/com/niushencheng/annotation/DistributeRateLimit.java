@@ -0,0 +1,47 @@
+package com.niushencheng.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 分布式限流，同一个key在所有节点上每个窗口内最多执行 {@link #permits} 次，超过时抛出
+ * {@link com.niushencheng.interceptor.RateLimitedException}
+ *
+ * key的解析和 {@link DistributeLock} 相同，可以和 {@link DistributeLock} 一起使用，先限流再加锁
+ *      e.g: @DistributeRateLimit(key = "#userId", permits = 10, windowMillis = 1000)
+ *
+ * 注意！！！
+ * 只有基于LockStore的锁管理支持，且存储需要支持原子计数，见 {@link com.niushencheng.support.StoreRateLimiter}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface DistributeRateLimit {
+
+    /** 限流名称, 默认为被限流的方法名 */
+    String name() default "";
+
+    /** 限流的key, 支持spring el 表达式 */
+    String key() default "";
+
+    /** 每个窗口允许的次数 */
+    long permits();
+
+    /** 窗口长度，默认1秒 */
+    long windowMillis() default 1000;   // unit -->> ms
+
+    /**
+     * 每个节点一次从存储中预取的次数，预取的次数在本机消耗完之前不需要访问存储；
+     * 越大访问存储越少，节点之间的分配越不均匀，默认为permits的1/20
+     */
+    long leaseSize() default 0;
+
+    /** 超过限制后的消息 */
+    String errorMsg() default "请求过于频繁";
+}
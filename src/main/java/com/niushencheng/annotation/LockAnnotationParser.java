@@ -1,14 +1,19 @@
 package com.niushencheng.annotation;
 
 import com.google.common.cache.Cache;
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.niushencheng.interceptor.LockOperation;
+import com.niushencheng.interceptor.RateLimitOperation;
 import org.springframework.context.expression.AnnotatedElementKey;
 import org.springframework.core.BridgeMethodResolver;
 import org.springframework.util.ClassUtils;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -29,14 +34,25 @@ public abstract class LockAnnotationParser {
                                                                                                                     TimeUnit.SECONDS)
                                                                                                  .build();
 
-    private static LockOperation parseLockAnnotation(Class<?> targetClass, Method method) {
-        return parseAnnotation(targetClass, method);
-    }
+    /** 使用guava local cache，默认大小1024，180s后过期 */
+    private static final Cache<AnnotatedElementKey, RateLimitOperation> _rateLimitCache = CacheBuilder.newBuilder()
+                                                                                                      .maximumSize(1024L)
+                                                                                                      .expireAfterAccess(180,
+                                                                                                                         TimeUnit.SECONDS)
+                                                                                                      .build();
+
+    /** cache中不能存放null，没有注解的方法使用这两个对象占位 */
+    private static final LockOperation NO_LOCK = new LockOperation();
+
+    private static final RateLimitOperation NO_RATE_LIMIT = new RateLimitOperation();
 
     private static LockOperation parseAnnotation(Class<?> targetClass, Method method) {
-        // 只允许public的方法
-        if (!Modifier.isPublic(method.getModifiers())) {
-            return null;
+        // 优先使用编译期生成的索引，未命中时再反射
+        if (targetClass != null) {
+            LockOperation indexed = LockMethodIndex.load(targetClass.getClassLoader()).find(targetClass, method);
+            if (indexed != null) {
+                return indexed;
+            }
         }
         Method specificMethod = ClassUtils.getMostSpecificMethod(method, targetClass);
         specificMethod = BridgeMethodResolver.findBridgedMethod(specificMethod);
@@ -46,19 +62,72 @@ public abstract class LockAnnotationParser {
 
     private static LockOperation findLockOperation(Method specificMethod) {
         DistributeLock dl = specificMethod.getAnnotation(DistributeLock.class);
-        return new LockOperation(dl.name(), dl.key(), dl.errorMsg(), dl.timeout(), dl.expire());
+        if (dl == null) {
+            // 只有限流注解的方法
+            return NO_LOCK;
+        }
+        LockOperation operation = new LockOperation(dl.name(), dl.key(), dl.errorMsg(), dl.timeout(), dl.expire());
+        operation.setHierarchical(dl.hierarchical());
+        operation.setSingleFlight(dl.singleFlight());
+        operation.setResultTtl(dl.resultTtl());
+        return operation;
     }
 
     // 注意！！！
-    // 此处需要加锁，避免每次过来拿到的是不同的LockOperation
-    public synchronized static LockOperation getLockOperation(Class<?> targetClass, Method method) {
-        AnnotatedElementKey lockKey = getLockKey(targetClass, method);
-        LockOperation lockOperation = _operationCache.getIfPresent(lockKey);
-        if (lockOperation == null) {
-            lockOperation = parseLockAnnotation(targetClass, method);
-            _operationCache.put(lockKey, lockOperation);
+    // 此处需要保证每次过来拿到的是同一个LockOperation，
+    // 使用cache的原子加载代替synchronized，加载过程只会阻塞同一个key的并发调用，也不会钉住虚拟线程的载体线程
+    public static LockOperation getLockOperation(final Class<?> targetClass, final Method method) {
+        // 只允许public的方法
+        if (!Modifier.isPublic(method.getModifiers())) {
+            return null;
+        }
+        try {
+            LockOperation operation = _operationCache.get(getLockKey(targetClass, method), new Callable<LockOperation>() {
+                @Override
+                public LockOperation call() throws Exception {
+                    return parseAnnotation(targetClass, method);
+                }
+            });
+            return operation == NO_LOCK
+                    ? null
+                    : operation;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("解析DistributeLock注解失败", e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * 解析 {@link DistributeRateLimit} 注解，与 {@link #getLockOperation(Class, Method)} 一样只允许public的方法
+     *
+     * @return 没有限流注解时返回null
+     */
+    public static RateLimitOperation getRateLimitOperation(final Class<?> targetClass, final Method method) {
+        if (!Modifier.isPublic(method.getModifiers())) {
+            return null;
+        }
+        try {
+            RateLimitOperation operation = _rateLimitCache.get(getLockKey(targetClass, method), new Callable<RateLimitOperation>() {
+                @Override
+                public RateLimitOperation call() throws Exception {
+                    Method specificMethod = ClassUtils.getMostSpecificMethod(method, targetClass);
+                    specificMethod = BridgeMethodResolver.findBridgedMethod(specificMethod);
+                    DistributeRateLimit rl = specificMethod.getAnnotation(DistributeRateLimit.class);
+                    return rl == null
+                            ? NO_RATE_LIMIT
+                            : new RateLimitOperation(rl.name(), rl.key(), rl.errorMsg(),
+                                                     rl.permits(), rl.windowMillis(), rl.leaseSize());
+                }
+            });
+            return operation == NO_RATE_LIMIT
+                    ? null
+                    : operation;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("解析DistributeRateLimit注解失败", e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
         }
-        return lockOperation;
     }
 
     private static AnnotatedElementKey getLockKey(Class<?> targetClass, Method method) {
@@ -0,0 +1,148 @@
+package com.niushencheng.annotation;
+
+import com.niushencheng.interceptor.LockOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 编译期生成的 {@link DistributeLock} 方法索引，由 {@link com.niushencheng.annotation.processor.DistributeLockProcessor} 写入
+ * {@link #INDEX_LOCATION}，启动时直接读取注解的属性，不再通过反射查找最具体的方法、桥接方法和注解
+ * <p>
+ * 索引为properties格式，key为 类的二进制名#方法名(参数类型,...).属性名，如
+ *      com.foo.OrderService#pay(long,java.lang.String).timeout=3000
+ * <p>
+ * 注意！！！
+ * 只有注解直接声明在目标类上的方法会命中索引，继承自父类或接口的方法、未经过处理器编译的类仍然使用反射解析；
+ * 索引是普通的资源文件，native image中只需要把 {@link #INDEX_LOCATION} 加入资源配置，不需要为注解配置反射；
+ * 设置系统属性 {@link #IGNORE_INDEX_PROPERTY}=true 可以忽略索引
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public final class LockMethodIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LockMethodIndex.class);
+
+    /** 索引文件的位置，所有jar中的同名文件都会被读取 */
+    public static final String INDEX_LOCATION = "META-INF/distribute-lock.index";
+
+    /** 忽略索引的系统属性 */
+    public static final String IGNORE_INDEX_PROPERTY = "distribute-lock.index.ignore";
+
+    private static final LockMethodIndex EMPTY = new LockMethodIndex(new Properties());
+
+    /** 按类加载器缓存，类加载器被回收时一起回收 */
+    private static final ConcurrentMap<ClassLoader, LockMethodIndex> CACHE =
+            new ConcurrentReferenceHashMap<ClassLoader, LockMethodIndex>(4, ConcurrentReferenceHashMap.ReferenceType.WEAK);
+
+    private final Properties entries;
+
+    private LockMethodIndex(Properties entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * 读取类加载器可见的索引
+     */
+    public static LockMethodIndex load(ClassLoader classLoader) {
+        if (classLoader == null || Boolean.getBoolean(IGNORE_INDEX_PROPERTY)) {
+            return EMPTY;
+        }
+        LockMethodIndex index = CACHE.get(classLoader);
+        if (index == null) {
+            index = doLoad(classLoader);
+            CACHE.put(classLoader, index);
+        }
+        return index;
+    }
+
+    /**
+     * 查找索引中的锁操作
+     *
+     * @param targetClass 目标类
+     * @param method      被调用的方法，可以是接口上的方法
+     *
+     * @return 目标类上没有索引到该方法时返回null
+     */
+    public LockOperation find(Class<?> targetClass, Method method) {
+        if (entries.isEmpty() || targetClass == null) {
+            return null;
+        }
+        String prefix = methodKey(targetClass, method);
+        String timeout = entries.getProperty(prefix + ".timeout");
+        if (timeout == null) {
+            return null;
+        }
+        LockOperation operation = new LockOperation(entries.getProperty(prefix + ".name"),
+                                                    entries.getProperty(prefix + ".key"),
+                                                    entries.getProperty(prefix + ".errorMsg"),
+                                                    Long.valueOf(timeout),
+                                                    Long.valueOf(entries.getProperty(prefix + ".expire")));
+        operation.setHierarchical(Boolean.parseBoolean(entries.getProperty(prefix + ".hierarchical")));
+        // 旧版本处理器生成的索引没有单飞的属性
+        String singleFlight = entries.getProperty(prefix + ".singleFlight");
+        if (singleFlight != null) {
+            operation.setSingleFlight(SingleFlight.valueOf(singleFlight));
+            operation.setResultTtl(Long.parseLong(entries.getProperty(prefix + ".resultTtl")));
+        }
+        return operation;
+    }
+
+    /** 索引中的条目数 */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 方法在索引中的key，格式需要和处理器写入的保持一致
+     */
+    static String methodKey(Class<?> targetClass, Method method) {
+        StringBuilder builder = new StringBuilder(targetClass.getName()).append('#').append(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(typeName(parameterTypes[i]));
+        }
+        return builder.append(')').toString();
+    }
+
+    private static String typeName(Class<?> type) {
+        return type.isArray() ? typeName(type.getComponentType()) + "[]" : type.getName();
+    }
+
+    private static LockMethodIndex doLoad(ClassLoader classLoader) {
+        Properties entries = new Properties();
+        try {
+            Enumeration<URL> urls = classLoader.getResources(INDEX_LOCATION);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                InputStream in = url.openStream();
+                try {
+                    entries.load(in);
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (IOException e) {
+            // 索引只是优化，读取失败时全部使用反射解析
+            LOGGER.warn("读取DistributeLock索引失败，使用反射解析注解, location -->> {}", INDEX_LOCATION, e);
+            return EMPTY;
+        }
+        if (entries.isEmpty()) {
+            return EMPTY;
+        }
+        LOGGER.info("读取DistributeLock索引, entries -->> {}", entries.size());
+        return new LockMethodIndex(entries);
+    }
+}
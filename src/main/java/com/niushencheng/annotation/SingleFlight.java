@@ -0,0 +1,19 @@
+package com.niushencheng.annotation;
+
+/**
+ * 同一个key的并发调用共享一次执行的结果，见 {@link DistributeLock#singleFlight()}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public enum SingleFlight {
+
+    /** 每个调用者各自执行 */
+    NONE,
+
+    /** 结果保存在本机，只在本机的调用者之间共享，共享的是同一个对象 */
+    LOCAL,
+
+    /** 结果序列化为json写入锁存储，在所有节点的调用者之间共享；锁管理不是基于LockStore时退化为LOCAL */
+    STORE
+}
@@ -0,0 +1,260 @@
+package com.niushencheng.annotation.processor;
+
+import com.niushencheng.annotation.DistributeLock;
+import com.niushencheng.annotation.LockMethodIndex;
+import org.springframework.expression.ParseException;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.VariableReference;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 编译期收集所有 {@link DistributeLock} 方法，校验key表达式，把注解的属性写入 {@link LockMethodIndex#INDEX_LOCATION}，
+ * 运行时由 {@link LockMethodIndex} 读取
+ * <p>
+ * 校验的内容：
+ *      key不是合法的spel表达式、引用了#result时编译失败；
+ *      引用了不存在的参数、注解在非public或static的方法上时给出警告
+ * <p>
+ * 注意！！！
+ * 处理器没有通过META-INF/services自动注册，避免影响本项目自身以及lombok的编译，需要在使用方显式开启：
+ *      javac -processor com.niushencheng.annotation.processor.DistributeLockProcessor,lombok.launch.AnnotationProcessorHider$AnnotationProcessor
+ *      或maven-compiler-plugin的annotationProcessors中加入本类
+ * 处理器路径上没有spring-expression时跳过表达式的校验，只生成索引；
+ * 增量编译时保留未重新编译的类的条目，重新编译的类以本次的结果为准
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+@SupportedAnnotationTypes("com.niushencheng.annotation.DistributeLock")
+public class DistributeLockProcessor extends AbstractProcessor {
+
+    /** spel中参数的别名，如#p0 #a1 */
+    private static final Pattern PARAMETER_ALIAS = Pattern.compile("[pa](\\d{1,9})");
+
+    /** 本次编译中出现过的类，这些类在旧索引中的条目全部替换 */
+    private final Set<String> compiledClasses = new HashSet<String>();
+
+    private final Properties entries = new Properties();
+
+    private KeyValidator keyValidator;
+
+    /** 处理器路径上没有spring-expression */
+    private boolean keyValidationDisabled;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element root : roundEnv.getRootElements()) {
+            this.collectClasses(root);
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(DistributeLock.class)) {
+            if (element.getKind() == ElementKind.METHOD) {
+                this.index((ExecutableElement) element);
+            }
+        }
+        if (roundEnv.processingOver()) {
+            this.writeIndex();
+        }
+        return false;
+    }
+
+    private void collectClasses(Element element) {
+        if (element instanceof TypeElement) {
+            compiledClasses.add(this.binaryName((TypeElement) element));
+            for (Element enclosed : element.getEnclosedElements()) {
+                this.collectClasses(enclosed);
+            }
+        }
+    }
+
+    private void index(ExecutableElement method) {
+        Messager messager = processingEnv.getMessager();
+        DistributeLock dl = method.getAnnotation(DistributeLock.class);
+        if (!method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(Modifier.STATIC)) {
+            messager.printMessage(Diagnostic.Kind.WARNING, "DistributeLock只对public的实例方法生效", method);
+            return;
+        }
+        if (dl.timeout() < 0 || dl.expire() < 0 || dl.resultTtl() < 0) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "DistributeLock的timeout、expire和resultTtl不能为负数", method);
+            return;
+        }
+        if (!dl.key().trim().isEmpty() && !this.validateKey(dl.key(), method)) {
+            return;
+        }
+
+        String prefix = this.methodKey(method);
+        entries.setProperty(prefix + ".name", dl.name());
+        entries.setProperty(prefix + ".key", dl.key());
+        entries.setProperty(prefix + ".errorMsg", dl.errorMsg());
+        entries.setProperty(prefix + ".timeout", String.valueOf(dl.timeout()));
+        entries.setProperty(prefix + ".expire", String.valueOf(dl.expire()));
+        entries.setProperty(prefix + ".hierarchical", String.valueOf(dl.hierarchical()));
+        entries.setProperty(prefix + ".singleFlight", dl.singleFlight().name());
+        entries.setProperty(prefix + ".resultTtl", String.valueOf(dl.resultTtl()));
+    }
+
+    private boolean validateKey(String key, ExecutableElement method) {
+        if (keyValidationDisabled) {
+            return true;
+        }
+        if (keyValidator == null) {
+            try {
+                keyValidator = new KeyValidator();
+            } catch (LinkageError e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                                                         "处理器路径上没有spring-expression，跳过DistributeLock key的校验");
+                keyValidationDisabled = true;
+                return true;
+            }
+        }
+        return keyValidator.validate(key, method, processingEnv.getMessager());
+    }
+
+    private void writeIndex() {
+        Properties merged = new Properties();
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                                                                       LockMethodIndex.INDEX_LOCATION);
+            InputStream in = existing.openInputStream();
+            try {
+                merged.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // 第一次编译，没有旧的索引
+        }
+        for (String name : merged.stringPropertyNames()) {
+            if (compiledClasses.contains(name.substring(0, name.indexOf('#')))) {
+                merged.remove(name);
+            }
+        }
+        merged.putAll(entries);
+        if (merged.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                                                                       LockMethodIndex.INDEX_LOCATION);
+            OutputStream out = index.openOutputStream();
+            try {
+                merged.store(out, "Generated by " + DistributeLockProcessor.class.getName());
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                                                     "写入DistributeLock索引失败, " + e.getMessage());
+        }
+    }
+
+    /**
+     * 方法在索引中的key，格式需要和 {@link LockMethodIndex} 中的保持一致
+     */
+    private String methodKey(ExecutableElement method) {
+        StringBuilder builder = new StringBuilder(this.binaryName((TypeElement) method.getEnclosingElement()))
+                .append('#').append(method.getSimpleName()).append('(');
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(this.typeName(parameters.get(i).asType()));
+        }
+        return builder.append(')').toString();
+    }
+
+    /** 和运行时的Class#getName一致，数组为元素类型加[] */
+    private String typeName(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased.getKind() == TypeKind.ARRAY) {
+            return this.typeName(((ArrayType) erased).getComponentType()) + "[]";
+        }
+        if (erased.getKind() == TypeKind.DECLARED) {
+            return this.binaryName((TypeElement) processingEnv.getTypeUtils().asElement(erased));
+        }
+        return erased.toString();
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    /**
+     * 依赖spring-expression的校验单独放在这里，处理器路径上没有spring时只有创建本类会失败
+     */
+    private static class KeyValidator {
+
+        private final SpelExpressionParser parser = new SpelExpressionParser();
+
+        private boolean validate(String key, ExecutableElement method, Messager messager) {
+            SpelNode ast;
+            try {
+                ast = ((SpelExpression) parser.parseExpression(key)).getAST();
+            } catch (ParseException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "DistributeLock的key不是合法的spel表达式, " + e.getMessage(), method);
+                return false;
+            }
+            Set<String> parameterNames = new HashSet<String>();
+            for (VariableElement parameter : method.getParameters()) {
+                parameterNames.add(parameter.getSimpleName().toString());
+            }
+            return this.validateVariables(ast, parameterNames, method, messager);
+        }
+
+        private boolean validateVariables(SpelNode node, Set<String> parameterNames,
+                                          ExecutableElement method, Messager messager) {
+            boolean valid = true;
+            if (node instanceof VariableReference) {
+                String name = node.toStringAST().substring(1);
+                if ("result".equals(name)) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, "DistributeLock的key在方法执行前计算，不能引用#result", method);
+                    valid = false;
+                } else if (!"root".equals(name) && !"this".equals(name) && !parameterNames.contains(name)
+                        && !this.isParameterAlias(name, parameterNames.size())) {
+                    messager.printMessage(Diagnostic.Kind.WARNING,
+                                          "DistributeLock的key引用了不存在的参数#" + name + "，计算结果为null", method);
+                }
+            }
+            for (int i = 0; i < node.getChildCount(); i++) {
+                valid &= this.validateVariables(node.getChild(i), parameterNames, method, messager);
+            }
+            return valid;
+        }
+
+        private boolean isParameterAlias(String name, int parameterCount) {
+            return PARAMETER_ALIAS.matcher(name).matches() && Integer.parseInt(name.substring(1)) < parameterCount;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.niushencheng.election;
+
+/**
+ * 参与选主的候选者，由 {@link LeaderElector#register(String, LeadershipListener)} 创建
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public interface LeaderCandidate {
+
+    /** 选主名称 */
+    String getName();
+
+    /** 当前是否为leader，租约到期后即使没来得及续租也会返回false */
+    boolean isLeader();
+
+    /** 退出选主，如果当前是leader会立即释放租约 */
+    void close();
+}
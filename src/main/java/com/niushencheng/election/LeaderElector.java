@@ -0,0 +1,271 @@
+package com.niushencheng.election;
+
+import com.niushencheng.store.LockStore;
+import com.niushencheng.util.DaemonThreadFactory;
+import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于锁存储的选主，适用于需要长时间保持单点运行的场景（消费者、缓存预热等）
+ * <p>
+ * 与 {@link com.niushencheng.annotation.DistributeLock} 不同，这里不会阻塞业务线程：
+ * 所有候选者共用后台的调度线程，leader按 renewIntervalMillis 续租，其他候选者按 contendIntervalMillis 抢占，
+ * 租约只有 leaseMillis，leader宕机后最多 leaseMillis + contendIntervalMillis 就会完成切换
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LeaderElector implements InitializingBean, DisposableBean {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /** 锁存储 */
+    @Setter
+    private LockStore lockStore;
+
+    /** 租约时长 */
+    @Setter
+    private long leaseMillis = 750;
+
+    /** leader续租间隔，需要明显小于租约时长 */
+    @Setter
+    private long renewIntervalMillis = 250;
+
+    /** 非leader抢占间隔 */
+    @Setter
+    private long contendIntervalMillis = 100;
+
+    /** 调度线程数，所有候选者共用 */
+    @Setter
+    private int schedulerThreads = 1;
+
+    /** 节点标识，默认为pid@host */
+    @Setter
+    private String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    private final String leaderPrefix = "MTLeader:";
+
+    private final ConcurrentMap<String, Candidate> candidates = new ConcurrentHashMap<String, Candidate>();
+
+    private ScheduledExecutorService scheduler;
+
+    /** 回调串行执行，保证同一候选者的acquired和lost顺序 */
+    private ExecutorService callbackExecutor;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(lockStore, "lockStore must not be null");
+        Assert.isTrue(leaseMillis > 0, "leaseMillis必需为正数");
+        Assert.isTrue(renewIntervalMillis > 0 && renewIntervalMillis < leaseMillis,
+                      "renewIntervalMillis必需为正数且小于leaseMillis");
+        Assert.isTrue(contendIntervalMillis > 0, "contendIntervalMillis必需为正数");
+        this.scheduler = Executors.newScheduledThreadPool(schedulerThreads, new DaemonThreadFactory("leader-elector-"));
+        this.callbackExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("leader-callback-"));
+    }
+
+    /**
+     * 候选者在close中同步释放租约并提交leadershipLost，调度线程停止后才关闭回调线程，保证回调都能送达
+     */
+    @Override
+    public void destroy() throws Exception {
+        for (Candidate candidate : new ArrayList<Candidate>(candidates.values())) {
+            candidate.close();
+        }
+        this.scheduler.shutdown();
+        this.scheduler.awaitTermination(leaseMillis, TimeUnit.MILLISECONDS);
+        this.callbackExecutor.shutdown();
+        this.callbackExecutor.awaitTermination(leaseMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 注册候选者，同一个名称在一个elector中只能注册一次
+     *
+     * @param name     选主名称
+     * @param listener 选主结果回调
+     *
+     * @return 候选者
+     */
+    public LeaderCandidate register(String name, LeadershipListener listener) {
+        Assert.state(scheduler != null, "LeaderElector尚未初始化");
+        Assert.isTrue(StringUtils.isNotBlank(name), "选主名称不能为空");
+        Assert.notNull(listener, "listener must not be null");
+        Candidate candidate = new Candidate(name, listener);
+        if (candidates.putIfAbsent(name, candidate) != null) {
+            throw new IllegalStateException("重复注册的选主名称: " + name);
+        }
+        scheduler.execute(candidate);
+        return candidate;
+    }
+
+    /**
+     * 当前节点是leader的选主名称
+     */
+    public List<String> leaderships() {
+        List<String> result = new ArrayList<String>();
+        for (Candidate candidate : candidates.values()) {
+            if (candidate.isLeader()) {
+                result.add(candidate.name);
+            }
+        }
+        return result;
+    }
+
+    private class Candidate implements LeaderCandidate, Runnable {
+
+        private final String name;
+
+        private final String storeKey;
+
+        /** 每个候选者唯一的租约标识，存储中的值 */
+        private final String token;
+
+        private final LeadershipListener listener;
+
+        private volatile boolean leader = false;
+
+        private volatile boolean closed = false;
+
+        /**
+         * 串行化一次抢占或续租与close，调度线程多于一个时，close不能和进行中的抢占交错，
+         * 否则关闭后仍可能成为leader且不再释放；不使用synchronized，避免存储调用期间钉住虚拟线程
+         */
+        private final ReentrantLock mainLock = new ReentrantLock();
+
+        /** 租约本地截止时间(nanoTime)，以发起请求的时间为起点，保证本地判断不会晚于存储中的过期 */
+        private volatile long leaseDeadline;
+
+        private Candidate(String name, LeadershipListener listener) {
+            this.name = name;
+            this.storeKey = leaderPrefix + name;
+            this.token = nodeId + ":" + UUID.randomUUID().toString();
+            this.listener = listener;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isLeader() {
+            return leader && System.nanoTime() - leaseDeadline < 0;
+        }
+
+        /**
+         * 等待进行中的抢占或续租结束后，在当前线程释放租约，返回时leadershipLost已经提交到回调线程
+         */
+        @Override
+        public void close() {
+            mainLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                candidates.remove(name, this);
+                if (leader) {
+                    try {
+                        lockStore.compareAndDelete(storeKey, token);
+                    } catch (Exception e) {
+                        LOGGER.warn("释放leader租约失败, name -->> {}", name, e);
+                    }
+                    this.lost();
+                }
+            } finally {
+                mainLock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            mainLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                long start = System.nanoTime();
+                try {
+                    if (leader) {
+                        this.renew(start);
+                    } else {
+                        this.contend(start);
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("选主访问存储异常, name -->> {}, leader -->> {}", name, leader, e);
+                    if (leader && System.nanoTime() - leaseDeadline >= 0) {
+                        this.lost();
+                    }
+                }
+            } finally {
+                mainLock.unlock();
+            }
+            if (!closed) {
+                scheduler.schedule(this,
+                                   leader
+                                           ? renewIntervalMillis
+                                           : contendIntervalMillis,
+                                   TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void contend(long start) {
+            if (lockStore.add(storeKey, token, leaseMillis)) {
+                this.leaseDeadline = start + TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+                this.leader = true;
+                LOGGER.info("成为leader, name -->> {}, token -->> {}", name, token);
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.leadershipAcquired(name);
+                    }
+                });
+            }
+        }
+
+        private void renew(long start) {
+            if (System.nanoTime() - leaseDeadline >= 0) {
+                // 调度延迟导致租约已经到期，存储中的记录可能已被他人抢占
+                LOGGER.warn("leader租约在续租前已到期, name -->> {}", name);
+                this.lost();
+                return;
+            }
+            if (lockStore.compareAndExpire(storeKey, token, leaseMillis)) {
+                this.leaseDeadline = start + TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+            } else {
+                LOGGER.warn("leader续租失败, name -->> {}", name);
+                this.lost();
+            }
+        }
+
+        private void lost() {
+            if (!leader) {
+                return;
+            }
+            this.leader = false;
+            LOGGER.info("失去leader, name -->> {}, token -->> {}", name, token);
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.leadershipLost(name);
+                }
+            });
+        }
+    }
+}
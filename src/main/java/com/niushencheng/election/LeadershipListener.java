@@ -0,0 +1,24 @@
+package com.niushencheng.election;
+
+/**
+ * 选主结果回调, 回调在 {@link LeaderElector} 的回调线程中串行执行，不要在回调中做耗时操作
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public interface LeadershipListener {
+
+    /**
+     * 成为leader
+     *
+     * @param name 选主名称
+     */
+    void leadershipAcquired(String name);
+
+    /**
+     * 失去leader身份，包括续租失败、租约到期以及主动放弃
+     *
+     * @param name 选主名称
+     */
+    void leadershipLost(String name);
+}
@@ -4,7 +4,13 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.niushencheng.LockManager;
 import com.niushencheng.MTLock;
+import com.niushencheng.annotation.DistributeLock;
+import com.niushencheng.annotation.DistributeRateLimit;
 import com.niushencheng.annotation.LockAnnotationParser;
+import com.niushencheng.annotation.SingleFlight;
+import com.niushencheng.store.LockStore;
+import com.niushencheng.support.AbstractStoreLockManager;
+import com.niushencheng.support.StoreRateLimiter;
 import com.niushencheng.util.JacksonUtil;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -14,15 +20,22 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.cache.interceptor.KeyGenerator;
 import org.springframework.cache.interceptor.SimpleKeyGenerator;
 import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.expression.EvaluationContext;
+import org.springframework.util.Assert;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.ObjectUtils;
+import org.springframework.util.ReflectionUtils;
 
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
@@ -45,7 +58,8 @@ import java.util.concurrent.locks.Lock;
  * @see com.niushencheng.annotation.DistributeLock#errorMsg()
  * @since JDK 1.7
  */
-public class LockAspectSupport extends AbstractLockInvoker implements InitializingBean, DisposableBean {
+public class LockAspectSupport extends AbstractLockInvoker
+        implements InitializingBean, DisposableBean, BeanFactoryAware, SmartInitializingSingleton {
 
     private final Logger LOGGER = LoggerFactory.getLogger(getClass());
 
@@ -68,13 +82,86 @@ public class LockAspectSupport extends AbstractLockInvoker implements Initializi
     @Setter
     private LockManager lockManager;
 
+    /** 单飞模式下STORE结果使用的存储，不设置时使用锁管理的存储 */
+    @Setter
+    private LockStore resultStore;
+
+    private SingleFlightResults singleFlightResults;
+
+    /** 限流使用的存储，不设置时使用锁管理的存储 */
+    @Setter
+    private LockStore rateLimitStore;
+
+    private StoreRateLimiter rateLimiter;
+
     private boolean initialized = false;
 
+    private BeanFactory beanFactory;
+
     @Override
     public void afterPropertiesSet() throws Exception {
+        LockStore managerStore = lockManager instanceof AbstractStoreLockManager
+                ? ((AbstractStoreLockManager) lockManager).getLockStore()
+                : null;
+        if (resultStore == null) {
+            resultStore = managerStore;
+        }
+        if (rateLimitStore == null) {
+            rateLimitStore = managerStore;
+        }
+        singleFlightResults = new SingleFlightResults(resultStore);
+        if (rateLimitStore != null) {
+            rateLimiter = new StoreRateLimiter(rateLimitStore);
+        }
         initialized = true;
     }
 
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * 所有单例创建完成后检查注解需要的存储能力，存储不支持时启动失败，而不是在第一次调用时才失败
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!(beanFactory instanceof ConfigurableListableBeanFactory)) {
+            return;
+        }
+        ConfigurableListableBeanFactory listableBeanFactory = (ConfigurableListableBeanFactory) beanFactory;
+        for (String beanName : listableBeanFactory.getBeanNamesForType(Object.class, true, false)) {
+            // 已经创建的单例按代理的目标类检查，其他的按声明的类型检查，不会因为检查而创建bean
+            Class<?> beanType = listableBeanFactory.containsSingleton(beanName)
+                    ? this.getTargetClass(listableBeanFactory.getSingleton(beanName))
+                    : listableBeanFactory.getType(beanName);
+            if (beanType != null) {
+                this.checkStoreCapabilities(beanType);
+            }
+        }
+    }
+
+    private void checkStoreCapabilities(Class<?> beanType) {
+        LockStore managerStore = lockManager instanceof AbstractStoreLockManager
+                ? ((AbstractStoreLockManager) lockManager).getLockStore()
+                : null;
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(beanType)) {
+            DistributeLock distributeLock = AnnotationUtils.findAnnotation(method, DistributeLock.class);
+            if (distributeLock != null && distributeLock.hierarchical() && managerStore != null) {
+                Assert.state(managerStore.supportsIncr(),
+                             managerStore.getClass().getSimpleName() + "不支持原子计数，不能使用层级锁, method -->> "
+                                     + method);
+            }
+            if (AnnotationUtils.findAnnotation(method, DistributeRateLimit.class) != null) {
+                Assert.state(rateLimitStore != null,
+                             "DistributeRateLimit需要基于LockStore的锁管理，或者设置rateLimitStore, method -->> " + method);
+                Assert.state(rateLimitStore.supportsIncr(),
+                             rateLimitStore.getClass().getSimpleName() + "不支持原子计数，不能使用DistributeRateLimit, method -->> "
+                                     + method);
+            }
+        }
+    }
+
     @Override
     public void destroy() throws Exception {
         this._metadataCache.invalidateAll();
@@ -93,6 +180,11 @@ public class LockAspectSupport extends AbstractLockInvoker implements Initializi
     }
 
     private Object execute(LockOperationInvoker invoker, LockOperationContexts contexts) {
+        // 先限流再加锁，被限流的调用不占用锁
+        List<LockOperationContext> rateLimitContexts = contexts.get(RateLimitOperation.class);
+        if (CollectionUtils.isNotEmpty(rateLimitContexts)) {
+            this.checkRateLimit(rateLimitContexts.get(0));
+        }
         List<LockOperationContext> lockOperationContexts = contexts.get(LockOperation.class);
         if (CollectionUtils.isEmpty(lockOperationContexts)) {
             // 没有加锁操作直接执行
@@ -102,15 +194,12 @@ public class LockAspectSupport extends AbstractLockInvoker implements Initializi
         LockOperationContext context = lockOperationContexts.get(0);
         LockOperation operation = context.getOperation();
 
-        synchronized (operation) {
-            // 避免相同operation重复计算parsedKey
-            if (!operation.isParsedKey()) {
-                // 需要计算真实缓存中的key, 用作区分细力度锁
-                this.evaluateLockKey(context);
-            }
-        }
+        // 需要计算真实缓存中的key, 用作区分细力度锁
+        // 解析结果只放在本次调用的context中，不修改共享的operation，因此不需要加锁
+        this.evaluateLockKey(context);
         MTLock mtLock = this.lockManager.getLock(context);
         String lockStr = JacksonUtil.toJsonStr(mtLock);
+        long arrivedAt = System.currentTimeMillis();
 
         // 获取分布式锁
         try {
@@ -123,7 +212,9 @@ public class LockAspectSupport extends AbstractLockInvoker implements Initializi
                             this.threadName(),
                             lockStr,
                             this.timeStamp());
-                return invoker.invoke();
+                return operation.getSingleFlight() == SingleFlight.NONE
+                        ? invoker.invoke()
+                        : this.invokeSingleFlight(invoker, context, arrivedAt);
             }
             LOGGER.warn("获取分布式锁失败了, thread -->> {}, mtLock -->> {}, timestamp -->> {}",
                         this.threadName(),
@@ -139,6 +230,47 @@ public class LockAspectSupport extends AbstractLockInvoker implements Initializi
         }
     }
 
+    /**
+     * 检查限流，超过限制时抛出 {@link RateLimitedException}
+     */
+    private void checkRateLimit(LockOperationContext context) {
+        Assert.state(rateLimiter != null, "DistributeRateLimit需要基于LockStore的锁管理，或者设置rateLimitStore");
+        RateLimitOperation operation = (RateLimitOperation) context.getOperation();
+        this.evaluateLockKey(context);
+        if (!rateLimiter.tryAcquire(context.getName() + context.getKey(),
+                                    operation.getPermits(),
+                                    operation.getWindowMillis(),
+                                    operation.getLeaseSize())) {
+            LOGGER.warn("超过分布式限流, thread -->> {}, name -->> {}, key -->> {}, permits -->> {}, windowMillis -->> {}",
+                        this.threadName(),
+                        context.getName(),
+                        context.getKey(),
+                        operation.getPermits(),
+                        operation.getWindowMillis());
+            throw new RateLimitedException(operation.getErrorMsg());
+        }
+    }
+
+    /**
+     * 单飞模式下执行，等待期间已经有人执行完成时直接返回共享的结果
+     *
+     * @param arrivedAt 调用者到达的时间，只接受在这之后完成的结果
+     */
+    private Object invokeSingleFlight(LockOperationInvoker invoker, LockOperationContext context, long arrivedAt) {
+        SingleFlightResults.Shared shared = singleFlightResults.find(context, arrivedAt);
+        if (shared != null) {
+            LOGGER.info("使用等待期间完成的执行结果, thread -->> {}, name -->> {}, key -->> {}, completedAt -->> {}",
+                        this.threadName(),
+                        context.getName(),
+                        context.getKey(),
+                        shared.getCompletedAt());
+            return shared.getValue();
+        }
+        Object result = invoker.invoke();
+        singleFlightResults.publish(context, result);
+        return result;
+    }
+
     /**
      * 计算真实缓存中的key，用于细力度锁的区分
      *
@@ -159,10 +291,8 @@ public class LockAspectSupport extends AbstractLockInvoker implements Initializi
                 ? method.getName()
                 : operation.getName()) + ":";
 
-        operation.setName(name);
-        operation.setKey(key);
-        // 将是否解析过置true
-        operation.setParsedKey(true);
+        context.setName(name);
+        context.setKey(key);
     }
 
     private String threadName() {
@@ -174,7 +304,7 @@ public class LockAspectSupport extends AbstractLockInvoker implements Initializi
     }
 
     /**
-     * List<LockOperation>的值永远只有一个
+     * 每种操作最多一个：加锁和限流
      *
      * @param targetClass 目标
      * @param ae          方法
@@ -183,14 +313,43 @@ public class LockAspectSupport extends AbstractLockInvoker implements Initializi
      * @return 锁操作
      */
     private List<LockOperation> parseAnnotations(Class<?> targetClass, AnnotatedElement ae, Method method) {
-        List<LockOperation> list = new ArrayList<LockOperation>(1);
-        LockOperation lockOperation = LockAnnotationParser.getLockOperation(targetClass, method);
+        List<LockOperation> list = new ArrayList<LockOperation>(2);
+        LockOperation lockOperation = this.getLockOperation(targetClass, method);
         if (lockOperation != null) {
             list.add(lockOperation);
         }
+        RateLimitOperation rateLimitOperation = this.getRateLimitOperation(targetClass, method);
+        if (rateLimitOperation != null) {
+            list.add(rateLimitOperation);
+        }
         return list;
     }
 
+    /**
+     * 获取方法对应的锁操作，默认解析 {@link com.niushencheng.annotation.DistributeLock} 注解，
+     * 子类可以覆盖以使用其他来源的锁配置
+     *
+     * @param targetClass 目标
+     * @param method      方法
+     *
+     * @return 锁操作，没有时返回null
+     */
+    protected LockOperation getLockOperation(Class<?> targetClass, Method method) {
+        return LockAnnotationParser.getLockOperation(targetClass, method);
+    }
+
+    /**
+     * 获取方法对应的限流操作，默认解析 {@link com.niushencheng.annotation.DistributeRateLimit} 注解
+     *
+     * @param targetClass 目标
+     * @param method      方法
+     *
+     * @return 限流操作，没有时返回null
+     */
+    protected RateLimitOperation getRateLimitOperation(Class<?> targetClass, Method method) {
+        return LockAnnotationParser.getRateLimitOperation(targetClass, method);
+    }
+
     private Class<?> getTargetClass(Object target) {
         Class<?> targetClass = AopProxyUtils.ultimateTargetClass(target);
         if (targetClass == null && target != null) {
@@ -272,6 +431,12 @@ public class LockAspectSupport extends AbstractLockInvoker implements Initializi
 
         private final AnnotatedElementKey methodCacheKey;
 
+        /** 本次调用解析出的锁名称 */
+        private String name;
+
+        /** 本次调用解析出的锁key */
+        private String key;
+
         public LockOperationContext(LockOperationMetadata metadata, Object[] args, Object target) {
             this.metadata = metadata;
             this.args = extractArgs(metadata.method, args);
@@ -11,7 +11,7 @@ import org.springframework.core.annotation.Order;
 import java.lang.reflect.Method;
 
 /**
- * 切面类，切入需要加分布式锁的类
+ * 切面类，切入需要加分布式锁或限流的类
  * <p>
  * CreateTime: 2017-07-08 12:41:48
  *
@@ -23,7 +23,8 @@ import java.lang.reflect.Method;
 @Order(Ordered.LOWEST_PRECEDENCE - 5)
 public class LockInterceptor extends LockAspectSupport {
 
-    @Pointcut("@annotation(com.niushencheng.annotation.DistributeLock)")
+    @Pointcut("@annotation(com.niushencheng.annotation.DistributeLock)"
+            + " || @annotation(com.niushencheng.annotation.DistributeRateLimit)")
     public void annotation() {}
 
     @Around("annotation()")
@@ -1,5 +1,6 @@
 package com.niushencheng.interceptor;
 
+import com.niushencheng.annotation.SingleFlight;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -18,10 +19,10 @@ import java.util.Set;
 @EqualsAndHashCode
 public class LockOperation implements BasicOperation {
 
-    /** 名称 */
+    /** 名称, 注解中的原始值 */
     private String name;
 
-    /** key */
+    /** key, 注解中的原始spel表达式，解析后的值见 {@link LockAspectSupport.LockOperationContext#getKey()} */
     private String key;
 
     /** 错误消息 */
@@ -33,8 +34,14 @@ public class LockOperation implements BasicOperation {
     /** 锁过期时间 */
     private Long expire;
 
-    /** 标记key是否被解析过 */
-    private boolean parsedKey = false;
+    /** 是否为层级锁 */
+    private boolean hierarchical;
+
+    /** 单飞模式 */
+    private SingleFlight singleFlight = SingleFlight.NONE;
+
+    /** 单飞模式下结果保留的时间 */
+    private long resultTtl = 5 * 1000;
 
     @Override
     public Set<String> getLockNames() {
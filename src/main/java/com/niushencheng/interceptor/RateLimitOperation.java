@@ -0,0 +1,36 @@
+package com.niushencheng.interceptor;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 限流操作信息，与加锁操作共用key的解析
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class RateLimitOperation extends LockOperation {
+
+    /** 每个窗口允许的次数 */
+    private long permits;
+
+    /** 窗口长度 */
+    private long windowMillis;
+
+    /** 每个节点一次从存储中预取的次数 */
+    private long leaseSize;
+
+    public RateLimitOperation(String name, String key, String errorMsg, long permits, long windowMillis, long leaseSize) {
+        super(name, key, errorMsg, 0L, 0L);
+        this.permits = permits;
+        this.windowMillis = windowMillis;
+        this.leaseSize = leaseSize > 0
+                ? leaseSize
+                : Math.max(1, permits / 20);
+    }
+
+    public RateLimitOperation() {
+    }
+}
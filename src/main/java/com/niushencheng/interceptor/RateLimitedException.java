@@ -0,0 +1,13 @@
+package com.niushencheng.interceptor;
+
+/**
+ * 超过分布式限流后的异常，异常信息为DistributeRateLimit中定义的errorMsg()
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class RateLimitedException extends LockFailedException {
+    RateLimitedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,184 @@
+package com.niushencheng.interceptor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.niushencheng.annotation.SingleFlight;
+import com.niushencheng.store.LockStore;
+import com.niushencheng.store.StoreCommand;
+import com.niushencheng.util.JacksonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单飞模式下发布和查找执行结果，见 {@link com.niushencheng.annotation.DistributeLock#singleFlight()}
+ * <p>
+ * 结果记录完成时间，调用者只接受在自己到达之后完成的结果，即自己等待期间的那一次执行；
+ * 到达之前就已经完成的结果即使还没有过期也不会使用，单飞不是缓存
+ * <p>
+ * STORE模式的结果写入 {@link #RESULT_PREFIX} + 锁名称 + key，值为 完成时间:json，过期时间为resultTtl；
+ * 没有锁存储时退化为本机共享
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class SingleFlightResults {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /** 存储中结果的key前缀 */
+    public static final String RESULT_PREFIX = "MTLock:result:";
+
+    /** STORE模式使用的存储，为null时只在本机共享 */
+    private final LockStore lockStore;
+
+    /** 本机共享的结果，过期时间由每个结果自己记录 */
+    private final Cache<String, Shared> localResults = CacheBuilder.newBuilder()
+                                                                   .maximumSize(1024L)
+                                                                   .expireAfterWrite(10, TimeUnit.MINUTES)
+                                                                   .build();
+
+    public SingleFlightResults(LockStore lockStore) {
+        this.lockStore = lockStore;
+    }
+
+    /**
+     * 查找调用者到达之后完成的结果
+     *
+     * @param context   本次调用
+     * @param arrivedAt 调用者到达的时间
+     *
+     * @return 没有可以共享的结果时返回null
+     */
+    public Shared find(LockAspectSupport.LockOperationContext context, long arrivedAt) {
+        String resultKey = resultKey(context);
+        if (!this.useStore(context)) {
+            Shared shared = localResults.getIfPresent(resultKey);
+            return shared != null && shared.completedAt >= arrivedAt && shared.expiresAt > System.currentTimeMillis()
+                    ? shared
+                    : null;
+        }
+        String record;
+        try {
+            record = lockStore.get(resultKey);
+        } catch (RuntimeException e) {
+            LOGGER.warn("查询单飞结果失败，重新执行, thread -->> {}, resultKey -->> {}",
+                        Thread.currentThread().getName(),
+                        resultKey,
+                        e);
+            return null;
+        }
+        if (record == null) {
+            return null;
+        }
+        int separator = record.indexOf(':');
+        long completedAt;
+        try {
+            completedAt = separator > 0
+                    ? Long.parseLong(record.substring(0, separator))
+                    : -1;
+        } catch (NumberFormatException e) {
+            completedAt = -1;
+        }
+        if (completedAt < 0) {
+            // 其他版本或者其他用途写入的值，按没有结果处理
+            LOGGER.warn("单飞结果格式不正确，重新执行, thread -->> {}, resultKey -->> {}, record -->> {}",
+                        Thread.currentThread().getName(),
+                        resultKey,
+                        record.length() > 64
+                                ? record.substring(0, 64)
+                                : record);
+            return null;
+        }
+        if (completedAt < arrivedAt) {
+            return null;
+        }
+        if (context.getMethod().getReturnType() == void.class) {
+            return new Shared(null, completedAt, Long.MAX_VALUE);
+        }
+        try {
+            Object value = JacksonUtil.toBean(record.substring(separator + 1), context.getMethod().getGenericReturnType());
+            return new Shared(value, completedAt, Long.MAX_VALUE);
+        } catch (IOException e) {
+            LOGGER.warn("单飞结果反序列化失败，重新执行, thread -->> {}, resultKey -->> {}",
+                        Thread.currentThread().getName(),
+                        resultKey,
+                        e);
+            return null;
+        }
+    }
+
+    /**
+     * 发布本次执行的结果，发布失败只影响等待者是否需要重新执行
+     *
+     * @param context 本次调用
+     * @param result  执行结果
+     */
+    public void publish(LockAspectSupport.LockOperationContext context, Object result) {
+        long completedAt = System.currentTimeMillis();
+        long ttl = context.getOperation().getResultTtl();
+        String resultKey = resultKey(context);
+        if (!this.useStore(context)) {
+            localResults.put(resultKey, new Shared(result, completedAt, completedAt + ttl));
+            return;
+        }
+        try {
+            // 发布时持有锁，同一个key不会有并发的发布，先删除上一次的结果再写入
+            lockStore.execute(Arrays.asList(StoreCommand.del(resultKey),
+                                            StoreCommand.add(resultKey,
+                                                             completedAt + ":" + JacksonUtil.toJsonStrOrThrow(
+                                                                     context.getMethod().getReturnType() == void.class
+                                                                             ? null
+                                                                             : result),
+                                                             ttl)));
+        } catch (IOException e) {
+            LOGGER.warn("单飞结果序列化失败，等待者将重新执行, thread -->> {}, resultKey -->> {}",
+                        Thread.currentThread().getName(),
+                        resultKey,
+                        e);
+        } catch (RuntimeException e) {
+            LOGGER.warn("单飞结果发布失败，等待者将重新执行, thread -->> {}, resultKey -->> {}",
+                        Thread.currentThread().getName(),
+                        resultKey,
+                        e);
+        }
+    }
+
+    private boolean useStore(LockAspectSupport.LockOperationContext context) {
+        return lockStore != null && context.getOperation().getSingleFlight() == SingleFlight.STORE;
+    }
+
+    private static String resultKey(LockAspectSupport.LockOperationContext context) {
+        return RESULT_PREFIX + context.getName() + context.getKey();
+    }
+
+    /**
+     * 共享的结果
+     */
+    public static class Shared {
+
+        private final Object value;
+
+        private final long completedAt;
+
+        private final long expiresAt;
+
+        private Shared(Object value, long completedAt, long expiresAt) {
+            this.value = value;
+            this.completedAt = completedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        /** 结果完成的时间 */
+        public long getCompletedAt() {
+            return completedAt;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.niushencheng.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LockStore的基础实现，批量操作默认逐条执行，支持管道的存储应覆盖 {@link #execute(List)} 以及 {@link #isPipelined()}；
+ * 不支持原子计数的存储不需要实现 {@link #incr(String, long, long)}，此时不能使用层级锁和限流
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public abstract class AbstractLockStore implements LockStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractLockStore.class);
+
+    @Override
+    public long incr(String key, long delta, long expireMillis) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + "不支持原子计数");
+    }
+
+    @Override
+    public List<Object> execute(List<StoreCommand> commands) {
+        List<Object> results = new ArrayList<Object>(commands.size());
+        try {
+            for (StoreCommand command : commands) {
+                results.add(command.applyTo(this));
+            }
+        } catch (RuntimeException e) {
+            // 调用方拿不到前面已经生效的结果
+            compensate(this, commands, results);
+            throw e;
+        }
+        return results;
+    }
+
+    @Override
+    public boolean supportsIncr() {
+        return false;
+    }
+
+    @Override
+    public boolean isPipelined() {
+        return false;
+    }
+
+    /**
+     * 撤销批量执行中已经生效的加锁和计数，用于批量执行失败、调用方拿不到结果的情况；
+     * 加锁按值撤销，计数反向补偿，补偿失败时依赖过期时间
+     *
+     * @param store    执行命令的存储
+     * @param commands 命令列表
+     * @param results  已经生效的命令的结果，与commands的前results.size()条一一对应
+     */
+    protected static void compensate(LockStore store, List<StoreCommand> commands, List<Object> results) {
+        for (int i = 0; i < results.size(); i++) {
+            StoreCommand command = commands.get(i);
+            try {
+                if (command.getType() == StoreCommand.Type.INCR) {
+                    store.incr(command.getKey(), -command.getDelta(), command.getExpireMillis());
+                } else if (command.getType() == StoreCommand.Type.ADD && Boolean.TRUE.equals(results.get(i))) {
+                    store.compareAndDelete(command.getKey(), command.getValue());
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("撤销批量执行中已经生效的命令失败，等待自动过期, key -->> {}", command.getKey(), e);
+            }
+        }
+    }
+}
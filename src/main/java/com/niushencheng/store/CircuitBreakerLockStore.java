@@ -0,0 +1,384 @@
+package com.niushencheng.store;
+
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 带熔断的存储装饰器，存储出错或变慢时快速失败，避免每次加锁都等满timeout
+ * <p>
+ * 最近windowMillis内的调用数不少于minimumCalls，且失败率或慢调用率超过阈值时熔断打开，
+ * 打开期间所有调用直接抛出 {@link StoreUnavailableException}；openMillis后进入半开状态，
+ * 放行halfOpenProbes个探测调用，全部成功则关闭，任意一个失败或变慢则重新打开
+ * <p>
+ * 被装饰的存储抛出的运行时异常计为失败，返回false不算失败；一次批量执行计为一次调用；
+ * 调用方的截止时间已到抛出的 {@link StoreDeadlineExceededException} 不计入统计
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class CircuitBreakerLockStore extends AbstractLockStore {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int BUCKETS = 10;
+
+    private final LockStore delegate;
+
+    /** 失败率阈值 */
+    @Setter
+    private double failureRateThreshold = 0.5;
+
+    /** 慢调用率阈值 */
+    @Setter
+    private double slowCallRateThreshold = 0.8;
+
+    /** 超过该耗时的调用计为慢调用 */
+    @Setter
+    private long slowCallMillis = 200;
+
+    /** 统计窗口内的调用数少于该值时不熔断 */
+    @Setter
+    private int minimumCalls = 20;
+
+    /** 统计窗口 */
+    @Setter
+    private long windowMillis = 10 * 1000;
+
+    /** 熔断打开后多久进入半开状态 */
+    @Setter
+    private long openMillis = 5 * 1000;
+
+    /** 半开状态放行的探测调用数 */
+    @Setter
+    private int halfOpenProbes = 3;
+
+    private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+
+    private volatile long openedAt;
+
+    private final AtomicInteger probesIssued = new AtomicInteger();
+
+    private final AtomicInteger probesSucceeded = new AtomicInteger();
+
+    private final Bucket[] buckets = new Bucket[BUCKETS];
+
+    private final long baseNanos = System.nanoTime();
+
+    private final AtomicLong openCount = new AtomicLong();
+
+    private final AtomicLong halfOpenCount = new AtomicLong();
+
+    private final AtomicLong closeCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public CircuitBreakerLockStore(LockStore delegate) {
+        this.delegate = delegate;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    @Override
+    public boolean add(String key, String value, long expireMillis) {
+        long start = this.permit();
+        try {
+            boolean result = delegate.add(key, value, expireMillis);
+            this.onResult(start, false);
+            return result;
+        } catch (RuntimeException e) {
+            this.onFailure(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        long start = this.permit();
+        try {
+            String result = delegate.get(key);
+            this.onResult(start, false);
+            return result;
+        } catch (RuntimeException e) {
+            this.onFailure(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean del(String key) {
+        long start = this.permit();
+        try {
+            boolean result = delegate.del(key);
+            this.onResult(start, false);
+            return result;
+        } catch (RuntimeException e) {
+            this.onFailure(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expect) {
+        long start = this.permit();
+        try {
+            boolean result = delegate.compareAndDelete(key, expect);
+            this.onResult(start, false);
+            return result;
+        } catch (RuntimeException e) {
+            this.onFailure(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expect, long expireMillis) {
+        long start = this.permit();
+        try {
+            boolean result = delegate.compareAndExpire(key, expect, expireMillis);
+            this.onResult(start, false);
+            return result;
+        } catch (RuntimeException e) {
+            this.onFailure(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean supportsIncr() {
+        return delegate.supportsIncr();
+    }
+
+    @Override
+    public boolean isPipelined() {
+        return delegate.isPipelined();
+    }
+
+    @Override
+    public long incr(String key, long delta, long expireMillis) {
+        long start = this.permit();
+        try {
+            long result = delegate.incr(key, delta, expireMillis);
+            this.onResult(start, false);
+            return result;
+        } catch (RuntimeException e) {
+            this.onFailure(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Object> execute(List<StoreCommand> commands) {
+        long start = this.permit();
+        try {
+            List<Object> result = delegate.execute(commands);
+            this.onResult(start, false);
+            return result;
+        } catch (RuntimeException e) {
+            this.onFailure(start, e);
+            throw e;
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /** 打开的次数 */
+    public long getOpenCount() {
+        return openCount.get();
+    }
+
+    /** 进入半开状态的次数 */
+    public long getHalfOpenCount() {
+        return halfOpenCount.get();
+    }
+
+    /** 从半开恢复为关闭的次数 */
+    public long getCloseCount() {
+        return closeCount.get();
+    }
+
+    /** 被快速失败的调用数 */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /** 当前窗口内的失败率 */
+    public double getFailureRate() {
+        long[] totals = this.totals();
+        return totals[0] == 0
+                ? 0
+                : (double) totals[1] / totals[0];
+    }
+
+    /** 当前窗口内的慢调用率 */
+    public double getSlowCallRate() {
+        long[] totals = this.totals();
+        return totals[0] == 0
+                ? 0
+                : (double) totals[2] / totals[0];
+    }
+
+    /**
+     * 检查是否允许调用
+     *
+     * @return 调用开始的时间
+     */
+    private long permit() {
+        for (;;) {
+            State current = state.get();
+            if (current == State.CLOSED) {
+                return System.nanoTime();
+            }
+            if (current == State.OPEN) {
+                if (System.nanoTime() - openedAt < TimeUnit.MILLISECONDS.toNanos(openMillis)) {
+                    rejectedCount.incrementAndGet();
+                    throw new StoreUnavailableException("锁存储熔断中");
+                }
+                // 探测计数在打开时已经归零，这里不能重置，否则晚到的线程会在转换之后清掉已经发出的探测
+                if (this.transition(State.OPEN, State.HALF_OPEN)) {
+                    halfOpenCount.incrementAndGet();
+                }
+                continue;
+            }
+            if (probesIssued.incrementAndGet() > halfOpenProbes) {
+                rejectedCount.incrementAndGet();
+                throw new StoreUnavailableException("锁存储熔断探测中");
+            }
+            return System.nanoTime();
+        }
+    }
+
+    /**
+     * 调用方的截止时间已到而放弃的调用不计入统计，半开状态下归还探测的名额
+     */
+    private void onFailure(long start, RuntimeException e) {
+        if (e instanceof StoreDeadlineExceededException) {
+            // 期间可能已经重新打开并归零，不能减成负数
+            for (;;) {
+                int issued = probesIssued.get();
+                if (issued <= 0 || state.get() != State.HALF_OPEN || probesIssued.compareAndSet(issued, issued - 1)) {
+                    return;
+                }
+            }
+        }
+        this.onResult(start, true);
+    }
+
+    private void onResult(long start, boolean failure) {
+        boolean slow = System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            if (failure || slow) {
+                this.open(State.HALF_OPEN);
+            } else if (probesSucceeded.incrementAndGet() >= halfOpenProbes && this.transition(State.HALF_OPEN,
+                                                                                                State.CLOSED)) {
+                closeCount.incrementAndGet();
+                for (Bucket bucket : buckets) {
+                    bucket.epoch.set(-1);
+                }
+            }
+            return;
+        }
+        if (current != State.CLOSED) {
+            return;
+        }
+        this.record(failure, slow);
+        long[] totals = this.totals();
+        if (totals[0] >= minimumCalls
+                && ((double) totals[1] / totals[0] >= failureRateThreshold
+                || (double) totals[2] / totals[0] >= slowCallRateThreshold)) {
+            this.open(State.CLOSED);
+        }
+    }
+
+    /**
+     * 打开期间没有线程读写探测计数，由转换成功的线程归零，openMillis后进入半开时直接使用
+     */
+    private void open(State from) {
+        this.openedAt = System.nanoTime();
+        if (this.transition(from, State.OPEN)) {
+            probesIssued.set(0);
+            probesSucceeded.set(0);
+            openCount.incrementAndGet();
+        }
+    }
+
+    private boolean transition(State from, State to) {
+        if (!state.compareAndSet(from, to)) {
+            return false;
+        }
+        if (to == State.OPEN) {
+            LOGGER.error("锁存储熔断打开, from -->> {}, failureRate -->> {}, slowCallRate -->> {}, openMillis -->> {}",
+                         from, this.getFailureRate(), this.getSlowCallRate(), openMillis);
+        } else {
+            LOGGER.warn("锁存储熔断状态变化, from -->> {}, to -->> {}", from, to);
+        }
+        return true;
+    }
+
+    private void record(boolean failure, boolean slow) {
+        long epoch = this.currentEpoch();
+        Bucket bucket = buckets[(int) (epoch % BUCKETS)];
+        long old = bucket.epoch.get();
+        if (old != epoch && bucket.epoch.compareAndSet(old, epoch)) {
+            // 复用过期的桶，和并发的记录之间不是原子的，统计值是近似的
+            bucket.calls.set(0);
+            bucket.failures.set(0);
+            bucket.slow.set(0);
+        }
+        bucket.calls.incrementAndGet();
+        if (failure) {
+            bucket.failures.incrementAndGet();
+        }
+        if (slow) {
+            bucket.slow.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return 窗口内的调用数、失败数、慢调用数
+     */
+    private long[] totals() {
+        long epoch = this.currentEpoch();
+        long[] totals = new long[3];
+        for (Bucket bucket : buckets) {
+            long bucketEpoch = bucket.epoch.get();
+            if (bucketEpoch >= 0 && epoch - bucketEpoch < BUCKETS) {
+                totals[0] += bucket.calls.get();
+                totals[1] += bucket.failures.get();
+                totals[2] += bucket.slow.get();
+            }
+        }
+        return totals;
+    }
+
+    private long currentEpoch() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - baseNanos) / Math.max(1, windowMillis / BUCKETS);
+    }
+
+    private static class Bucket {
+
+        private final AtomicLong epoch = new AtomicLong(-1);
+
+        private final AtomicLong calls = new AtomicLong();
+
+        private final AtomicLong failures = new AtomicLong();
+
+        private final AtomicLong slow = new AtomicLong();
+    }
+}
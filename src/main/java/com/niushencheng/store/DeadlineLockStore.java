@@ -0,0 +1,337 @@
+package com.niushencheng.store;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.niushencheng.util.DaemonThreadFactory;
+import com.niushencheng.util.LogHistogram;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 为本身不支持截止时间的阻塞存储(如松鼠、jdbc)加上截止时间的装饰器
+ * <p>
+ * 调用在独立的线程池中执行，调用方最多等待 {@link StoreDeadline} 中剩余的时间，超时抛出 {@link StoreTimeoutException}；
+ * 放弃等待的add如果最终成功了，会按值撤销，避免留下无人持有的锁；放弃等待的incr最终成功时反向补偿
+ * <p>
+ * 开启对冲后，只读的调用在超过最近耗时的hedgePercentile分位数后再发一次，取先返回的结果，用于削减长尾
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class DeadlineLockStore extends AbstractLockStore implements InitializingBean, DisposableBean {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /** 耗时统计的样本数超过该值后重新统计，使分位数跟随最近的情况 */
+    private static final long LATENCY_SAMPLES = 100 * 1000;
+
+    private final LockStore delegate;
+
+    /** 执行存储调用的线程数 */
+    @Setter
+    private int threads = 16;
+
+    /** 调用方没有设置截止时间时的超时时间 */
+    @Setter
+    private long defaultTimeoutMillis = 1000;
+
+    /** 是否对只读的调用进行对冲 */
+    @Setter
+    private boolean hedgeEnabled = false;
+
+    /** 超过该分位数的耗时后发出对冲请求 */
+    @Setter
+    private double hedgePercentile = 95;
+
+    /** 对冲的最小等待时间 */
+    @Setter
+    private long minHedgeDelayMicros = 500;
+
+    private ListeningExecutorService executor;
+
+    private final LogHistogram readLatency = new LogHistogram();
+
+    private final AtomicLong hedgeCount = new AtomicLong();
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final AtomicLong revokedCount = new AtomicLong();
+
+    public DeadlineLockStore(LockStore delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>(),
+                                                         new DaemonThreadFactory("lock-store-deadline-"));
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = MoreExecutors.listeningDecorator(pool);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (this.executor != null) {
+            this.executor.shutdown();
+            this.executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public boolean add(String key, String value, long expireMillis) {
+        return (Boolean) this.call(StoreCommand.add(key, value, expireMillis));
+    }
+
+    @Override
+    public String get(String key) {
+        return (String) this.call(StoreCommand.get(key));
+    }
+
+    @Override
+    public boolean del(String key) {
+        return (Boolean) this.call(StoreCommand.del(key));
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expect) {
+        return (Boolean) this.call(StoreCommand.compareAndDelete(key, expect));
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expect, long expireMillis) {
+        return (Boolean) this.call(StoreCommand.compareAndExpire(key, expect, expireMillis));
+    }
+
+    @Override
+    public boolean supportsIncr() {
+        return delegate.supportsIncr();
+    }
+
+    @Override
+    public boolean isPipelined() {
+        return delegate.isPipelined();
+    }
+
+    @Override
+    public long incr(String key, long delta, long expireMillis) {
+        return (Long) this.call(StoreCommand.incr(key, delta, expireMillis));
+    }
+
+    @Override
+    public List<Object> execute(final List<StoreCommand> commands) {
+        boolean readOnly = true;
+        for (StoreCommand command : commands) {
+            readOnly &= command.isReadOnly();
+        }
+        return this.call(new Callable<List<Object>>() {
+            @Override
+            public List<Object> call() throws Exception {
+                return delegate.execute(commands);
+            }
+        }, readOnly, new FutureCallback<List<Object>>() {
+            @Override
+            public void onSuccess(List<Object> results) {
+                for (int i = 0; i < commands.size(); i++) {
+                    revokeIfApplied(commands.get(i), results.get(i));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+        });
+    }
+
+    /** 发出的对冲请求数 */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /** 超过截止时间的调用数 */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /** 放弃等待后又撤销的加锁数 */
+    public long getRevokedCount() {
+        return revokedCount.get();
+    }
+
+    private Object call(final StoreCommand command) {
+        return this.call(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return command.applyTo(delegate);
+            }
+        }, command.isReadOnly(), new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                revokeIfApplied(command, result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+        });
+    }
+
+    /**
+     * 在截止时间内执行调用
+     *
+     * @param readOnly  是否只读，只读的调用可以对冲
+     * @param onAbandon 超时后调用最终完成时的回调
+     */
+    private <T> T call(Callable<T> task, boolean readOnly, FutureCallback<T> onAbandon) {
+        long timeoutMillis = StoreDeadline.timeoutMillis(defaultTimeoutMillis);
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (timeoutNanos <= 0) {
+            timeoutCount.incrementAndGet();
+            throw new StoreDeadlineExceededException("已超过存储调用的截止时间");
+        }
+        // 超时时间被调用方剩余的时间截短了，超时不代表存储不健康
+        boolean bounded = timeoutMillis < defaultTimeoutMillis;
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+        ListenableFuture<T> primary = executor.submit(this.bounded(task, deadline));
+        if (readOnly && hedgeEnabled) {
+            this.recordLatency(primary, start);
+        }
+        ListenableFuture<T> result = primary;
+        if (readOnly && hedgeEnabled) {
+            long hedgeDelay = Math.max(TimeUnit.MICROSECONDS.toNanos(minHedgeDelayMicros),
+                                       readLatency.percentile(hedgePercentile));
+            if (hedgeDelay < timeoutNanos) {
+                try {
+                    return Uninterruptibles.getUninterruptibly(primary, hedgeDelay, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    hedgeCount.incrementAndGet();
+                    result = this.firstSuccessful(primary, executor.submit(this.bounded(task, deadline)));
+                } catch (ExecutionException e) {
+                    throw this.unwrap(e);
+                }
+            }
+        }
+        try {
+            return Uninterruptibles.getUninterruptibly(result, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeoutCount.incrementAndGet();
+            Futures.addCallback(primary, onAbandon);
+            String message = "存储调用超过了截止时间, timeoutMillis -->> " + timeoutMillis;
+            throw bounded
+                    ? new StoreDeadlineExceededException(message)
+                    : new StoreTimeoutException(message);
+        } catch (ExecutionException e) {
+            throw this.unwrap(e);
+        }
+    }
+
+    /**
+     * 在执行线程上设置同样的截止时间，开始执行时已经超时的调用直接放弃
+     */
+    private <T> Callable<T> bounded(final Callable<T> task, final long deadline) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new StoreDeadlineExceededException("排队期间已超过存储调用的截止时间");
+                }
+                Long previous = StoreDeadline.enter(deadline);
+                try {
+                    return task.call();
+                } finally {
+                    StoreDeadline.exit(previous);
+                }
+            }
+        };
+    }
+
+    private <T> ListenableFuture<T> firstSuccessful(ListenableFuture<T> first, ListenableFuture<T> second) {
+        final SettableFuture<T> result = SettableFuture.create();
+        final AtomicInteger failures = new AtomicInteger();
+        FutureCallback<T> callback = new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                result.set(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (failures.incrementAndGet() == 2) {
+                    result.setException(t);
+                }
+            }
+        };
+        Futures.addCallback(first, callback);
+        Futures.addCallback(second, callback);
+        return result;
+    }
+
+    private <T> void recordLatency(ListenableFuture<T> future, final long start) {
+        Futures.addCallback(future, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                if (readLatency.getCount() >= LATENCY_SAMPLES) {
+                    readLatency.reset();
+                }
+                readLatency.record(System.nanoTime() - start);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+        });
+    }
+
+    /**
+     * 调用方已经放弃等待的add最终成功了，没有人会释放这把锁，按值撤销；incr同理，反向补偿
+     */
+    private void revokeIfApplied(StoreCommand command, Object result) {
+        if (command.getType() == StoreCommand.Type.INCR && result != null) {
+            try {
+                delegate.incr(command.getKey(), -command.getDelta(), command.getExpireMillis());
+                revokedCount.incrementAndGet();
+            } catch (RuntimeException e) {
+                LOGGER.error("补偿超时后成功的计数失败，等待计数自动过期, key -->> {}", command.getKey(), e);
+            }
+            return;
+        }
+        if (command.getType() != StoreCommand.Type.ADD || !Boolean.TRUE.equals(result)) {
+            return;
+        }
+        try {
+            if (delegate.compareAndDelete(command.getKey(), command.getValue())) {
+                revokedCount.incrementAndGet();
+                LOGGER.warn("超时后加锁成功，已撤销, key -->> {}", command.getKey());
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("撤销超时后成功的加锁失败，等待锁自动过期, key -->> {}", command.getKey(), e);
+        }
+    }
+
+    private RuntimeException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+            return (RuntimeException) e.getCause();
+        }
+        return new UncheckedExecutionException(e.getCause());
+    }
+}
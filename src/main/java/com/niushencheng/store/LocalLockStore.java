@@ -0,0 +1,161 @@
+package com.niushencheng.store;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的锁存储，基于ConcurrentHashMap实现，所有操作都是原子的
+ * <p>
+ * 适用于单机部署、测试以及作为远程存储不可用时的兜底
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LocalLockStore extends AbstractLockStore {
+
+    /** 每写入多少次顺带清理一次过期的记录 */
+    private static final int PURGE_INTERVAL = 1024;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final AtomicInteger writes = new AtomicInteger();
+
+    @Override
+    public boolean add(String key, String value, long expireMillis) {
+        this.maybePurge();
+        Entry entry = new Entry(value, expireMillis);
+        for (;;) {
+            Entry current = entries.get(key);
+            if (current == null) {
+                if (entries.putIfAbsent(key, entry) == null) {
+                    return true;
+                }
+            } else if (current.isExpired()) {
+                if (entries.replace(key, current, entry)) {
+                    return true;
+                }
+            } else {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        Entry current = this.live(key);
+        return current == null
+                ? null
+                : current.value;
+    }
+
+    @Override
+    public boolean del(String key) {
+        Entry current = entries.remove(key);
+        return current != null && !current.isExpired();
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expect) {
+        Entry current = this.live(key);
+        return current != null && current.value.equals(expect) && entries.remove(key, current);
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expect, long expireMillis) {
+        Entry current = this.live(key);
+        return current != null
+                && current.value.equals(expect)
+                && entries.replace(key, current, new Entry(current.value, expireMillis));
+    }
+
+    @Override
+    public boolean supportsIncr() {
+        return true;
+    }
+
+    /** 本机内存，没有网络往返 */
+    @Override
+    public boolean isPipelined() {
+        return true;
+    }
+
+    @Override
+    public long incr(String key, long delta, long expireMillis) {
+        this.maybePurge();
+        for (;;) {
+            Entry current = this.live(key);
+            long count = (current == null
+                    ? 0
+                    : Long.parseLong(current.value)) + delta;
+            if (count <= 0) {
+                if (current == null || entries.remove(key, current)) {
+                    return count;
+                }
+                continue;
+            }
+            Entry entry = new Entry(String.valueOf(count), expireMillis);
+            if (current == null
+                    ? entries.putIfAbsent(key, entry) == null
+                    : entries.replace(key, current, entry)) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * 清理所有已过期的记录
+     */
+    public void purgeExpired() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> next = iterator.next();
+            if (next.getValue().isExpired()) {
+                entries.remove(next.getKey(), next.getValue());
+            }
+        }
+    }
+
+    /**
+     * 获取未过期的记录，过期的记录顺便移除
+     */
+    private Entry live(String key) {
+        Entry current = entries.get(key);
+        if (current != null && current.isExpired()) {
+            entries.remove(key, current);
+            return null;
+        }
+        return current;
+    }
+
+    private void maybePurge() {
+        if (writes.incrementAndGet() % PURGE_INTERVAL == 0) {
+            this.purgeExpired();
+        }
+    }
+
+    /**
+     * 不可变的存储记录，使用nanoTime计算过期，不受系统时钟调整影响
+     */
+    private static final class Entry {
+
+        private final String value;
+
+        /** 0表示永不过期 */
+        private final long expireAt;
+
+        private Entry(String value, long expireMillis) {
+            this.value = value;
+            this.expireAt = expireMillis > 0
+                    ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(expireMillis)
+                    : 0;
+        }
+
+        private boolean isExpired() {
+            return expireAt != 0 && System.nanoTime() - expireAt >= 0;
+        }
+    }
+}
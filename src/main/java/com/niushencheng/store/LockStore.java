@@ -0,0 +1,101 @@
+package com.niushencheng.store;
+
+import java.util.List;
+
+/**
+ * 锁信息的存储抽象，屏蔽松鼠、redis等具体存储的差异
+ * <p>
+ * 所有的过期时间单位均为ms，expireMillis <= 0 表示永不过期
+ * <p>
+ * 实现类请继承 {@link AbstractLockStore}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public interface LockStore {
+
+    /**
+     * 仅当key不存在时写入, 即setnx
+     *
+     * @param key          key
+     * @param value        value
+     * @param expireMillis 过期时间
+     *
+     * @return 写入成功返回true
+     */
+    boolean add(String key, String value, long expireMillis);
+
+    /**
+     * 获取key对应的值
+     *
+     * @param key key
+     *
+     * @return 不存在或已过期时返回null
+     */
+    String get(String key);
+
+    /**
+     * 删除key
+     *
+     * @param key key
+     *
+     * @return 存在并被删除时返回true
+     */
+    boolean del(String key);
+
+    /**
+     * 仅当key对应的值等于expect时删除
+     *
+     * @param key    key
+     * @param expect 期望的值
+     *
+     * @return 删除成功返回true
+     */
+    boolean compareAndDelete(String key, String expect);
+
+    /**
+     * 仅当key对应的值等于expect时重新设置过期时间, 用于续租
+     *
+     * @param key          key
+     * @param expect       期望的值
+     * @param expireMillis 新的过期时间
+     *
+     * @return 续租成功返回true
+     */
+    boolean compareAndExpire(String key, String expect, long expireMillis);
+
+    /**
+     * 原子地增加计数并刷新过期时间, 增加后的计数不大于0时删除key, 用于层级锁的意向计数
+     * <p>
+     * 计数以十进制字符串存储，可以通过 {@link #get(String)} 读取
+     *
+     * @param key          key
+     * @param delta        增量，可以为负数
+     * @param expireMillis 新的过期时间
+     *
+     * @return 增加后的计数
+     */
+    long incr(String key, long delta, long expireMillis);
+
+    /**
+     * 批量执行多个操作, 支持管道的存储一次网络往返完成
+     * <p>
+     * 抛出异常时调用方拿不到任何结果，其中已知生效的add和incr由存储撤销(超时的命令在结果返回后撤销)，
+     * 调用方不需要也不能再补偿，否则计数会被重复扣减；结果未知的命令(如连接中断)依赖过期时间
+     *
+     * @param commands 操作列表
+     *
+     * @return 与commands一一对应的结果，类型见 {@link StoreCommand#applyTo(LockStore)}
+     */
+    List<Object> execute(List<StoreCommand> commands);
+
+    /**
+     * 是否支持 {@link #incr(String, long, long)}，不支持时不能使用层级锁和限流
+     */
+    boolean supportsIncr();
+
+    /**
+     * {@link #execute(List)} 是否一次网络往返完成，逐条执行的存储合并命令没有收益
+     */
+    boolean isPipelined();
+}
@@ -0,0 +1,225 @@
+package com.niushencheng.store;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 把key分散到多个存储上的分片存储，按rendezvous哈希为每个key选择分片：
+ * 每个分片按 分片名称 和 key 计算一个分数，分数最高的分片存储该key；
+ * 增加一个分片时只有约 1/(N+1) 的key迁移到新分片，其他key的分片不变，删除分片时只有该分片上的key迁移
+ * <p>
+ * key中包含 {...} 时只按第一对括号内的内容计算分片，与redis cluster的hash tag一致，需要放在同一个分片的key可以使用相同的tag
+ * <p>
+ * 批量执行中的命令分属多个分片时，按原来的顺序切分为连续的同分片片段，逐段执行，
+ * 前面的写入在后面的读取之前完成，层级锁先声明后检查的顺序不会被打乱；全部在同一个分片时仍然是一次往返；
+ * 某一段失败时前面已经成功的片段中的add和incr按 {@link LockStore#execute(List)} 的约定撤销后再抛出
+ * <p>
+ * 注意！！！
+ * 分片名称参与哈希，所有节点需要使用相同的名称；增删分片时被迁移的key上正在持有的锁在新分片上不可见，
+ * 需要在所有节点同时切换，并且在迁移的锁过期之前可能出现重复加锁；
+ * 熔断、超时按整个分片存储统计，需要按分片熔断时可以把每个分片包装为 {@link CircuitBreakerLockStore}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class ShardedLockStore extends AbstractLockStore {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final List<String> names;
+
+    private final List<LockStore> shards;
+
+    /** 分片名称的哈希，与key的哈希混合得到分数 */
+    private final long[] seeds;
+
+    /** 每个分片收到的命令数 */
+    private final AtomicLongArray commandCounts;
+
+    /**
+     * @param shards 分片名称 -> 存储，名称需要在所有节点上一致
+     */
+    public ShardedLockStore(Map<String, ? extends LockStore> shards) {
+        Assert.notEmpty(shards, "shards不能为空");
+        this.names = Collections.unmodifiableList(new ArrayList<String>(shards.keySet()));
+        this.shards = Collections.unmodifiableList(new ArrayList<LockStore>(shards.values()));
+        this.seeds = new long[this.names.size()];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = HASH.hashString(names.get(i), Charsets.UTF_8).asLong();
+        }
+        this.commandCounts = new AtomicLongArray(seeds.length);
+    }
+
+    /**
+     * key所在分片的下标
+     */
+    public int shardOf(String key) {
+        long hash = HASH.hashString(routingKey(key), Charsets.UTF_8).asLong();
+        int best = 0;
+        long bestScore = Long.MIN_VALUE;
+        for (int i = 0; i < seeds.length; i++) {
+            long score = mix(hash ^ seeds[i]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /** 分片名称 */
+    public List<String> getShardNames() {
+        return names;
+    }
+
+    /** 分片 */
+    public List<LockStore> getShards() {
+        return shards;
+    }
+
+    /**
+     * 各分片收到的命令数，按分片名称
+     */
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < seeds.length; i++) {
+            counts.put(names.get(i), commandCounts.get(i));
+        }
+        return counts;
+    }
+
+    /**
+     * 负载最高的分片的命令数与平均值之比，1表示完全均衡
+     *
+     * @return 还没有命令时返回0
+     */
+    public double getImbalance() {
+        long total = 0;
+        long max = 0;
+        for (int i = 0; i < seeds.length; i++) {
+            long count = commandCounts.get(i);
+            total += count;
+            max = Math.max(max, count);
+        }
+        return total == 0
+                ? 0
+                : (double) max * seeds.length / total;
+    }
+
+    @Override
+    public boolean add(String key, String value, long expireMillis) {
+        return this.route(key).add(key, value, expireMillis);
+    }
+
+    @Override
+    public String get(String key) {
+        return this.route(key).get(key);
+    }
+
+    @Override
+    public boolean del(String key) {
+        return this.route(key).del(key);
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expect) {
+        return this.route(key).compareAndDelete(key, expect);
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expect, long expireMillis) {
+        return this.route(key).compareAndExpire(key, expect, expireMillis);
+    }
+
+    /** 所有分片都支持时才支持 */
+    @Override
+    public boolean supportsIncr() {
+        for (LockStore shard : shards) {
+            if (!shard.supportsIncr()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 所有分片都支持管道时才认为支持，跨分片的批量操作按分片各一次往返 */
+    @Override
+    public boolean isPipelined() {
+        for (LockStore shard : shards) {
+            if (!shard.isPipelined()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long incr(String key, long delta, long expireMillis) {
+        return this.route(key).incr(key, delta, expireMillis);
+    }
+
+    @Override
+    public List<Object> execute(List<StoreCommand> commands) {
+        if (commands.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object> results = new ArrayList<Object>(commands.size());
+        int start = 0;
+        int shard = this.shardOf(commands.get(0).getKey());
+        try {
+            for (int i = 1; i <= commands.size(); i++) {
+                int next = i < commands.size()
+                        ? this.shardOf(commands.get(i).getKey())
+                        : -1;
+                if (next != shard) {
+                    // 同一个分片的连续命令一次执行，分片之间按顺序执行
+                    commandCounts.addAndGet(shard, i - start);
+                    results.addAll(shards.get(shard).execute(commands.subList(start, i)));
+                    start = i;
+                    shard = next;
+                }
+            }
+        } catch (RuntimeException e) {
+            // 失败的片段由所在分片撤销，这里撤销前面已经成功的片段
+            compensate(this, commands, results);
+            throw e;
+        }
+        return results;
+    }
+
+    private LockStore route(String key) {
+        int shard = this.shardOf(key);
+        commandCounts.incrementAndGet(shard);
+        return shards.get(shard);
+    }
+
+    private static String routingKey(String key) {
+        int open = key.indexOf('{');
+        if (open >= 0) {
+            int close = key.indexOf('}', open + 1);
+            if (close > open + 1) {
+                return key.substring(open + 1, close);
+            }
+        }
+        return key;
+    }
+
+    /** murmur3的64位finalizer，使不同分片的分数互相独立 */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,99 @@
+package com.niushencheng.store;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 对 {@link LockStore} 单个操作的描述，用于批量/管道执行
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public final class StoreCommand {
+
+    public enum Type {
+        ADD, GET, DEL, COMPARE_AND_DELETE, COMPARE_AND_EXPIRE, INCR
+    }
+
+    private final Type type;
+
+    private final String key;
+
+    private final String value;
+
+    private final long expireMillis;
+
+    /** INCR的增量 */
+    private final long delta;
+
+    private StoreCommand(Type type, String key, String value, long expireMillis) {
+        this(type, key, value, expireMillis, 0);
+    }
+
+    private StoreCommand(Type type, String key, String value, long expireMillis, long delta) {
+        this.type = type;
+        this.key = key;
+        this.value = value;
+        this.expireMillis = expireMillis;
+        this.delta = delta;
+    }
+
+    public static StoreCommand add(String key, String value, long expireMillis) {
+        return new StoreCommand(Type.ADD, key, value, expireMillis);
+    }
+
+    public static StoreCommand get(String key) {
+        return new StoreCommand(Type.GET, key, null, 0);
+    }
+
+    public static StoreCommand del(String key) {
+        return new StoreCommand(Type.DEL, key, null, 0);
+    }
+
+    public static StoreCommand compareAndDelete(String key, String expect) {
+        return new StoreCommand(Type.COMPARE_AND_DELETE, key, expect, 0);
+    }
+
+    public static StoreCommand compareAndExpire(String key, String expect, long expireMillis) {
+        return new StoreCommand(Type.COMPARE_AND_EXPIRE, key, expect, expireMillis);
+    }
+
+    public static StoreCommand incr(String key, long delta, long expireMillis) {
+        return new StoreCommand(Type.INCR, key, null, expireMillis, delta);
+    }
+
+    /** 只读操作，同一批次中相同的只读操作可以合并 */
+    public boolean isReadOnly() {
+        return type == Type.GET;
+    }
+
+    /**
+     * 在指定的存储上单独执行本操作
+     *
+     * @param store 存储
+     *
+     * @return GET返回String，INCR返回Long，其余返回Boolean
+     */
+    public Object applyTo(LockStore store) {
+        switch (type) {
+            case ADD:
+                return store.add(key, value, expireMillis);
+            case GET:
+                return store.get(key);
+            case DEL:
+                return store.del(key);
+            case COMPARE_AND_DELETE:
+                return store.compareAndDelete(key, value);
+            case COMPARE_AND_EXPIRE:
+                return store.compareAndExpire(key, value, expireMillis);
+            case INCR:
+                return store.incr(key, delta, expireMillis);
+            default:
+                throw new IllegalStateException("未知的操作类型: " + type);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.niushencheng.store;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 当前线程调用存储的截止时间，由加锁逻辑根据剩余的timeout设置，存储实现据此限制单次调用的耗时
+ * <p>
+ * 使用方式：
+ * <pre>
+ * Long previous = StoreDeadline.enter(deadlineNanos);
+ * try {
+ *     ...
+ * } finally {
+ *     StoreDeadline.exit(previous);
+ * }
+ * </pre>
+ * 嵌套设置时取较早的截止时间
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public final class StoreDeadline {
+
+    /** System.nanoTime()的截止时间，没有设置时为null */
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<Long>();
+
+    private StoreDeadline() {}
+
+    /**
+     * 设置当前线程的截止时间
+     *
+     * @param deadlineNanos System.nanoTime()的截止时间
+     *
+     * @return 之前的截止时间，用于 {@link #exit(Long)}
+     */
+    public static Long enter(long deadlineNanos) {
+        Long previous = DEADLINE.get();
+        DEADLINE.set(previous != null && previous - deadlineNanos < 0
+                             ? previous
+                             : deadlineNanos);
+        return previous;
+    }
+
+    /**
+     * 恢复之前的截止时间
+     */
+    public static void exit(Long previous) {
+        if (previous == null) {
+            DEADLINE.remove();
+        } else {
+            DEADLINE.set(previous);
+        }
+    }
+
+    /**
+     * 当前线程的截止时间
+     *
+     * @return 没有设置时返回null
+     */
+    public static Long current() {
+        return DEADLINE.get();
+    }
+
+    /**
+     * 距离截止时间的纳秒数，没有设置时返回Long.MAX_VALUE
+     */
+    public static long remainingNanos() {
+        Long deadline = DEADLINE.get();
+        return deadline == null
+                ? Long.MAX_VALUE
+                : deadline - System.nanoTime();
+    }
+
+    /**
+     * 单次调用可用的超时时间
+     *
+     * @param defaultMillis 存储自身的超时时间
+     *
+     * @return defaultMillis与剩余时间中较小的，已经超过截止时间时返回0
+     */
+    public static long timeoutMillis(long defaultMillis) {
+        long remaining = remainingNanos();
+        if (remaining == Long.MAX_VALUE) {
+            return defaultMillis;
+        }
+        // 向上取整，避免剩余不足1ms时变成0
+        return Math.max(0, Math.min(defaultMillis, (remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1)
+                / TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+
+    /**
+     * 是否已经超过截止时间
+     */
+    public static boolean expired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * 已经超过截止时间时抛出 {@link StoreDeadlineExceededException}
+     */
+    public static void check() {
+        if (expired()) {
+            throw new StoreDeadlineExceededException("已超过存储调用的截止时间");
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.niushencheng.store;
+
+/**
+ * 调用方的截止时间已到，存储调用没有发出或者被截断，调用的结果未知
+ * <p>
+ * 与 {@link StoreTimeoutException} 的区别在于原因是调用方的加锁时间用完了，不代表存储不健康，
+ * {@link CircuitBreakerLockStore} 不计入失败
+ *
+ * @version 1.0
+ * @see StoreDeadline
+ * @since JDK 1.7
+ */
+public class StoreDeadlineExceededException extends StoreTimeoutException {
+
+    public StoreDeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.niushencheng.store;
+
+/**
+ * 存储调用超过了截止时间，调用的结果未知
+ *
+ * @version 1.0
+ * @see StoreDeadline
+ * @since JDK 1.7
+ */
+public class StoreTimeoutException extends RuntimeException {
+
+    public StoreTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.niushencheng.store;
+
+/**
+ * 锁存储不可用，熔断打开期间不会真正访问存储，直接抛出该异常
+ *
+ * @version 1.0
+ * @see CircuitBreakerLockStore
+ * @since JDK 1.7
+ */
+public class StoreUnavailableException extends RuntimeException {
+
+    public StoreUnavailableException(String message) {
+        super(message);
+    }
+}
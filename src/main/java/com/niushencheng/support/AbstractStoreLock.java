@@ -0,0 +1,898 @@
+package com.niushencheng.support;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.niushencheng.MTLock;
+import com.niushencheng.interceptor.LockArgIllegalException;
+import com.niushencheng.store.LockStore;
+import com.niushencheng.store.StoreCommand;
+import com.niushencheng.store.StoreDeadline;
+import com.niushencheng.store.StoreUnavailableException;
+import com.niushencheng.trace.LockSpan;
+import com.niushencheng.trace.LockTracer;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于 {@link LockStore} 的锁，负责本地排队、超时控制以及轮询，
+ * 如何在存储中加锁、释放锁由子类决定
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+@Getter
+public abstract class AbstractStoreLock implements MTLock {
+
+    @Getter(AccessLevel.NONE)
+    protected final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+
+    private final String key;
+
+    private final long timeout; // ms
+
+    private final long expire;  // ms
+
+    /** 本次加锁使用的租期，没有开启自适应租期时等于expire */
+    private volatile long lease;    // ms
+
+    private final String errorMsg;
+
+    private final String lockKey;
+
+    @Getter(AccessLevel.NONE)
+    protected final LockStore lockStore;
+
+    private volatile boolean cancel = false;
+
+    // 只有持有mainLock的线程会读写
+    private volatile boolean locked = false;
+
+    /** 存储不可用时是否允许降级为本机锁 */
+    @Getter(AccessLevel.NONE)
+    private volatile boolean degradable = false;
+
+    /** 当前持有的是降级后的本机锁，存储中没有记录 */
+    private volatile boolean degraded = false;
+
+    /** 本机在该锁上成功加锁的次数 */
+    private volatile long acquireCount = 0;
+
+    /** 热点key统计，没有开启时为null */
+    @Getter(AccessLevel.NONE)
+    private volatile HotKeyProfiler profiler;
+
+    /** 本次加锁在存储中尝试的次数，只有持有mainLock的线程会读写 */
+    @Getter(AccessLevel.NONE)
+    private int attempts;
+
+    /** 本次持有开始的时间，只有持有mainLock的线程会读写 */
+    @Getter(AccessLevel.NONE)
+    private long lockedAt;
+
+    /** 租期到期的时间，续租时更新 */
+    @Getter(AccessLevel.NONE)
+    private volatile long leaseDeadline;
+
+    /** 持有时间统计，没有开启自适应租期和按持有时间重试时为null */
+    @Getter(AccessLevel.NONE)
+    private volatile HoldTimeTracker holdTimeTracker;
+
+    /** 续租，没有开启自适应租期时为null */
+    @Getter(AccessLevel.NONE)
+    private volatile LeaseRenewer leaseRenewer;
+
+    /** 按持有时间安排重试，没有开启时为null */
+    @Getter(AccessLevel.NONE)
+    private volatile RetryScheduler retryScheduler;
+
+    /** 本机持有中的锁，关闭时用于批量释放，没有设置时为null */
+    @Getter(AccessLevel.NONE)
+    private volatile HeldLockRegistry heldLockRegistry;
+
+    /** 节点心跳，用于接管宕机节点的锁，没有开启时为null */
+    @Getter(AccessLevel.NONE)
+    private volatile NodeHeartbeat nodeHeartbeat;
+
+    /** 本机等待者的准入控制，没有开启时为null */
+    @Getter(AccessLevel.NONE)
+    private volatile AdmissionController admissionController;
+
+    /** 已经准入还没有结束加锁的线程数，见 {@link AdmissionController} */
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /** 分布式死锁检测，没有开启时为null */
+    @Getter(AccessLevel.NONE)
+    private volatile DeadlockDetector deadlockDetector;
+
+    /** 链路追踪，没有设置时为null */
+    @Getter(AccessLevel.NONE)
+    private volatile LockTracer tracer;
+
+    /** 上报的lockKey哈希，设置链路追踪时计算 */
+    @Getter(AccessLevel.NONE)
+    private volatile String keyHash;
+
+    /** 持有期间的span，只有持有mainLock的线程会读写 */
+    @Getter(AccessLevel.NONE)
+    private LockSpan holdSpan;
+
+    /** 本次持有的锁已经在关闭时被批量释放，持有者释放时不再访问存储 */
+    @Getter(AccessLevel.NONE)
+    private volatile boolean detached = false;
+
+    /** 最近一次加锁失败时看到的持有者，只有持有mainLock的线程会读写 */
+    @Getter(AccessLevel.NONE)
+    private LockOwner observedHolder;
+
+    /** 最近一次加锁失败时是否查询了持有者，只有持有mainLock的线程会读写 */
+    @Getter(AccessLevel.NONE)
+    private boolean holderObserved;
+
+    private long MAX_TIMEOUT = 600 * 1000;  // 10min
+
+    /** take lock，用于tryLock锁定时 */
+    @Getter(AccessLevel.NONE)
+    private final Lock takeLock = new ReentrantLock();
+
+    /** condition，用于休眠唤醒 */
+    @Getter(AccessLevel.NONE)
+    private final Condition condition = takeLock.newCondition();
+
+    /** 方法执行主锁 */
+    @Getter(AccessLevel.NONE)
+    private final ReentrantLock mainLock = new ReentrantLock();
+
+    protected AbstractStoreLock(String name, String key, long timeout, long expire, String errorMsg,
+                                LockStore lockStore) {
+        this.name = name;
+        this.key = key;
+        this.timeout = timeout;
+        this.expire = expire;
+        this.lease = expire;
+        this.errorMsg = errorMsg;
+        this.lockKey = name + key;    // lock的key为拼接的
+        this.lockStore = lockStore;
+        this.checkArgs();
+    }
+
+    /**
+     * 在存储中尝试加锁一次
+     *
+     * @param timeStamp 本次尝试开始的时间
+     *
+     * @return 加锁成功返回true
+     */
+    protected abstract boolean acquire(long timeStamp);
+
+    /**
+     * 释放存储中的锁
+     *
+     * @return 释放成功返回true
+     */
+    protected abstract boolean release();
+
+    /**
+     * 本次加锁失败时调用，用于撤销加锁过程中留在存储中的中间状态
+     */
+    protected void abandon() {
+    }
+
+    /**
+     * 设置存储不可用时是否降级为本机锁，本机锁即mainLock，只能保证本机内的互斥
+     */
+    void setDegradable(boolean degradable) {
+        this.degradable = degradable;
+    }
+
+    /**
+     * 设置热点key统计
+     */
+    void setProfiler(HotKeyProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * 设置持有时间统计
+     */
+    void setHoldTimeTracker(HoldTimeTracker holdTimeTracker) {
+        this.holdTimeTracker = holdTimeTracker;
+    }
+
+    /**
+     * 开启自适应租期，租期按持有时间的分布计算，超过租期的持有者续租，需要同时设置持有时间统计
+     */
+    void setLeaseRenewer(LeaseRenewer leaseRenewer) {
+        this.leaseRenewer = leaseRenewer;
+    }
+
+    /**
+     * 开启按持有时间安排重试，需要同时设置持有时间统计
+     */
+    void setRetryScheduler(RetryScheduler retryScheduler) {
+        this.retryScheduler = retryScheduler;
+    }
+
+    /**
+     * 设置本机持有中的锁的登记
+     */
+    void setHeldLockRegistry(HeldLockRegistry heldLockRegistry) {
+        this.heldLockRegistry = heldLockRegistry;
+    }
+
+    /**
+     * 开启节点心跳，持有者带上心跳标记，加锁失败时接管宕机节点的锁
+     */
+    void setNodeHeartbeat(NodeHeartbeat nodeHeartbeat) {
+        this.nodeHeartbeat = nodeHeartbeat;
+    }
+
+    /**
+     * 设置本机等待者的准入控制
+     */
+    void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * 开启分布式死锁检测，加锁失败时需要知道持有者
+     */
+    void setDeadlockDetector(DeadlockDetector deadlockDetector) {
+        this.deadlockDetector = deadlockDetector;
+    }
+
+    /**
+     * 设置链路追踪，{@link LockTracer#NOOP} 按没有设置处理
+     */
+    void setTracer(LockTracer tracer) {
+        if (tracer == LockTracer.NOOP) {
+            tracer = null;
+        }
+        if (tracer != null) {
+            this.keyHash = Hashing.murmur3_32().hashString(lockKey, Charsets.UTF_8).toString();
+        }
+        this.tracer = tracer;
+    }
+
+    int enterWaiting() {
+        return waiting.incrementAndGet();
+    }
+
+    void exitWaiting() {
+        waiting.decrementAndGet();
+    }
+
+    /**
+     * 为本次加锁生成持有者
+     */
+    protected LockOwner newOwner() {
+        return LockOwner.current(nodeHeartbeat != null);
+    }
+
+    /**
+     * 加锁失败时是否需要告知当前的持有者，见 {@link #observeHolder(String)}
+     */
+    protected boolean isHolderAware() {
+        return retryScheduler != null || nodeHeartbeat != null || deadlockDetector != null;
+    }
+
+    /**
+     * 持有者节点宕机时是否可以只删除 {@link #lockKey} 来接管，见 {@link #reclaimIfDead()}；
+     * 持有时在存储中还有其他状态的锁需要返回false
+     */
+    protected boolean isReclaimable() {
+        return true;
+    }
+
+    /**
+     * 子类在加锁失败时告知存储中当前的值，用于估计持有者何时释放
+     *
+     * @param value 存储中的值，没有持有者时为null
+     */
+    protected void observeHolder(String value) {
+        this.observedHolder = LockOwner.decode(value);
+        // 值不是持有者格式时无法估计
+        this.holderObserved = value == null || this.observedHolder != null;
+    }
+
+    /**
+     * 当前的持有者
+     *
+     * @return 本机没有持有时返回null
+     */
+    public abstract LockOwner getOwner();
+
+    /**
+     * 放弃本次持有，返回在存储中释放需要的命令，由关闭时的批量释放调用；
+     * 之后持有线程的 {@link #release()} 不能再访问存储
+     *
+     * @return 不支持批量释放时返回null，没有需要释放的内容时返回空列表
+     */
+    protected List<StoreCommand> detach() {
+        return null;
+    }
+
+    /**
+     * 关闭时批量释放，见 {@link #detach()}
+     *
+     * @return 不支持批量释放或没有持有时返回null
+     */
+    List<StoreCommand> detachForShutdown() {
+        if (!locked || degraded) {
+            return null;
+        }
+        List<StoreCommand> commands = this.detach();
+        if (commands != null) {
+            this.detached = true;
+            LeaseRenewer leaseRenewer = this.leaseRenewer;
+            if (leaseRenewer != null) {
+                leaseRenewer.unregister(this);
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * 本机等待该锁的线程数，是估计值
+     */
+    public int getWaiterCount() {
+        return mainLock.getQueueLength();
+    }
+
+    /**
+     * 本机持有的锁距离过期的时间
+     *
+     * @return 永不过期时返回Long.MAX_VALUE，本机没有持有时返回-1
+     */
+    public long getRemainingLeaseMillis() {
+        LockOwner owner = this.getOwner();
+        if (!locked || owner == null) {
+            return -1;
+        }
+        if (lease < 1) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, leaseDeadline - System.currentTimeMillis());
+    }
+
+    /**
+     * 持有时间超过租期的一半时续租一个租期，加锁后累计的租期不超过expire，由 {@link LeaseRenewer} 调用
+     *
+     * @return 续租成功返回1，不需要续租返回0，锁已经过期或被接管返回-1
+     */
+    int renewIfNeeded() {
+        LockOwner owner = this.getOwner();
+        long lease = this.lease;
+        if (!locked || degraded || owner == null || lease < 1 || lease >= expire) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        long remaining = leaseDeadline - now;
+        long extended = Math.min(lease, owner.getAcquiredAt() + expire - now);
+        if (remaining > lease / 2 || extended <= remaining) {
+            return 0;
+        }
+        if (lockStore.compareAndExpire(lockKey, owner.encode(), extended)) {
+            this.leaseDeadline = now + extended;
+            return 1;
+        }
+        // 与释放并发时持有者已经变化，不算失败
+        return this.getOwner() == owner
+                ? -1
+                : 0;
+    }
+
+    /**
+     * 检验参数
+     */
+    private void checkArgs() {
+        if (StringUtils.isBlank(name)) {
+            throw new LockArgIllegalException("DistributeLock的name不能为空！");
+        }
+        if (StringUtils.isBlank(errorMsg)) {
+            throw new LockArgIllegalException("DistributeLock的errorMsg不能为空！");
+        }
+        if (timeout <= 0) {
+            throw new LockArgIllegalException("DistributeLock的timeout必需为正数！");
+        }
+        if (expire < 0) {
+            throw new LockArgIllegalException("DistributeLock的expire不能为负数！");
+        }
+    }
+
+    @Override
+    public boolean lock() {
+        // timeout是整个加锁过程的上限，包括本机排队、轮询以及每一次存储调用
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+        boolean entered = false;
+        if (this.isClosing()) {
+            LOGGER.warn("锁管理正在关闭，拒绝加锁, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        this.timeStamp());
+            endSpan(this.startSpan(LockTracer.SPAN_QUEUE), LockSpan.OUTCOME_REJECTED);
+            return false;
+        }
+        AdmissionController admissionController = this.admissionController;
+        if (admissionController != null) {
+            AdmissionController.Rejection rejection = admissionController.tryEnter(this);
+            if (rejection != null) {
+                LOGGER.warn("本机等待者超过限制，拒绝加锁, thread -->> {}, lockKey -->> {}, rejection -->> {}, timestamp -->> {}",
+                            this.currentThread(),
+                            this.lockKey,
+                            rejection,
+                            this.timeStamp());
+                endSpan(this.startSpan(LockTracer.SPAN_QUEUE), LockSpan.OUTCOME_REJECTED);
+                return false;
+            }
+        }
+        try {
+            LOGGER.info("尝试获取mainLock, thread -->>{}, lockKey -->> {}, timestamp -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        this.timeStamp());
+            // 注意！！！！！！
+            // 本处的mainLock是为了保证一台服务器中同时只有一个需要加锁的方法执行所用的
+            // 可以在LockAspectSupport加锁逻辑中使用synchronized处理，但是会出现timeout不准的问题
+            // 如果使用ReentrantLock只能在本方法成功加锁后才可以执行unlock操作
+            // 锁对象在本机的线程间共享，没有拿到mainLock的线程不能修改任何状态，否则会影响持有者
+            LockSpan queueSpan = this.startSpan(LockTracer.SPAN_QUEUE);
+            boolean enteredMainLock;
+            try {
+                enteredMainLock = mainLock.tryLock(this.timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                endSpan(queueSpan, LockSpan.OUTCOME_INTERRUPTED);
+                throw e;
+            }
+            endSpan(queueSpan, enteredMainLock
+                    ? LockSpan.OUTCOME_ENTERED
+                    : LockSpan.OUTCOME_TIMEOUT);
+            if (!enteredMainLock) {
+                // 在指定的timeout中都没有能成功获取锁，认为失败
+                LOGGER.warn("在指定的timeout:{}, 中没有成功获取mainLock, thread -->>{}, lockKey -->> {}, timestamp -->> {}",
+                            this.timeout,
+                            this.lockKey,
+                            this.currentThread(),
+                            this.timeStamp());
+                return false;
+            }
+            entered = true;
+            LOGGER.info("成功获取到了mainLock, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        this.timeStamp());
+
+            this.locked = false;
+            this.detached = false;
+            this.attempts = 0;
+            this.observedHolder = null;
+            this.holderObserved = false;
+            HoldTimeTracker holdTimeTracker = this.holdTimeTracker;
+            this.lease = holdTimeTracker == null || this.leaseRenewer == null
+                    ? this.expire
+                    : holdTimeTracker.lease(this.name, this.expire);
+            try {
+                this.tryLock(deadline);
+            } finally {
+                if (!this.locked) {
+                    this.abandonQuietly();
+                }
+            }
+            if (this.locked) {
+                this.acquireCount++;
+                this.lockedAt = System.nanoTime();
+                LockOwner owner = this.getOwner();
+                this.leaseDeadline = (owner == null
+                        ? System.currentTimeMillis()
+                        : owner.getAcquiredAt()) + this.lease;
+                LeaseRenewer leaseRenewer = this.leaseRenewer;
+                if (leaseRenewer != null && this.lease < this.expire && !this.degraded) {
+                    leaseRenewer.register(this);
+                }
+                HeldLockRegistry heldLockRegistry = this.heldLockRegistry;
+                if (heldLockRegistry != null) {
+                    heldLockRegistry.register(this);
+                }
+                DeadlockDetector deadlockDetector = this.deadlockDetector;
+                if (deadlockDetector != null) {
+                    deadlockDetector.held();
+                }
+                this.holdSpan = this.startSpan(LockTracer.SPAN_HOLD);
+                if (this.holdSpan != null) {
+                    this.holdSpan.setAttribute(LockTracer.ATTR_ATTEMPT, this.attempts);
+                }
+                LOGGER.info("分布式锁成功加锁, thread -->>{}, lockKey -->> {}, timestamp-->>{}",
+                            this.currentThread(),
+                            this.lockKey,
+                            this.timeStamp());
+                return true;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            LOGGER.warn("当前线程被中断了thread -->>{}, lockKey -->> {}, timestamp -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        this.timeStamp());
+            LOGGER.warn("被中断的消息", e);
+            return false;
+        } finally {
+            if (admissionController != null) {
+                admissionController.exit(this);
+            }
+            HotKeyProfiler profiler = this.profiler;
+            if (profiler != null) {
+                // 没有拿到mainLock时不能读attempts，按0次计
+                profiler.recordAcquire(this.lockKey, System.nanoTime() - start, entered
+                        ? this.attempts
+                        : 0);
+            }
+        }
+    }
+
+    protected String currentThread() {
+        return Thread.currentThread().getName();
+    }
+
+    protected long timeStamp() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void unlock() {
+        if (!mainLock.isHeldByCurrentThread()) {
+            // 加锁时没有拿到mainLock，锁由其他线程持有，不能释放
+            LOGGER.info("没有获取到mainLock，无需释放, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        this.timeStamp());
+            return;
+        }
+        try {
+            if (this.locked) {
+                long holdNanos = System.nanoTime() - this.lockedAt;
+                HotKeyProfiler profiler = this.profiler;
+                if (profiler != null) {
+                    profiler.recordHold(this.lockKey, holdNanos);
+                }
+                LeaseRenewer leaseRenewer = this.leaseRenewer;
+                if (leaseRenewer != null) {
+                    leaseRenewer.unregister(this);
+                }
+                HoldTimeTracker holdTimeTracker = this.holdTimeTracker;
+                if (holdTimeTracker != null && !this.degraded) {
+                    holdTimeTracker.record(this.name, holdNanos);
+                }
+                AdmissionController admissionController = this.admissionController;
+                if (admissionController != null) {
+                    admissionController.recordHold(this.name, holdNanos);
+                }
+                String outcome = LockSpan.OUTCOME_RELEASED;
+                if (this.degraded) {
+                    this.degraded = false;
+                    outcome = LockSpan.OUTCOME_DEGRADED;
+                    LOGGER.info("释放降级的本机锁, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                                this.currentThread(),
+                                this.lockKey,
+                                this.timeStamp());
+                } else if (this.detached) {
+                    LOGGER.warn("锁已经在关闭时被批量释放, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                                this.currentThread(),
+                                this.lockKey,
+                                this.timeStamp());
+                } else if (this.releaseQuietly()) {
+                    LOGGER.info("成功从存储中移除一条记录, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                                this.currentThread(),
+                                this.lockKey,
+                                this.timeStamp());
+                } else {
+                    outcome = LockSpan.OUTCOME_LOST;
+                    LOGGER.error("释放分布式锁失败了!, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                                 this.currentThread(),
+                                 this.lockKey,
+                                 this.timeStamp());
+                }
+                endSpan(this.holdSpan, outcome);
+                this.holdSpan = null;
+                this.locked = false;
+                this.cancel = false;
+                HeldLockRegistry heldLockRegistry = this.heldLockRegistry;
+                if (heldLockRegistry != null) {
+                    heldLockRegistry.unregister(this);
+                }
+                DeadlockDetector deadlockDetector = this.deadlockDetector;
+                if (deadlockDetector != null) {
+                    deadlockDetector.released();
+                }
+                return;
+            }
+            LOGGER.info("没有获取到分布式锁，无需移除, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        this.timeStamp());
+
+        } finally {
+            mainLock.unlock();
+            LOGGER.info("释放mainLock, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        this.timeStamp());
+        }
+    }
+
+    /**
+     * 释放存储中的锁，存储熔断时按释放失败处理，锁会在expire后过期
+     */
+    private boolean releaseQuietly() {
+        try {
+            return this.release();
+        } catch (StoreUnavailableException e) {
+            LOGGER.warn("锁存储不可用，等待锁自动过期, thread -->> {}, lockKey -->> {}, expire -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        this.expire);
+            return false;
+        }
+    }
+
+    private void abandonQuietly() {
+        try {
+            this.abandon();
+        } catch (RuntimeException e) {
+            LOGGER.warn("撤销加锁的中间状态失败，等待自动过期, thread -->> {}, lockKey -->> {}, exception -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        e.toString());
+        }
+    }
+
+    private LockSpan startSpan(String spanName) {
+        LockTracer tracer = this.tracer;
+        return tracer == null
+                ? null
+                : tracer.startSpan(spanName, this.name, this.keyHash);
+    }
+
+    private static void endSpan(LockSpan span, String outcome) {
+        if (span != null) {
+            span.setAttribute(LockTracer.ATTR_OUTCOME, outcome);
+            span.end();
+        }
+    }
+
+    private boolean isDeadlockVictim() {
+        DeadlockDetector deadlockDetector = this.deadlockDetector;
+        if (deadlockDetector == null) {
+            return false;
+        }
+        try {
+            return deadlockDetector.isVictim(lockKey, this.observedHolder);
+        } catch (RuntimeException e) {
+            LOGGER.warn("死锁检测失败，继续等待, thread -->> {}, lockKey -->> {}, exception -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        e.toString());
+            return false;
+        }
+    }
+
+    private boolean isClosing() {
+        HeldLockRegistry heldLockRegistry = this.heldLockRegistry;
+        return heldLockRegistry != null && heldLockRegistry.isClosing();
+    }
+
+    /**
+     * 持有者节点的心跳已经过期时删除它的锁，按持有者的完整值比较删除，持有者已经变化时不会误删
+     *
+     * @return 删除成功返回true
+     */
+    private boolean reclaimIfDead() {
+        NodeHeartbeat nodeHeartbeat = this.nodeHeartbeat;
+        LockOwner holder = this.observedHolder;
+        if (nodeHeartbeat == null || holder == null || !holder.isHeartbeatTagged() || !this.isReclaimable()) {
+            return false;
+        }
+        try {
+            if (nodeHeartbeat.isAlive(holder.getNodeId())) {
+                return false;
+            }
+            if (!lockStore.compareAndDelete(lockKey, holder.encode())) {
+                return false;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("接管宕机节点的锁失败, thread -->> {}, lockKey -->> {}, holder -->> {}, exception -->> {}",
+                        this.currentThread(),
+                        this.lockKey,
+                        holder,
+                        e.toString());
+            return false;
+        }
+        nodeHeartbeat.recordReclaim();
+        LOGGER.warn("持有者节点的心跳已经过期，接管锁, thread -->> {}, lockKey -->> {}, holder -->> {}",
+                    this.currentThread(),
+                    this.lockKey,
+                    holder);
+        this.observedHolder = null;
+        this.holderObserved = false;
+        return true;
+    }
+
+    /**
+     * 执行锁操作的具体逻辑
+     */
+    private void tryLock(long deadline) {
+        takeLock.lock();
+        // 存储调用最多使用剩余的时间
+        Long previousDeadline = StoreDeadline.enter(deadline);
+        try {
+            long startTime = System.currentTimeMillis();
+            while (!this.locked) {
+                LOGGER.info("正在进行第{}次尝试, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                            this.attempts + 1,
+                            this.currentThread(),
+                            this.lockKey,
+                            this.timeStamp());
+                if (cancel) {   // 通过unlock取消的锁
+                    LOGGER.warn("锁被取消了, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                                this.currentThread(),
+                                this.lockKey,
+                                this.timeStamp());
+                    return;
+                }
+                if (this.isClosing()) {
+                    LOGGER.warn("锁管理正在关闭，停止等待, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                                this.currentThread(),
+                                this.lockKey,
+                                this.timeStamp());
+                    return;
+                }
+
+                // 检查是否获取锁超时
+                long timeStamp = System.currentTimeMillis();
+                if (timeout <= 0) {
+                    return;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    LOGGER.warn(
+                            "当前时间大于获取锁超时时间, thread -->> {}, lockKey -->> {}, 差值 -->> {}, timeout -->> {}, startTime -->> {}, timestamp -->> {}",
+                            this.currentThread(),
+                            this.lockKey,
+                            timeStamp - startTime,
+                            this.timeout,
+                            startTime,
+                            this.timeStamp());
+                    return;
+                }
+                if (timeStamp - startTime > MAX_TIMEOUT) {
+                    break;
+                }
+
+                LockSpan attemptSpan = null;
+                try {
+                    this.attempts++;
+                    attemptSpan = this.startSpan(LockTracer.SPAN_ATTEMPT);
+                    if (attemptSpan != null) {
+                        attemptSpan.setAttribute(LockTracer.ATTR_ATTEMPT, this.attempts);
+                    }
+                    this.locked = this.acquire(timeStamp);
+                    endSpan(attemptSpan, this.locked
+                            ? LockSpan.OUTCOME_ACQUIRED
+                            : LockSpan.OUTCOME_BUSY);
+                } catch (StoreUnavailableException e) {
+                    endSpan(attemptSpan, this.degradable
+                            ? LockSpan.OUTCOME_DEGRADED
+                            : LockSpan.OUTCOME_UNAVAILABLE);
+                    // 存储熔断中，不再轮询等满timeout
+                    if (this.degradable) {
+                        LOGGER.warn("锁存储不可用，降级为本机锁, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                                    this.currentThread(),
+                                    this.lockKey,
+                                    this.timeStamp());
+                        this.degraded = true;
+                        this.locked = true;
+                    } else {
+                        LOGGER.warn("锁存储不可用，加锁快速失败, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                                    this.currentThread(),
+                                    this.lockKey,
+                                    this.timeStamp());
+                    }
+                    return;
+                } catch (RuntimeException e) {
+                    boolean expired = StoreDeadline.expired();
+                    endSpan(attemptSpan, expired
+                            ? LockSpan.OUTCOME_TIMEOUT
+                            : LockSpan.OUTCOME_ERROR);
+                    if (!expired) {
+                        throw e;
+                    }
+                    // 存储调用用完了剩余的时间，结果未知，按超时处理
+                    LOGGER.warn("存储调用超过了加锁的timeout, thread -->> {}, lockKey -->> {}, timeout -->> {}, exception -->> {}",
+                                this.currentThread(),
+                                this.lockKey,
+                                this.timeout,
+                                e.toString());
+                    return;
+                }
+
+                if (this.locked) {
+                    LOGGER.info("成功在存储中添加了一条记录, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                                this.currentThread(),
+                                this.lockKey,
+                                this.timeStamp());
+                    return;
+                }
+                if (this.reclaimIfDead()) {
+                    // 宕机节点的锁已经删除，立即重试
+                    continue;
+                }
+                if (this.isDeadlockVictim()) {
+                    LOGGER.warn("被选为分布式死锁的牺牲者，加锁快速失败, thread -->> {}, lockKey -->> {}, holder -->> {}",
+                                this.currentThread(),
+                                this.lockKey,
+                                this.observedHolder);
+                    return;
+                }
+
+                // 开始轮询
+                try {
+                    long waitNanos;
+                    if (timeout >= 4 * 1000) {
+                        // 大于4秒小于120秒的，每次轮询时间在2~10秒之间
+                        long waitTime = ((Number) Math.floor(Math.sqrt(timeout / 1000))).longValue() * 1000;
+                        waitNanos = TimeUnit.MILLISECONDS.toNanos(waitTime);
+                    } else {
+                        // 小于4秒的，每次轮询时间在1秒左右
+                        long waitTime = timeout / 2000;
+                        waitNanos = TimeUnit.MILLISECONDS.toNanos(waitTime != 0
+                                                                          ? waitTime
+                                                                          : timeout);
+                    }
+                    RetryScheduler retryScheduler = this.retryScheduler;
+                    if (retryScheduler != null) {
+                        // 按持有者已经持有的时间估计释放的时间
+                        waitNanos = this.holderObserved
+                                ? retryScheduler.nextDelayNanos(this.name, this.observedHolder, remaining, waitNanos)
+                                : Math.min(waitNanos, remaining);
+                        if (waitNanos < 0) {
+                            LOGGER.warn("持有者在剩余的timeout内释放的可能性太低，提前放弃, thread -->> {}, lockKey -->> {}, holder -->> {}, remaining -->> {}",
+                                        this.currentThread(),
+                                        this.lockKey,
+                                        this.observedHolder,
+                                        TimeUnit.NANOSECONDS.toMillis(remaining));
+                            return;
+                        }
+                    }
+                    condition.await(Math.min(waitNanos, remaining), TimeUnit.NANOSECONDS);
+
+                } catch (InterruptedException e) {
+                    LOGGER.warn("lock 被中断了, thread -->> {}, lockKey -->> {}, timestamp -->> {}",
+                                this.currentThread(),
+                                this.lockKey,
+                                this.timeStamp());
+                }
+            }
+        } finally {
+            DeadlockDetector deadlockDetector = this.deadlockDetector;
+            if (deadlockDetector != null) {
+                deadlockDetector.clearWaiting();
+            }
+            StoreDeadline.exit(previousDeadline);
+            condition.signalAll();
+            takeLock.unlock();
+        }
+
+    }
+}
@@ -0,0 +1,649 @@
+package com.niushencheng.support;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.niushencheng.LockManager;
+import com.niushencheng.MTLock;
+import com.niushencheng.interceptor.LockAspectSupport;
+import com.niushencheng.interceptor.LockOperation;
+import com.niushencheng.store.BatchingLockStore;
+import com.niushencheng.store.CircuitBreakerLockStore;
+import com.niushencheng.store.DeadlineLockStore;
+import com.niushencheng.store.LockStore;
+import com.niushencheng.store.ShardedLockStore;
+import com.niushencheng.store.StoreCommand;
+import com.niushencheng.trace.LockTracer;
+import com.niushencheng.util.JacksonUtil;
+import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 基于 {@link LockStore} 的锁管理，负责缓存锁对象以及构建存储
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public abstract class AbstractStoreLockManager implements LockManager, InitializingBean, DisposableBean {
+
+    protected final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 存储锁对象, key为完整的lockKey
+     * <p>
+     * 注意！！！降级时本机的互斥和准入的等待计数都在锁对象上，持有或等待中的锁对象不能被淘汰，否则同一个key会出现第二个锁对象；
+     * 因此使用弱引用，持有者、等待者以及 {@link HeldLockRegistry} 引用锁对象期间不会被回收，不再按大小和访问时间淘汰
+     */
+    private final Cache<String, AbstractStoreLock> _lockCache = CacheBuilder.newBuilder()
+                                                                                   .weakValues()
+                                                                                   .build();
+
+    /** 锁存储，不设置时由子类创建 */
+    @Setter
+    private LockStore lockStore;
+
+    /** 层级锁意向计数的最长存活时间，层级锁的expire不能超过该值，所有节点需要一致，见 {@link HierarchicalLock} */
+    @Setter
+    private long hierarchyHorizonMillis = 10 * 60 * 1000;
+
+    /** 是否开启跨线程的存储命令合并，只对支持管道的存储生效，减少往返次数但会增加单次调用的延迟，见 {@link BatchingLockStore} */
+    @Setter
+    private boolean batchEnabled = false;
+
+    /** 单批次最多的命令数 */
+    @Setter
+    private int batchMaxSize = 64;
+
+    /** 批次未满时最多等待的时间 */
+    @Setter
+    private long batchMaxDelayMicros = 100;
+
+    /** 并发调用数不超过该值时不合并 */
+    @Setter
+    private int batchBypassConcurrency = 4;
+
+    /** flush线程数，即同时在途的批次数 */
+    @Setter
+    private int batchFlusherThreads = 1;
+
+    private BatchingLockStore batchingLockStore;
+
+    /**
+     * 是否在独立线程中调用存储，使每次调用不超过加锁剩余的timeout，见 {@link DeadlineLockStore}；
+     * 用于本身不支持截止时间的阻塞存储，redis存储已经原生支持，不需要开启
+     */
+    @Setter
+    private boolean deadlineEnabled = false;
+
+    /** 调用存储的线程数 */
+    @Setter
+    private int deadlineThreads = 16;
+
+    /** 是否对只读的存储调用进行对冲，需要开启deadlineEnabled */
+    @Setter
+    private boolean hedgeEnabled = false;
+
+    /** 只读调用超过该分位数的耗时后发出对冲请求 */
+    @Setter
+    private double hedgePercentile = 95;
+
+    private DeadlineLockStore deadlineLockStore;
+
+    /** 是否开启存储熔断，见 {@link CircuitBreakerLockStore} */
+    @Setter
+    private boolean circuitBreakerEnabled = false;
+
+    /** 熔断的失败率阈值 */
+    @Setter
+    private double breakerFailureRateThreshold = 0.5;
+
+    /** 超过该耗时的存储调用计为慢调用 */
+    @Setter
+    private long breakerSlowCallMillis = 200;
+
+    /** 熔断的慢调用率阈值 */
+    @Setter
+    private double breakerSlowCallRateThreshold = 0.8;
+
+    /** 统计窗口内的调用数少于该值时不熔断 */
+    @Setter
+    private int breakerMinimumCalls = 20;
+
+    /** 熔断打开后多久开始探测 */
+    @Setter
+    private long breakerOpenMillis = 5 * 1000;
+
+    /** 半开状态的探测调用数 */
+    @Setter
+    private int breakerHalfOpenProbes = 3;
+
+    /**
+     * 存储熔断时降级为本机锁的锁名称，即注解中的name，没有设置name时为方法名，"*"表示全部；
+     * 降级期间只能保证本机内的互斥，不在其中的锁快速失败
+     */
+    @Setter
+    private Set<String> degradableLockNames = Collections.emptySet();
+
+    private CircuitBreakerLockStore circuitBreakerLockStore;
+
+    /** 是否开启热点key统计，见 {@link HotKeyProfiler} */
+    @Setter
+    private boolean profilerEnabled = false;
+
+    /** 热点key统计每个分段保留的key数 */
+    @Setter
+    private int profilerCapacity = 64;
+
+    /** 热点key统计的分段数 */
+    @Setter
+    private int profilerStripes = 8;
+
+    /** 热点key统计的滚动窗口 */
+    @Setter
+    private long profilerWindowMillis = 60 * 1000;
+
+    private HotKeyProfiler profiler;
+
+    /**
+     * 是否开启自适应租期，见 {@link HoldTimeTracker}；
+     * 租期按各个锁的持有时间计算，超过租期的持有者自动续租，注解中的expire作为租期以及续租的上限
+     */
+    @Setter
+    private boolean adaptiveLeaseEnabled = false;
+
+    /** 持有时间的分位数 */
+    @Setter
+    private double leasePercentile = 99.9;
+
+    /** 在分位数之上增加的余量 */
+    @Setter
+    private long leaseMarginMillis = 1000;
+
+    /** 最小的租期 */
+    @Setter
+    private long minLeaseMillis = 1000;
+
+    /** 持有次数达到该值后才开始使用自适应的租期以及按持有时间重试 */
+    @Setter
+    private long leaseWarmupSamples = 100;
+
+    /** 检查续租的间隔 */
+    @Setter
+    private long leaseRenewIntervalMillis = 200;
+
+    /**
+     * 是否按持有时间安排等待者的重试，见 {@link RetryScheduler}；
+     * 下一次尝试安排在当前持有者预计释放的时间，持有者在剩余的timeout内释放的可能性太低时提前失败
+     */
+    @Setter
+    private boolean holdAwareRetryEnabled = false;
+
+    /** 下一次尝试安排在剩余持有时间的该分位数 */
+    @Setter
+    private double retryPercentile = 50;
+
+    /** 持有者在剩余的timeout内释放的概率低于该值时提前失败 */
+    @Setter
+    private double retryGiveUpProbability = 0.05;
+
+    /** 两次尝试之间的最小间隔 */
+    @Setter
+    private long minRetryMillis = 5;
+
+    private HoldTimeTracker holdTimeTracker;
+
+    private LeaseRenewer leaseRenewer;
+
+    private RetryScheduler retryScheduler;
+
+    /** 是否把锁的查询接口注册到JMX，见 {@link LockIntrospectionMBean} */
+    @Setter
+    private boolean jmxEnabled = false;
+
+    /** 注册到JMX的名称，不设置时按类名生成 */
+    @Setter
+    private String jmxName;
+
+    private ObjectName registeredName;
+
+    protected final String lockPrefix = "MTLock:";
+
+    /** 存储中lockKey的编码，见 {@link LockKeyEncoder}，切换时需要所有节点同时切换 */
+    @Setter
+    private LockKeyEncoder.Mode keyEncoding = LockKeyEncoder.Mode.READABLE;
+
+    private LockKeyEncoder keyEncoder;
+
+    /** lockStore为分片存储时的引用，用于查询各分片的负载 */
+    private ShardedLockStore shardedLockStore;
+
+    /**
+     * 关闭时等待持有者自行释放的时间，超过后剩余的锁在一次批量调用中释放，见 {@link HeldLockRegistry}；
+     * 关闭开始后新的加锁直接失败
+     */
+    @Setter
+    private long shutdownDrainMillis = 5 * 1000;
+
+    private final HeldLockRegistry heldLockRegistry = new HeldLockRegistry();
+
+    /** 是否开启节点心跳，见 {@link NodeHeartbeat}；宕机节点持有的锁在心跳过期后可以被其他节点立即接管 */
+    @Setter
+    private boolean heartbeatEnabled = false;
+
+    /** 刷新心跳的间隔 */
+    @Setter
+    private long heartbeatIntervalMillis = 1000;
+
+    /** 心跳的过期时间，即宕机后多久可以接管，需要大于最长的GC停顿 */
+    @Setter
+    private long heartbeatTtlMillis = 5 * 1000;
+
+    private NodeHeartbeat nodeHeartbeat;
+
+    /**
+     * 是否开启本机等待者的准入控制，见 {@link AdmissionController}；
+     * 超过限制的调用直接加锁失败，不占用请求线程排队，限制为0表示不限制
+     */
+    @Setter
+    private boolean admissionEnabled = false;
+
+    /** 每个key最多的本机等待者数 */
+    @Setter
+    private int maxWaitersPerKey = 0;
+
+    /** 每个锁名称最多的本机等待者数 */
+    @Setter
+    private int maxWaitersPerName = 0;
+
+    /** 估计的排队时间超过该值时拒绝 */
+    @Setter
+    private long maxQueueWaitMillis = 0;
+
+    private AdmissionController admissionController;
+
+    /**
+     * 是否开启分布式死锁检测，见 {@link DeadlockDetector}；
+     * 嵌套加锁形成环时选出一个牺牲者立即失败，其他参与者不需要等满timeout
+     */
+    @Setter
+    private boolean deadlockDetectionEnabled = false;
+
+    /** 等待边的过期时间，需要大于最长的轮询间隔 */
+    @Setter
+    private long deadlockEdgeTtlMillis = 30 * 1000;
+
+    /** 能发现的最大的环 */
+    @Setter
+    private int deadlockMaxDepth = 8;
+
+    private DeadlockDetector deadlockDetector;
+
+    /** 链路追踪，见 {@link LockTracer}，默认不上报 */
+    @Setter
+    private LockTracer tracer = LockTracer.NOOP;
+
+    /**
+     * 没有设置lockStore时创建默认的存储
+     */
+    protected abstract LockStore createLockStore() throws Exception;
+
+    /**
+     * 创建锁对象
+     */
+    protected abstract AbstractStoreLock createLock(String name, String key, long timeout, long expire,
+                                                    String errorMsg, LockStore lockStore);
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (this.lockStore == null) {
+            this.lockStore = this.createLockStore();
+        }
+        if (this.lockStore instanceof ShardedLockStore) {
+            this.shardedLockStore = (ShardedLockStore) this.lockStore;
+        }
+        if (this.deadlineEnabled) {
+            this.deadlineLockStore = new DeadlineLockStore(this.lockStore);
+            this.deadlineLockStore.setThreads(deadlineThreads);
+            this.deadlineLockStore.setHedgeEnabled(hedgeEnabled);
+            this.deadlineLockStore.setHedgePercentile(hedgePercentile);
+            this.deadlineLockStore.afterPropertiesSet();
+            this.lockStore = this.deadlineLockStore;
+        }
+        if (this.circuitBreakerEnabled) {
+            // 熔断包在批量合并里面，慢调用只统计存储本身的耗时，不包括排队时间
+            this.circuitBreakerLockStore = new CircuitBreakerLockStore(this.lockStore);
+            this.circuitBreakerLockStore.setFailureRateThreshold(breakerFailureRateThreshold);
+            this.circuitBreakerLockStore.setSlowCallMillis(breakerSlowCallMillis);
+            this.circuitBreakerLockStore.setSlowCallRateThreshold(breakerSlowCallRateThreshold);
+            this.circuitBreakerLockStore.setMinimumCalls(breakerMinimumCalls);
+            this.circuitBreakerLockStore.setOpenMillis(breakerOpenMillis);
+            this.circuitBreakerLockStore.setHalfOpenProbes(breakerHalfOpenProbes);
+            this.lockStore = this.circuitBreakerLockStore;
+        }
+        if (this.batchEnabled && !this.lockStore.isPipelined()) {
+            // 逐条执行的存储合并后往返次数不变，反而增加排队时间
+            LOGGER.warn("存储不支持管道，不开启命令合并, lockStore -->> {}", lockStore.getClass().getSimpleName());
+        } else if (this.batchEnabled) {
+            this.batchingLockStore = new BatchingLockStore(this.lockStore);
+            this.batchingLockStore.setMaxBatchSize(batchMaxSize);
+            this.batchingLockStore.setMaxDelayMicros(batchMaxDelayMicros);
+            this.batchingLockStore.setBypassConcurrency(batchBypassConcurrency);
+            this.batchingLockStore.setFlusherThreads(batchFlusherThreads);
+            this.batchingLockStore.afterPropertiesSet();
+            this.lockStore = this.batchingLockStore;
+        }
+        this.keyEncoder = new LockKeyEncoder(keyEncoding, lockPrefix, lockStore);
+        if (this.adaptiveLeaseEnabled || this.holdAwareRetryEnabled) {
+            this.holdTimeTracker = new HoldTimeTracker();
+            this.holdTimeTracker.setPercentile(leasePercentile);
+            this.holdTimeTracker.setMarginMillis(leaseMarginMillis);
+            this.holdTimeTracker.setMinLeaseMillis(minLeaseMillis);
+            this.holdTimeTracker.setWarmupSamples(leaseWarmupSamples);
+        }
+        if (this.holdAwareRetryEnabled) {
+            this.retryScheduler = new RetryScheduler(holdTimeTracker);
+            this.retryScheduler.setRetryPercentile(retryPercentile);
+            this.retryScheduler.setGiveUpProbability(retryGiveUpProbability);
+            this.retryScheduler.setMinRetryMillis(minRetryMillis);
+        }
+        if (this.adaptiveLeaseEnabled) {
+            this.leaseRenewer = new LeaseRenewer();
+            this.leaseRenewer.setIntervalMillis(leaseRenewIntervalMillis);
+            this.leaseRenewer.afterPropertiesSet();
+        }
+        if (this.profilerEnabled) {
+            this.profiler = new HotKeyProfiler(profilerCapacity, profilerStripes, profilerWindowMillis);
+        }
+        if (this.admissionEnabled) {
+            this.admissionController = new AdmissionController();
+            this.admissionController.setMaxWaitersPerKey(maxWaitersPerKey);
+            this.admissionController.setMaxWaitersPerName(maxWaitersPerName);
+            this.admissionController.setMaxQueueWaitMillis(maxQueueWaitMillis);
+        }
+        if (this.deadlockDetectionEnabled) {
+            this.deadlockDetector = new DeadlockDetector(lockStore, lockPrefix);
+            this.deadlockDetector.setEdgeTtlMillis(deadlockEdgeTtlMillis);
+            this.deadlockDetector.setMaxDepth(deadlockMaxDepth);
+        }
+        if (this.heartbeatEnabled) {
+            this.nodeHeartbeat = new NodeHeartbeat(lockStore, lockPrefix);
+            this.nodeHeartbeat.setIntervalMillis(heartbeatIntervalMillis);
+            this.nodeHeartbeat.setTtlMillis(heartbeatTtlMillis);
+            this.nodeHeartbeat.afterPropertiesSet();
+        }
+        if (this.jmxEnabled) {
+            ObjectName objectName = new ObjectName(jmxName != null
+                                                           ? jmxName
+                                                           : "com.niushencheng:type=LockManager,name="
+                                                                   + getClass().getSimpleName());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new LockIntrospection(this), objectName);
+            this.registeredName = objectName;
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (this.registeredName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            this.registeredName = null;
+        }
+        // 存储还可用时释放持有的锁，再停止心跳
+        this.releaseHeldLocks();
+        if (this.nodeHeartbeat != null) {
+            this.nodeHeartbeat.destroy();
+        }
+        if (this.leaseRenewer != null) {
+            this.leaseRenewer.destroy();
+        }
+        if (this.batchingLockStore != null) {
+            this.batchingLockStore.destroy();
+        }
+        if (this.deadlineLockStore != null) {
+            this.deadlineLockStore.destroy();
+        }
+    }
+
+    /**
+     * 拒绝新的加锁，等待持有者在shutdownDrainMillis内自行释放，剩余的锁在一次批量调用中释放
+     */
+    private void releaseHeldLocks() throws InterruptedException {
+        List<AbstractStoreLock> remaining = heldLockRegistry.close(shutdownDrainMillis);
+        if (remaining.isEmpty()) {
+            return;
+        }
+        List<StoreCommand> commands = new ArrayList<StoreCommand>();
+        int released = 0;
+        for (AbstractStoreLock lock : remaining) {
+            List<StoreCommand> detached = lock.detachForShutdown();
+            if (detached != null && !detached.isEmpty()) {
+                commands.addAll(detached);
+                released++;
+            }
+        }
+        LOGGER.warn("关闭时仍有持有中的锁，批量释放, held -->> {}, released -->> {}, drainMillis -->> {}",
+                    remaining.size(),
+                    released,
+                    shutdownDrainMillis);
+        if (commands.isEmpty()) {
+            return;
+        }
+        try {
+            lockStore.execute(commands);
+        } catch (RuntimeException e) {
+            // 开启了心跳时其他节点可以在心跳过期后接管，否则等待锁过期
+            LOGGER.error("关闭时批量释放锁失败，等待锁过期或被接管, released -->> {}", released, e);
+        }
+    }
+
+    /** 当前使用的锁存储 */
+    public LockStore getLockStore() {
+        return lockStore;
+    }
+
+    /** 存储熔断器，没有开启时返回null */
+    public CircuitBreakerLockStore getCircuitBreaker() {
+        return circuitBreakerLockStore;
+    }
+
+    /** 持有时间统计，没有开启自适应租期和按持有时间重试时返回null */
+    public HoldTimeTracker getHoldTimeTracker() {
+        return holdTimeTracker;
+    }
+
+    /** 续租，没有开启自适应租期时返回null */
+    public LeaseRenewer getLeaseRenewer() {
+        return leaseRenewer;
+    }
+
+    /** 热点key统计，没有开启时返回null */
+    public HotKeyProfiler getProfiler() {
+        return profiler;
+    }
+
+    /** 分片存储，lockStore不是 {@link ShardedLockStore} 时返回null */
+    public ShardedLockStore getShardedLockStore() {
+        return shardedLockStore;
+    }
+
+    /** 本机持有中的锁 */
+    public HeldLockRegistry getHeldLockRegistry() {
+        return heldLockRegistry;
+    }
+
+    /** 节点心跳，没有开启时返回null */
+    public NodeHeartbeat getNodeHeartbeat() {
+        return nodeHeartbeat;
+    }
+
+    /** 本机等待者的准入控制，没有开启时返回null */
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /** 分布式死锁检测，没有开启时返回null */
+    public DeadlockDetector getDeadlockDetector() {
+        return deadlockDetector;
+    }
+
+    /** lockKey的编码 */
+    public LockKeyEncoder getKeyEncoder() {
+        return keyEncoder;
+    }
+
+    /**
+     * 锁对象按解析后的完整key缓存，同一个key在本机共用一个锁对象，本机的等待者在锁对象中排队
+     * <p>
+     * 使用cache的原子加载代替synchronized，不同key之间互不阻塞，也不会钉住虚拟线程的载体线程
+     */
+    @Override
+    public MTLock getLock(LockAspectSupport.LockOperationContext context) {
+        Assert.state(lockStore != null, getClass().getSimpleName() + "尚未初始化");
+        final LockOperation operation = context.getOperation();
+        // 层级锁的key在方法之间共享，使用同一个名称
+        final boolean hierarchical = operation.isHierarchical();
+        Assert.state(!hierarchical || lockStore.supportsIncr(),
+                     lockStore.getClass().getSimpleName() + "不支持原子计数，不能使用层级锁");
+        final String name = keyEncoder.encodeName(hierarchical
+                ? HierarchicalLock.NAMESPACE
+                : context.getName());
+        // 层级锁按路径拆分key，不能压缩
+        final String key = hierarchical
+                ? context.getKey()
+                : keyEncoder.encodeKey(context.getKey());
+        // 本机锁无法表达层级关系，层级锁不降级
+        final boolean degradable = !hierarchical
+                && this.isDegradable(StringUtils.isBlank(operation.getName())
+                                             ? context.getMethod().getName()
+                                             : operation.getName());
+        try {
+            return _lockCache.get(name + key, new Callable<AbstractStoreLock>() {
+                @Override
+                public AbstractStoreLock call() throws Exception {
+                    LOGGER.info("没有从_lockCache中获取到lock..., thread -->> {}, operation-->>{}",
+                                threadName(),
+                                JacksonUtil.toJsonStr(operation));
+                    AbstractStoreLock lock = hierarchical
+                            ? new HierarchicalLock(name,
+                                                   key,
+                                                   operation.getTimeout(),
+                                                   operation.getExpire(),
+                                                   operation.getErrorMsg(),
+                                                   lockStore,
+                                                   hierarchyHorizonMillis)
+                            : createLock(name,
+                                         key,
+                                         operation.getTimeout(),
+                                         operation.getExpire(),
+                                         operation.getErrorMsg(),
+                                         lockStore);
+                    lock.setDegradable(degradable);
+                    lock.setProfiler(profiler);
+                    lock.setHoldTimeTracker(holdTimeTracker);
+                    lock.setLeaseRenewer(leaseRenewer);
+                    lock.setRetryScheduler(retryScheduler);
+                    lock.setHeldLockRegistry(heldLockRegistry);
+                    lock.setNodeHeartbeat(nodeHeartbeat);
+                    lock.setAdmissionController(admissionController);
+                    lock.setDeadlockDetector(deadlockDetector);
+                    lock.setTracer(tracer);
+                    return lock;
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("创建锁对象失败", e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private boolean isDegradable(String lockName) {
+        return degradableLockNames.contains("*") || degradableLockNames.contains(lockName);
+    }
+
+    /**
+     * 查询锁的持有情况，本机持有时直接使用本地状态，否则查询一次存储
+     *
+     * @param lockKey 存储中完整的key
+     *
+     * @return 没有被持有时返回null
+     */
+    public LockInfo inspect(String lockKey) {
+        AbstractStoreLock lock = _lockCache.getIfPresent(lockKey);
+        if (lock != null && lock.isLocked()) {
+            return LockInfo.of(lock);
+        }
+        String value = lockStore.get(lockKey);
+        if (value == null) {
+            return null;
+        }
+        return new LockInfo(lockKey,
+                            LockOwner.decode(value),
+                            value,
+                            -1,
+                            lock == null
+                                    ? 0
+                                    : lock.getWaiterCount(),
+                            lock == null
+                                    ? 0
+                                    : lock.getAcquireCount(),
+                            false);
+    }
+
+    /**
+     * 本机当前持有的锁，只读取本地状态，持有中的锁对象被缓存淘汰后仍然可以查到
+     */
+    public List<LockInfo> heldLocks() {
+        List<LockInfo> result = new ArrayList<LockInfo>();
+        for (AbstractStoreLock lock : heldLockRegistry.snapshot()) {
+            if (lock.isLocked()) {
+                result.add(LockInfo.of(lock));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 本机持有的锁中等待者最多的几个，等待者相同时按加锁次数排序，只读取本地状态
+     */
+    public List<LockInfo> hottestKeys(int limit) {
+        List<LockInfo> held = this.heldLocks();
+        Collections.sort(held, new Comparator<LockInfo>() {
+            @Override
+            public int compare(LockInfo o1, LockInfo o2) {
+                if (o1.getWaiterCount() != o2.getWaiterCount()) {
+                    return o1.getWaiterCount() > o2.getWaiterCount()
+                            ? -1
+                            : 1;
+                }
+                return o1.getAcquireCount() == o2.getAcquireCount()
+                        ? 0
+                        : o1.getAcquireCount() > o2.getAcquireCount()
+                        ? -1
+                        : 1;
+            }
+        });
+        return held.size() > limit
+                ? new ArrayList<LockInfo>(held.subList(0, Math.max(limit, 0)))
+                : held;
+    }
+
+    private String threadName() {
+        return Thread.currentThread().getName();
+    }
+}
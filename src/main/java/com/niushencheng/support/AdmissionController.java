@@ -0,0 +1,170 @@
+package com.niushencheng.support;
+
+import lombok.Setter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 本机等待者的准入控制，等待者超过限制时加锁直接失败，不再占用请求线程排队等待
+ * <p>
+ * 等待者为已经进入 {@link AbstractStoreLock#lock()} 还没有返回的线程，包括在mainLock上排队的以及正在轮询存储的；
+ * 分别按锁名称(className:methodName:)和完整的key限制，一个热点key不会耗尽整个服务的线程池
+ * <p>
+ * 排队时间按 前面的等待者数 * 该锁名称的平均持有时间 估计，本机持有中的锁按一个平均持有时间计，
+ * 其他节点的持有者无法得知，不计入；还没有持有记录时不估计
+ * <p>
+ * 注意！！！
+ * 超过限制的调用按加锁失败处理，由 {@link com.niushencheng.interceptor.LockFailedException} 返回注解中的errorMsg；
+ * 限制为0表示不限制
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class AdmissionController {
+
+    public enum Rejection {
+        /** 同一个key的等待者过多 */
+        KEY_WAITERS,
+        /** 同一个锁名称的等待者过多 */
+        NAME_WAITERS,
+        /** 估计的排队时间过长 */
+        QUEUE_WAIT
+    }
+
+    /** 平均持有时间的平滑系数 */
+    private static final double HOLD_SMOOTHING = 0.2;
+
+    /** 每个key最多的等待者数 */
+    @Setter
+    private int maxWaitersPerKey = 0;
+
+    /** 每个锁名称最多的等待者数 */
+    @Setter
+    private int maxWaitersPerName = 0;
+
+    /** 估计的排队时间超过该值时拒绝 */
+    @Setter
+    private long maxQueueWaitMillis = 0;
+
+    private final ConcurrentMap<String, NameStats> stats = new ConcurrentHashMap<String, NameStats>();
+
+    private final AtomicLongArray rejectedCounts = new AtomicLongArray(Rejection.values().length);
+
+    private final AtomicLong admittedCount = new AtomicLong();
+
+    /**
+     * 尝试进入等待，成功时需要在加锁结束后调用 {@link #exit(AbstractStoreLock)}
+     *
+     * @return 被拒绝时返回拒绝的原因，准入时返回null
+     */
+    Rejection tryEnter(AbstractStoreLock lock) {
+        NameStats nameStats = this.stats(lock.getName());
+        int keyWaiters = lock.enterWaiting();
+        int nameWaiters = nameStats.waiters.incrementAndGet();
+        Rejection rejection = null;
+        if (maxWaitersPerKey > 0 && keyWaiters > maxWaitersPerKey) {
+            rejection = Rejection.KEY_WAITERS;
+        } else if (maxWaitersPerName > 0 && nameWaiters > maxWaitersPerName) {
+            rejection = Rejection.NAME_WAITERS;
+        } else if (maxQueueWaitMillis > 0
+                && nameStats.estimateWaitMillis(keyWaiters - 1 + (lock.isLocked() ? 1 : 0)) > maxQueueWaitMillis) {
+            rejection = Rejection.QUEUE_WAIT;
+        }
+        if (rejection == null) {
+            admittedCount.incrementAndGet();
+            return null;
+        }
+        this.exit(lock);
+        nameStats.rejected.incrementAndGet();
+        rejectedCounts.incrementAndGet(rejection.ordinal());
+        return rejection;
+    }
+
+    /**
+     * 加锁结束，不论成功与否
+     */
+    void exit(AbstractStoreLock lock) {
+        lock.exitWaiting();
+        this.stats(lock.getName()).waiters.decrementAndGet();
+    }
+
+    /**
+     * 记录一次持有，用于估计排队时间
+     */
+    void recordHold(String name, long holdNanos) {
+        this.stats(name).recordHold(holdNanos);
+    }
+
+    /** 准入的次数 */
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    /** 被拒绝的次数 */
+    public long getRejectedCount() {
+        long total = 0;
+        for (int i = 0; i < rejectedCounts.length(); i++) {
+            total += rejectedCounts.get(i);
+        }
+        return total;
+    }
+
+    /** 按原因被拒绝的次数 */
+    public long getRejectedCount(Rejection rejection) {
+        return rejectedCounts.get(rejection.ordinal());
+    }
+
+    /**
+     * 各锁名称当前的等待者数、被拒绝的次数以及平均持有时间
+     */
+    public Map<String, String> describe() {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, NameStats> entry : stats.entrySet()) {
+            NameStats nameStats = entry.getValue();
+            result.put(entry.getKey(), "waiters=" + nameStats.waiters.get()
+                    + " rejected=" + nameStats.rejected.get()
+                    + " meanHoldMillis=" + TimeUnit.NANOSECONDS.toMillis((long) nameStats.meanHoldNanos));
+        }
+        return result;
+    }
+
+    private NameStats stats(String name) {
+        NameStats current = stats.get(name);
+        if (current == null) {
+            NameStats created = new NameStats();
+            current = stats.putIfAbsent(name, created);
+            if (current == null) {
+                current = created;
+            }
+        }
+        return current;
+    }
+
+    private static class NameStats {
+
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        /** 平均持有时间，没有记录时为0；并发更新时丢失个别样本不影响估计 */
+        private volatile double meanHoldNanos;
+
+        private void recordHold(long holdNanos) {
+            double mean = this.meanHoldNanos;
+            this.meanHoldNanos = mean == 0
+                    ? holdNanos
+                    : mean + HOLD_SMOOTHING * (holdNanos - mean);
+        }
+
+        private long estimateWaitMillis(int ahead) {
+            return TimeUnit.NANOSECONDS.toMillis((long) (ahead * meanHoldNanos));
+        }
+    }
+}
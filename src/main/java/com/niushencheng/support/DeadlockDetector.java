@@ -0,0 +1,163 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LockStore;
+import com.niushencheng.store.StoreCommand;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 嵌套加锁的分布式死锁检测，在存储中维护等待图
+ * <p>
+ * 图的节点为线程，标识为 nodeId#线程名#线程id，与 {@link LockOwner} 中的字段一致，在所有节点中唯一；
+ * 已经持有锁的线程加锁失败时写入一条边 {@link #EDGE_PREFIX} + 等待者 -> 持有者，过期时间为edgeTtlMillis，
+ * 停止等待时删除；写入的同时沿着持有者的边往下走，回到自己时说明出现了环
+ * <p>
+ * 发现环的等待者即写入最后一条边、使环闭合的一方，作为牺牲者立即加锁失败并释放持有的锁，
+ * 其他参与者不需要等满timeout；之前写入边的参与者当时还没有环，不会被选中，
+ * 牺牲者不需要等到自己的下一次轮询；几个参与者同时写入时可能都看到环一起失败，但不会出现没有牺牲者的环
+ * <p>
+ * 注意！！！
+ * 没有持有锁的线程不会是环的一部分，不写边，也不访问存储；只有在存储上轮询的线程会写边，
+ * 在本机mainLock上排队的线程由排在它前面的线程代表
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class DeadlockDetector {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /** 等待边的key前缀，与lockPrefix拼接 */
+    public static final String EDGE_PREFIX = "wfg:";
+
+    private final LockStore lockStore;
+
+    private final String edgePrefix;
+
+    /** 等待边的过期时间，需要大于最长的轮询间隔，等待者宕机后边在该时间后消失 */
+    @Setter
+    private long edgeTtlMillis = 30 * 1000;
+
+    /** 沿着边最多走的步数，即能发现的最大的环 */
+    @Setter
+    private int maxDepth = 8;
+
+    /** 当前线程持有的锁数以及写入的边 */
+    private final ThreadLocal<WaitState> states = new ThreadLocal<WaitState>() {
+        @Override
+        protected WaitState initialValue() {
+            return new WaitState();
+        }
+    };
+
+    private final AtomicLong victimCount = new AtomicLong();
+
+    public DeadlockDetector(LockStore lockStore, String lockPrefix) {
+        this.lockStore = lockStore;
+        this.edgePrefix = lockPrefix + EDGE_PREFIX;
+    }
+
+    /** 当前线程加锁成功 */
+    void held() {
+        states.get().held++;
+    }
+
+    /** 当前线程释放了一个锁 */
+    void released() {
+        WaitState state = states.get();
+        if (state.held > 0) {
+            state.held--;
+        }
+    }
+
+    /**
+     * 当前线程加锁失败时调用，写入等待边并检查是否出现了环
+     *
+     * @param lockKey 等待的锁
+     * @param holder  锁的持有者
+     *
+     * @return 当前线程的等待使环闭合时返回true，当前线程即牺牲者
+     */
+    boolean isVictim(String lockKey, LockOwner holder) {
+        WaitState state = states.get();
+        if (state.held == 0 || holder == null) {
+            return false;
+        }
+        String self = threadId(LockOwner.LOCAL_NODE_ID, LockOwner.currentThread());
+        String holderId = threadId(holder.getNodeId(), holder.getThread());
+        if (self.equals(holderId)) {
+            return false;
+        }
+        String edgeKey = edgePrefix + self;
+        // 覆盖自己上一次的边，同时读取持有者的边，一次往返
+        List<Object> results = lockStore.execute(Arrays.asList(StoreCommand.del(edgeKey),
+                                                               StoreCommand.add(edgeKey, holderId, edgeTtlMillis),
+                                                               StoreCommand.get(edgePrefix + holderId)));
+        state.edge = holderId;
+        List<String> cycle = new ArrayList<String>();
+        cycle.add(self);
+        cycle.add(holderId);
+        String next = (String) results.get(2);
+        while (next != null && !next.equals(self)) {
+            if (cycle.contains(next) || cycle.size() >= maxDepth) {
+                // 不经过自己的环由环上的线程处理
+                return false;
+            }
+            cycle.add(next);
+            next = lockStore.get(edgePrefix + next);
+        }
+        if (next == null) {
+            return false;
+        }
+        victimCount.incrementAndGet();
+        LOGGER.warn("发现分布式死锁，当前线程作为牺牲者, thread -->> {}, lockKey -->> {}, cycle -->> {}",
+                    Thread.currentThread().getName(),
+                    lockKey,
+                    cycle);
+        return true;
+    }
+
+    /**
+     * 当前线程停止等待，删除写入的边
+     */
+    void clearWaiting() {
+        WaitState state = states.get();
+        if (state.edge == null) {
+            return;
+        }
+        String holderId = state.edge;
+        state.edge = null;
+        try {
+            lockStore.compareAndDelete(edgePrefix + threadId(LockOwner.LOCAL_NODE_ID, LockOwner.currentThread()),
+                                       holderId);
+        } catch (RuntimeException e) {
+            LOGGER.warn("删除等待边失败，等待自动过期, thread -->> {}, exception -->> {}",
+                        Thread.currentThread().getName(),
+                        e.toString());
+        }
+    }
+
+    /** 发现环并作为牺牲者提前失败的次数 */
+    public long getVictimCount() {
+        return victimCount.get();
+    }
+
+    private static String threadId(String nodeId, String thread) {
+        return nodeId + "#" + thread;
+    }
+
+    private static class WaitState {
+
+        /** 持有的锁数 */
+        private int held;
+
+        /** 写入的边指向的持有者，没有写入时为null */
+        private String edge;
+    }
+}
@@ -0,0 +1,72 @@
+package com.niushencheng.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本机持有中的锁，加锁成功时登记，释放时移除，不依赖锁对象的缓存
+ * <p>
+ * 关闭时先拒绝新的加锁，等待持有者在drain时间内自行释放，剩余的锁由 {@link AbstractStoreLockManager#destroy()}
+ * 在一次批量调用中释放，滚动发布后其他节点不需要等待锁过期
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class HeldLockRegistry {
+
+    private final Set<AbstractStoreLock> locks =
+            Collections.newSetFromMap(new ConcurrentHashMap<AbstractStoreLock, Boolean>());
+
+    /** 正在关闭，不再接受新的加锁 */
+    private volatile boolean closing = false;
+
+    void register(AbstractStoreLock lock) {
+        locks.add(lock);
+    }
+
+    void unregister(AbstractStoreLock lock) {
+        locks.remove(lock);
+        if (closing && locks.isEmpty()) {
+            synchronized (this) {
+                this.notifyAll();
+            }
+        }
+    }
+
+    /** 是否正在关闭 */
+    public boolean isClosing() {
+        return closing;
+    }
+
+    /** 持有中的锁数 */
+    public int size() {
+        return locks.size();
+    }
+
+    /** 持有中的锁 */
+    List<AbstractStoreLock> snapshot() {
+        return new ArrayList<AbstractStoreLock>(locks);
+    }
+
+    /**
+     * 拒绝新的加锁，等待持有者释放
+     *
+     * @param drainMillis 最多等待的时间
+     *
+     * @return 等待结束时还没有释放的锁
+     */
+    List<AbstractStoreLock> close(long drainMillis) throws InterruptedException {
+        this.closing = true;
+        long deadline = System.currentTimeMillis() + drainMillis;
+        synchronized (this) {
+            long remaining;
+            while (!locks.isEmpty() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                this.wait(remaining);
+            }
+        }
+        return this.snapshot();
+    }
+}
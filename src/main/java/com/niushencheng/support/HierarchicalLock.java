@@ -0,0 +1,253 @@
+package com.niushencheng.support;
+
+import com.niushencheng.interceptor.LockArgIllegalException;
+import com.niushencheng.store.LockStore;
+import com.niushencheng.store.StoreCommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 层级锁，key按 {@link #SEPARATOR} 分隔为从根到叶的路径，如 tenant:42/order:7
+ * <p>
+ * 每个节点在存储中有节点本身的锁，以及后代持有者数量的意向计数；
+ * 加锁时在一次批量调用中先给所有祖先的意向计数加一、写入自己的锁，再检查祖先的锁和自己的意向计数，
+ * 先声明后检查，祖先和后代并发加锁时至少有一方能看到另一方，不会同时成功
+ * <p>
+ * 意向计数按持有者的截止时间(加锁时间 + expire，续租累计不超过expire)分桶，桶宽为horizon的1/{@link #INTENTION_BUCKETS}，
+ * 每个桶的过期时间固定为桶的结束时间再加一个桶宽，其他后代的加锁不会延长；检查时读取截止时间可能还没有到的所有桶，
+ * 宕机的持有者留下的计数最晚在截止时间后两个桶宽内过期，不会因为兄弟节点持续加锁而一直阻塞祖先；
+ * expire为0的锁永不过期，计入单独的不过期的计数
+ * <p>
+ * 祖先被持有时让出全部状态后重试；只有后代还在持有时保留自己的锁等待后代退出，
+ * 新来的后代看到祖先的锁后会让出，粗粒度的锁不会被持续的细粒度加锁饿死
+ * <p>
+ * 注意！！！
+ * 存储需要支持原子计数，见 {@link LockStore#supportsIncr()}；批量调用失败时已经生效的意向计数和锁由存储撤销，
+ * 见 {@link LockStore#execute(List)}，这里不能再补偿，否则计数会被重复扣减；
+ * 持有者宕机时意向计数在expire加两个桶宽后过期，期间祖先节点无法加锁；开启节点心跳时也不会被接管，见 {@link #isReclaimable()}；
+ * expire不能超过horizon，所有节点的horizon需要一致，并且需要做好时钟同步
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class HierarchicalLock extends AbstractStoreLock {
+
+    /** 路径分隔符 */
+    public static final char SEPARATOR = '/';
+
+    /** 所有层级锁共用的名称，层级锁的key在方法之间共享 */
+    public static final String NAMESPACE = "Hierarchy:";
+
+    /** 意向计数的key后缀 */
+    static final String INTENTION_SUFFIX = "#intention";
+
+    /** horizon内的意向计数桶数 */
+    static final int INTENTION_BUCKETS = 8;
+
+    /** 祖先节点的lockKey，从根开始 */
+    private final List<String> ancestorKeys;
+
+    /** 自己的意向计数的key前缀，即持有中的后代数 */
+    private final String intentionKey;
+
+    /** 意向计数的最长存活时间，不小于expire */
+    private final long horizon;
+
+    /** 意向计数的桶宽 */
+    private final long bucketMillis;
+
+    /** 当前的持有者 */
+    private volatile LockOwner owner;
+
+    /** 已经写入了自己的锁和祖先的意向计数，正在等待后代退出；只有持有mainLock的线程会读写 */
+    private LockOwner reserved;
+
+    HierarchicalLock(String name, String key, long timeout, long expire, String errorMsg, LockStore lockStore,
+                     long horizon) {
+        super(name, key, timeout, expire, errorMsg, lockStore);
+        if (horizon < INTENTION_BUCKETS || expire > horizon) {
+            throw new LockArgIllegalException("层级锁的expire不能超过horizon, expire -->> " + expire + ", horizon -->> " + horizon);
+        }
+        this.ancestorKeys = ancestorKeys(name, key);
+        this.intentionKey = this.getLockKey() + INTENTION_SUFFIX;
+        this.horizon = horizon;
+        this.bucketMillis = horizon / INTENTION_BUCKETS;
+    }
+
+    /**
+     * 按路径拆分出所有祖先节点的lockKey
+     */
+    static List<String> ancestorKeys(String name, String key) {
+        if (key == null || key.isEmpty() || key.charAt(0) == SEPARATOR || key.charAt(key.length() - 1) == SEPARATOR
+                || key.indexOf("" + SEPARATOR + SEPARATOR) >= 0) {
+            throw new LockArgIllegalException("层级锁的key不能有空的节点, key -->> " + key);
+        }
+        List<String> ancestors = new ArrayList<String>();
+        for (int i = key.indexOf(SEPARATOR); i >= 0; i = key.indexOf(SEPARATOR, i + 1)) {
+            ancestors.add(name + key.substring(0, i));
+        }
+        return Collections.unmodifiableList(ancestors);
+    }
+
+    @Override
+    protected boolean acquire(long timeStamp) {
+        LockOwner candidate = this.reserved;
+        List<String> descendantKeys = this.intentionKeys(intentionKey, System.currentTimeMillis());
+        List<StoreCommand> commands = new ArrayList<StoreCommand>(ancestorKeys.size() * 2 + descendantKeys.size() + 1);
+        if (candidate == null) {
+            candidate = this.newOwner();
+            for (String ancestor : ancestorKeys) {
+                commands.add(this.intention(ancestor, candidate, 1));
+            }
+            commands.add(StoreCommand.add(this.getLockKey(), candidate.encode(), this.getLease()));
+        } else {
+            // 确认保留的锁没有过期，同时重新计算租期
+            commands.add(StoreCommand.compareAndExpire(this.getLockKey(), candidate.encode(), this.getLease()));
+        }
+        int checkIndex = commands.size();
+        for (String ancestor : ancestorKeys) {
+            commands.add(StoreCommand.get(ancestor));
+        }
+        for (String descendantKey : descendantKeys) {
+            commands.add(StoreCommand.get(descendantKey));
+        }
+        List<Object> results = lockStore.execute(commands);
+
+        if (!Boolean.TRUE.equals(results.get(checkIndex - 1))) {
+            // 节点本身被其他人持有，或者保留的锁已经过期
+            this.undo(candidate, false);
+            return false;
+        }
+        for (int i = 0; i < ancestorKeys.size(); i++) {
+            if (results.get(checkIndex + i) != null) {
+                // 祖先被持有，全部让出，避免和等待后代退出的祖先互相等待
+                LOGGER.info("祖先节点被持有，让出, thread -->> {}, lockKey -->> {}, ancestor -->> {}",
+                            this.currentThread(),
+                            this.getLockKey(),
+                            ancestorKeys.get(i));
+                this.undo(candidate, true);
+                return false;
+            }
+        }
+        long descendants = 0;
+        for (int i = checkIndex + ancestorKeys.size(); i < results.size(); i++) {
+            Object count = results.get(i);
+            if (count != null) {
+                descendants += Long.parseLong(String.valueOf(count));
+            }
+        }
+        if (descendants > 0) {
+            LOGGER.info("后代节点还有持有者，保留节点等待退出, thread -->> {}, lockKey -->> {}, descendants -->> {}",
+                        this.currentThread(),
+                        this.getLockKey(),
+                        descendants);
+            this.reserved = candidate;
+            return false;
+        }
+        this.reserved = null;
+        this.owner = candidate;
+        return true;
+    }
+
+    @Override
+    protected boolean release() {
+        List<StoreCommand> commands = this.detach();
+        return !commands.isEmpty() && Boolean.TRUE.equals(lockStore.execute(commands).get(0));
+    }
+
+    @Override
+    protected List<StoreCommand> detach() {
+        LockOwner current = this.takeOwner();
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        List<StoreCommand> commands = new ArrayList<StoreCommand>(ancestorKeys.size() + 1);
+        commands.add(StoreCommand.compareAndDelete(this.getLockKey(), current.encode()));
+        for (String ancestor : ancestorKeys) {
+            commands.add(this.intention(ancestor, current, -1));
+        }
+        return commands;
+    }
+
+    @Override
+    protected void abandon() {
+        if (this.reserved != null) {
+            this.undo(this.reserved, true);
+        }
+    }
+
+    /**
+     * 宕机的持有者在祖先上留下的意向计数只能等过期，只删除自己的锁会让祖先和这个节点的状态不一致，不接管
+     */
+    @Override
+    protected boolean isReclaimable() {
+        return false;
+    }
+
+    @Override
+    public LockOwner getOwner() {
+        return owner;
+    }
+
+    /** 祖先节点的lockKey，从根开始 */
+    public List<String> getAncestorKeys() {
+        return ancestorKeys;
+    }
+
+    /** 释放和关闭时的批量释放可能并发，只有一方能拿到持有者 */
+    private synchronized LockOwner takeOwner() {
+        LockOwner current = this.owner;
+        this.owner = null;
+        return current;
+    }
+
+    /**
+     * 撤销祖先的意向计数，以及写入的锁
+     *
+     * @param candidate 本次加锁的持有者，意向计数按它的截止时间分桶
+     * @param added     是否写入了自己的锁
+     */
+    private void undo(LockOwner candidate, boolean added) {
+        this.reserved = null;
+        List<StoreCommand> commands = new ArrayList<StoreCommand>(ancestorKeys.size() + 1);
+        if (added) {
+            commands.add(StoreCommand.compareAndDelete(this.getLockKey(), candidate.encode()));
+        }
+        for (String ancestor : ancestorKeys) {
+            commands.add(this.intention(ancestor, candidate, -1));
+        }
+        if (!commands.isEmpty()) {
+            lockStore.execute(commands);
+        }
+    }
+
+    /**
+     * 持有者在祖先的意向计数上加减，计入持有者截止时间所在的桶，过期时间为桶的结束时间再加一个桶宽
+     */
+    private StoreCommand intention(String ancestor, LockOwner holder, long delta) {
+        if (this.getExpire() == 0) {
+            return StoreCommand.incr(ancestor + INTENTION_SUFFIX, delta, 0);
+        }
+        long bucket = (holder.getAcquiredAt() + this.getExpire()) / bucketMillis;
+        long expireAt = (bucket + 2) * bucketMillis;
+        return StoreCommand.incr(ancestor + INTENTION_SUFFIX + ":" + bucket,
+                                 delta,
+                                 Math.max(1, expireAt - System.currentTimeMillis()));
+    }
+
+    /**
+     * 可能还有持有者的意向计数：不过期的计数，以及截止时间在 [now - 桶宽, now + horizon] 内的桶，多出的桶容忍节点之间的时钟偏差
+     */
+    private List<String> intentionKeys(String prefix, long now) {
+        long first = now / bucketMillis - 1;
+        long last = (now + horizon) / bucketMillis + 1;
+        List<String> keys = new ArrayList<String>((int) (last - first) + 2);
+        keys.add(prefix);
+        for (long bucket = first; bucket <= last; bucket++) {
+            keys.add(prefix + ":" + bucket);
+        }
+        return keys;
+    }
+}
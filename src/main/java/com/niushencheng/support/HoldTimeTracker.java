@@ -0,0 +1,144 @@
+package com.niushencheng.support;
+
+import com.niushencheng.util.LogHistogram;
+import lombok.Setter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按锁名称(即被加锁的方法)统计持有时间的分布，据此计算自适应的租期：
+ * 租期 = 持有时间的percentile分位数 + marginMillis，不小于minLeaseMillis，不大于注解中的expire
+ * <p>
+ * 样本数不足warmupSamples时使用注解中的expire；超过租期仍未执行完的持有者由 {@link AbstractStoreLock#renewIfNeeded()} 续租
+ * <p>
+ * 同样的分布也用于估计当前持有者还要持有多久，见 {@link RetryScheduler}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class HoldTimeTracker {
+
+    /** 样本数超过该值后重新统计，使租期跟随最近的执行时间 */
+    private static final long MAX_SAMPLES = 100 * 1000;
+
+    /** 每记录多少个样本重新计算一次租期 */
+    private static final long RECOMPUTE_INTERVAL = 64;
+
+    /** 持有时间的分位数 */
+    @Setter
+    private double percentile = 99.9;
+
+    /** 在分位数之上增加的余量 */
+    @Setter
+    private long marginMillis = 1000;
+
+    /** 最小的租期 */
+    @Setter
+    private long minLeaseMillis = 1000;
+
+    /** 样本数达到该值后才开始使用自适应的租期 */
+    @Setter
+    private long warmupSamples = 100;
+
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+    /**
+     * 记录一次持有
+     *
+     * @param name      锁名称
+     * @param holdNanos 持有时间
+     */
+    public void record(String name, long holdNanos) {
+        Stats current = stats.get(name);
+        if (current == null) {
+            Stats created = new Stats();
+            current = stats.putIfAbsent(name, created);
+            if (current == null) {
+                current = created;
+            }
+        }
+        current.record(holdNanos);
+    }
+
+    /**
+     * 本次加锁使用的租期
+     *
+     * @param name        锁名称
+     * @param expireMillis 注解中的expire，同时是租期的上限
+     */
+    public long lease(String name, long expireMillis) {
+        Stats current = stats.get(name);
+        if (expireMillis < 1 || current == null || current.lease < 0) {
+            return expireMillis;
+        }
+        return Math.min(expireMillis, current.lease);
+    }
+
+    /**
+     * 持有时间的分位数
+     *
+     * @return 没有样本时返回-1
+     */
+    public long percentileMillis(String name, double percentile) {
+        Stats current = stats.get(name);
+        if (current == null || current.histogram.getCount() == 0) {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(current.histogram.percentile(percentile));
+    }
+
+    /**
+     * 已经持有了heldNanos的持有者，总持有时间的百分位数
+     *
+     * @return 样本不足warmupSamples或没有持有更久的样本时返回-1
+     */
+    public long percentileGiven(String name, long heldNanos, double percentile) {
+        Stats current = stats.get(name);
+        if (current == null || current.histogram.getCount() < warmupSamples) {
+            return -1;
+        }
+        return current.histogram.percentileAbove(heldNanos, percentile);
+    }
+
+    /**
+     * 已经持有了heldNanos的持有者在之后withinNanos内释放的概率
+     *
+     * @return 样本不足warmupSamples或没有持有更久的样本时返回-1
+     */
+    public double releaseProbability(String name, long heldNanos, long withinNanos) {
+        Stats current = stats.get(name);
+        if (current == null || current.histogram.getCount() < warmupSamples) {
+            return -1;
+        }
+        LogHistogram histogram = current.histogram;
+        long released = histogram.countAtMost(heldNanos);
+        long survivors = histogram.getCount() - released;
+        if (survivors <= 0) {
+            return -1;
+        }
+        long within = histogram.countAtMost(heldNanos + withinNanos) - released;
+        return Math.min(1, Math.max(0, (double) within / survivors));
+    }
+
+    private class Stats {
+
+        private final LogHistogram histogram = new LogHistogram();
+
+        /** 预热完成前为-1，重新统计期间保留上一次的结果 */
+        private volatile long lease = -1;
+
+        private void record(long holdNanos) {
+            if (histogram.getCount() >= MAX_SAMPLES) {
+                histogram.reset();
+            }
+            histogram.record(holdNanos);
+            long count = histogram.getCount();
+            if (count >= warmupSamples && (count == warmupSamples || count % RECOMPUTE_INTERVAL == 0)) {
+                long holdMillis = (TimeUnit.NANOSECONDS.toMicros(histogram.percentile(percentile)) + 999) / 1000;
+                this.lease = Math.max(minLeaseMillis, holdMillis + marginMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.niushencheng.support;
+
+import com.niushencheng.util.SpaceSaving;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁竞争的热点key统计，按等待时间、加锁尝试次数、持有时间分别找出最大的若干个key
+ * <p>
+ * 使用 {@link SpaceSaving} 统计，内存固定，不随key的数量增长；每次加锁只增加几次分段内的HashMap操作，可以在线上常开
+ * <p>
+ * 统计按windowMillis滚动，查询结果为上一个完整窗口和当前窗口之和，反映最近的竞争情况
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class HotKeyProfiler {
+
+    public enum Metric {
+        /** 等待时间，单位为微秒，包括本机排队以及轮询存储的时间 */
+        WAIT,
+        /** 在存储中尝试加锁的次数 */
+        ATTEMPTS,
+        /** 持有时间，单位为微秒 */
+        HOLD
+    }
+
+    private final int capacity;
+
+    private final int stripes;
+
+    private final long windowNanos;
+
+    private volatile Window current;
+
+    private volatile Window previous;
+
+    /**
+     * @param capacity     每个分段保留的key数
+     * @param stripes      分段数
+     * @param windowMillis 统计窗口
+     */
+    public HotKeyProfiler(int capacity, int stripes, long windowMillis) {
+        this.capacity = capacity;
+        this.stripes = stripes;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.current = new Window(System.nanoTime());
+    }
+
+    /**
+     * 记录一次加锁，不论成功与否
+     *
+     * @param lockKey   存储中完整的key
+     * @param waitNanos 等待时间
+     * @param attempts  在存储中尝试的次数
+     */
+    public void recordAcquire(String lockKey, long waitNanos, int attempts) {
+        Window window = this.window();
+        window.sketches[Metric.WAIT.ordinal()].add(lockKey, TimeUnit.NANOSECONDS.toMicros(waitNanos));
+        window.sketches[Metric.ATTEMPTS.ordinal()].add(lockKey, attempts);
+    }
+
+    /**
+     * 记录一次持有
+     *
+     * @param lockKey   存储中完整的key
+     * @param holdNanos 持有时间
+     */
+    public void recordHold(String lockKey, long holdNanos) {
+        this.window().sketches[Metric.HOLD.ordinal()].add(lockKey, TimeUnit.NANOSECONDS.toMicros(holdNanos));
+    }
+
+    /**
+     * 最近按指定指标排名靠前的key
+     *
+     * @param metric 指标
+     * @param limit  最多返回的数量
+     */
+    public List<SpaceSaving.Entry> top(Metric metric, int limit) {
+        Map<String, long[]> merged = new HashMap<String, long[]>();
+        for (Window window : new Window[]{previous, this.window()}) {
+            if (window == null) {
+                continue;
+            }
+            for (SpaceSaving.Entry entry : window.sketches[metric.ordinal()].top(Integer.MAX_VALUE)) {
+                long[] sum = merged.get(entry.getItem());
+                if (sum == null) {
+                    merged.put(entry.getItem(), new long[]{entry.getCount(), entry.getError()});
+                } else {
+                    sum[0] += entry.getCount();
+                    sum[1] += entry.getError();
+                }
+            }
+        }
+        List<SpaceSaving.Entry> entries = new ArrayList<SpaceSaving.Entry>(merged.size());
+        for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+            entries.add(new SpaceSaving.Entry(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        SpaceSaving.sort(entries);
+        return entries.size() > limit
+                ? new ArrayList<SpaceSaving.Entry>(entries.subList(0, Math.max(limit, 0)))
+                : entries;
+    }
+
+    /**
+     * 清空统计
+     */
+    public synchronized void reset() {
+        this.previous = null;
+        this.current = new Window(System.nanoTime());
+    }
+
+    private Window window() {
+        Window window = this.current;
+        if (System.nanoTime() - window.start < windowNanos) {
+            return window;
+        }
+        return this.rotate(window);
+    }
+
+    private synchronized Window rotate(Window expected) {
+        if (this.current == expected) {
+            long now = System.nanoTime();
+            // 空闲超过一个窗口时上一个窗口已经不是最近的情况
+            this.previous = now - expected.start < 2 * windowNanos
+                    ? expected
+                    : null;
+            this.current = new Window(now);
+        }
+        return this.current;
+    }
+
+    private class Window {
+
+        private final long start;
+
+        private final SpaceSaving[] sketches = new SpaceSaving[Metric.values().length];
+
+        private Window(long start) {
+            this.start = start;
+            for (int i = 0; i < sketches.length; i++) {
+                sketches[i] = new SpaceSaving(capacity, stripes);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LockStore;
+import com.niushencheng.support.jdbc.JdbcLockStore;
+import lombok.Setter;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+
+/**
+ * 使用关系型数据库存储锁信息的锁管理，见 {@link JdbcLockStore}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class JdbcLockManager extends AbstractStoreLockManager {
+
+    @Setter
+    private DataSource dataSource;
+
+    /** 表名 */
+    @Setter
+    private String tableName = "distribute_lock";
+
+    /** 清理过期记录的间隔 */
+    @Setter
+    private long sweepIntervalMillis = 1000;
+
+    /** 单批次清理的最多记录数 */
+    @Setter
+    private int sweepBatchSize = 500;
+
+    private JdbcLockStore jdbcLockStore;
+
+    @Override
+    protected LockStore createLockStore() throws Exception {
+        Assert.notNull(dataSource, "dataSource和lockStore不能同时为空");
+        this.jdbcLockStore = new JdbcLockStore(dataSource);
+        this.jdbcLockStore.setTableName(tableName);
+        this.jdbcLockStore.setSweepIntervalMillis(sweepIntervalMillis);
+        this.jdbcLockStore.setSweepBatchSize(sweepBatchSize);
+        this.jdbcLockStore.afterPropertiesSet();
+        return jdbcLockStore;
+    }
+
+    @Override
+    protected AbstractStoreLock createLock(String name, String key, long timeout, long expire, String errorMsg,
+                                           LockStore lockStore) {
+        return new StoreLock(name, key, timeout, expire, errorMsg, lockStore);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        super.destroy();
+        if (this.jdbcLockStore != null) {
+            this.jdbcLockStore.destroy();
+        }
+    }
+}
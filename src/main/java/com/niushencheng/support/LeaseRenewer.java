@@ -0,0 +1,99 @@
+package com.niushencheng.support;
+
+import com.niushencheng.util.DaemonThreadFactory;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 为使用自适应租期的持有者续租，后台唯一的线程按intervalMillis检查，
+ * 持有时间超过租期一半的锁续租一个租期，累计不超过注解中的expire
+ * <p>
+ * 持有中的锁在加锁成功时登记，释放时移除，不依赖锁对象的缓存，缓存淘汰不会影响续租；
+ * 进程宕机后不再续租，锁在一个租期内过期
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LeaseRenewer implements InitializingBean, DisposableBean {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /** 检查的间隔，需要明显小于最小租期的一半 */
+    @Setter
+    private long intervalMillis = 200;
+
+    private final Set<AbstractStoreLock> locks =
+            Collections.newSetFromMap(new ConcurrentHashMap<AbstractStoreLock, Boolean>());
+
+    private final AtomicLong renewedCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.isTrue(intervalMillis > 0, "intervalMillis必需为正数");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("lock-lease-renewer-"));
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                renewAll();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    void register(AbstractStoreLock lock) {
+        locks.add(lock);
+    }
+
+    void unregister(AbstractStoreLock lock) {
+        locks.remove(lock);
+    }
+
+    /** 续租成功的次数 */
+    public long getRenewedCount() {
+        return renewedCount.get();
+    }
+
+    /** 续租失败的次数，失败说明锁已经过期或被接管 */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    private void renewAll() {
+        for (AbstractStoreLock lock : locks) {
+            try {
+                int result = lock.renewIfNeeded();
+                if (result > 0) {
+                    renewedCount.incrementAndGet();
+                } else if (result < 0) {
+                    failedCount.incrementAndGet();
+                    LOGGER.warn("续租失败，锁可能已经过期, lockKey -->> {}", lock.getLockKey());
+                }
+            } catch (RuntimeException e) {
+                failedCount.incrementAndGet();
+                LOGGER.warn("续租失败, lockKey -->> {}", lock.getLockKey(), e);
+            }
+        }
+    }
+}
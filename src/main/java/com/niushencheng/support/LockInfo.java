@@ -0,0 +1,60 @@
+package com.niushencheng.support;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 某个锁在查询时刻的快照
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+@Getter
+@ToString
+public class LockInfo {
+
+    /** 存储中完整的key */
+    private final String lockKey;
+
+    /** 持有者，值不是持有者格式时为null，见 {@link #value} */
+    private final LockOwner owner;
+
+    /** 存储中的原始值 */
+    private final String value;
+
+    /** 距离过期的时间，永不过期为Long.MAX_VALUE，未知(其他节点持有)为-1 */
+    private final long remainingLeaseMillis;
+
+    /** 本机的等待线程数 */
+    private final int waiterCount;
+
+    /** 本机成功加锁的次数 */
+    private final long acquireCount;
+
+    /** 是否由本机持有，false表示信息来自存储 */
+    private final boolean local;
+
+    LockInfo(String lockKey, LockOwner owner, String value, long remainingLeaseMillis, int waiterCount,
+             long acquireCount, boolean local) {
+        this.lockKey = lockKey;
+        this.owner = owner;
+        this.value = value;
+        this.remainingLeaseMillis = remainingLeaseMillis;
+        this.waiterCount = waiterCount;
+        this.acquireCount = acquireCount;
+        this.local = local;
+    }
+
+    static LockInfo of(AbstractStoreLock lock) {
+        LockOwner owner = lock.getOwner();
+        return new LockInfo(lock.getLockKey(),
+                            owner,
+                            owner == null
+                                    ? null
+                                    : owner.encode(),
+                            lock.getRemainingLeaseMillis(),
+                            lock.getWaiterCount(),
+                            lock.getAcquireCount(),
+                            true);
+    }
+}
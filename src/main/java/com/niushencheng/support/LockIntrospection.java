@@ -0,0 +1,173 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.CircuitBreakerLockStore;
+import com.niushencheng.store.ShardedLockStore;
+import com.niushencheng.util.SpaceSaving;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link LockIntrospectionMBean} 的实现，只做格式转换，查询逻辑见 {@link AbstractStoreLockManager}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LockIntrospection implements LockIntrospectionMBean {
+
+    private final AbstractStoreLockManager lockManager;
+
+    public LockIntrospection(AbstractStoreLockManager lockManager) {
+        this.lockManager = lockManager;
+    }
+
+    @Override
+    public int getHeldCount() {
+        return lockManager.heldLocks().size();
+    }
+
+    @Override
+    public String getHolder(String lockKey) {
+        LockInfo info = lockManager.inspect(lockKey);
+        return info == null
+                ? null
+                : info.getValue();
+    }
+
+    @Override
+    public long getRemainingLeaseMillis(String lockKey) {
+        LockInfo info = lockManager.inspect(lockKey);
+        return info == null
+                ? -1
+                : info.getRemainingLeaseMillis();
+    }
+
+    @Override
+    public int getWaiterCount(String lockKey) {
+        LockInfo info = lockManager.inspect(lockKey);
+        return info == null
+                ? 0
+                : info.getWaiterCount();
+    }
+
+    @Override
+    public String decodeLockKey(String lockKey) {
+        return lockManager.getKeyEncoder().decode(lockKey);
+    }
+
+    @Override
+    public String[] listHottestKeys(int limit) {
+        List<LockInfo> infos = lockManager.hottestKeys(limit);
+        String[] result = new String[infos.size()];
+        for (int i = 0; i < result.length; i++) {
+            LockInfo info = infos.get(i);
+            result[i] = info.getLockKey() + " waiters=" + info.getWaiterCount()
+                    + " acquisitions=" + info.getAcquireCount()
+                    + " remainingLeaseMillis=" + info.getRemainingLeaseMillis()
+                    + " holder=" + info.getValue();
+        }
+        return result;
+    }
+
+    @Override
+    public String[] listContendedKeys(String metric, int limit) {
+        HotKeyProfiler profiler = lockManager.getProfiler();
+        if (profiler == null) {
+            return new String[0];
+        }
+        List<SpaceSaving.Entry> entries = profiler.top(HotKeyProfiler.Metric.valueOf(metric.trim().toUpperCase()),
+                                                       limit);
+        String[] result = new String[entries.size()];
+        for (int i = 0; i < result.length; i++) {
+            SpaceSaving.Entry entry = entries.get(i);
+            result[i] = entry.getItem() + " " + metric + "=" + entry.getCount() + " error=" + entry.getError();
+        }
+        return result;
+    }
+
+    @Override
+    public void resetProfiler() {
+        HotKeyProfiler profiler = lockManager.getProfiler();
+        if (profiler != null) {
+            profiler.reset();
+        }
+    }
+
+    @Override
+    public String[] listShardLoads() {
+        ShardedLockStore sharded = lockManager.getShardedLockStore();
+        if (sharded == null) {
+            return new String[0];
+        }
+        Map<String, Long> counts = sharded.getCommandCounts();
+        long total = 0;
+        for (Long count : counts.values()) {
+            total += count;
+        }
+        List<String> result = new ArrayList<String>(counts.size());
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            result.add(String.format(Locale.ROOT, "%s commands=%d share=%.1f%%",
+                                     entry.getKey(),
+                                     entry.getValue(),
+                                     total == 0
+                                             ? 0
+                                             : entry.getValue() * 100.0 / total));
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public String getCircuitBreakerState() {
+        CircuitBreakerLockStore breaker = lockManager.getCircuitBreaker();
+        return breaker == null
+                ? null
+                : breaker.getState().name();
+    }
+
+    @Override
+    public long getCircuitBreakerOpenCount() {
+        CircuitBreakerLockStore breaker = lockManager.getCircuitBreaker();
+        return breaker == null
+                ? 0
+                : breaker.getOpenCount();
+    }
+
+    @Override
+    public long getCircuitBreakerRejectedCount() {
+        CircuitBreakerLockStore breaker = lockManager.getCircuitBreaker();
+        return breaker == null
+                ? 0
+                : breaker.getRejectedCount();
+    }
+
+    @Override
+    public long getAdmissionRejectedCount() {
+        AdmissionController admission = lockManager.getAdmissionController();
+        return admission == null
+                ? 0
+                : admission.getRejectedCount();
+    }
+
+    @Override
+    public String[] listAdmissionStats() {
+        AdmissionController admission = lockManager.getAdmissionController();
+        if (admission == null) {
+            return new String[0];
+        }
+        List<String> result = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : admission.describe().entrySet()) {
+            result.add(entry.getKey() + " " + entry.getValue());
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public long getDeadlockVictimCount() {
+        DeadlockDetector detector = lockManager.getDeadlockDetector();
+        return detector == null
+                ? 0
+                : detector.getVictimCount();
+    }
+}
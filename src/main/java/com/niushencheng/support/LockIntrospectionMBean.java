@@ -0,0 +1,78 @@
+package com.niushencheng.support;
+
+/**
+ * 锁的查询接口，通过JMX暴露给运维，见 {@link AbstractStoreLockManager#setJmxEnabled(boolean)}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public interface LockIntrospectionMBean {
+
+    /** 本机当前持有的锁数量 */
+    int getHeldCount();
+
+    /**
+     * 锁的持有者
+     *
+     * @param lockKey 存储中完整的key，如 MTLock:com.xx.OrderService:pay:123
+     *
+     * @return 编码后的持有者，没有被持有时返回null
+     */
+    String getHolder(String lockKey);
+
+    /** 锁距离过期的时间，永不过期为Long.MAX_VALUE，未被持有或未知为-1 */
+    long getRemainingLeaseMillis(String lockKey);
+
+    /** 本机等待该锁的线程数 */
+    int getWaiterCount(String lockKey);
+
+    /**
+     * 把压缩编码的lockKey中的前缀还原为类名和方法名，见 {@link LockKeyEncoder#decode(String)}
+     *
+     * @param lockKey 存储中完整的key
+     */
+    String decodeLockKey(String lockKey);
+
+    /**
+     * 本机持有的锁中等待者最多的几个
+     *
+     * @param limit 最多返回的数量
+     */
+    String[] listHottestKeys(int limit);
+
+    /**
+     * 最近竞争最激烈的key，没有开启热点key统计时返回空数组
+     *
+     * @param metric 排序的指标，WAIT(等待微秒数)、ATTEMPTS(尝试次数)或HOLD(持有微秒数)
+     * @param limit  最多返回的数量
+     */
+    String[] listContendedKeys(String metric, int limit);
+
+    /** 清空热点key统计 */
+    void resetProfiler();
+
+    /**
+     * 各分片的命令数和占比，lockStore不是分片存储时返回空数组
+     */
+    String[] listShardLoads();
+
+    /** 存储熔断状态，没有开启熔断时返回null */
+    String getCircuitBreakerState();
+
+    /** 存储熔断打开的次数 */
+    long getCircuitBreakerOpenCount();
+
+    /** 因熔断被快速失败的存储调用数 */
+    long getCircuitBreakerRejectedCount();
+
+    /** 因本机等待者超过限制被拒绝的加锁次数，没有开启准入控制时为0 */
+    long getAdmissionRejectedCount();
+
+    /**
+     * 各锁名称的等待者数、被拒绝的次数以及平均持有时间，没有开启准入控制时返回空数组
+     */
+    String[] listAdmissionStats();
+
+    /** 作为分布式死锁的牺牲者提前失败的次数，没有开启死锁检测时为0 */
+    long getDeadlockVictimCount();
+}
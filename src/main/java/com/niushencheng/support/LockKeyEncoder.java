@@ -0,0 +1,210 @@
+package com.niushencheng.support;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.niushencheng.store.LockStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 存储中lockKey的编码
+ * <p>
+ * READABLE：lockPrefix + className:methodName: + key，与原来一致，方便排查；
+ * COMPACT：lockPrefix + '@' + 前缀id + ':' + key，前缀id为 className:methodName: 的64位murmur3，编码为11个字符；
+ * key不超过 {@link #MAX_RAW_KEY_LENGTH} 时保留原值，更长的key替换为 '~' + 128位murmur3，编码为22个字符
+ * <p>
+ * 前缀id由名称计算得到，各节点不需要协调就能得到相同的id；每个前缀第一次使用时在存储中登记一次 id -> 名称，
+ * 既用于排查时反查，也用于发现两个前缀的id冲突，冲突的前缀在所有节点上都会退回READABLE编码；
+ * 登记失败时先使用id，按 {@link #REGISTER_BACKOFF_MILLIS} 起翻倍的间隔重试，存储不可用时不会每次加锁都访问存储
+ * <p>
+ * 注意！！！
+ * 切换编码会改变存储中的key，新旧编码的节点之间互不排斥，需要所有节点同时切换；
+ * 层级锁的key需要按路径拆分，只压缩前缀，不压缩key
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LockKeyEncoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LockKeyEncoder.class);
+
+    /** COMPACT编码下保留原值的最大key长度，与哈希后的长度相同 */
+    public static final int MAX_RAW_KEY_LENGTH = 22;
+
+    /** 哈希后的key的标记，以该字符开头的原始key也会被哈希，不会和哈希后的key混淆 */
+    private static final char HASHED_KEY_MARK = '~';
+
+    /** 登记失败后第一次重试的间隔，之后每次失败翻倍，最长 {@link #MAX_REGISTER_BACKOFF_MILLIS} */
+    static final long REGISTER_BACKOFF_MILLIS = 1000;
+
+    static final long MAX_REGISTER_BACKOFF_MILLIS = 60 * 1000;
+
+    /** 前缀id的标记 */
+    private static final char PREFIX_ID_MARK = '@';
+
+    private static final HashFunction PREFIX_HASH = Hashing.murmur3_128();
+
+    private static final HashFunction KEY_HASH = Hashing.murmur3_128(0x4d544c4b);
+
+    private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+    public enum Mode {
+        READABLE,
+        COMPACT
+    }
+
+    private final Mode mode;
+
+    private final String lockPrefix;
+
+    private final LockStore lockStore;
+
+    /** 名称 -> 编码后的名称，已经登记过的前缀 */
+    private final ConcurrentMap<String, String> encodedNames = new ConcurrentHashMap<String, String>();
+
+    /** 前缀id -> 名称，用于反查 */
+    private final ConcurrentMap<String, String> names = new ConcurrentHashMap<String, String>();
+
+    /** 名称 -> 登记失败的情况，重试时间之前不再访问存储 */
+    private final ConcurrentMap<String, RegisterFailure> failures = new ConcurrentHashMap<String, RegisterFailure>();
+
+    public LockKeyEncoder(Mode mode, String lockPrefix, LockStore lockStore) {
+        this.mode = mode;
+        this.lockPrefix = lockPrefix;
+        this.lockStore = lockStore;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 编码锁名称
+     *
+     * @param name 不带lockPrefix的名称，如 com.xx.OrderService:pay:
+     *
+     * @return 带lockPrefix的名称
+     */
+    public String encodeName(String name) {
+        if (mode == Mode.READABLE) {
+            return lockPrefix + name;
+        }
+        String encoded = encodedNames.get(name);
+        if (encoded != null) {
+            return encoded;
+        }
+        RegisterFailure failure = failures.get(name);
+        if (failure != null && System.nanoTime() - failure.retryAt < 0) {
+            return this.compactName(this.prefixId(name));
+        }
+        return this.register(name, failure);
+    }
+
+    /**
+     * 编码解析后的key，层级锁的key不能编码
+     */
+    public String encodeKey(String key) {
+        if (mode == Mode.READABLE || key.length() <= MAX_RAW_KEY_LENGTH && (key.isEmpty() || key.charAt(0) != HASHED_KEY_MARK)) {
+            return key;
+        }
+        return HASHED_KEY_MARK + ENCODING.encode(KEY_HASH.hashString(key, Charsets.UTF_8).asBytes());
+    }
+
+    /**
+     * 把COMPACT编码的lockKey中的前缀id还原为名称，用于排查；哈希后的key无法还原
+     *
+     * @return 无法还原时原样返回
+     */
+    public String decode(String lockKey) {
+        String idStart = lockPrefix + PREFIX_ID_MARK;
+        if (lockKey == null || !lockKey.startsWith(idStart)) {
+            return lockKey;
+        }
+        int end = lockKey.indexOf(':', idStart.length());
+        if (end < 0) {
+            return lockKey;
+        }
+        String id = lockKey.substring(idStart.length(), end);
+        String name = names.get(id);
+        if (name == null) {
+            // 本机没有用过的前缀，查询存储中的登记
+            name = lockStore.get(this.registryKey(id));
+            if (name == null) {
+                return lockKey;
+            }
+        }
+        return lockPrefix + name + lockKey.substring(end + 1);
+    }
+
+    private String register(String name, RegisterFailure previous) {
+        String id = this.prefixId(name);
+        String encoded = this.compactName(id);
+        String registryKey = this.registryKey(id);
+        try {
+            if (!lockStore.add(registryKey, name, 0)) {
+                String registered = lockStore.get(registryKey);
+                if (registered != null && !registered.equals(name)) {
+                    // 所有节点都会看到先登记的名称，冲突的前缀一致地退回可读编码
+                    LOGGER.error("lockKey前缀id冲突，使用可读编码, id -->> {}, name -->> {}, registered -->> {}",
+                                 id,
+                                 name,
+                                 registered);
+                    encoded = lockPrefix + name;
+                    encodedNames.putIfAbsent(name, encoded);
+                    return encoded;
+                }
+            }
+        } catch (RuntimeException e) {
+            // 登记失败时先使用id，退避后再登记
+            RegisterFailure failure = RegisterFailure.after(previous);
+            failures.put(name, failure);
+            LOGGER.warn("登记lockKey前缀失败, id -->> {}, name -->> {}, retryAfterMillis -->> {}",
+                        id,
+                        name,
+                        failure.backoffMillis,
+                        e);
+            return encoded;
+        }
+        names.putIfAbsent(id, name);
+        encodedNames.putIfAbsent(name, encoded);
+        failures.remove(name);
+        return encoded;
+    }
+
+    private String prefixId(String name) {
+        return ENCODING.encode(PREFIX_HASH.hashString(name, Charsets.UTF_8).asBytes(), 0, 8);
+    }
+
+    private String compactName(String id) {
+        return lockPrefix + PREFIX_ID_MARK + id + ":";
+    }
+
+    private String registryKey(String id) {
+        return lockPrefix + "prefix:" + id;
+    }
+
+    private static final class RegisterFailure {
+
+        private final long backoffMillis;
+
+        /** 下次登记的时间，nanoTime */
+        private final long retryAt;
+
+        private RegisterFailure(long backoffMillis) {
+            this.backoffMillis = backoffMillis;
+            this.retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        }
+
+        private static RegisterFailure after(RegisterFailure previous) {
+            return new RegisterFailure(previous == null
+                                               ? REGISTER_BACKOFF_MILLIS
+                                               : Math.min(previous.backoffMillis * 2, MAX_REGISTER_BACKOFF_MILLIS));
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.niushencheng.support;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+/**
+ * 锁的持有者，编码后作为锁在存储中的值，释放时按完整的值比较删除
+ * <p>
+ * 编码格式为 token|acquiredAt|nodeId|thread，thread为 线程名#线程id，线程名可能包含'|'，因此放在最后；
+ * 开启了节点心跳的持有者token以 {@link #HEARTBEAT_TAG} 开头，见 {@link NodeHeartbeat}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+@Getter
+@EqualsAndHashCode
+public class LockOwner {
+
+    /**
+     * 本机的节点标识，pid@host:随机串，每个进程唯一；
+     * 同一台机器上重启后pid可能被复用，加上随机串后新进程不会把旧进程留下的锁和心跳当作自己的
+     */
+    public static final String LOCAL_NODE_ID =
+            ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+    private static final char SEPARATOR = '|';
+
+    /** 开启了节点心跳的持有者的token前缀 */
+    static final String HEARTBEAT_TAG = "hb-";
+
+    /** 节点标识 */
+    private final String nodeId;
+
+    /** 加锁的线程，线程名#线程id，在节点内唯一 */
+    private final String thread;
+
+    /** 本次加锁的唯一标识 */
+    private final String token;
+
+    /** 加锁时间，ms */
+    private final long acquiredAt;
+
+    public LockOwner(String nodeId, String thread, String token, long acquiredAt) {
+        this.nodeId = nodeId;
+        this.thread = thread;
+        this.token = token;
+        this.acquiredAt = acquiredAt;
+    }
+
+    /**
+     * 为当前线程生成一个新的持有者
+     */
+    public static LockOwner current() {
+        return current(false);
+    }
+
+    /**
+     * 为当前线程生成一个新的持有者
+     *
+     * @param heartbeat 本机是否开启了节点心跳，开启时打上标记，节点宕机后锁可以被其他节点接管
+     */
+    public static LockOwner current(boolean heartbeat) {
+        String token = UUID.randomUUID().toString();
+        return new LockOwner(LOCAL_NODE_ID,
+                             currentThread(),
+                             heartbeat
+                                     ? HEARTBEAT_TAG + token
+                                     : token,
+                             System.currentTimeMillis());
+    }
+
+    /**
+     * 当前线程的标识，线程名#线程id；线程名可能重复，加上线程id后在节点内唯一
+     */
+    public static String currentThread() {
+        Thread thread = Thread.currentThread();
+        return thread.getName() + "#" + thread.getId();
+    }
+
+    /**
+     * 解析存储中的值
+     *
+     * @return 不是持有者格式(如旧版本写入的时间戳)时返回null
+     */
+    public static LockOwner decode(String value) {
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split("\\|", 4);
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            return new LockOwner(parts[2], parts[3], parts[0], Long.parseLong(parts[1]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 持有者节点是否开启了心跳，没有标记的持有者无法判断节点是否存活
+     */
+    public boolean isHeartbeatTagged() {
+        return token.startsWith(HEARTBEAT_TAG);
+    }
+
+    public String encode() {
+        return token + SEPARATOR + acquiredAt + SEPARATOR + nodeId + SEPARATOR + thread;
+    }
+
+    @Override
+    public String toString() {
+        return this.encode();
+    }
+}
@@ -0,0 +1,130 @@
+package com.niushencheng.support;
+
+import com.niushencheng.MTLock;
+import com.niushencheng.support.mmap.MappedLockTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于共享内存锁表的锁，一次调用对应一个锁对象
+ * <p>
+ * 其他进程释放锁时没有通知，等待期间先自旋，再以指数退避的方式休眠重试
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class MappedLock implements MTLock {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    private static final int SPIN_TIMES = 64;
+
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+
+    private final String key;
+
+    private final String lockKey;
+
+    private final long timeout; // ms
+
+    private final long expire;  // ms
+
+    private final String errorMsg;
+
+    private final MappedLockTable table;
+
+    private long slot = -1;
+
+    /** 加锁成功后的状态字，释放时比较 */
+    private long state = 0;
+
+    MappedLock(String name, String key, String lockKey, long timeout, long expire, String errorMsg,
+               MappedLockTable table) {
+        this.name = name;
+        this.key = key;
+        this.lockKey = lockKey;
+        this.timeout = timeout;
+        this.expire = expire;
+        this.errorMsg = errorMsg;
+        this.table = table;
+    }
+
+    @Override
+    public boolean lock() {
+        this.slot = table.slot(MappedLockTable.hash(lockKey));
+        if (slot < 0) {
+            LOGGER.error("锁表槽位已用尽，加锁失败, lockKey -->> {}", lockKey);
+            return false;
+        }
+        long owner = table.nextOwner();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long parkNanos = MIN_PARK_NANOS;
+        for (int i = 0; ; i++) {
+            this.state = table.tryAcquire(slot, owner, expire);
+            if (state != 0) {
+                return true;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                LOGGER.warn("在指定的timeout:{}中没有获取到锁, thread -->> {}, lockKey -->> {}, holderPid -->> {}",
+                            timeout, Thread.currentThread().getName(), lockKey, table.holderPid(slot));
+                return false;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                LOGGER.warn("当前线程被中断了, thread -->> {}, lockKey -->> {}", Thread.currentThread().getName(), lockKey);
+                return false;
+            }
+            if (i < SPIN_TIMES) {
+                Thread.yield();
+                continue;
+            }
+            LockSupport.parkNanos(Math.min(parkNanos, remaining));
+            parkNanos = Math.min(parkNanos << 1, MAX_PARK_NANOS);
+        }
+    }
+
+    @Override
+    public void unlock() {
+        if (state == 0) {
+            return;
+        }
+        if (!table.release(slot, state)) {
+            // 持有时间超过了expire，锁已被其他进程接管
+            LOGGER.warn("释放锁时发现锁已不属于自己, thread -->> {}, lockKey -->> {}",
+                        Thread.currentThread().getName(), lockKey);
+        }
+        this.state = 0;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public long getExpire() {
+        return expire;
+    }
+
+    public String getErrorMsg() {
+        return errorMsg;
+    }
+
+    public boolean isLocked() {
+        return state != 0;
+    }
+}
@@ -0,0 +1,60 @@
+package com.niushencheng.support;
+
+import com.niushencheng.LockManager;
+import com.niushencheng.MTLock;
+import com.niushencheng.interceptor.LockAspectSupport;
+import com.niushencheng.interceptor.LockOperation;
+import com.niushencheng.support.mmap.MappedLockTable;
+import lombok.Setter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.io.File;
+
+/**
+ * 单机多进程的锁管理，同一台机器上的jvm通过映射同一个文件共享锁表，见 {@link MappedLockTable}
+ * <p>
+ * 加锁和释放都是共享内存上的一次CAS，不经过网络和系统调用；持有者进程崩溃后锁在expire后可被接管
+ * <p>
+ * 注意！！！
+ * 只能在同一台机器的进程间互斥，所有进程的file和slotCount必需一致；expire为0时锁永不过期，持有者崩溃后无法恢复
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class MappedLockManager implements LockManager, InitializingBean {
+
+    /** 共享的锁表文件，建议放在 /dev/shm 下 */
+    @Setter
+    private String file = new File(System.getProperty("java.io.tmpdir"), "distribute-lock.mmap").getPath();
+
+    /** 槽位数，必需为2的幂且大于不同key的数量，每个槽位占32字节 */
+    @Setter
+    private int slotCount = 64 * 1024;
+
+    /** 锁前缀 */
+    @Setter
+    private String lockPrefix = "MTLock:";
+
+    private MappedLockTable table;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.hasText(file, "file must not be empty");
+        this.table = new MappedLockTable(new File(file), slotCount);
+    }
+
+    @Override
+    public MTLock getLock(LockAspectSupport.LockOperationContext context) {
+        Assert.state(table != null, "MappedLockManager尚未初始化");
+        LockOperation operation = context.getOperation();
+        // 锁状态全部在共享内存中，每次调用创建新的锁对象即可
+        return new MappedLock(context.getName(),
+                              context.getKey(),
+                              lockPrefix + context.getName() + context.getKey(),
+                              operation.getTimeout(),
+                              operation.getExpire(),
+                              operation.getErrorMsg(),
+                              table);
+    }
+}
@@ -0,0 +1,141 @@
+package com.niushencheng.support;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.niushencheng.store.LockStore;
+import com.niushencheng.util.DaemonThreadFactory;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点心跳，后台唯一的线程按intervalMillis在存储中刷新 {@link #NODE_PREFIX} + nodeId，过期时间为ttlMillis
+ * <p>
+ * 开启心跳的节点加锁时在持有者的token上打标记，见 {@link LockOwner#isHeartbeatTagged()}；
+ * 等待者加锁失败时如果持有者带有标记、不是本机，并且持有者节点的心跳已经过期，认为持有者已经宕机，
+ * 按持有者的完整值比较删除后立即重试，不需要等待锁过期；没有标记的持有者(旧版本或没有开启心跳的节点)不会被接管
+ * <p>
+ * 正常关闭时先批量释放持有的锁再删除心跳，释放失败的锁也能被其他节点立即接管
+ * <p>
+ * 注意！！！
+ * ttlMillis需要大于最长的GC停顿以及存储的短暂不可用，否则存活的节点持有的锁可能被接管；
+ * 层级锁的持有者在祖先上还有意向计数，只删除锁本身无法完整接管，层级锁不会被接管，见 {@link HierarchicalLock}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class NodeHeartbeat implements InitializingBean, DisposableBean {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /** 心跳key的前缀，与lockPrefix拼接 */
+    public static final String NODE_PREFIX = "node:";
+
+    private final LockStore lockStore;
+
+    /** 心跳key的前缀 */
+    private final String nodePrefix;
+
+    /** 刷新心跳的间隔 */
+    @Setter
+    private long intervalMillis = 1000;
+
+    /** 心跳的过期时间，需要是intervalMillis的数倍 */
+    @Setter
+    private long ttlMillis = 5000;
+
+    /** 存活的节点，一个刷新间隔内不再查询存储；宕机的节点不缓存 */
+    private Cache<String, Boolean> aliveNodes;
+
+    private final AtomicLong reclaimedCount = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    public NodeHeartbeat(LockStore lockStore, String lockPrefix) {
+        this.lockStore = lockStore;
+        this.nodePrefix = lockPrefix + NODE_PREFIX;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.isTrue(intervalMillis > 0, "intervalMillis必需为正数");
+        Assert.isTrue(ttlMillis > intervalMillis * 2, "ttlMillis需要大于intervalMillis的2倍");
+        this.aliveNodes = CacheBuilder.newBuilder()
+                                      .maximumSize(1024L)
+                                      .expireAfterWrite(intervalMillis, TimeUnit.MILLISECONDS)
+                                      .build();
+        // 第一次心跳同步写入，加锁之前心跳已经存在，不会被其他节点误判为宕机
+        this.beat();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("lock-node-heartbeat-"));
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    beat();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("刷新节点心跳失败, nodeId -->> {}", LockOwner.LOCAL_NODE_ID, e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止心跳并删除，需要在批量释放持有的锁之后调用
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        try {
+            lockStore.compareAndDelete(this.nodeKey(LockOwner.LOCAL_NODE_ID), LockOwner.LOCAL_NODE_ID);
+        } catch (RuntimeException e) {
+            LOGGER.warn("删除节点心跳失败，等待自动过期, nodeId -->> {}", LockOwner.LOCAL_NODE_ID, e);
+        }
+    }
+
+    /**
+     * 节点是否存活
+     *
+     * @param nodeId 持有者的节点标识
+     */
+    public boolean isAlive(String nodeId) {
+        if (LockOwner.LOCAL_NODE_ID.equals(nodeId) || aliveNodes.getIfPresent(nodeId) != null) {
+            return true;
+        }
+        if (lockStore.get(this.nodeKey(nodeId)) == null) {
+            return false;
+        }
+        aliveNodes.put(nodeId, Boolean.TRUE);
+        return true;
+    }
+
+    /** 接管宕机节点的锁的次数 */
+    public long getReclaimedCount() {
+        return reclaimedCount.get();
+    }
+
+    void recordReclaim() {
+        reclaimedCount.incrementAndGet();
+    }
+
+    private void beat() {
+        // nodeId每个进程唯一，心跳的值即nodeId，不会与其他进程的心跳冲突
+        String nodeKey = this.nodeKey(LockOwner.LOCAL_NODE_ID);
+        if (!lockStore.compareAndExpire(nodeKey, LockOwner.LOCAL_NODE_ID, ttlMillis)) {
+            lockStore.add(nodeKey, LockOwner.LOCAL_NODE_ID, ttlMillis);
+        }
+    }
+
+    private String nodeKey(String nodeId) {
+        return nodePrefix + nodeId;
+    }
+}
@@ -1,20 +1,16 @@
 package com.niushencheng.support;
 
-import com.niushencheng.MTLock;
+import com.niushencheng.store.LockStore;
 
-public class RedisLock implements MTLock {
-    @Override
-    public boolean lock() {
-        return false;
-    }
-
-    @Override
-    public void unlock() {
-
-    }
+/**
+ * 使用redis作为存储锁信息, 过期交给redis的TTL，一次 SET NX PX 即完成一次加锁尝试
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class RedisLock extends StoreLock {
 
-    @Override
-    public String getName() {
-        return null;
+    RedisLock(String name, String key, long timeout, long expire, String errorMsg, LockStore lockStore) {
+        super(name, key, timeout, expire, errorMsg, lockStore);
     }
 }
@@ -1,12 +1,58 @@
 package com.niushencheng.support;
 
-import com.niushencheng.LockManager;
-import com.niushencheng.MTLock;
-import com.niushencheng.interceptor.LockAspectSupport;
+import com.niushencheng.store.LockStore;
+import com.niushencheng.support.redis.RedisClient;
+import com.niushencheng.support.redis.RedisLockStore;
+import lombok.Setter;
+
+/**
+ * 使用redis存储锁信息的锁管理，默认使用非阻塞的 {@link RedisClient}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class RedisLockManager extends AbstractStoreLockManager {
+
+    @Setter
+    private String host = "127.0.0.1";
+
+    @Setter
+    private int port = 6379;
+
+    /** 复用的长连接数，所有锁命令在这些连接上以管道方式发送 */
+    @Setter
+    private int connections = 2;
+
+    /** 建立连接的超时时间 */
+    @Setter
+    private long connectTimeoutMillis = 1000;
+
+    /** 单个命令的超时时间 */
+    @Setter
+    private long commandTimeoutMillis = 1000;
+
+    private RedisClient redisClient;
+
+    @Override
+    protected LockStore createLockStore() throws Exception {
+        this.redisClient = new RedisClient(host, port, connections);
+        this.redisClient.setConnectTimeoutMillis(connectTimeoutMillis);
+        this.redisClient.setCommandTimeoutMillis(commandTimeoutMillis);
+        this.redisClient.start();
+        return new RedisLockStore(redisClient);
+    }
+
+    @Override
+    protected AbstractStoreLock createLock(String name, String key, long timeout, long expire, String errorMsg,
+                                           LockStore lockStore) {
+        return new RedisLock(name, key, timeout, expire, errorMsg, lockStore);
+    }
 
-public class RedisLockManager implements LockManager {
     @Override
-    public MTLock getLock(LockAspectSupport.LockOperationContext context) {
-        return null;
+    public void destroy() throws Exception {
+        super.destroy();
+        if (this.redisClient != null) {
+            this.redisClient.close();
+        }
     }
 }
@@ -0,0 +1,67 @@
+package com.niushencheng.support;
+
+import lombok.Setter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据当前持有者已经持有的时间以及该锁持有时间的分布，安排等待者下一次尝试的时间
+ * <p>
+ * 已经持有了t的持有者，总持有时间按分布中大于t的部分估计：下一次尝试安排在其retryPercentile分位数附近；
+ * 在剩余的timeout内释放的概率低于giveUpProbability时直接放弃，不再空等到超时
+ * <p>
+ * 注意！！！
+ * 持有时间按持有者所在节点的加锁时间计算，节点之间需要做好时钟同步；
+ * 样本不足、持有者已经超过所有样本或存储中的值不是持有者格式时无法估计，使用原来的轮询间隔
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class RetryScheduler {
+
+    private final HoldTimeTracker holdTimeTracker;
+
+    /** 下一次尝试安排在剩余持有时间的该分位数 */
+    @Setter
+    private double retryPercentile = 50;
+
+    /** 持有者在剩余的timeout内释放的概率低于该值时放弃 */
+    @Setter
+    private double giveUpProbability = 0.05;
+
+    /** 两次尝试之间的最小间隔 */
+    @Setter
+    private long minRetryMillis = 5;
+
+    public RetryScheduler(HoldTimeTracker holdTimeTracker) {
+        this.holdTimeTracker = holdTimeTracker;
+    }
+
+    /**
+     * 下一次尝试前等待的时间
+     *
+     * @param name           锁名称
+     * @param holder         查询到的持有者，查询时已经释放为null
+     * @param remainingNanos 剩余的timeout
+     * @param defaultNanos   无法估计时使用的等待时间
+     *
+     * @return 等待的纳秒数，不超过remainingNanos；应当放弃时返回-1
+     */
+    public long nextDelayNanos(String name, LockOwner holder, long remainingNanos, long defaultNanos) {
+        if (holder == null) {
+            // 查询时锁刚好被释放，尽快重试
+            return Math.min(TimeUnit.MILLISECONDS.toNanos(minRetryMillis), remainingNanos);
+        }
+        long heldNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - holder.getAcquiredAt()));
+        double probability = holdTimeTracker.releaseProbability(name, heldNanos, remainingNanos);
+        if (probability < 0) {
+            return Math.min(defaultNanos, remainingNanos);
+        }
+        if (probability < giveUpProbability) {
+            return -1;
+        }
+        long expectedHold = holdTimeTracker.percentileGiven(name, heldNanos, retryPercentile);
+        long delay = Math.max(TimeUnit.MILLISECONDS.toNanos(minRetryMillis), expectedHold - heldNanos);
+        return Math.min(delay, remainingNanos);
+    }
+}
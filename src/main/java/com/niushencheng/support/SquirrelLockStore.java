@@ -0,0 +1,67 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.AbstractLockStore;
+
+/**
+ * 使用美团的松鼠作为锁存储
+ * <p>
+ * 注意！！！
+ * 松鼠客户端只提供了get、del、add三个操作，compare类的操作是先get再比较后执行的，并不是原子操作，
+ * 比较和执行之间存在很小的窗口期；续租通过del+add实现，窗口期内被其他人抢占时续租会失败，不会出现两个持有者
+ * <p>
+ * 松鼠的过期时间单位为秒，不足1秒的部分向上取整
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class SquirrelLockStore extends AbstractLockStore {
+
+    private final SquirrelClient squirrelClient;
+
+    private final String category;
+
+    public SquirrelLockStore(SquirrelClient squirrelClient) {
+        this(squirrelClient, CategoryConstants.PASS_DISTRIBUTE_LOCK_CATEGORY);
+    }
+
+    public SquirrelLockStore(SquirrelClient squirrelClient, String category) {
+        this.squirrelClient = squirrelClient;
+        this.category = category;
+    }
+
+    @Override
+    public boolean add(String key, String value, long expireMillis) {
+        return squirrelClient.string.add(category, key, value, this.toSeconds(expireMillis));
+    }
+
+    @Override
+    public String get(String key) {
+        Object value = squirrelClient.get(category, key);
+        return value == null
+                ? null
+                : String.valueOf(value);
+    }
+
+    @Override
+    public boolean del(String key) {
+        return squirrelClient.del(category, key);
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expect) {
+        return expect.equals(this.get(key)) && this.del(key);
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expect, long expireMillis) {
+        return expect.equals(this.get(key)) && this.del(key) && this.add(key, expect, expireMillis);
+    }
+
+    /** 0表示永不过期 */
+    private int toSeconds(long expireMillis) {
+        if (expireMillis <= 0) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (expireMillis + 999) / 1000);
+    }
+}
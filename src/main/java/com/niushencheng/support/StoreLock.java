@@ -0,0 +1,75 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LockStore;
+import com.niushencheng.store.StoreCommand;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 过期完全交给存储的锁，一次add即完成一次加锁尝试；
+ * 存储中的值为编码后的 {@link LockOwner}，释放时只删除自己加的锁
+ * <p>
+ * 适用于支持毫秒级TTL且compare操作原子的存储
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class StoreLock extends AbstractStoreLock {
+
+    /** 当前的持有者，同一个锁对象同时只会有一个线程持有 */
+    private volatile LockOwner owner;
+
+    protected StoreLock(String name, String key, long timeout, long expire, String errorMsg, LockStore lockStore) {
+        super(name, key, timeout, expire, errorMsg, lockStore);
+    }
+
+    @Override
+    protected boolean acquire(long timeStamp) {
+        LockOwner candidate = this.newOwner();
+        if (this.isHolderAware()) {
+            // 加锁失败时顺带取回当前的持有者，支持管道的存储仍然只有一次网络往返
+            List<Object> results = lockStore.execute(Arrays.asList(
+                    StoreCommand.add(this.getLockKey(), candidate.encode(), this.getLease()),
+                    StoreCommand.get(this.getLockKey())));
+            if (Boolean.TRUE.equals(results.get(0))) {
+                this.owner = candidate;
+                return true;
+            }
+            this.observeHolder((String) results.get(1));
+            return false;
+        }
+        if (lockStore.add(this.getLockKey(), candidate.encode(), this.getLease())) {
+            this.owner = candidate;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean release() {
+        LockOwner current = this.takeOwner();
+        return current != null && lockStore.compareAndDelete(this.getLockKey(), current.encode());
+    }
+
+    @Override
+    protected List<StoreCommand> detach() {
+        LockOwner current = this.takeOwner();
+        return current == null
+                ? Collections.<StoreCommand>emptyList()
+                : Collections.singletonList(StoreCommand.compareAndDelete(this.getLockKey(), current.encode()));
+    }
+
+    /** 释放和关闭时的批量释放可能并发，只有一方能拿到持有者 */
+    private synchronized LockOwner takeOwner() {
+        LockOwner current = this.owner;
+        this.owner = null;
+        return current;
+    }
+
+    @Override
+    public LockOwner getOwner() {
+        return owner;
+    }
+}
@@ -0,0 +1,251 @@
+package com.niushencheng.support;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import com.niushencheng.store.LockStore;
+import com.niushencheng.store.StoreCommand;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 基于 {@link LockStore#incr(String, long, long)} 的滑动窗口限流，见 {@link com.niushencheng.annotation.DistributeRateLimit}
+ * <p>
+ * 存储中每个key每个窗口一个计数，当前窗口的用量按 上一个窗口的计数 * 上一个窗口在滑动窗口内的比例 + 当前窗口的计数 估计；
+ * 节点一次预取leaseSize次，在存储中原子地计入当前窗口，预取到的次数在本机消耗，消耗完或窗口切换后再预取，
+ * 大部分检查不访问存储
+ * <p>
+ * 剩余的额度不足leaseSize时只拿剩余的部分，多计的部分立即退还；窗口切换时本机没有用完的次数退还给上一个窗口，
+ * 避免高估下一个窗口的用量；额度用完后在窗口的1/10内不再访问存储，直接拒绝
+ * <p>
+ * 本机的额度按CAS消耗，检查时不加锁；预取在锁外访问存储，同一个key同时只有一次预取，其他线程等待它的结果，
+ * 存储变慢时不会有线程阻塞在monitor上
+ * <p>
+ * 注意！！！
+ * 窗口按各节点的时钟划分，节点之间需要做好时钟同步；每个节点最多持有leaseSize次没有用完的额度，
+ * 节点多、leaseSize大时，流量集中的节点可能在总量未满时被拒绝
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class StoreRateLimiter {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /** 存储中计数的key前缀 */
+    public static final String KEY_PREFIX = "MTLock:rate:";
+
+    private final LockStore lockStore;
+
+    /** 存储不可用时是否放行 */
+    @Setter
+    private boolean failOpen = true;
+
+    /** 本机的预取额度，按限流的完整key */
+    private final Cache<String, Bucket> buckets = CacheBuilder.newBuilder()
+                                                              .maximumSize(10000L)
+                                                              .expireAfterAccess(10, TimeUnit.MINUTES)
+                                                              .build();
+
+    private final AtomicLong leaseCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public StoreRateLimiter(LockStore lockStore) {
+        this.lockStore = lockStore;
+    }
+
+    /**
+     * 尝试获取一次执行的许可
+     *
+     * @param key          限流的完整key
+     * @param permits      每个窗口允许的次数
+     * @param windowMillis 窗口长度
+     * @param leaseSize    每次预取的次数
+     *
+     * @return 没有超过限制返回true
+     */
+    public boolean tryAcquire(String key, long permits, long windowMillis, long leaseSize) {
+        Bucket bucket = buckets.getIfPresent(key);
+        if (bucket == null) {
+            Bucket created = new Bucket(KEY_PREFIX + key);
+            bucket = buckets.asMap().putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        boolean acquired;
+        try {
+            acquired = bucket.tryAcquire(permits, windowMillis, Math.min(leaseSize, permits));
+        } catch (RuntimeException e) {
+            LOGGER.warn("限流存储不可用, thread -->> {}, key -->> {}, failOpen -->> {}",
+                        Thread.currentThread().getName(),
+                        key,
+                        failOpen,
+                        e);
+            acquired = failOpen;
+        }
+        if (!acquired) {
+            rejectedCount.incrementAndGet();
+        }
+        return acquired;
+    }
+
+    /** 访问存储预取额度的次数 */
+    public long getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    /** 被拒绝的次数 */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private class Bucket {
+
+        private final String storeKey;
+
+        /** 本机在当前窗口的额度，预取完成后整体替换 */
+        private final AtomicReference<Lease> lease = new AtomicReference<Lease>(new Lease(-1, 0, 0));
+
+        /** 进行中的预取，同一个key同时只有一个线程访问存储，其他线程等待它的结果 */
+        private final AtomicReference<SettableFuture<Lease>> refilling = new AtomicReference<SettableFuture<Lease>>();
+
+        Bucket(String storeKey) {
+            this.storeKey = storeKey;
+        }
+
+        /**
+         * 本机的额度按CAS消耗，不加锁；额度用完时由一个线程在锁外访问存储，其他线程等待同一次预取
+         */
+        boolean tryAcquire(long permits, long windowMillis, long leaseSize) {
+            while (true) {
+                long now = System.currentTimeMillis();
+                long current = now / windowMillis;
+                Lease local = lease.get();
+                if (local.window == current) {
+                    if (local.take()) {
+                        return true;
+                    }
+                    if (now < local.retryAt) {
+                        return false;
+                    }
+                }
+                SettableFuture<Lease> inFlight = refilling.get();
+                if (inFlight != null) {
+                    Futures.getUnchecked(inFlight);
+                    continue;
+                }
+                SettableFuture<Lease> refill = SettableFuture.create();
+                if (!refilling.compareAndSet(null, refill)) {
+                    continue;
+                }
+                Lease before = lease.get();
+                Lease refilled;
+                try {
+                    refilled = this.refill(before, now, current, permits, windowMillis, leaseSize);
+                    lease.set(refilled);
+                    refill.set(refilled);
+                } catch (RuntimeException e) {
+                    refill.setException(e);
+                    throw e;
+                } finally {
+                    refilling.compareAndSet(refill, null);
+                }
+                if (refilled == before) {
+                    continue;
+                }
+                // 预取到的第一次由本线程使用，没有拿到额度时按retryAt拒绝
+                return refilled.granted;
+            }
+        }
+
+        private Lease refill(Lease local, long now, long current, long permits, long windowMillis, long leaseSize) {
+            if (local.window == current && (local.tokens.get() > 0 || now < local.retryAt)) {
+                // 等待期间其他线程已经完成了预取
+                return local;
+            }
+            if (local.window != current) {
+                long left = local.tokens.getAndSet(0);
+                if (left > 0 && current == local.window + 1) {
+                    // 退还上一个窗口没有用完的额度，下一个窗口按真实的用量估计
+                    lockStore.incr(windowKey(local.window), -left, windowMillis * 2);
+                }
+            }
+            double elapsed = (double) (now - current * windowMillis) / windowMillis;
+            long granted = this.lease(current, permits, windowMillis, leaseSize, elapsed);
+            return granted > 0
+                    ? new Lease(current, granted - 1, 0, true)
+                    : new Lease(current, 0, now + Math.max(1, windowMillis / 10));
+        }
+
+        private long lease(long window, long permits, long windowMillis, long leaseSize, double elapsed) {
+            leaseCount.incrementAndGet();
+            String currentKey = windowKey(window);
+            List<Object> results = lockStore.execute(Arrays.asList(
+                    StoreCommand.incr(currentKey, leaseSize, windowMillis * 2),
+                    StoreCommand.get(windowKey(window - 1))));
+            long total = ((Number) results.get(0)).longValue();
+            Object previous = results.get(1);
+            long previousCount = previous == null
+                    ? 0
+                    : Long.parseLong(String.valueOf(previous));
+            // 滑动窗口：上一个窗口按还在窗口内的比例计入
+            long budget = permits - (long) Math.ceil(previousCount * (1 - elapsed));
+            long granted = Math.max(0, Math.min(leaseSize, budget - (total - leaseSize)));
+            if (granted < leaseSize) {
+                lockStore.incr(currentKey, granted - leaseSize, windowMillis * 2);
+            }
+            return granted;
+        }
+
+        private String windowKey(long index) {
+            return storeKey + ":" + index;
+        }
+    }
+
+    private static class Lease {
+
+        /** 窗口序号 */
+        private final long window;
+
+        /** 本机在该窗口还可以使用的次数 */
+        private final AtomicLong tokens;
+
+        /** 额度用完后，在该时间之前直接拒绝 */
+        private final long retryAt;
+
+        /** 预取时是否拿到了额度，拿到的第一次由预取的线程使用，不计入tokens */
+        private final boolean granted;
+
+        Lease(long window, long tokens, long retryAt) {
+            this(window, tokens, retryAt, false);
+        }
+
+        Lease(long window, long tokens, long retryAt, boolean granted) {
+            this.window = window;
+            this.tokens = new AtomicLong(tokens);
+            this.retryAt = retryAt;
+            this.granted = granted;
+        }
+
+        boolean take() {
+            long current;
+            do {
+                current = tokens.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!tokens.compareAndSet(current, current - 1));
+            return true;
+        }
+    }
+}
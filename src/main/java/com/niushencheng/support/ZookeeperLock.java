@@ -0,0 +1,257 @@
+package com.niushencheng.support;
+
+import com.niushencheng.MTLock;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于zookeeper临时顺序节点的锁，一次调用对应一个锁对象
+ * <p>
+ * 加锁时在锁路径下创建临时顺序节点，序号最小者持有锁，其余的只监听前一个节点的删除事件
+ * <p>
+ * 节点名称带有本次加锁的GUID，_c_GUID-lock-序号；创建时连接中断，请求可能已经在服务端生效而响应丢失，
+ * 按GUID在子节点中查找自己的节点，不会留下没有人释放、会话存活期间一直排在最前面的孤儿节点；
+ * 排队按名称末尾的序号排序，与GUID无关
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class ZookeeperLock implements MTLock {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    private static final String NODE_PREFIX = "lock-";
+
+    /** 带GUID的节点名称的前缀 */
+    private static final String PROTECTED_PREFIX = "_c_";
+
+    /** 顺序节点名称末尾的序号长度 */
+    private static final int SEQUENCE_LENGTH = 10;
+
+    /** 按名称末尾的序号排序 */
+    private static final Comparator<String> BY_SEQUENCE = new Comparator<String>() {
+        @Override
+        public int compare(String left, String right) {
+            return sequence(left).compareTo(sequence(right));
+        }
+    };
+
+    /** 创建时连接中断后重试的间隔 */
+    private static final long RETRY_INTERVAL_MILLIS = 100;
+
+    private final String name;
+
+    private final String key;
+
+    private final long timeout; // ms
+
+    private final String errorMsg;
+
+    private final String lockPath;
+
+    private final ZookeeperLockManager manager;
+
+    /** 自己创建的节点的完整路径 */
+    private String ownNode;
+
+    /** 自己的节点名称的前缀，_c_GUID-，用于在连接中断后查找自己的节点 */
+    private String ownPrefix;
+
+    /** 创建节点时使用的会话，会话变化后不能再操作旧节点 */
+    private ZooKeeper session;
+
+    private boolean locked = false;
+
+    ZookeeperLock(String name, String key, long timeout, String errorMsg, ZookeeperLockManager manager) {
+        this.name = name;
+        this.key = key;
+        this.timeout = timeout;
+        this.errorMsg = errorMsg;
+        this.manager = manager;
+        this.lockPath = manager.lockPath(name, key);
+    }
+
+    @Override
+    public boolean lock() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            this.session = manager.zooKeeper();
+            this.ownNode = this.createOwnNode(deadline);
+            String ownName = ownNode.substring(lockPath.length() + 1);
+            for (;;) {
+                List<String> children = session.getChildren(lockPath, false);
+                Collections.sort(children, BY_SEQUENCE);
+                int index = children.indexOf(ownName);
+                if (index < 0) {
+                    // 会话失效导致节点被删除
+                    LOGGER.warn("自己创建的锁节点不存在了, lockPath -->> {}, node -->> {}", lockPath, ownNode);
+                    this.ownNode = null;
+                    this.ownPrefix = null;
+                    return false;
+                }
+                if (index == 0) {
+                    this.locked = true;
+                    LOGGER.info("zookeeper锁加锁成功, thread -->> {}, lockPath -->> {}, node -->> {}",
+                                Thread.currentThread().getName(), lockPath, ownNode);
+                    return true;
+                }
+                // 只监听前一个节点，避免惊群
+                final CountDownLatch released = new CountDownLatch(1);
+                String predecessor = lockPath + "/" + children.get(index - 1);
+                boolean exists = session.exists(predecessor, new Watcher() {
+                    @Override
+                    public void process(WatchedEvent event) {
+                        released.countDown();
+                    }
+                }) != null;
+                if (!exists) {
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !released.await(remaining, TimeUnit.NANOSECONDS)) {
+                    LOGGER.warn("在指定的timeout:{}中没有获取到zookeeper锁, thread -->> {}, lockPath -->> {}",
+                                timeout, Thread.currentThread().getName(), lockPath);
+                    this.deleteOwnNode();
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("当前线程被中断了, thread -->> {}, lockPath -->> {}", Thread.currentThread().getName(), lockPath);
+            Thread.currentThread().interrupt();
+            this.deleteOwnNode();
+            return false;
+        } catch (KeeperException e) {
+            LOGGER.error("zookeeper加锁异常, lockPath -->> {}", lockPath, e);
+            this.deleteOwnNode();
+            return false;
+        }
+    }
+
+    @Override
+    public void unlock() {
+        this.deleteOwnNode();
+        if (locked) {
+            this.locked = false;
+            // 没有等待者时顺便清理锁路径，有子节点时删除会失败，忽略即可
+            try {
+                session.delete(lockPath, -1);
+            } catch (KeeperException.NotEmptyException | KeeperException.NoNodeException e) {
+                // 仍有等待者或已被清理
+            } catch (Exception e) {
+                LOGGER.debug("清理锁路径失败, lockPath -->> {}", lockPath, e);
+            }
+        }
+    }
+
+    private String createOwnNode(long deadline) throws KeeperException, InterruptedException {
+        byte[] data = (manager.nodeId() + "|" + LockOwner.currentThread()).getBytes(StandardCharsets.UTF_8);
+        this.ownPrefix = PROTECTED_PREFIX + UUID.randomUUID().toString() + "-";
+        // 上一次创建时连接中断，节点可能已经创建
+        boolean maybeCreated = false;
+        for (;;) {
+            try {
+                if (maybeCreated) {
+                    String created = this.findOwnNode();
+                    if (created != null) {
+                        return created;
+                    }
+                }
+                manager.ensurePath(lockPath);
+                return session.create(lockPath + "/" + ownPrefix + NODE_PREFIX, data,
+                                      ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+            } catch (KeeperException.NoNodeException e) {
+                // 锁路径被释放锁的一方并发清理了，自己的节点也不存在，重新创建
+                maybeCreated = false;
+            } catch (KeeperException.ConnectionLossException e) {
+                maybeCreated = true;
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    throw e;
+                }
+                LOGGER.warn("创建zookeeper锁节点时连接中断，按GUID查找后重试, lockPath -->> {}, prefix -->> {}",
+                            lockPath, ownPrefix);
+                Thread.sleep(Math.min(remaining, RETRY_INTERVAL_MILLIS));
+            }
+        }
+    }
+
+    /**
+     * 按GUID查找自己创建的节点
+     *
+     * @return 不存在时返回null
+     */
+    private String findOwnNode() throws KeeperException, InterruptedException {
+        for (String child : session.getChildren(lockPath, false)) {
+            if (child.startsWith(ownPrefix)) {
+                return lockPath + "/" + child;
+            }
+        }
+        return null;
+    }
+
+    private void deleteOwnNode() {
+        if (ownNode == null && ownPrefix == null) {
+            return;
+        }
+        try {
+            // 创建时连接中断、没有拿到节点路径时按GUID查找
+            String node = ownNode != null
+                    ? ownNode
+                    : this.findOwnNode();
+            if (node != null) {
+                session.delete(node, -1);
+            }
+        } catch (KeeperException.NoNodeException e) {
+            // 会话失效时节点已被删除
+        } catch (Exception e) {
+            LOGGER.error("删除zookeeper锁节点失败，等待会话失效后自动删除, lockPath -->> {}, node -->> {}",
+                         lockPath, ownNode != null
+                                 ? ownNode
+                                 : ownPrefix, e);
+        } finally {
+            this.ownNode = null;
+            this.ownPrefix = null;
+        }
+    }
+
+    private static String sequence(String child) {
+        return child.length() > SEQUENCE_LENGTH
+                ? child.substring(child.length() - SEQUENCE_LENGTH)
+                : child;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public String getErrorMsg() {
+        return errorMsg;
+    }
+
+    public boolean isLocked() {
+        return locked;
+    }
+}
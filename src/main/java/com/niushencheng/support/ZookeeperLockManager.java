@@ -0,0 +1,163 @@
+package com.niushencheng.support;
+
+import com.niushencheng.LockManager;
+import com.niushencheng.MTLock;
+import com.niushencheng.interceptor.LockAspectSupport;
+import com.niushencheng.interceptor.LockOperation;
+import lombok.Setter;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.net.URLEncoder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用zookeeper的临时顺序节点实现的锁管理
+ * <p>
+ * 锁的归属和zookeeper会话绑定，持有者宕机后会话失效，节点立即被删除，不需要等待expire；
+ * 每个等待者只监听自己的前一个节点，释放时只唤醒一个等待者，没有轮询也没有惊群
+ * <p>
+ * 注意！！！
+ * 本实现中 {@link com.niushencheng.annotation.DistributeLock#expire()} 不生效，锁的存活由会话决定
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class ZookeeperLockManager implements LockManager, InitializingBean, DisposableBean {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /** zookeeper地址，如 127.0.0.1:2181 */
+    @Setter
+    private String connectString;
+
+    /** 会话超时时间，持有者宕机后最多经过该时间锁被释放 */
+    @Setter
+    private int sessionTimeoutMillis = 10 * 1000;
+
+    /** 建立连接的超时时间 */
+    @Setter
+    private long connectTimeoutMillis = 10 * 1000;
+
+    /** 所有锁节点的根路径 */
+    @Setter
+    private String rootPath = "/MTLock";
+
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    private volatile ZooKeeper zooKeeper;
+
+    private volatile boolean running = false;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.hasText(connectString, "connectString must not be empty");
+        this.running = true;
+        this.zooKeeper = this.connect();
+        this.ensurePath(rootPath);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.running = false;
+        if (zooKeeper != null) {
+            zooKeeper.close();
+        }
+    }
+
+    @Override
+    public MTLock getLock(LockAspectSupport.LockOperationContext context) {
+        Assert.state(zooKeeper != null, "ZookeeperLockManager尚未初始化");
+        LockOperation operation = context.getOperation();
+        // 每次调用创建新的锁对象，排队完全交给zookeeper的顺序节点
+        return new ZookeeperLock(context.getName(),
+                                 context.getKey(),
+                                 operation.getTimeout(),
+                                 operation.getErrorMsg(),
+                                 this);
+    }
+
+    ZooKeeper zooKeeper() {
+        return zooKeeper;
+    }
+
+    String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 锁对应的父节点路径，key中可能包含'/'，需要编码
+     */
+    String lockPath(String name, String key) {
+        try {
+            return rootPath + "/" + URLEncoder.encode(name + key, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 逐级创建持久节点，已存在时忽略
+     */
+    void ensurePath(String path) throws KeeperException, InterruptedException {
+        if (zooKeeper.exists(path, false) != null) {
+            return;
+        }
+        int index = path.lastIndexOf('/');
+        if (index > 0) {
+            this.ensurePath(path.substring(0, index));
+        }
+        try {
+            zooKeeper.create(path, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException e) {
+            // 并发创建，忽略
+        }
+    }
+
+    private ZooKeeper connect() throws IOException, InterruptedException {
+        final CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper client = new ZooKeeper(connectString, sessionTimeoutMillis, new Watcher() {
+            @Override
+            public void process(WatchedEvent event) {
+                if (event.getState() == Event.KeeperState.SyncConnected) {
+                    connected.countDown();
+                } else if (event.getState() == Event.KeeperState.Disconnected) {
+                    LOGGER.warn("zookeeper连接断开，持有的锁在会话超时前仍然有效, connectString -->> {}", connectString);
+                } else if (event.getState() == Event.KeeperState.Expired) {
+                    LOGGER.error("zookeeper会话失效，本节点持有的锁已全部释放, connectString -->> {}", connectString);
+                    reconnect();
+                }
+            }
+        });
+        if (!connected.await(connectTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("在connectTimeoutMillis内没有连接上zookeeper，后台继续重试, connectString -->> {}", connectString);
+        }
+        return client;
+    }
+
+    private void reconnect() {
+        if (!running) {
+            return;
+        }
+        try {
+            ZooKeeper old = this.zooKeeper;
+            this.zooKeeper = this.connect();
+            old.close();
+        } catch (Exception e) {
+            LOGGER.error("重建zookeeper会话失败, connectString -->> {}", connectString, e);
+        }
+    }
+}
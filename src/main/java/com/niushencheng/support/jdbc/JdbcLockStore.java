@@ -0,0 +1,274 @@
+package com.niushencheng.support.jdbc;
+
+import com.niushencheng.store.AbstractLockStore;
+import com.niushencheng.util.DaemonThreadFactory;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用关系型数据库的一张表存储锁信息，表结构见 distribute-lock-jdbc.sql
+ * <p>
+ * 加锁为基于唯一键的insert，key已存在但已过期时通过一条带过期条件的update接管；
+ * 释放和续租分别为带持有者条件的delete和update；计数为基于当前值的compare-and-set循环；
+ * 过期的记录由后台唯一的清理线程按批次删除，等待者不需要自己查询、删除
+ * <p>
+ * 注意！！！
+ * 过期时间使用各节点的本地时钟计算，节点之间需要做好时钟同步；
+ * 表中的lock_key最长为768个字符，业务key可能更长时使用COMPACT编码，见 {@link com.niushencheng.support.LockKeyEncoder}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class JdbcLockStore extends AbstractLockStore implements InitializingBean, DisposableBean {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /** 永不过期时使用的过期时间 */
+    private static final long NEVER_EXPIRE = Long.MAX_VALUE;
+
+    private final DataSource dataSource;
+
+    /** 表名 */
+    @Setter
+    private String tableName = "distribute_lock";
+
+    /** 清理过期记录的间隔 */
+    @Setter
+    private long sweepIntervalMillis = 1000;
+
+    /** 单批次清理的最多记录数 */
+    @Setter
+    private int sweepBatchSize = 500;
+
+    private ScheduledExecutorService sweeper;
+
+    private String insertSql;
+
+    private String takeOverSql;
+
+    private String selectSql;
+
+    private String deleteSql;
+
+    private String compareAndDeleteSql;
+
+    private String compareAndExpireSql;
+
+    private String compareAndSetSql;
+
+    private String selectExpiredSql;
+
+    private String deleteExpiredSql;
+
+    public JdbcLockStore(DataSource dataSource) {
+        Assert.notNull(dataSource, "dataSource must not be null");
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.isTrue(tableName.matches("[A-Za-z_][A-Za-z0-9_.]*"), "非法的表名: " + tableName);
+        Assert.isTrue(sweepBatchSize > 0, "sweepBatchSize必需为正数");
+        this.insertSql = "INSERT INTO " + tableName + " (lock_key, lock_value, expire_at) VALUES (?, ?, ?)";
+        this.takeOverSql = "UPDATE " + tableName + " SET lock_value = ?, expire_at = ? WHERE lock_key = ? AND expire_at < ?";
+        this.selectSql = "SELECT lock_value FROM " + tableName + " WHERE lock_key = ? AND expire_at >= ?";
+        this.deleteSql = "DELETE FROM " + tableName + " WHERE lock_key = ? AND expire_at >= ?";
+        this.compareAndDeleteSql = "DELETE FROM " + tableName + " WHERE lock_key = ? AND lock_value = ? AND expire_at >= ?";
+        this.compareAndExpireSql = "UPDATE " + tableName + " SET expire_at = ? WHERE lock_key = ? AND lock_value = ? AND expire_at >= ?";
+        this.compareAndSetSql = "UPDATE " + tableName + " SET lock_value = ?, expire_at = ? WHERE lock_key = ? AND lock_value = ? AND expire_at >= ?";
+        this.selectExpiredSql = "SELECT lock_key FROM " + tableName + " WHERE expire_at < ?";
+        this.deleteExpiredSql = "DELETE FROM " + tableName + " WHERE lock_key = ? AND expire_at < ?";
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("jdbc-lock-sweeper-"));
+        this.sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweepExpired();
+                } catch (Exception e) {
+                    LOGGER.warn("清理过期的锁记录失败, table -->> {}", tableName, e);
+                }
+            }
+        }, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean add(String key, String value, long expireMillis) {
+        long now = System.currentTimeMillis();
+        long expireAt = this.expireAt(now, expireMillis);
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+                statement.setString(1, key);
+                statement.setString(2, value);
+                statement.setLong(3, expireAt);
+                return statement.executeUpdate() == 1;
+            } catch (SQLException e) {
+                if (!this.isDuplicateKey(e)) {
+                    throw e;
+                }
+            }
+            // key已存在，只有已过期时才能接管
+            try (PreparedStatement statement = connection.prepareStatement(takeOverSql)) {
+                statement.setString(1, value);
+                statement.setLong(2, expireAt);
+                statement.setString(3, key);
+                statement.setLong(4, now);
+                return statement.executeUpdate() == 1;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("jdbc加锁失败, key -->> " + key, e);
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(selectSql)) {
+            statement.setString(1, key);
+            statement.setLong(2, System.currentTimeMillis());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next()
+                        ? resultSet.getString(1)
+                        : null;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("jdbc查询锁失败, key -->> " + key, e);
+        }
+    }
+
+    @Override
+    public boolean del(String key) {
+        return this.update(deleteSql, key, System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expect) {
+        return this.update(compareAndDeleteSql, key, expect, System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expect, long expireMillis) {
+        long now = System.currentTimeMillis();
+        return this.update(compareAndExpireSql, this.expireAt(now, expireMillis), key, expect, now);
+    }
+
+    @Override
+    public boolean supportsIncr() {
+        return true;
+    }
+
+    @Override
+    public boolean isPipelined() {
+        return false;
+    }
+
+    @Override
+    public long incr(String key, long delta, long expireMillis) {
+        for (;;) {
+            String current = this.get(key);
+            long count = (current == null
+                    ? 0
+                    : Long.parseLong(current)) + delta;
+            if (current == null) {
+                if (count <= 0 || this.add(key, String.valueOf(count), expireMillis)) {
+                    return count;
+                }
+            } else if (count <= 0) {
+                if (this.compareAndDelete(key, current)) {
+                    return count;
+                }
+            } else {
+                long now = System.currentTimeMillis();
+                if (this.update(compareAndSetSql, String.valueOf(count), this.expireAt(now, expireMillis), key, current, now)) {
+                    return count;
+                }
+            }
+        }
+    }
+
+    /**
+     * 按批次删除过期的记录，直到没有过期记录为止
+     *
+     * @return 删除的记录数
+     */
+    public int sweepExpired() throws SQLException {
+        int total = 0;
+        for (;;) {
+            long now = System.currentTimeMillis();
+            List<String> keys = new ArrayList<String>(sweepBatchSize);
+            try (Connection connection = dataSource.getConnection()) {
+                try (PreparedStatement statement = connection.prepareStatement(selectExpiredSql)) {
+                    statement.setMaxRows(sweepBatchSize);
+                    statement.setLong(1, now);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            keys.add(resultSet.getString(1));
+                        }
+                    }
+                }
+                if (keys.isEmpty()) {
+                    return total;
+                }
+                // 带上过期条件，避免删除刚被接管的记录
+                try (PreparedStatement statement = connection.prepareStatement(deleteExpiredSql)) {
+                    for (String key : keys) {
+                        statement.setString(1, key);
+                        statement.setLong(2, now);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+            total += keys.size();
+            LOGGER.debug("清理过期的锁记录, table -->> {}, size -->> {}", tableName, keys.size());
+            if (keys.size() < sweepBatchSize) {
+                return total;
+            }
+        }
+    }
+
+    private boolean update(String sql, Object... args) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            return statement.executeUpdate() > 0;
+        } catch (SQLException e) {
+            throw new IllegalStateException("jdbc操作锁失败, sql -->> " + sql, e);
+        }
+    }
+
+    private long expireAt(long now, long expireMillis) {
+        return expireMillis > 0
+                ? now + expireMillis
+                : NEVER_EXPIRE;
+    }
+
+    /** 唯一键冲突，SQLState以23开头 */
+    private boolean isDuplicateKey(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+}
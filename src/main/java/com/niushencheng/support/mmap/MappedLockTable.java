@@ -0,0 +1,225 @@
+package com.niushencheng.support.mmap;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+/**
+ * 映射到内存的锁表，同一台机器上的多个jvm通过映射同一个文件共享锁
+ * <p>
+ * 文件由64字节的文件头和固定数量的槽位组成，槽位使用开放寻址(线性探测)，每个槽位32字节：
+ * <pre>
+ *   0: key的64位hash，0表示空槽位，槽位一旦分配给某个key不再回收
+ *   8: 状态，高24位为持有者id，低40位为租约截止时间(相对文件创建时间的ms)，0表示未被持有
+ *  16: 持有者进程号，仅用于排查
+ *  24: 加锁时间戳，仅用于排查
+ * </pre>
+ * 加锁、续租、释放都是对状态字的一次CAS，持有者id和截止时间在同一个字中，
+ * 接管过期锁和持有者续租不会同时成功；持有者进程崩溃后租约到期即可被其他进程接管；
+ * 对共享内存的访问见 {@link MappedMemory}
+ * <p>
+ * 注意！！！
+ * 槽位不回收，slotCount需要大于会出现的不同key的数量，槽位用尽时加锁失败
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class MappedLockTable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedLockTable.class);
+
+    private static final long MAGIC = 0x4D544C6F636B3031L;  // "MTLock01"
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int SLOT_SIZE = 32;
+
+    private static final int MAGIC_OFFSET = 0;
+
+    private static final int SLOT_COUNT_OFFSET = 8;
+
+    private static final int EPOCH_OFFSET = 16;
+
+    private static final int OWNER_SEQ_OFFSET = 24;
+
+    private static final int OWNER_BITS = 24;
+
+    private static final int DEADLINE_BITS = 64 - OWNER_BITS;
+
+    private static final long DEADLINE_MASK = (1L << DEADLINE_BITS) - 1;
+
+    private static final long OWNER_MASK = (1L << OWNER_BITS) - 1;
+
+    /** 永不过期 */
+    private static final long NEVER_EXPIRE = DEADLINE_MASK;
+
+    /** 持有引用，避免被回收后解除映射 */
+    private final MappedByteBuffer buffer;
+
+    private final long baseAddress;
+
+    private final int slotCount;
+
+    private final long epoch;
+
+    private final long pid;
+
+    /**
+     * @param file      共享文件，不存在时创建
+     * @param slotCount 槽位数，必需为2的幂，所有进程必需一致
+     */
+    public MappedLockTable(File file, int slotCount) throws IOException {
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("slotCount必需为2的幂: " + slotCount);
+        }
+        long size = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            // 初始化过程使用文件锁与其他进程互斥
+            FileLock fileLock = channel.lock();
+            try {
+                if (raf.length() < size) {
+                    raf.setLength(size);
+                }
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                this.baseAddress = MappedMemory.address(buffer);
+                if (MappedMemory.getLongVolatile(baseAddress + MAGIC_OFFSET) != MAGIC) {
+                    MappedMemory.putLongVolatile(baseAddress + SLOT_COUNT_OFFSET, slotCount);
+                    MappedMemory.putLongVolatile(baseAddress + EPOCH_OFFSET, System.currentTimeMillis());
+                    MappedMemory.putLongVolatile(baseAddress + OWNER_SEQ_OFFSET, 0);
+                    MappedMemory.putLongVolatile(baseAddress + MAGIC_OFFSET, MAGIC);
+                } else if (MappedMemory.getLongVolatile(baseAddress + SLOT_COUNT_OFFSET) != slotCount) {
+                    throw new IllegalStateException("锁表文件的slotCount与配置不一致, file -->> " + file
+                                                            + ", slotCount -->> " + MappedMemory.getLongVolatile(baseAddress + SLOT_COUNT_OFFSET));
+                }
+            } finally {
+                fileLock.release();
+            }
+        }
+        this.slotCount = slotCount;
+        this.epoch = MappedMemory.getLongVolatile(baseAddress + EPOCH_OFFSET);
+        this.pid = currentPid();
+    }
+
+    /** 计算key的hash，0保留给空槽位 */
+    public static long hash(String key) {
+        long hash = Hashing.murmur3_128().hashString(key, Charsets.UTF_8).asLong();
+        return hash == 0
+                ? 1
+                : hash;
+    }
+
+    /**
+     * 分配一个进程间唯一的持有者id
+     */
+    public long nextOwner() {
+        for (;;) {
+            long seq = MappedMemory.getLongVolatile(baseAddress + OWNER_SEQ_OFFSET);
+            if (!MappedMemory.compareAndSwapLong(baseAddress + OWNER_SEQ_OFFSET, seq, seq + 1)) {
+                continue;
+            }
+            long owner = (seq + 1) & OWNER_MASK;
+            if (owner != 0) {
+                return owner;
+            }
+        }
+    }
+
+    /**
+     * 查找key对应的槽位，不存在时分配
+     *
+     * @return 槽位地址，槽位用尽时返回-1
+     */
+    public long slot(long hash) {
+        int mask = slotCount - 1;
+        int start = (int) (hash ^ (hash >>> 32)) & mask;
+        for (int i = 0; i < slotCount; i++) {
+            long slot = baseAddress + HEADER_SIZE + (long) ((start + i) & mask) * SLOT_SIZE;
+            long current = MappedMemory.getLongVolatile(slot);
+            if (current == hash) {
+                return slot;
+            }
+            if (current == 0) {
+                if (MappedMemory.compareAndSwapLong(slot, 0, hash)) {
+                    return slot;
+                }
+                if (MappedMemory.getLongVolatile(slot) == hash) {
+                    return slot;
+                }
+            }
+        }
+        LOGGER.error("锁表槽位已用尽, slotCount -->> {}", slotCount);
+        return -1;
+    }
+
+    /**
+     * 尝试加锁，槽位未被持有或租约已过期时成功
+     *
+     * @return 加锁成功时返回新的状态字，用于续租和释放；失败返回0
+     */
+    public long tryAcquire(long slot, long owner, long leaseMillis) {
+        long now = System.currentTimeMillis();
+        long current = MappedMemory.getLongVolatile(slot + 8);
+        if (current != 0 && (current & DEADLINE_MASK) >= now - epoch) {
+            return 0;
+        }
+        long state = this.state(owner, now, leaseMillis);
+        if (!MappedMemory.compareAndSwapLong(slot + 8, current, state)) {
+            return 0;
+        }
+        MappedMemory.putOrderedLong(slot + 16, pid);
+        MappedMemory.putOrderedLong(slot + 24, now);
+        return state;
+    }
+
+    /**
+     * 续租
+     *
+     * @return 续租成功时返回新的状态字，锁已被他人接管时返回0
+     */
+    public long renew(long slot, long expectState, long leaseMillis) {
+        long state = this.state(expectState >>> DEADLINE_BITS, System.currentTimeMillis(), leaseMillis);
+        return MappedMemory.compareAndSwapLong(slot + 8, expectState, state)
+                ? state
+                : 0;
+    }
+
+    /**
+     * 释放锁，只有状态字未变化(仍是自己持有)时成功
+     */
+    public boolean release(long slot, long expectState) {
+        return MappedMemory.compareAndSwapLong(slot + 8, expectState, 0);
+    }
+
+    /** 槽位当前持有者的进程号，未被持有时返回0 */
+    public long holderPid(long slot) {
+        return MappedMemory.getLongVolatile(slot + 8) == 0
+                ? 0
+                : MappedMemory.getLongVolatile(slot + 16);
+    }
+
+    private long state(long owner, long now, long leaseMillis) {
+        long deadline = leaseMillis > 0
+                ? Math.min(now - epoch + leaseMillis, NEVER_EXPIRE - 1)
+                : NEVER_EXPIRE;
+        return (owner << DEADLINE_BITS) | deadline;
+    }
+
+    private static long currentPid() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            return Long.parseLong(name.substring(0, name.indexOf('@')));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.niushencheng.support.mmap;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * 映射内存上按绝对地址的volatile读写和CAS，锁表对共享内存的访问只经过这里
+ * <p>
+ * 跨进程的CAS需要对映射内存执行lock cmpxchg，JDK 1.7没有公开的API(VarHandle从JDK 9开始才有)，
+ * MappedByteBuffer上也只有普通读写，只能使用sun.misc.Unsafe；FileChannel.lock保护的读改写每次都是一次系统调用，
+ * 与锁表不经过系统调用的目标不符，因此没有采用
+ * <p>
+ * Unsafe在运行时通过反射获取，方法绑定为static final的MethodHandle，编译期不引用内部API，
+ * JIT内联后与直接调用Unsafe相同；升级到JDK 9以上时只需要把这个类替换为VarHandle的实现
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+final class MappedMemory {
+
+    /** (Object, long)long */
+    private static final MethodHandle GET_LONG_VOLATILE;
+
+    /** (Object, long, long)void */
+    private static final MethodHandle PUT_LONG_VOLATILE;
+
+    /** (Object, long, long)void */
+    private static final MethodHandle PUT_ORDERED_LONG;
+
+    /** (Object, long, long, long)boolean */
+    private static final MethodHandle COMPARE_AND_SWAP_LONG;
+
+    /** Buffer.address字段的偏移量 */
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            GET_LONG_VOLATILE = lookup.unreflect(unsafeClass.getMethod("getLongVolatile", Object.class, long.class))
+                                      .bindTo(unsafe);
+            PUT_LONG_VOLATILE = lookup.unreflect(unsafeClass.getMethod("putLongVolatile",
+                                                                       Object.class, long.class, long.class))
+                                      .bindTo(unsafe);
+            PUT_ORDERED_LONG = lookup.unreflect(unsafeClass.getMethod("putOrderedLong",
+                                                                      Object.class, long.class, long.class))
+                                     .bindTo(unsafe);
+            COMPARE_AND_SWAP_LONG = lookup.unreflect(unsafeClass.getMethod("compareAndSwapLong",
+                                                                           Object.class, long.class, long.class, long.class))
+                                          .bindTo(unsafe);
+            ADDRESS_OFFSET = (long) lookup.unreflect(unsafeClass.getMethod("objectFieldOffset", Field.class))
+                                          .bindTo(unsafe)
+                                          .invoke(Buffer.class.getDeclaredField("address"));
+        } catch (Throwable e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private MappedMemory() {
+    }
+
+    /** 映射内存的起始地址，调用方需要持有buffer的引用，避免被回收后解除映射 */
+    static long address(MappedByteBuffer buffer) {
+        try {
+            return (long) GET_LONG_VOLATILE.invokeExact((Object) buffer, ADDRESS_OFFSET);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static long getLongVolatile(long address) {
+        try {
+            return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void putLongVolatile(long address, long value) {
+        try {
+            PUT_LONG_VOLATILE.invokeExact((Object) null, address, value);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void putOrderedLong(long address, long value) {
+        try {
+            PUT_ORDERED_LONG.invokeExact((Object) null, address, value);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean compareAndSwapLong(long address, long expect, long update) {
+        try {
+            return (boolean) COMPARE_AND_SWAP_LONG.invokeExact((Object) null, address, expect, update);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,505 @@
+package com.niushencheng.support.redis;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 非阻塞的redis客户端
+ * <p>
+ * 一个jvm中所有的锁命令通过一个事件循环线程复用少量的长连接，命令以管道方式连续写出，按顺序匹配回复，
+ * 调用线程不占用连接，在途的命令数不再受连接池大小限制
+ * <p>
+ * 每个命令都有自己的截止时间，到期后立即以 {@link RedisTimeoutException} 失败，
+ * 迟到的回复会被丢弃；连接上最早的命令长时间没有回复时认为连接已损坏，关闭后重连
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class RedisClient {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    /** 事件循环检查超时的间隔 */
+    private static final long TICK_MILLIS = 10;
+
+    /** 连接失败后的重连间隔 */
+    private static final long RECONNECT_BACKOFF_MILLIS = 100;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final InetSocketAddress address;
+
+    private final Connection[] connections;
+
+    /** 建立连接的超时时间 */
+    @Setter
+    private long connectTimeoutMillis = 1000;
+
+    /** 命令默认的超时时间 */
+    @Setter
+    private long commandTimeoutMillis = 1000;
+
+    /** 最早的在途命令超过该时间没有回复时重建连接, 默认为命令超时时间的3倍 */
+    @Setter
+    private long brokenConnectionMillis = 0;
+
+    private final AtomicInteger nextConnection = new AtomicInteger();
+
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    private volatile boolean running = false;
+
+    private Selector selector;
+
+    private Thread eventLoop;
+
+    public RedisClient(String host, int port, int connections) {
+        Assert.isTrue(connections > 0, "connections必需为正数");
+        this.address = new InetSocketAddress(host, port);
+        this.connections = new Connection[connections];
+        for (int i = 0; i < connections; i++) {
+            this.connections[i] = new Connection(i);
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        if (brokenConnectionMillis <= 0) {
+            brokenConnectionMillis = commandTimeoutMillis * 3;
+        }
+        this.selector = Selector.open();
+        this.running = true;
+        this.eventLoop = new Thread(new EventLoop(), "redis-event-loop-" + address.getPort());
+        this.eventLoop.setDaemon(true);
+        this.eventLoop.start();
+    }
+
+    public void close() {
+        this.running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (eventLoop != null) {
+            try {
+                eventLoop.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** 命令默认的超时时间 */
+    public long getCommandTimeoutMillis() {
+        return commandTimeoutMillis;
+    }
+
+    /**
+     * 异步发送一条命令
+     *
+     * @param timeoutMillis 超时时间
+     * @param args          命令及参数
+     *
+     * @return 回复，见 {@link RespCodec}
+     */
+    public ListenableFuture<Object> send(long timeoutMillis, String... args) {
+        return this.sendAll(timeoutMillis, Collections.singletonList(args)).get(0);
+    }
+
+    /**
+     * 异步发送多条命令，这些命令在同一个连接上连续写出，即一次管道请求
+     *
+     * @param timeoutMillis 超时时间
+     * @param commands      命令列表
+     *
+     * @return 与commands一一对应的回复
+     */
+    public List<ListenableFuture<Object>> sendAll(long timeoutMillis, List<String[]> commands) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Connection connection = connections[(nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length];
+        List<ListenableFuture<Object>> futures = new ArrayList<ListenableFuture<Object>>(commands.size());
+        List<RedisCommand> batch = new ArrayList<RedisCommand>(commands.size());
+        for (String[] args : commands) {
+            RedisCommand command = new RedisCommand(args, deadline);
+            batch.add(command);
+            futures.add(command.future);
+        }
+        if (!running) {
+            for (RedisCommand command : batch) {
+                command.future.setException(new RedisException("RedisClient未启动或已关闭"));
+            }
+            return futures;
+        }
+        connection.submissions.add(batch);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+        return futures;
+    }
+
+    /**
+     * 同步执行一条命令
+     */
+    public Object execute(String... args) {
+        return this.await(this.send(commandTimeoutMillis, args), commandTimeoutMillis);
+    }
+
+    /**
+     * 同步执行多条命令，一次管道请求
+     */
+    public List<Object> executeAll(List<String[]> commands) {
+        List<ListenableFuture<Object>> futures = this.sendAll(commandTimeoutMillis, commands);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(commandTimeoutMillis);
+        List<Object> results = new ArrayList<Object>(futures.size());
+        for (ListenableFuture<Object> future : futures) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            results.add(this.await(future, Math.max(remaining, 0)));
+        }
+        return results;
+    }
+
+    private Object await(ListenableFuture<Object> future, long timeoutMillis) {
+        boolean interrupted = false;
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            for (;;) {
+                try {
+                    return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (TimeoutException e) {
+            // 事件循环按tick检查超时，这里保证调用方准时返回
+            RedisTimeoutException timeout = new RedisTimeoutException("redis命令超时, timeout -->> " + timeoutMillis);
+            ((SettableFuture<Object>) future).setException(timeout);
+            throw timeout;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RedisException) {
+                throw (RedisException) e.getCause();
+            }
+            throw new RedisException("redis命令执行失败", e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private class EventLoop implements Runnable {
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(TICK_MILLIS);
+                    wakeupPending.set(false);
+                    Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext()) {
+                        SelectionKey key = iterator.next();
+                        iterator.remove();
+                        ((Connection) key.attachment()).handle(key);
+                    }
+                    long now = System.nanoTime();
+                    for (Connection connection : connections) {
+                        connection.process(now);
+                    }
+                } catch (Exception e) {
+                    LOGGER.error("redis事件循环异常", e);
+                }
+            }
+            for (Connection connection : connections) {
+                connection.close(new RedisException("RedisClient已关闭"));
+                connection.failSubmissions(new RedisException("RedisClient已关闭"));
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.warn("关闭selector失败", e);
+            }
+        }
+    }
+
+    /**
+     * 单个连接，除submissions外只在事件循环线程中访问
+     */
+    private class Connection {
+
+        private final int index;
+
+        private final Queue<List<RedisCommand>> submissions = new ConcurrentLinkedQueue<List<RedisCommand>>();
+
+        private final ArrayDeque<RedisCommand> inflight = new ArrayDeque<RedisCommand>();
+
+        private ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private SocketChannel channel;
+
+        private SelectionKey selectionKey;
+
+        private boolean connected = false;
+
+        private long connectDeadline;
+
+        private long reconnectAt;
+
+        private Connection(int index) {
+            this.index = index;
+        }
+
+        private void handle(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    if (channel.finishConnect()) {
+                        this.connected = true;
+                        key.interestOps(SelectionKey.OP_READ);
+                        LOGGER.info("redis连接建立成功, address -->> {}, connection -->> {}", address, index);
+                    }
+                }
+                if (key.isValid() && key.isReadable()) {
+                    this.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    this.flush();
+                }
+            } catch (IOException e) {
+                LOGGER.warn("redis连接异常, address -->> {}, connection -->> {}", address, index, e);
+                this.close(new RedisException("redis连接异常", e));
+            }
+        }
+
+        private void process(long now) {
+            try {
+                if (channel == null && !submissions.isEmpty() && now - reconnectAt >= 0) {
+                    this.connect(now);
+                }
+                if (channel != null && !connected && now - connectDeadline >= 0) {
+                    this.close(new RedisException("redis连接超时, address -->> " + address));
+                }
+                if (connected) {
+                    this.drainSubmissions(now);
+                    this.flush();
+                } else {
+                    this.expireSubmissions(now);
+                }
+                this.expireInflight(now);
+            } catch (IOException e) {
+                LOGGER.warn("redis连接异常, address -->> {}, connection -->> {}", address, index, e);
+                this.close(new RedisException("redis连接异常", e));
+            }
+        }
+
+        private void connect(long now) throws IOException {
+            this.channel = SocketChannel.open();
+            this.channel.configureBlocking(false);
+            this.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            this.channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            this.connectDeadline = now + TimeUnit.MILLISECONDS.toNanos(connectTimeoutMillis);
+            this.reconnectAt = now + TimeUnit.MILLISECONDS.toNanos(RECONNECT_BACKOFF_MILLIS);
+            if (channel.connect(address)) {
+                this.connected = true;
+                this.selectionKey = channel.register(selector, SelectionKey.OP_READ, this);
+            } else {
+                this.selectionKey = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            }
+        }
+
+        private void drainSubmissions(long now) {
+            List<RedisCommand> batch;
+            while ((batch = submissions.poll()) != null) {
+                for (RedisCommand command : batch) {
+                    if (command.future.isDone()) {
+                        continue;
+                    }
+                    if (now - command.deadline >= 0) {
+                        command.timeout();
+                        continue;
+                    }
+                    byte[] bytes = RespCodec.encode(command.args);
+                    this.ensureWritable(bytes.length);
+                    writeBuffer.put(bytes);
+                    command.sentAt = now;
+                    inflight.add(command);
+                }
+            }
+        }
+
+        private void expireSubmissions(long now) {
+            Iterator<List<RedisCommand>> iterator = submissions.iterator();
+            while (iterator.hasNext()) {
+                List<RedisCommand> batch = iterator.next();
+                boolean allDone = true;
+                for (RedisCommand command : batch) {
+                    if (!command.future.isDone() && now - command.deadline >= 0) {
+                        command.timeout();
+                    }
+                    allDone &= command.future.isDone();
+                }
+                if (allDone) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        private void expireInflight(long now) {
+            for (RedisCommand command : inflight) {
+                if (!command.future.isDone() && now - command.deadline >= 0) {
+                    // 保留在队列中，用于匹配迟到的回复
+                    command.timeout();
+                }
+            }
+            RedisCommand oldest = inflight.peek();
+            if (oldest != null && now - oldest.sentAt >= TimeUnit.MILLISECONDS.toNanos(brokenConnectionMillis)) {
+                LOGGER.warn("redis连接长时间没有回复，准备重建, address -->> {}, connection -->> {}", address, index);
+                this.close(new RedisException("redis连接长时间没有回复"));
+            }
+        }
+
+        private void flush() throws IOException {
+            if (!connected) {
+                return;
+            }
+            writeBuffer.flip();
+            try {
+                channel.write(writeBuffer);
+            } finally {
+                writeBuffer.compact();
+            }
+            selectionKey.interestOps(writeBuffer.position() > 0
+                                             ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                                             : SelectionKey.OP_READ);
+        }
+
+        /**
+         * 回复不符合协议时抛出 {@link java.net.ProtocolException}，之后的回复无法再和命令对应，
+         * 由 {@link #handle(SelectionKey)} 关闭连接，在途的命令全部失败
+         */
+        private void read() throws IOException {
+            if (!readBuffer.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                readBuffer.flip();
+                bigger.put(readBuffer);
+                readBuffer = bigger;
+            }
+            if (channel.read(readBuffer) < 0) {
+                throw new IOException("redis连接被关闭");
+            }
+            readBuffer.flip();
+            try {
+                while (readBuffer.hasRemaining()) {
+                    int start = readBuffer.position();
+                    Object reply = RespCodec.decode(readBuffer);
+                    if (reply == RespCodec.INCOMPLETE) {
+                        readBuffer.position(start);
+                        break;
+                    }
+                    RedisCommand command = inflight.poll();
+                    if (command == null) {
+                        throw new IOException("收到没有对应命令的redis回复");
+                    }
+                    command.complete(reply);
+                }
+            } finally {
+                readBuffer.compact();
+            }
+        }
+
+        private void ensureWritable(int length) {
+            if (writeBuffer.remaining() < length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(writeBuffer.capacity() * 2,
+                                                                 writeBuffer.position() + length));
+                writeBuffer.flip();
+                bigger.put(writeBuffer);
+                writeBuffer = bigger;
+            }
+        }
+
+        private void close(RedisException cause) {
+            // 连接没能建立时，排队中的命令直接失败，不必等到截止时间
+            boolean connectFailed = channel != null && !connected;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOGGER.warn("关闭redis连接失败", e);
+                }
+            }
+            this.channel = null;
+            this.selectionKey = null;
+            this.connected = false;
+            RedisCommand command;
+            while ((command = inflight.poll()) != null) {
+                command.future.setException(cause);
+            }
+            this.writeBuffer.clear();
+            this.readBuffer.clear();
+            if (connectFailed) {
+                this.failSubmissions(cause);
+            }
+        }
+
+        private void failSubmissions(RedisException cause) {
+            List<RedisCommand> batch;
+            while ((batch = submissions.poll()) != null) {
+                for (RedisCommand command : batch) {
+                    command.future.setException(cause);
+                }
+            }
+        }
+    }
+
+    private static class RedisCommand {
+
+        private final String[] args;
+
+        private final long deadline;
+
+        private final SettableFuture<Object> future = SettableFuture.create();
+
+        private long sentAt;
+
+        private RedisCommand(String[] args, long deadline) {
+            this.args = args;
+            this.deadline = deadline;
+        }
+
+        private void complete(Object reply) {
+            if (reply instanceof RespCodec.ErrorReply) {
+                future.setException(new RedisException(((RespCodec.ErrorReply) reply).message));
+            } else {
+                future.set(reply);
+            }
+        }
+
+        private void timeout() {
+            future.setException(new RedisTimeoutException("redis命令超时, command -->> " + args[0]));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.niushencheng.support.redis;
+
+/**
+ * redis访问异常，包括服务端返回的错误、连接断开等
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class RedisException extends RuntimeException {
+
+    public RedisException(String message) {
+        super(message);
+    }
+
+    public RedisException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,229 @@
+package com.niushencheng.support.redis;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.niushencheng.store.AbstractLockStore;
+import com.niushencheng.store.StoreCommand;
+import com.niushencheng.store.StoreDeadline;
+import com.niushencheng.store.StoreDeadlineExceededException;
+import com.niushencheng.store.StoreTimeoutException;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 基于 {@link RedisClient} 的锁存储，所有操作都是原子的：
+ * add使用 SET NX PX，compare类的操作以及计数使用lua脚本，批量操作使用管道一次发送
+ * <p>
+ * 调用方最多等待 {@link StoreDeadline} 中剩余的时间，命令本身仍按commandTimeoutMillis等待回复，
+ * 放弃等待的 SET NX 如果随后回复成功，会按值撤销，计数反向补偿
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class RedisLockStore extends AbstractLockStore {
+
+    private static final String COMPARE_AND_DELETE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('del', KEYS[1]) "
+                    + "else return 0 end";
+
+    private static final String COMPARE_AND_EXPIRE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "if tonumber(ARGV[2]) > 0 then return redis.call('pexpire', KEYS[1], ARGV[2]) end "
+                    + "redis.call('persist', KEYS[1]) return 1 "
+                    + "else return 0 end";
+
+    private static final String INCR_SCRIPT =
+            "local count = redis.call('incrby', KEYS[1], ARGV[1]) "
+                    + "if count <= 0 then redis.call('del', KEYS[1]) "
+                    + "elseif tonumber(ARGV[2]) > 0 then redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "else redis.call('persist', KEYS[1]) end "
+                    + "return count";
+
+    private final RedisClient redisClient;
+
+    public RedisLockStore(RedisClient redisClient) {
+        Assert.notNull(redisClient, "redisClient must not be null");
+        this.redisClient = redisClient;
+    }
+
+    @Override
+    public boolean add(String key, String value, long expireMillis) {
+        return (Boolean) this.executeOne(StoreCommand.add(key, value, expireMillis));
+    }
+
+    @Override
+    public String get(String key) {
+        return (String) this.executeOne(StoreCommand.get(key));
+    }
+
+    @Override
+    public boolean del(String key) {
+        return (Boolean) this.executeOne(StoreCommand.del(key));
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expect) {
+        return (Boolean) this.executeOne(StoreCommand.compareAndDelete(key, expect));
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expect, long expireMillis) {
+        return (Boolean) this.executeOne(StoreCommand.compareAndExpire(key, expect, expireMillis));
+    }
+
+    @Override
+    public boolean supportsIncr() {
+        return true;
+    }
+
+    @Override
+    public boolean isPipelined() {
+        return true;
+    }
+
+    @Override
+    public long incr(String key, long delta, long expireMillis) {
+        return (Long) this.executeOne(StoreCommand.incr(key, delta, expireMillis));
+    }
+
+    @Override
+    public List<Object> execute(List<StoreCommand> commands) {
+        long timeoutMillis = this.timeoutMillis();
+        List<String[]> args = new ArrayList<String[]>(commands.size());
+        for (StoreCommand command : commands) {
+            args.add(this.toArgs(command));
+        }
+        return this.await(commands, redisClient.sendAll(redisClient.getCommandTimeoutMillis(), args), timeoutMillis);
+    }
+
+    private Object executeOne(StoreCommand command) {
+        long timeoutMillis = this.timeoutMillis();
+        ListenableFuture<Object> future = redisClient.send(redisClient.getCommandTimeoutMillis(), this.toArgs(command));
+        return this.await(Collections.singletonList(command), Collections.singletonList(future), timeoutMillis).get(0);
+    }
+
+    /**
+     * 本次调用可以等待的时间，已经超过截止时间时不再发送
+     */
+    private long timeoutMillis() {
+        long timeoutMillis = StoreDeadline.timeoutMillis(redisClient.getCommandTimeoutMillis());
+        if (timeoutMillis <= 0) {
+            throw new StoreDeadlineExceededException("已超过redis命令的截止时间");
+        }
+        return timeoutMillis;
+    }
+
+    private List<Object> await(List<StoreCommand> commands, List<ListenableFuture<Object>> futures,
+                               long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<Object> results = new ArrayList<Object>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            try {
+                Object reply = Uninterruptibles.getUninterruptibly(futures.get(i),
+                                                                   Math.max(0, deadline - System.nanoTime()),
+                                                                   TimeUnit.NANOSECONDS);
+                results.add(this.toResult(commands.get(i), reply));
+            } catch (TimeoutException e) {
+                this.revokeLateAdds(commands, futures);
+                throw this.timeout(timeoutMillis);
+            } catch (ExecutionException e) {
+                // 同一批次中其他成功的命令同样需要撤销
+                this.revokeLateAdds(commands, futures);
+                if (e.getCause() instanceof RedisTimeoutException) {
+                    // 事件循环中命令自身的超时可能先于这里的等待到期，同样按超时处理
+                    throw this.timeout(timeoutMillis);
+                }
+                if (e.getCause() instanceof RedisException) {
+                    throw (RedisException) e.getCause();
+                }
+                throw new RedisException("redis命令执行失败", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private StoreTimeoutException timeout(long timeoutMillis) {
+        String message = "redis命令超过了截止时间, timeoutMillis -->> " + timeoutMillis;
+        // 超时时间被调用方剩余的时间截短时，超时不代表redis不健康
+        return timeoutMillis < redisClient.getCommandTimeoutMillis()
+                ? new StoreDeadlineExceededException(message)
+                : new StoreTimeoutException(message);
+    }
+
+    /**
+     * 调用方放弃了整批命令(超时或者其中一条失败)，其中成功的 SET NX 没有人会释放，按值撤销；计数同理，反向补偿
+     * <p>
+     * 截止时间之前已经完成的命令同样需要补偿，调用方拿到的是异常，看不到这些结果
+     */
+    private void revokeLateAdds(List<StoreCommand> commands, List<ListenableFuture<Object>> futures) {
+        for (int i = 0; i < commands.size(); i++) {
+            final StoreCommand command = commands.get(i);
+            if (command.getType() != StoreCommand.Type.ADD && command.getType() != StoreCommand.Type.INCR) {
+                continue;
+            }
+            Futures.addCallback(futures.get(i), new FutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object reply) {
+                    if (command.getType() == StoreCommand.Type.INCR) {
+                        redisClient.send(redisClient.getCommandTimeoutMillis(),
+                                         toArgs(StoreCommand.incr(command.getKey(),
+                                                                  -command.getDelta(),
+                                                                  command.getExpireMillis())));
+                    } else if ("OK".equals(reply)) {
+                        redisClient.send(redisClient.getCommandTimeoutMillis(),
+                                         toArgs(StoreCommand.compareAndDelete(command.getKey(), command.getValue())));
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                }
+            });
+        }
+    }
+
+    private String[] toArgs(StoreCommand command) {
+        String key = command.getKey();
+        switch (command.getType()) {
+            case ADD:
+                return command.getExpireMillis() > 0
+                        ? new String[]{"SET", key, command.getValue(), "NX", "PX", String.valueOf(command.getExpireMillis())}
+                        : new String[]{"SET", key, command.getValue(), "NX"};
+            case GET:
+                return new String[]{"GET", key};
+            case DEL:
+                return new String[]{"DEL", key};
+            case COMPARE_AND_DELETE:
+                return new String[]{"EVAL", COMPARE_AND_DELETE_SCRIPT, "1", key, command.getValue()};
+            case COMPARE_AND_EXPIRE:
+                return new String[]{"EVAL", COMPARE_AND_EXPIRE_SCRIPT, "1", key, command.getValue(),
+                        String.valueOf(command.getExpireMillis())};
+            case INCR:
+                return new String[]{"EVAL", INCR_SCRIPT, "1", key, String.valueOf(command.getDelta()),
+                        String.valueOf(command.getExpireMillis())};
+            default:
+                throw new IllegalStateException("未知的操作类型: " + command.getType());
+        }
+    }
+
+    private Object toResult(StoreCommand command, Object reply) {
+        switch (command.getType()) {
+            case ADD:
+                return "OK".equals(reply);
+            case GET:
+            case INCR:
+                return reply;
+            default:
+                return reply instanceof Long && (Long) reply > 0;
+        }
+    }
+}
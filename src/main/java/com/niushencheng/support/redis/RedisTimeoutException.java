@@ -0,0 +1,14 @@
+package com.niushencheng.support.redis;
+
+/**
+ * redis命令在截止时间前没有返回
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class RedisTimeoutException extends RedisException {
+
+    public RedisTimeoutException(String message) {
+        super(message);
+    }
+}
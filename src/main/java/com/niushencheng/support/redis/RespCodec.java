@@ -0,0 +1,144 @@
+package com.niushencheng.support.redis;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RESP协议的编解码
+ * <p>
+ * 解码结果：简单字符串和批量字符串为String(nil为null)，整数为Long，数组为List，错误为 {@link ErrorReply}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+final class RespCodec {
+
+    /** 数据不完整，需要继续读取 */
+    static final Object INCOMPLETE = new Object();
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * 将命令编码为RESP数组
+     */
+    static byte[] encode(String[] args) {
+        int size = 16;
+        byte[][] parts = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            parts[i] = args[i].getBytes(StandardCharsets.UTF_8);
+            size += parts[i].length + 16;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        writeHeader(buffer, '*', args.length);
+        for (byte[] part : parts) {
+            writeHeader(buffer, '$', part.length);
+            buffer.put(part);
+            buffer.put(CRLF);
+        }
+        byte[] result = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(result);
+        return result;
+    }
+
+    /**
+     * 从buffer当前位置解析一个完整的回复，数据不完整时返回 {@link #INCOMPLETE}，
+     * 此时buffer的position处于不确定的位置，调用方需要自行重置
+     *
+     * @throws ProtocolException 数据不符合RESP协议，之后的数据无法再和命令对应，调用方需要关闭连接
+     */
+    static Object decode(ByteBuffer buffer) throws ProtocolException {
+        if (!buffer.hasRemaining()) {
+            return INCOMPLETE;
+        }
+        byte type = buffer.get();
+        String line = readLine(buffer);
+        if (line == null) {
+            return INCOMPLETE;
+        }
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                return new ErrorReply(line);
+            case ':':
+                return parseLong(line);
+            case '$': {
+                int length = (int) parseLong(line);
+                if (length < 0) {
+                    return null;
+                }
+                if (buffer.remaining() < length + CRLF.length) {
+                    return INCOMPLETE;
+                }
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                if (buffer.get() != '\r' || buffer.get() != '\n') {
+                    throw new ProtocolException("RESP批量字符串的长度与内容不符");
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case '*': {
+                int count = (int) parseLong(line);
+                if (count < 0) {
+                    return null;
+                }
+                List<Object> elements = new ArrayList<Object>(count);
+                for (int i = 0; i < count; i++) {
+                    Object element = decode(buffer);
+                    if (element == INCOMPLETE) {
+                        return INCOMPLETE;
+                    }
+                    elements.add(element);
+                }
+                return elements;
+            }
+            default:
+                throw new ProtocolException("非法的RESP类型: " + (char) type);
+        }
+    }
+
+    private static long parseLong(String line) throws ProtocolException {
+        try {
+            return Long.parseLong(line);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("非法的RESP数字: " + line);
+        }
+    }
+
+    private static String readLine(ByteBuffer buffer) {
+        int start = buffer.position();
+        for (int i = start; i < buffer.limit() - 1; i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') {
+                byte[] bytes = new byte[i - start];
+                buffer.get(bytes);
+                buffer.position(i + CRLF.length);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void writeHeader(ByteBuffer buffer, char type, int value) {
+        buffer.put((byte) type);
+        buffer.put(Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+        buffer.put(CRLF);
+    }
+
+    /**
+     * 服务端返回的错误
+     */
+    static final class ErrorReply {
+
+        final String message;
+
+        ErrorReply(String message) {
+            this.message = message;
+        }
+    }
+
+    private RespCodec() {}
+}
@@ -0,0 +1,57 @@
+package com.niushencheng.trace;
+
+/**
+ * 由 {@link LockTracer} 创建的span，只会在创建它的线程上使用
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public interface LockSpan {
+
+    String OUTCOME_ENTERED = "entered";
+
+    String OUTCOME_ACQUIRED = "acquired";
+
+    /** 被其他持有者占用 */
+    String OUTCOME_BUSY = "busy";
+
+    String OUTCOME_TIMEOUT = "timeout";
+
+    String OUTCOME_INTERRUPTED = "interrupted";
+
+    /** 被准入控制或关闭拒绝 */
+    String OUTCOME_REJECTED = "rejected";
+
+    /** 存储熔断 */
+    String OUTCOME_UNAVAILABLE = "unavailable";
+
+    /** 降级为本机锁 */
+    String OUTCOME_DEGRADED = "degraded";
+
+    String OUTCOME_ERROR = "error";
+
+    String OUTCOME_RELEASED = "released";
+
+    /** 释放时锁已经过期或被接管 */
+    String OUTCOME_LOST = "lost";
+
+    LockSpan NOOP = new LockSpan() {
+        @Override
+        public void setAttribute(String key, long value) {
+        }
+
+        @Override
+        public void setAttribute(String key, String value) {
+        }
+
+        @Override
+        public void end() {
+        }
+    };
+
+    void setAttribute(String key, long value);
+
+    void setAttribute(String key, String value);
+
+    void end();
+}
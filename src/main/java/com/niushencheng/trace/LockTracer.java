@@ -0,0 +1,54 @@
+package com.niushencheng.trace;
+
+/**
+ * 锁的链路追踪接口，把加锁过程中的排队、每一次存储调用以及持有期间作为span上报，
+ * 业务方法中原本无法解释的耗时可以在链路中看到
+ * <p>
+ * 接口与OpenTelemetry API的span模型一致，接入时用spanBuilder实现 {@link #startSpan(String, String, String)}，
+ * span的父节点为调用线程上当前的上下文，即业务方法所在的span
+ * <p>
+ * 没有设置时不创建任何对象，开销只有一次null判断
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public interface LockTracer {
+
+    /** 本机排队等待mainLock */
+    String SPAN_QUEUE = "lock.queue";
+
+    /** 在存储中尝试加锁一次 */
+    String SPAN_ATTEMPT = "lock.attempt";
+
+    /** 持有期间，从加锁成功到释放 */
+    String SPAN_HOLD = "lock.hold";
+
+    /** 锁名称，即 lockPrefix + className:methodName: */
+    String ATTR_NAME = "lock.name";
+
+    /** lockKey的哈希，key中可能有业务数据，不直接上报 */
+    String ATTR_KEY_HASH = "lock.key_hash";
+
+    /** 第几次尝试，从1开始 */
+    String ATTR_ATTEMPT = "lock.attempt";
+
+    /** 结果，见 {@link LockSpan#OUTCOME_ACQUIRED} 等 */
+    String ATTR_OUTCOME = "lock.outcome";
+
+    /** 不上报任何span */
+    LockTracer NOOP = new LockTracer() {
+        @Override
+        public LockSpan startSpan(String spanName, String lockName, String keyHash) {
+            return LockSpan.NOOP;
+        }
+    };
+
+    /**
+     * 开始一个span
+     *
+     * @param spanName 见 {@link #SPAN_QUEUE}、{@link #SPAN_ATTEMPT}、{@link #SPAN_HOLD}
+     * @param lockName 锁名称
+     * @param keyHash  lockKey的哈希
+     */
+    LockSpan startSpan(String spanName, String lockName, String keyHash);
+}
@@ -11,6 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -92,6 +93,33 @@ public abstract class JacksonUtil {
         }
     }
 
+    /**
+     * 将对象转成Json格式字符串，转换失败时抛出异常
+     *
+     * @param obj 待转换对象，可以为null
+     *
+     * @return JSON字符串
+     *
+     * @throws JsonProcessingException
+     */
+    public static String toJsonStrOrThrow(Object obj) throws JsonProcessingException {
+        return OBJECT_MAPPER.writeValueAsString(obj);
+    }
+
+    /**
+     * 将Json字符串转成指定的泛型类型，如方法的返回类型
+     *
+     * @param jsonStr Json字符串
+     * @param type    目标类型
+     *
+     * @return Java对象
+     *
+     * @throws IOException
+     */
+    public static Object toBean(String jsonStr, Type type) throws IOException {
+        return OBJECT_MAPPER.readValue(jsonStr, OBJECT_MAPPER.getTypeFactory().constructType(type));
+    }
+
     /**
      * 将Json字符串转成指定类型的对象
      *
@@ -0,0 +1,162 @@
+package com.niushencheng.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数分桶的直方图，线程安全，记录非负的long值(一般为耗时)
+ * <p>
+ * 每个2的幂区间再均分为16个桶，相对误差不超过1/16，占用固定的内存，适合在请求路径上记录
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LogHistogram {
+
+    private static final int SUB_BITS = 4;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值，负数按0处理
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // 重试
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0
+                ? 0
+                : (double) sum.get() / n;
+    }
+
+    /**
+     * 计算百分位数
+     *
+     * @param percentile 百分位，如 99.9
+     *
+     * @return 对应桶的中间值，没有记录时返回0
+     */
+    public long percentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * Math.min(Math.max(percentile, 0), 100) / 100);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(middle(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * 不大于value的记录数，按桶统计，与value同桶的记录全部计入
+     */
+    public long countAtMost(long value) {
+        if (value < 0) {
+            return 0;
+        }
+        int last = index(value);
+        long seen = 0;
+        for (int i = 0; i <= last; i++) {
+            seen += buckets.get(i);
+        }
+        return seen;
+    }
+
+    /**
+     * 大于lower的记录中的百分位数，用于已知某个值超过lower时估计它的分布
+     *
+     * @param lower      下限
+     * @param percentile 百分位，如 50
+     *
+     * @return 对应桶的中间值，没有大于lower的记录时返回-1
+     */
+    public long percentileAbove(long lower, double percentile) {
+        int first = lower < 0
+                ? 0
+                : index(lower) + 1;
+        long above = 0;
+        for (int i = first; i < BUCKET_COUNT; i++) {
+            above += buckets.get(i);
+        }
+        if (above == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(above * Math.min(Math.max(percentile, 0), 100) / 100));
+        long seen = 0;
+        for (int i = first; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(middle(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * 清空所有记录，和并发的record之间不保证原子
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    private static long middle(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (long) (SUB_COUNT + index % SUB_COUNT) << (exponent - SUB_BITS);
+        return lower + width / 2;
+    }
+}
@@ -0,0 +1,180 @@
+package com.niushencheng.util;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带权重的space-saving算法，在固定的内存中找出权重最大的若干个元素(heavy hitters)，线程安全
+ * <p>
+ * 每个分段最多保留capacity个计数器，新元素在计数器用满时替换权重最小的一个并继承其权重作为误差，
+ * 权重超过分段总权重 1/capacity 的元素一定会被保留；元素按hash固定落在一个分段中，分段之间互不阻塞
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class SpaceSaving {
+
+    private final Stripe[] stripes;
+
+    /**
+     * @param capacity 每个分段保留的计数器数
+     * @param stripes  分段数
+     */
+    public SpaceSaving(int capacity, int stripes) {
+        if (capacity <= 0 || stripes <= 0) {
+            throw new IllegalArgumentException("capacity和stripes必需为正数");
+        }
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(capacity);
+        }
+    }
+
+    /**
+     * 增加元素的权重
+     *
+     * @param item   元素
+     * @param weight 权重，不大于0时忽略
+     */
+    public void add(String item, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        int hash = item.hashCode();
+        hash ^= hash >>> 16;
+        stripes[(hash & Integer.MAX_VALUE) % stripes.length].add(item, weight);
+    }
+
+    /**
+     * 权重最大的若干个元素，按权重从大到小排序
+     *
+     * @param limit 最多返回的数量
+     */
+    public List<Entry> top(int limit) {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Stripe stripe : stripes) {
+            stripe.snapshot(entries);
+        }
+        sort(entries);
+        return entries.size() > limit
+                ? new ArrayList<Entry>(entries.subList(0, Math.max(limit, 0)))
+                : entries;
+    }
+
+    /** 所有元素的权重之和 */
+    public long getTotal() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.total();
+        }
+        return total;
+    }
+
+    /**
+     * 按权重从大到小排序
+     */
+    public static void sort(List<Entry> entries) {
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                return o1.count == o2.count
+                        ? 0
+                        : o1.count > o2.count
+                        ? -1
+                        : 1;
+            }
+        });
+    }
+
+    /**
+     * 某个元素的估计权重，真实权重在 [count - error, count] 之间
+     */
+    @Getter
+    @ToString
+    public static class Entry {
+
+        private final String item;
+
+        /** 估计的权重，不小于真实权重 */
+        private final long count;
+
+        /** 最大的高估量 */
+        private final long error;
+
+        public Entry(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private static class Stripe {
+
+        private final int capacity;
+
+        private final Map<String, Counter> counters;
+
+        private long total;
+
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+            this.counters = new HashMap<String, Counter>(capacity * 2);
+        }
+
+        private synchronized void add(String item, long weight) {
+            total += weight;
+            Counter counter = counters.get(item);
+            if (counter != null) {
+                counter.count += weight;
+                return;
+            }
+            if (counters.size() < capacity) {
+                counters.put(item, new Counter(item, weight));
+                return;
+            }
+            // 替换权重最小的计数器，只有新元素才需要遍历，capacity较小时开销可以忽略
+            Counter min = null;
+            for (Counter candidate : counters.values()) {
+                if (min == null || candidate.count < min.count) {
+                    min = candidate;
+                }
+            }
+            counters.remove(min.item);
+            min.item = item;
+            min.error = min.count;
+            min.count += weight;
+            counters.put(item, min);
+        }
+
+        private synchronized void snapshot(List<Entry> entries) {
+            for (Counter counter : counters.values()) {
+                entries.add(new Entry(counter.item, counter.count, counter.error));
+            }
+        }
+
+        private synchronized long total() {
+            return total;
+        }
+    }
+
+    private static class Counter {
+
+        private String item;
+
+        private long count;
+
+        private long error;
+
+        private Counter(String item, long count) {
+            this.item = item;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+-- JdbcLockManager使用的锁表，表名可以通过tableName修改
+-- expire_at为过期时间戳(ms)，永不过期的锁为Long.MAX_VALUE
+-- lock_key为 lockPrefix + className:methodName: + key，READABLE编码下可能较长；
+-- 768是MySQL InnoDB在utf8mb4下主键不超过3072字节的上限，key可能更长时使用COMPACT编码，见LockKeyEncoder
+CREATE TABLE distribute_lock (
+    lock_key   VARCHAR(768) NOT NULL,
+    lock_value VARCHAR(255) NOT NULL,
+    expire_at  BIGINT       NOT NULL,
+    PRIMARY KEY (lock_key)
+);
+
+-- 后台清理线程按过期时间扫描
+CREATE INDEX idx_distribute_lock_expire_at ON distribute_lock (expire_at);
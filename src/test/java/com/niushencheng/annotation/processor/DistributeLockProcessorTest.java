@@ -0,0 +1,241 @@
+package com.niushencheng.annotation.processor;
+
+import com.niushencheng.annotation.LockMethodIndex;
+import com.niushencheng.interceptor.LockOperation;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 通过javax.tools在测试中编译源码，检查 {@link DistributeLockProcessor} 生成的索引、增量编译时的合并以及key的校验
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class DistributeLockProcessorTest {
+
+    private JavaCompiler compiler;
+
+    private File output;
+
+    private DiagnosticCollector<JavaFileObject> diagnostics;
+
+    @Before
+    public void setUp() throws IOException {
+        compiler = ToolProvider.getSystemJavaCompiler();
+        // 运行在JRE上时没有编译器
+        Assume.assumeNotNull(compiler);
+        output = File.createTempFile("lock-processor", "");
+        assertTrue(output.delete() && output.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        if (output != null) {
+            this.delete(output);
+        }
+    }
+
+    @Test
+    public void generatesIndexReadByLockMethodIndex() throws Exception {
+        assertTrue(this.compile(source("demo.OrderService",
+                                       "package demo;",
+                                       "import com.niushencheng.annotation.DistributeLock;",
+                                       "public class OrderService {",
+                                       "    @DistributeLock(name = \"pay\", key = \"#orderId + ':' + #p1\",",
+                                       "                    timeout = 3000, expire = 9000)",
+                                       "    public void pay(long orderId, String channel, int[] items) {}",
+                                       "    public void query(long orderId) {}",
+                                       "}")));
+        Properties index = this.index();
+        String prefix = "demo.OrderService#pay(long,java.lang.String,int[])";
+        assertEquals("pay", index.getProperty(prefix + ".name"));
+        assertEquals("#orderId + ':' + #p1", index.getProperty(prefix + ".key"));
+        assertEquals("3000", index.getProperty(prefix + ".timeout"));
+        assertEquals("9000", index.getProperty(prefix + ".expire"));
+        assertEquals("false", index.getProperty(prefix + ".hierarchical"));
+        assertNull(index.getProperty("demo.OrderService#query(long).timeout"));
+
+        // 运行时按Method拼出的key与处理器写入的一致
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{output.toURI().toURL()}, getClass().getClassLoader());
+        try {
+            Class<?> type = classLoader.loadClass("demo.OrderService");
+            LockMethodIndex lockMethodIndex = LockMethodIndex.load(classLoader);
+            LockOperation operation = lockMethodIndex.find(type, type.getMethod("pay", long.class, String.class,
+                                                                                int[].class));
+            assertNotNull(operation);
+            assertEquals("pay", operation.getName());
+            assertEquals(Long.valueOf(3000), operation.getTimeout());
+            assertNull(lockMethodIndex.find(type, type.getMethod("query", long.class)));
+        } finally {
+            classLoader.close();
+        }
+    }
+
+    @Test
+    public void incrementalCompileKeepsEntriesOfOtherClasses() throws Exception {
+        assertTrue(this.compile(source("demo.A",
+                                       "package demo;",
+                                       "import com.niushencheng.annotation.DistributeLock;",
+                                       "public class A {",
+                                       "    @DistributeLock(name = \"a\", key = \"#id\")",
+                                       "    public void run(String id) {}",
+                                       "}"),
+                                source("demo.B",
+                                       "package demo;",
+                                       "import com.niushencheng.annotation.DistributeLock;",
+                                       "public class B {",
+                                       "    @DistributeLock(name = \"b\", key = \"#id\", timeout = 100)",
+                                       "    public void run(String id) {}",
+                                       "    @DistributeLock(name = \"removed\", key = \"#id\")",
+                                       "    public void removed(String id) {}",
+                                       "}")));
+        assertEquals("a", this.index().getProperty("demo.A#run(java.lang.String).name"));
+
+        // 只重新编译B：A的条目保留，B以本次的结果为准，删除的方法不再出现
+        assertTrue(this.compile(source("demo.B",
+                                       "package demo;",
+                                       "import com.niushencheng.annotation.DistributeLock;",
+                                       "public class B {",
+                                       "    @DistributeLock(name = \"b\", key = \"#id\", timeout = 200)",
+                                       "    public void run(String id) {}",
+                                       "}")));
+        Properties index = this.index();
+        assertEquals("a", index.getProperty("demo.A#run(java.lang.String).name"));
+        assertEquals("200", index.getProperty("demo.B#run(java.lang.String).timeout"));
+        assertNull(index.getProperty("demo.B#removed(java.lang.String).name"));
+    }
+
+    @Test
+    public void invalidKeyFailsCompilation() throws Exception {
+        assertFalse(this.compile(source("demo.Broken",
+                                        "package demo;",
+                                        "import com.niushencheng.annotation.DistributeLock;",
+                                        "public class Broken {",
+                                        "    @DistributeLock(name = \"broken\", key = \"#id +\")",
+                                        "    public void run(String id) {}",
+                                        "}")));
+        assertTrue(this.hasError("spel"));
+    }
+
+    @Test
+    public void resultInKeyFailsCompilation() throws Exception {
+        assertFalse(this.compile(source("demo.Result",
+                                        "package demo;",
+                                        "import com.niushencheng.annotation.DistributeLock;",
+                                        "public class Result {",
+                                        "    @DistributeLock(name = \"result\", key = \"#result\")",
+                                        "    public String run(String id) { return id; }",
+                                        "}")));
+        assertTrue(this.hasError("#result"));
+    }
+
+    @Test
+    public void unknownParameterOnlyWarns() throws Exception {
+        assertTrue(this.compile(source("demo.Unknown",
+                                       "package demo;",
+                                       "import com.niushencheng.annotation.DistributeLock;",
+                                       "public class Unknown {",
+                                       "    @DistributeLock(name = \"unknown\", key = \"#missing\")",
+                                       "    public void run(String id) {}",
+                                       "}")));
+        boolean warned = false;
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            warned |= diagnostic.getKind() == Diagnostic.Kind.WARNING
+                    && diagnostic.getMessage(null).contains("#missing");
+        }
+        assertTrue(warned);
+        assertEquals("#missing", this.index().getProperty("demo.Unknown#run(java.lang.String).key"));
+    }
+
+    private boolean compile(JavaFileObject... sources) throws IOException {
+        diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null,
+                                                                              Charset.forName("UTF-8"));
+        try {
+            List<String> options = new ArrayList<String>(Arrays.asList(
+                    "-d", output.getPath(),
+                    "-classpath", output.getPath() + File.pathSeparator + System.getProperty("java.class.path"),
+                    "-implicit:none"));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                                                                 Arrays.asList(sources));
+            // 显式指定处理器，classpath上的其他处理器(lombok)不参与
+            task.setProcessors(Collections.singletonList(new DistributeLockProcessor()));
+            return task.call();
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    private boolean hasError(String text) {
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR && diagnostic.getMessage(null).contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Properties index() throws IOException {
+        Properties index = new Properties();
+        InputStream in = new FileInputStream(new File(output, LockMethodIndex.INDEX_LOCATION));
+        try {
+            index.load(in);
+        } finally {
+            in.close();
+        }
+        return index;
+    }
+
+    private static JavaFileObject source(String className, String... lines) {
+        final StringBuilder code = new StringBuilder();
+        for (String line : lines) {
+            code.append(line).append('\n');
+        }
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"),
+                                        JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                this.delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,174 @@
+package com.niushencheng.election;
+
+import com.niushencheng.store.LocalLockStore;
+import com.niushencheng.store.LockStore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LeaderElector} 的切换时间，以及关闭时租约的释放和回调的送达
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LeaderElectorTest {
+
+    private static final long LEASE = 300;
+
+    private static final long CONTEND = 50;
+
+    private final LocalLockStore lockStore = new LocalLockStore();
+
+    private final List<LeaderElector> electors = new ArrayList<LeaderElector>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (LeaderElector elector : electors) {
+            elector.destroy();
+        }
+    }
+
+    @Test
+    public void failoverWithinLeaseAndContendInterval() throws Exception {
+        PartitionedStore partitioned = new PartitionedStore();
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        LeaderCandidate candidate = this.elector("a", partitioned, 1).register("job", first);
+        assertEquals("acquired", first.events.poll(1, TimeUnit.SECONDS));
+        LeaderCandidate standby = this.elector("b", lockStore, 1).register("job", second);
+        Thread.sleep(LEASE);
+        assertTrue(candidate.isLeader());
+        assertFalse(standby.isLeader());
+
+        // leader与存储断开，续租失败后租约在存储中过期
+        partitioned.down = true;
+        long start = System.nanoTime();
+        assertEquals("acquired", second.events.poll(2, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("failover took " + elapsed + "ms", elapsed <= LEASE + CONTEND + 200);
+        assertEquals("lost", first.events.poll(1, TimeUnit.SECONDS));
+        assertFalse(candidate.isLeader());
+        assertTrue(standby.isLeader());
+    }
+
+    @Test
+    public void destroyReleasesLeaseAndDeliversLost() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        LeaderElector elector = this.elector("a", lockStore, 1);
+        elector.register("job", listener);
+        assertEquals("acquired", listener.events.poll(1, TimeUnit.SECONDS));
+        electors.remove(elector);
+        elector.destroy();
+        assertEquals("lost", listener.events.poll(0, TimeUnit.MILLISECONDS));
+        assertNull(lockStore.get("MTLeader:job"));
+    }
+
+    /**
+     * 多个调度线程时，close与进行中的抢占交错也不会在关闭后成为leader
+     */
+    @Test
+    public void closeRacingContendLeavesNoLeader() throws Exception {
+        LeaderElector elector = this.elector("a", lockStore, 4);
+        for (int i = 0; i < 200; i++) {
+            String name = "job-" + i;
+            RecordingListener listener = new RecordingListener();
+            LeaderCandidate candidate = elector.register(name, listener);
+            if (i % 2 == 0) {
+                Thread.sleep(1);
+            }
+            candidate.close();
+            assertNull(name, lockStore.get("MTLeader:" + name));
+            assertFalse(candidate.isLeader());
+            // 回调串行执行，已提交的回调送达后计数应当配对
+            long deadline = System.currentTimeMillis() + 1000;
+            while (listener.acquired.get() != listener.lost.get() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(name, listener.acquired.get(), listener.lost.get());
+        }
+        Thread.sleep(CONTEND * 2);
+        assertTrue(elector.leaderships().isEmpty());
+    }
+
+    private LeaderElector elector(String nodeId, LockStore store, int schedulerThreads) throws Exception {
+        LeaderElector elector = new LeaderElector();
+        elector.setLockStore(store);
+        elector.setNodeId(nodeId);
+        elector.setLeaseMillis(LEASE);
+        elector.setRenewIntervalMillis(LEASE / 3);
+        elector.setContendIntervalMillis(CONTEND);
+        elector.setSchedulerThreads(schedulerThreads);
+        elector.afterPropertiesSet();
+        electors.add(elector);
+        return elector;
+    }
+
+    /** 可以断开的存储，断开后所有调用失败，模拟leader所在节点的网络分区 */
+    private class PartitionedStore extends LocalLockStore {
+
+        private volatile boolean down = false;
+
+        @Override
+        public boolean add(String key, String value, long expireMillis) {
+            this.check();
+            return lockStore.add(key, value, expireMillis);
+        }
+
+        @Override
+        public String get(String key) {
+            this.check();
+            return lockStore.get(key);
+        }
+
+        @Override
+        public boolean compareAndDelete(String key, String expect) {
+            this.check();
+            return lockStore.compareAndDelete(key, expect);
+        }
+
+        @Override
+        public boolean compareAndExpire(String key, String expect, long expireMillis) {
+            this.check();
+            return lockStore.compareAndExpire(key, expect, expireMillis);
+        }
+
+        private void check() {
+            if (down) {
+                throw new IllegalStateException("partitioned");
+            }
+        }
+    }
+
+    private static class RecordingListener implements LeadershipListener {
+
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+        private final AtomicInteger acquired = new AtomicInteger();
+
+        private final AtomicInteger lost = new AtomicInteger();
+
+        @Override
+        public void leadershipAcquired(String name) {
+            acquired.incrementAndGet();
+            events.add("acquired");
+        }
+
+        @Override
+        public void leadershipLost(String name) {
+            lost.incrementAndGet();
+            events.add("lost");
+        }
+    }
+}
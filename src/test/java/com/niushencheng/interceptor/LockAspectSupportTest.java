@@ -0,0 +1,108 @@
+package com.niushencheng.interceptor;
+
+import com.niushencheng.annotation.DistributeLock;
+import com.niushencheng.annotation.DistributeRateLimit;
+import com.niushencheng.annotation.SingleFlight;
+import com.niushencheng.store.LocalLockStore;
+import com.niushencheng.support.RedisLockManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 启动时检查注解需要的存储能力，以及存储中格式不正确的单飞结果按没有结果处理
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LockAspectSupportTest {
+
+    private RedisLockManager lockManager;
+
+    private LockInterceptor interceptor;
+
+    private DefaultListableBeanFactory beanFactory;
+
+    @Before
+    public void setUp() throws Exception {
+        lockManager = new RedisLockManager();
+        lockManager.setLockStore(new LocalLockStore() {
+            @Override
+            public String get(String key) {
+                // 其他版本写入的单飞结果
+                return key.startsWith(SingleFlightResults.RESULT_PREFIX)
+                        ? "not-a-timestamp"
+                        : super.get(key);
+            }
+        });
+        lockManager.afterPropertiesSet();
+        interceptor = new LockInterceptor();
+        interceptor.setLockManager(lockManager);
+        beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("rateLimitedService", new RateLimitedService());
+        interceptor.setBeanFactory(beanFactory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        interceptor.destroy();
+        lockManager.destroy();
+    }
+
+    @Test
+    public void rateLimitOnStoreWithIncr() throws Exception {
+        interceptor.afterPropertiesSet();
+        interceptor.afterSingletonsInstantiated();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rateLimitOnStoreWithoutIncr() throws Exception {
+        interceptor.setRateLimitStore(new LocalLockStore() {
+            @Override
+            public boolean supportsIncr() {
+                return false;
+            }
+        });
+        interceptor.afterPropertiesSet();
+        interceptor.afterSingletonsInstantiated();
+    }
+
+    @Test
+    public void malformedSingleFlightRecordIsMiss() throws Exception {
+        interceptor.afterPropertiesSet();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new DefaultSingleFlightService());
+        proxyFactory.addAspect(interceptor);
+        SingleFlightService service = proxyFactory.getProxy();
+        assertEquals("k-1", service.load("k"));
+        assertEquals("k-2", service.load("k"));
+    }
+
+    public interface SingleFlightService {
+
+        String load(String key);
+    }
+
+    public static class DefaultSingleFlightService implements SingleFlightService {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        @DistributeLock(name = "singleFlight", key = "#p0", singleFlight = SingleFlight.STORE)
+        public String load(String key) {
+            return key + "-" + calls.incrementAndGet();
+        }
+    }
+
+    public static class RateLimitedService {
+
+        @DistributeRateLimit(key = "#userId", permits = 10)
+        public void call(String userId) {
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.niushencheng.interceptor;
+
+import com.niushencheng.annotation.DistributeLock;
+import com.niushencheng.store.LocalLockStore;
+import com.niushencheng.support.RedisLockManager;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 10万个虚拟线程经过完整的切面(注解解析、key解析、获取锁对象、加锁、释放)争抢少量的key，载体线程只有4个
+ * <p>
+ * 加锁路径上有monitor或者在monitor中做I/O时，等待者会钉住载体线程，4个载体线程很快耗尽，测试无法在时限内完成；
+ * 项目的编译级别为1.7，虚拟线程通过反射创建，运行在JDK 21以下时跳过
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class VirtualThreadStressTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadStressTest.class);
+
+    private static final int CARRIERS = 4;
+
+    private static final int WAITERS = 100 * 1000;
+
+    private static final int KEYS = 16;
+
+    private RedisLockManager lockManager;
+
+    private LockInterceptor interceptor;
+
+    private Service service;
+
+    @BeforeClass
+    public static void limitCarriers() {
+        // 需要在第一个虚拟线程创建之前设置
+        System.setProperty("jdk.virtualThreadScheduler.parallelism", String.valueOf(CARRIERS));
+        System.setProperty("jdk.virtualThreadScheduler.maxPoolSize", String.valueOf(CARRIERS));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        lockManager = new RedisLockManager();
+        lockManager.setLockStore(new LocalLockStore());
+        lockManager.afterPropertiesSet();
+        interceptor = new LockInterceptor();
+        interceptor.setLockManager(lockManager);
+        interceptor.afterPropertiesSet();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new DefaultService());
+        proxyFactory.addAspect(interceptor);
+        service = proxyFactory.getProxy();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        interceptor.destroy();
+        lockManager.destroy();
+    }
+
+    @Test
+    public void hundredThousandVirtualThreadWaiters() throws Exception {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        Assume.assumeTrue("需要JDK 21及以上", executor != null);
+
+        final ConcurrentMap<Integer, Thread> holders = new ConcurrentHashMap<Integer, Thread>();
+        final AtomicLong acquisitions = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong violations = new AtomicLong();
+        long start = System.nanoTime();
+        for (int i = 0; i < WAITERS; i++) {
+            final int key = i % KEYS;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        service.update(key, new Runnable() {
+                            @Override
+                            public void run() {
+                                if (holders.putIfAbsent(key, Thread.currentThread()) != null) {
+                                    violations.incrementAndGet();
+                                    return;
+                                }
+                                holders.remove(key);
+                                acquisitions.incrementAndGet();
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue("等待者没有在时限内完成，载体线程可能被钉住", executor.awaitTermination(2, TimeUnit.MINUTES));
+
+        LOGGER.info("virtual threads -->> {}, keys -->> {}, carriers -->> {}, elapsed -->> {}ms",
+                    WAITERS,
+                    KEYS,
+                    CARRIERS,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        assertEquals(0, violations.get());
+        assertEquals(0, failures.get());
+        assertEquals(WAITERS, acquisitions.get());
+        assertEquals(0, lockManager.getHeldLockRegistry().size());
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws Exception {
+        Method factory;
+        try {
+            factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        return (ExecutorService) factory.invoke(null);
+    }
+
+    public interface Service {
+
+        void update(int key, Runnable body);
+    }
+
+    public static class DefaultService implements Service {
+
+        @Override
+        @DistributeLock(name = "stress", key = "#p0", timeout = 60 * 1000, expire = 10 * 1000)
+        public void update(int key, Runnable body) {
+            body.run();
+        }
+    }
+}
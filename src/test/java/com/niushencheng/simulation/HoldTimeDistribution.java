@@ -0,0 +1,74 @@
+package com.niushencheng.simulation;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟时持有锁的时间的分布
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public abstract class HoldTimeDistribution {
+
+    /**
+     * 返回下一次持有锁的时间，单位ns
+     */
+    public abstract long nextNanos(Random random);
+
+    /**
+     * 固定的持有时间
+     */
+    public static HoldTimeDistribution fixed(long micros) {
+        final long nanos = TimeUnit.MICROSECONDS.toNanos(micros);
+        return new HoldTimeDistribution() {
+            @Override
+            public long nextNanos(Random random) {
+                return nanos;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed(" + TimeUnit.NANOSECONDS.toMicros(nanos) + "us)";
+            }
+        };
+    }
+
+    /**
+     * [minMicros, maxMicros)之间均匀分布
+     */
+    public static HoldTimeDistribution uniform(final long minMicros, final long maxMicros) {
+        if (maxMicros <= minMicros) {
+            return fixed(minMicros);
+        }
+        return new HoldTimeDistribution() {
+            @Override
+            public long nextNanos(Random random) {
+                return TimeUnit.MICROSECONDS.toNanos(minMicros)
+                        + (long) (random.nextDouble() * TimeUnit.MICROSECONDS.toNanos(maxMicros - minMicros));
+            }
+
+            @Override
+            public String toString() {
+                return "uniform(" + minMicros + "us, " + maxMicros + "us)";
+            }
+        };
+    }
+
+    /**
+     * 指数分布，大部分持有时间较短，少数很长，接近线上的长尾
+     */
+    public static HoldTimeDistribution exponential(final long meanMicros) {
+        return new HoldTimeDistribution() {
+            @Override
+            public long nextNanos(Random random) {
+                return (long) (-Math.log(1 - random.nextDouble()) * TimeUnit.MICROSECONDS.toNanos(meanMicros));
+            }
+
+            @Override
+            public String toString() {
+                return "exponential(" + meanMicros + "us)";
+            }
+        };
+    }
+}
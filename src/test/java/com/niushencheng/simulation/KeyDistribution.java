@@ -0,0 +1,68 @@
+package com.niushencheng.simulation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 模拟时锁key的分布
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public abstract class KeyDistribution {
+
+    /**
+     * 返回下一个key的序号，范围为[0, keyCount)
+     */
+    public abstract int next(Random random);
+
+    /**
+     * 所有key被访问的概率相同
+     */
+    public static KeyDistribution uniform(final int keyCount) {
+        if (keyCount <= 0) {
+            throw new IllegalArgumentException("keyCount必需大于0: " + keyCount);
+        }
+        return new KeyDistribution() {
+            @Override
+            public int next(Random random) {
+                return random.nextInt(keyCount);
+            }
+
+            @Override
+            public String toString() {
+                return "uniform(" + keyCount + ")";
+            }
+        };
+    }
+
+    /**
+     * 齐夫分布，序号为i的key被访问的概率正比于 1 / (i + 1)^exponent，exponent越大热点越集中
+     */
+    public static KeyDistribution zipfian(final int keyCount, final double exponent) {
+        if (keyCount <= 0) {
+            throw new IllegalArgumentException("keyCount必需大于0: " + keyCount);
+        }
+        final double[] cumulative = new double[keyCount];
+        double sum = 0;
+        for (int i = 0; i < keyCount; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        final double total = sum;
+        return new KeyDistribution() {
+            @Override
+            public int next(Random random) {
+                int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                return Math.min(index < 0
+                                        ? -index - 1
+                                        : index, keyCount - 1);
+            }
+
+            @Override
+            public String toString() {
+                return "zipfian(" + keyCount + ", " + exponent + ")";
+            }
+        };
+    }
+}
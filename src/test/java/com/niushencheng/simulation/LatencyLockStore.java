@@ -0,0 +1,123 @@
+package com.niushencheng.simulation;
+
+import com.niushencheng.store.AbstractLockStore;
+import com.niushencheng.store.LockStore;
+import com.niushencheng.store.StoreCommand;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 模拟网络往返延迟的存储装饰器，同时统计命令数和往返次数
+ * <p>
+ * 每次调用(包括一次批量执行)等待 latency + [0, jitter) 后再访问被装饰的存储；
+ * pipelined为false时模拟不支持管道的存储(如松鼠)，批量执行逐条往返
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LatencyLockStore extends AbstractLockStore {
+
+    private final LockStore delegate;
+
+    private final long latencyNanos;
+
+    private final long jitterNanos;
+
+    private final AtomicLong commandCount = new AtomicLong();
+
+    private final AtomicLong roundTripCount = new AtomicLong();
+
+    /** 批量执行是否一次往返完成 */
+    @Setter
+    private boolean pipelined = true;
+
+    public LatencyLockStore(LockStore delegate, long latencyMicros, long jitterMicros) {
+        this.delegate = delegate;
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.jitterNanos = TimeUnit.MICROSECONDS.toNanos(jitterMicros);
+    }
+
+    @Override
+    public boolean add(String key, String value, long expireMillis) {
+        this.roundTrip(1);
+        return delegate.add(key, value, expireMillis);
+    }
+
+    @Override
+    public String get(String key) {
+        this.roundTrip(1);
+        return delegate.get(key);
+    }
+
+    @Override
+    public boolean del(String key) {
+        this.roundTrip(1);
+        return delegate.del(key);
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expect) {
+        this.roundTrip(1);
+        return delegate.compareAndDelete(key, expect);
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expect, long expireMillis) {
+        this.roundTrip(1);
+        return delegate.compareAndExpire(key, expect, expireMillis);
+    }
+
+    @Override
+    public boolean supportsIncr() {
+        return delegate.supportsIncr();
+    }
+
+    @Override
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    @Override
+    public long incr(String key, long delta, long expireMillis) {
+        this.roundTrip(1);
+        return delegate.incr(key, delta, expireMillis);
+    }
+
+    @Override
+    public List<Object> execute(List<StoreCommand> commands) {
+        if (!pipelined) {
+            return super.execute(commands);
+        }
+        this.roundTrip(commands.size());
+        return delegate.execute(commands);
+    }
+
+    /** 收到的命令总数 */
+    public long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /** 网络往返总次数 */
+    public long getRoundTripCount() {
+        return roundTripCount.get();
+    }
+
+    private void roundTrip(int commands) {
+        commandCount.addAndGet(commands);
+        roundTripCount.incrementAndGet();
+        long delay = latencyNanos;
+        if (jitterNanos > 0) {
+            Random random = ThreadLocalRandom.current();
+            delay += (long) (random.nextDouble() * jitterNanos);
+        }
+        if (delay > 0) {
+            LockSupport.parkNanos(delay);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.niushencheng.simulation;
+
+import com.niushencheng.LockManager;
+import com.niushencheng.store.LockStore;
+
+/**
+ * 为每个模拟节点创建锁管理，用于比较不同的锁实现
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public interface LockManagerFactory {
+
+    /**
+     * 创建节点的锁管理，返回的对象如果实现了InitializingBean，需要在返回前完成初始化
+     *
+     * @param nodeId    节点序号
+     * @param lockStore 所有节点共享的模拟存储
+     *
+     * @return 锁管理
+     */
+    LockManager create(int nodeId, LockStore lockStore) throws Exception;
+}
@@ -0,0 +1,104 @@
+package com.niushencheng.simulation;
+
+import com.niushencheng.LockManager;
+import com.niushencheng.interceptor.LockInterceptor;
+import com.niushencheng.interceptor.LockOperation;
+import com.niushencheng.interceptor.LockOperationInvoker;
+import com.niushencheng.util.DaemonThreadFactory;
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个模拟节点，拥有独立的拦截器、锁管理和线程池，和真实部署的一个实例对应
+ * <p>
+ * 调用走完整的拦截器流程(解析key、获取锁对象、加锁、执行、释放)，只是锁配置由模拟参数给出而不是注解
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class SimulatedNode {
+
+    private static final Method HOLD_METHOD;
+
+    static {
+        try {
+            HOLD_METHOD = Target.class.getMethod("hold", String.class);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Getter
+    private final int id;
+
+    @Getter
+    private final LockManager lockManager;
+
+    private final NodeInterceptor interceptor;
+
+    private final Target target = new Target();
+
+    private final ExecutorService executor;
+
+    /** 统计期内成功加锁的次数 */
+    @Getter
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    public SimulatedNode(int id, LockManager lockManager, LockOperation operation, int threads) throws Exception {
+        this.id = id;
+        this.lockManager = lockManager;
+        this.interceptor = new NodeInterceptor(operation);
+        this.interceptor.setLockManager(lockManager);
+        this.interceptor.afterPropertiesSet();
+        this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("simulation-node-" + id + "-"));
+    }
+
+    /**
+     * 对key加锁后执行invoker，加锁失败时抛出 {@link com.niushencheng.interceptor.LockFailedException}
+     */
+    public Object invoke(String key, LockOperationInvoker invoker) {
+        return interceptor.invoke(invoker, target, key);
+    }
+
+    public void submit(Runnable worker) {
+        executor.execute(worker);
+    }
+
+    public void shutdown(long timeoutMillis) throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        interceptor.destroy();
+    }
+
+    /**
+     * 只用于提供被拦截的方法签名
+     */
+    public static class Target {
+
+        public void hold(String key) {
+        }
+    }
+
+    private static class NodeInterceptor extends LockInterceptor {
+
+        private final LockOperation operation;
+
+        NodeInterceptor(LockOperation operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        protected LockOperation getLockOperation(Class<?> targetClass, Method method) {
+            return operation;
+        }
+
+        Object invoke(LockOperationInvoker invoker, Target target, String key) {
+            return super.execute(invoker, target, HOLD_METHOD, new Object[]{key});
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.niushencheng.simulation;
+
+import com.niushencheng.LockManager;
+import com.niushencheng.interceptor.LockFailedException;
+import com.niushencheng.interceptor.LockOperation;
+import com.niushencheng.interceptor.LockOperationInvoker;
+import com.niushencheng.store.LocalLockStore;
+import com.niushencheng.store.LockStore;
+import com.niushencheng.store.ShardedLockStore;
+import com.niushencheng.support.AbstractStoreLockManager;
+import com.niushencheng.support.RedisLockManager;
+import com.niushencheng.support.SquirrelLockManager;
+import com.niushencheng.util.LogHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 多节点争抢锁的模拟
+ * <p>
+ * 启动多个 {@link SimulatedNode}，共享一个带延迟的内存存储，每个工作线程循环地按分布选择key、加锁、持有一段时间、释放，
+ * 统计吞吐、等待时间分位数、节点间公平性、超时次数和每次加锁的存储命令数，用于比较不同的锁实现和加锁策略
+ * <p>
+ * 位于测试代码中，不随jar发布；在测试classpath下以命令行运行，参数为 {@link SimulationConfig} 的属性：
+ * <pre>
+ * java com.niushencheng.simulation.Simulation nodes=8 keyPattern=ZIPFIAN keyCount=100 strategy=SQUIRREL
+ * </pre>
+ * 注意！！！
+ * 拦截器对每次加锁都会打印info日志，模拟时应把com.niushencheng的日志级别调到warn以上
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class Simulation {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Simulation.class);
+
+    private final SimulationConfig config;
+
+    private final KeyDistribution keys;
+
+    private final HoldTimeDistribution holdTimes;
+
+    private final LogHistogram waitHistogram = new LogHistogram();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicLong violations = new AtomicLong();
+
+    /** 当前持有锁的key，用于检查互斥是否被破坏 */
+    private final ConcurrentMap<String, Thread> holders = new ConcurrentHashMap<String, Thread>();
+
+    public Simulation(SimulationConfig config) {
+        this.config = config;
+        this.keys = config.keyDistribution();
+        this.holdTimes = config.holdTimeDistribution();
+    }
+
+    public SimulationReport run() throws Exception {
+        Map<String, LatencyLockStore> shards = new LinkedHashMap<String, LatencyLockStore>();
+        for (int i = 0; i < Math.max(1, config.getStoreShards()); i++) {
+            LatencyLockStore store = new LatencyLockStore(new LocalLockStore(),
+                                                          config.getStoreLatencyMicros(),
+                                                          config.getStoreJitterMicros());
+            // 松鼠不支持管道
+            store.setPipelined(config.getStrategy() != SimulationConfig.Strategy.SQUIRREL);
+            shards.put("shard-" + i, store);
+        }
+        LockStore lockStore = shards.size() == 1
+                ? shards.values().iterator().next()
+                : new ShardedLockStore(shards);
+        LockOperation operation = new LockOperation("simulation", "#p0", "模拟加锁失败",
+                                                    config.getTimeoutMillis(), config.getExpireMillis());
+        LockManagerFactory factory = config.getLockManagerFactory() != null
+                ? config.getLockManagerFactory()
+                : this.defaultFactory();
+
+        List<SimulatedNode> nodes = new ArrayList<SimulatedNode>(config.getNodes());
+        for (int i = 0; i < config.getNodes(); i++) {
+            nodes.add(new SimulatedNode(i, factory.create(i, lockStore), operation, config.getThreadsPerNode()));
+        }
+
+        long measureStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getWarmupMillis());
+        long measureEnd = measureStart + TimeUnit.MILLISECONDS.toNanos(config.getDurationMillis());
+        for (SimulatedNode node : nodes) {
+            for (int i = 0; i < config.getThreadsPerNode(); i++) {
+                node.submit(new Worker(node, measureStart, measureEnd));
+            }
+        }
+
+        LockSupport.parkNanos(measureStart - System.nanoTime());
+        long[] shardCommands = new long[shards.size()];
+        long roundTrips = 0;
+        int shard = 0;
+        for (LatencyLockStore store : shards.values()) {
+            shardCommands[shard++] = -store.getCommandCount();
+            roundTrips -= store.getRoundTripCount();
+        }
+        LockSupport.parkNanos(measureEnd - System.nanoTime());
+        long commands = 0;
+        shard = 0;
+        for (LatencyLockStore store : shards.values()) {
+            shardCommands[shard] += store.getCommandCount();
+            commands += shardCommands[shard++];
+            roundTrips += store.getRoundTripCount();
+        }
+
+        long[] nodeAcquisitions = new long[nodes.size()];
+        long acquisitions = 0;
+        for (SimulatedNode node : nodes) {
+            node.shutdown(config.getTimeoutMillis() + config.getHoldMicros() / 1000 * 10 + 1000);
+            nodeAcquisitions[node.getId()] = node.getAcquisitions().get();
+            acquisitions += nodeAcquisitions[node.getId()];
+            if (node.getLockManager() instanceof DisposableBean) {
+                ((DisposableBean) node.getLockManager()).destroy();
+            }
+        }
+
+        SimulationReport report = new SimulationReport();
+        report.setDescription(this.describe(nodes.get(0).getLockManager()));
+        report.setDurationMillis(config.getDurationMillis());
+        report.setAcquisitions(acquisitions);
+        report.setTimeouts(timeouts.get());
+        report.setErrors(errors.get());
+        report.setViolations(violations.get());
+        report.setWaitP50Micros(TimeUnit.NANOSECONDS.toMicros(waitHistogram.percentile(50)));
+        report.setWaitP99Micros(TimeUnit.NANOSECONDS.toMicros(waitHistogram.percentile(99)));
+        report.setWaitP999Micros(TimeUnit.NANOSECONDS.toMicros(waitHistogram.percentile(99.9)));
+        report.setWaitMaxMicros(TimeUnit.NANOSECONDS.toMicros(waitHistogram.getMax()));
+        report.setNodeAcquisitions(nodeAcquisitions);
+        report.setStoreCommands(commands);
+        report.setStoreRoundTrips(roundTrips);
+        report.setShardCommands(shardCommands);
+        return report;
+    }
+
+    private LockManagerFactory defaultFactory() {
+        return new LockManagerFactory() {
+            @Override
+            public LockManager create(int nodeId, LockStore lockStore) throws Exception {
+                AbstractStoreLockManager lockManager = config.getStrategy() == SimulationConfig.Strategy.SQUIRREL
+                        ? new SquirrelLockManager()
+                        : new RedisLockManager();
+                lockManager.setLockStore(lockStore);
+                lockManager.setBatchEnabled(config.isBatchEnabled());
+                lockManager.afterPropertiesSet();
+                return lockManager;
+            }
+        };
+    }
+
+    private String describe(LockManager lockManager) {
+        return String.format("%s, nodes=%d x %d threads, keys=%s, hold=%s, timeout=%dms, store latency=%dus+%dus, shards=%d",
+                             config.getLockManagerFactory() != null
+                                     ? lockManager.getClass().getSimpleName()
+                                     : config.getStrategy() + (config.isBatchEnabled()
+                                     ? "+batch"
+                                     : ""),
+                             config.getNodes(), config.getThreadsPerNode(),
+                             keys, holdTimes,
+                             config.getTimeoutMillis(),
+                             config.getStoreLatencyMicros(), config.getStoreJitterMicros(),
+                             Math.max(1, config.getStoreShards()));
+    }
+
+    private class Worker implements Runnable {
+
+        private final SimulatedNode node;
+
+        private final long measureStart;
+
+        private final long measureEnd;
+
+        Worker(SimulatedNode node, long measureStart, long measureEnd) {
+            this.node = node;
+            this.measureStart = measureStart;
+            this.measureEnd = measureEnd;
+        }
+
+        @Override
+        public void run() {
+            Random random = ThreadLocalRandom.current();
+            long thinkNanos = TimeUnit.MICROSECONDS.toNanos(config.getThinkMicros());
+            for (;;) {
+                final long start = System.nanoTime();
+                if (start >= measureEnd || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                final boolean measuring = start >= measureStart;
+                final String key = "key-" + keys.next(random);
+                final long holdNanos = holdTimes.nextNanos(random);
+                try {
+                    node.invoke(key, new LockOperationInvoker() {
+                        @Override
+                        public Object invoke() throws ThrowableWrapper {
+                            if (measuring) {
+                                waitHistogram.record(System.nanoTime() - start);
+                                node.getAcquisitions().incrementAndGet();
+                            }
+                            hold(key, holdNanos);
+                            return null;
+                        }
+                    });
+                } catch (LockFailedException e) {
+                    if (measuring) {
+                        timeouts.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    if (measuring) {
+                        errors.incrementAndGet();
+                    }
+                    LOGGER.error("模拟加锁异常, node -->> {}, key -->> {}", node.getId(), key, e);
+                }
+                if (thinkNanos > 0) {
+                    LockSupport.parkNanos(thinkNanos);
+                }
+            }
+        }
+
+        private void hold(String key, long holdNanos) {
+            Thread current = Thread.currentThread();
+            Thread previous = holders.putIfAbsent(key, current);
+            if (previous != null) {
+                violations.incrementAndGet();
+                LOGGER.error("同一个key被同时持有, key -->> {}, holder -->> {}, thread -->> {}",
+                             key, previous.getName(), current.getName());
+            }
+            try {
+                if (holdNanos > 0) {
+                    LockSupport.parkNanos(holdNanos);
+                }
+            } finally {
+                holders.remove(key, current);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        SimulationConfig config = new SimulationConfig();
+        BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(config);
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index <= 0) {
+                throw new IllegalArgumentException("参数格式应为 name=value: " + arg);
+            }
+            wrapper.setPropertyValue(arg.substring(0, index).trim(), arg.substring(index + 1).trim());
+        }
+        System.out.println(new Simulation(config).run());
+    }
+}
@@ -0,0 +1,102 @@
+package com.niushencheng.simulation;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 模拟参数，所有属性都可以通过 {@link Simulation#main(String[])} 的 name=value 参数设置
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+@Getter
+@Setter
+public class SimulationConfig {
+
+    /** 锁的获取方式 */
+    public enum Strategy {
+        /** 松鼠锁，见 {@link com.niushencheng.support.SquirrelLock} */
+        SQUIRREL,
+        /** redis锁，见 {@link com.niushencheng.support.RedisLock} */
+        REDIS
+    }
+
+    public enum KeyPattern {
+        UNIFORM,
+        ZIPFIAN
+    }
+
+    public enum HoldPattern {
+        FIXED,
+        UNIFORM,
+        EXPONENTIAL
+    }
+
+    /** 节点数 */
+    private int nodes = 4;
+
+    /** 每个节点的工作线程数 */
+    private int threadsPerNode = 8;
+
+    private Strategy strategy = Strategy.REDIS;
+
+    /** 是否开启存储命令合并 */
+    private boolean batchEnabled = false;
+
+    /** 自定义的锁管理，设置后忽略strategy和batchEnabled */
+    private LockManagerFactory lockManagerFactory;
+
+    /** 不同key的数量 */
+    private int keyCount = 1000;
+
+    private KeyPattern keyPattern = KeyPattern.UNIFORM;
+
+    /** 齐夫分布的指数 */
+    private double zipfExponent = 0.99;
+
+    private HoldPattern holdPattern = HoldPattern.EXPONENTIAL;
+
+    /** 持有锁的时间，FIXED为固定值，UNIFORM和EXPONENTIAL为平均值 */
+    private long holdMicros = 1000;
+
+    /** 两次加锁之间的间隔 */
+    private long thinkMicros = 0;
+
+    /** 获取锁的超时时间 */
+    private long timeoutMillis = 1000;
+
+    /** 锁过期时间 */
+    private long expireMillis = 30 * 1000;
+
+    /** 存储的单次往返延迟 */
+    private long storeLatencyMicros = 200;
+
+    /** 存储往返延迟的随机抖动 */
+    private long storeJitterMicros = 100;
+
+    /** 存储的分片数，大于1时使用 {@link com.niushencheng.store.ShardedLockStore}，每个分片有独立的延迟 */
+    private int storeShards = 1;
+
+    /** 预热时间，期间的数据不计入结果 */
+    private long warmupMillis = 1000;
+
+    /** 统计时间 */
+    private long durationMillis = 10 * 1000;
+
+    public KeyDistribution keyDistribution() {
+        return keyPattern == KeyPattern.ZIPFIAN
+                ? KeyDistribution.zipfian(keyCount, zipfExponent)
+                : KeyDistribution.uniform(keyCount);
+    }
+
+    public HoldTimeDistribution holdTimeDistribution() {
+        switch (holdPattern) {
+            case FIXED:
+                return HoldTimeDistribution.fixed(holdMicros);
+            case UNIFORM:
+                return HoldTimeDistribution.uniform(0, 2 * holdMicros);
+            default:
+                return HoldTimeDistribution.exponential(holdMicros);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.niushencheng.simulation;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 一次模拟的结果，时间单位均为us
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+@Getter
+@Setter
+public class SimulationReport {
+
+    /** 被测的锁实现和负载描述 */
+    private String description;
+
+    private long durationMillis;
+
+    /** 成功加锁次数 */
+    private long acquisitions;
+
+    /** 加锁超时次数 */
+    private long timeouts;
+
+    /** 其他异常次数 */
+    private long errors;
+
+    /** 同一个key被同时持有的次数，正常应为0 */
+    private long violations;
+
+    private long waitP50Micros;
+
+    private long waitP99Micros;
+
+    private long waitP999Micros;
+
+    private long waitMaxMicros;
+
+    /** 每个节点的成功加锁次数 */
+    private long[] nodeAcquisitions;
+
+    /** 存储收到的命令数 */
+    private long storeCommands;
+
+    /** 存储的网络往返次数 */
+    private long storeRoundTrips;
+
+    /** 每个分片收到的命令数 */
+    private long[] shardCommands;
+
+    /** 每秒成功加锁次数 */
+    public double getThroughput() {
+        return durationMillis == 0
+                ? 0
+                : acquisitions * 1000.0 / durationMillis;
+    }
+
+    /**
+     * 节点间的Jain公平性指数，范围为(0, 1]，1表示各节点获得锁的次数完全相同
+     */
+    public double getFairness() {
+        if (nodeAcquisitions == null || nodeAcquisitions.length == 0) {
+            return 1;
+        }
+        double sum = 0;
+        double squares = 0;
+        for (long count : nodeAcquisitions) {
+            sum += count;
+            squares += (double) count * count;
+        }
+        return squares == 0
+                ? 1
+                : sum * sum / (nodeAcquisitions.length * squares);
+    }
+
+    /** 平均每次成功加锁产生的存储命令数 */
+    public double getCommandsPerAcquisition() {
+        return acquisitions == 0
+                ? 0
+                : (double) storeCommands / acquisitions;
+    }
+
+    /** 平均每次成功加锁产生的网络往返次数 */
+    public double getRoundTripsPerAcquisition() {
+        return acquisitions == 0
+                ? 0
+                : (double) storeRoundTrips / acquisitions;
+    }
+
+    /**
+     * 负载最高的分片的命令数与平均值之比，1表示完全均衡
+     */
+    public double getShardImbalance() {
+        if (shardCommands == null || shardCommands.length == 0) {
+            return 1;
+        }
+        long total = 0;
+        long max = 0;
+        for (long count : shardCommands) {
+            total += count;
+            max = Math.max(max, count);
+        }
+        return total == 0
+                ? 1
+                : (double) max * shardCommands.length / total;
+    }
+
+    @Override
+    public String toString() {
+        String shards = shardCommands == null || shardCommands.length < 2
+                ? ""
+                : String.format(Locale.ROOT, "%n  shard load      : %.3f %s", getShardImbalance(), Arrays.toString(shardCommands));
+        return String.format(Locale.ROOT,
+                             "%s%n"
+                                     + "  throughput      : %.1f/s (%d acquisitions in %dms)%n"
+                                     + "  timeouts/errors : %d / %d%n"
+                                     + "  violations      : %d%n"
+                                     + "  wait p50/p99/p999/max : %d / %d / %d / %d us%n"
+                                     + "  node fairness   : %.4f %s%n"
+                                     + "  store commands  : %.2f per acquisition (%.2f round trips)",
+                             description,
+                             getThroughput(), acquisitions, durationMillis,
+                             timeouts, errors,
+                             violations,
+                             waitP50Micros, waitP99Micros, waitP999Micros, waitMaxMicros,
+                             getFairness(), Arrays.toString(nodeAcquisitions),
+                             getCommandsPerAcquisition(), getRoundTripsPerAcquisition()) + shards;
+    }
+}
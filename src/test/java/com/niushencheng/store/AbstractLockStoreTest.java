@@ -0,0 +1,42 @@
+package com.niushencheng.store;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link AbstractLockStore#execute(java.util.List)} 中途失败时撤销已经生效的加锁和计数
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class AbstractLockStoreTest {
+
+    @Test
+    public void failedBatchIsCompensated() {
+        LocalLockStore lockStore = new LocalLockStore() {
+            @Override
+            public String get(String key) {
+                if ("broken".equals(key)) {
+                    throw new StoreUnavailableException("broken");
+                }
+                return super.get(key);
+            }
+        };
+        lockStore.incr("intent", 1, 10000);
+        try {
+            lockStore.execute(Arrays.asList(StoreCommand.incr("intent", 1, 10000),
+                                            StoreCommand.add("lock", "owner", 10000),
+                                            StoreCommand.get("broken")));
+            fail();
+        } catch (StoreUnavailableException expected) {
+        }
+        assertNull(lockStore.get("lock"));
+        // 只撤销本批次的计数，其他持有者的计数不受影响
+        assertEquals(1, lockStore.incr("intent", 0, 10000));
+    }
+}
@@ -0,0 +1,145 @@
+package com.niushencheng.store;
+
+import com.niushencheng.simulation.LatencyLockStore;
+import com.niushencheng.simulation.Simulation;
+import com.niushencheng.simulation.SimulationConfig;
+import com.niushencheng.simulation.SimulationReport;
+import com.niushencheng.support.RedisLockManager;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link BatchingLockStore} 的往返次数统计，以及高并发下每次加锁的存储往返次数的对比
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class BatchingLockStoreTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingLockStoreTest.class);
+
+    @Test
+    public void countsOneRoundTripPerBatchOnPipelinedStore() throws Exception {
+        LatencyLockStore delegate = new LatencyLockStore(new LocalLockStore(), 2000, 0);
+        BatchingLockStore lockStore = this.batching(delegate);
+        try {
+            this.concurrentGets(lockStore, 32);
+            assertEquals(delegate.getRoundTripCount(), lockStore.getRoundTripCount());
+            assertTrue(lockStore.getRoundTripCount() < lockStore.getCommandCount());
+        } finally {
+            lockStore.destroy();
+        }
+    }
+
+    @Test
+    public void countsEveryCommandOnStoreWithoutPipelining() throws Exception {
+        LatencyLockStore delegate = new LatencyLockStore(new LocalLockStore(), 2000, 0);
+        delegate.setPipelined(false);
+        BatchingLockStore lockStore = this.batching(delegate);
+        try {
+            this.concurrentGets(lockStore, 32);
+            // 相同的get在批次内被合并，统计的往返次数仍然等于底层存储实际收到的调用数
+            assertEquals(delegate.getRoundTripCount(), lockStore.getRoundTripCount());
+        } finally {
+            lockStore.destroy();
+        }
+    }
+
+    @Test
+    public void managerSkipsBatchingWithoutPipelining() throws Exception {
+        LatencyLockStore store = new LatencyLockStore(new LocalLockStore(), 0, 0);
+        store.setPipelined(false);
+        RedisLockManager lockManager = new RedisLockManager();
+        lockManager.setLockStore(store);
+        lockManager.setBatchEnabled(true);
+        lockManager.afterPropertiesSet();
+        try {
+            assertFalse(lockManager.getLockStore() instanceof BatchingLockStore);
+        } finally {
+            lockManager.destroy();
+        }
+    }
+
+    /**
+     * 4个节点 x 32个线程在少量key上争抢，比较开启合并前后每次加锁的存储往返次数
+     * <p>
+     * 模拟存储的延迟固定、连接不受限，合并只减少往返次数，不会提高吞吐，见 {@link BatchingLockStore} 的说明，
+     * 这里不对吞吐做断言
+     */
+    @Test
+    public void roundTripsPerAcquisitionAtHighConcurrency() throws Exception {
+        SimulationReport plain = this.simulate(false);
+        SimulationReport batched = this.simulate(true);
+        LOGGER.info("合并前后的对比\n{}\n{}", plain, batched);
+        assertEquals(0, plain.getViolations());
+        assertEquals(0, batched.getViolations());
+        assertTrue(plain.getAcquisitions() > 0 && batched.getAcquisitions() > 0);
+        // 不合并时每次加锁至少一次往返，合并后大部分命令和其他线程的命令共用一次往返
+        assertTrue(plain.getRoundTripsPerAcquisition() >= 1);
+        assertTrue(String.format("plain %.2f, batched %.2f",
+                                 plain.getRoundTripsPerAcquisition(),
+                                 batched.getRoundTripsPerAcquisition()),
+                   batched.getRoundTripsPerAcquisition() < plain.getRoundTripsPerAcquisition() * 0.75);
+        assertTrue(batched.getCommandsPerAcquisition() > batched.getRoundTripsPerAcquisition());
+    }
+
+    private SimulationReport simulate(boolean batchEnabled) throws Exception {
+        SimulationConfig config = new SimulationConfig();
+        config.setNodes(4);
+        config.setThreadsPerNode(32);
+        config.setKeyCount(64);
+        config.setHoldMicros(200);
+        config.setStoreLatencyMicros(500);
+        config.setStoreJitterMicros(100);
+        config.setBatchEnabled(batchEnabled);
+        config.setWarmupMillis(300);
+        config.setDurationMillis(1500);
+        return new Simulation(config).run();
+    }
+
+    private BatchingLockStore batching(LockStore delegate) throws Exception {
+        BatchingLockStore lockStore = new BatchingLockStore(delegate);
+        lockStore.setBypassConcurrency(0);
+        lockStore.setMaxDelayMicros(1000);
+        lockStore.afterPropertiesSet();
+        return lockStore;
+    }
+
+    private void concurrentGets(final LockStore lockStore, int threads) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            final String key = "key-" + (i % 4);
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 10; j++) {
+                            lockStore.get(key);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+    }
+}
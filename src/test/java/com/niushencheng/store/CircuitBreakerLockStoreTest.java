@@ -0,0 +1,177 @@
+package com.niushencheng.store;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link CircuitBreakerLockStore} 的状态转换，以及半开状态下并发放行的探测数不超过halfOpenProbes
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class CircuitBreakerLockStoreTest {
+
+    private static final long OPEN_MILLIS = 100;
+
+    private static final int PROBES = 3;
+
+    private volatile boolean failing;
+
+    /** 不为null时get阻塞到放行 */
+    private volatile CountDownLatch gate;
+
+    private final AtomicInteger delegateCalls = new AtomicInteger();
+
+    private CircuitBreakerLockStore lockStore;
+
+    @Before
+    public void setUp() {
+        lockStore = new CircuitBreakerLockStore(new LocalLockStore() {
+            @Override
+            public String get(String key) {
+                delegateCalls.incrementAndGet();
+                CountDownLatch gate = CircuitBreakerLockStoreTest.this.gate;
+                if (gate != null) {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (failing) {
+                    throw new IllegalStateException("down");
+                }
+                return super.get(key);
+            }
+        });
+        lockStore.setMinimumCalls(5);
+        lockStore.setFailureRateThreshold(0.5);
+        lockStore.setSlowCallMillis(10 * 1000);
+        lockStore.setOpenMillis(OPEN_MILLIS);
+        lockStore.setHalfOpenProbes(PROBES);
+    }
+
+    @Test
+    public void failuresOpenAndRejectWithoutCallingStore() {
+        this.open();
+        assertEquals(1, lockStore.getOpenCount());
+        int calls = delegateCalls.get();
+        for (int i = 0; i < 10; i++) {
+            try {
+                lockStore.get("k");
+                fail();
+            } catch (StoreUnavailableException expected) {
+            }
+        }
+        assertEquals(calls, delegateCalls.get());
+        assertEquals(10, lockStore.getRejectedCount());
+    }
+
+    @Test
+    public void successfulProbesClose() throws Exception {
+        this.open();
+        failing = false;
+        Thread.sleep(OPEN_MILLIS + 20);
+        for (int i = 0; i < PROBES; i++) {
+            lockStore.get("k");
+        }
+        assertEquals(CircuitBreakerLockStore.State.CLOSED, lockStore.getState());
+        assertEquals(1, lockStore.getHalfOpenCount());
+        assertEquals(1, lockStore.getCloseCount());
+        // 关闭后窗口清空，不会因为打开前的失败再次打开
+        assertEquals(0, lockStore.getFailureRate(), 0);
+    }
+
+    @Test
+    public void failedProbeReopens() throws Exception {
+        this.open();
+        Thread.sleep(OPEN_MILLIS + 20);
+        try {
+            lockStore.get("k");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(CircuitBreakerLockStore.State.OPEN, lockStore.getState());
+        assertEquals(2, lockStore.getOpenCount());
+        try {
+            lockStore.get("k");
+            fail();
+        } catch (StoreUnavailableException expected) {
+        }
+    }
+
+    /**
+     * 多个线程同时发现打开时间已到，进入半开时不能重置其他线程已经占用的探测名额
+     */
+    @Test
+    public void concurrentHalfOpenAdmitsAtMostProbes() throws Exception {
+        final int threads = 16;
+        for (int round = 0; round < 20; round++) {
+            failing = true;
+            this.open();
+            failing = false;
+            gate = new CountDownLatch(1);
+            int before = delegateCalls.get();
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            // 打开期间一直重试，使所有线程在打开时间到达时同时进入
+                            for (;;) {
+                                CircuitBreakerLockStore.State state = lockStore.getState();
+                                try {
+                                    lockStore.get("k");
+                                    return;
+                                } catch (StoreUnavailableException e) {
+                                    if (state != CircuitBreakerLockStore.State.OPEN) {
+                                        return;
+                                    }
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            start.countDown();
+            // 被拒绝的线程直接返回，剩下的都阻塞在存储中
+            long deadline = System.currentTimeMillis() + 5000;
+            while (done.getCount() > PROBES && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(20);
+            assertEquals("round " + round, PROBES, delegateCalls.get() - before);
+            gate.countDown();
+            gate = null;
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(CircuitBreakerLockStore.State.CLOSED, lockStore.getState());
+        }
+    }
+
+    private void open() {
+        failing = true;
+        for (int i = 0; i < 5; i++) {
+            try {
+                lockStore.get("k");
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+        }
+        assertEquals(CircuitBreakerLockStore.State.OPEN, lockStore.getState());
+    }
+}
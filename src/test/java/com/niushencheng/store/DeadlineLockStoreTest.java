@@ -0,0 +1,97 @@
+package com.niushencheng.store;
+
+import com.niushencheng.simulation.LatencyLockStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link DeadlineLockStore} 的截止时间，以及调用方时间用完时不触发 {@link CircuitBreakerLockStore} 熔断
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class DeadlineLockStoreTest {
+
+    private DeadlineLockStore deadlineLockStore;
+
+    private CircuitBreakerLockStore lockStore;
+
+    @Before
+    public void setUp() throws Exception {
+        deadlineLockStore = new DeadlineLockStore(new LatencyLockStore(new LocalLockStore(), 500 * 1000, 0));
+        deadlineLockStore.setDefaultTimeoutMillis(200);
+        deadlineLockStore.afterPropertiesSet();
+        lockStore = new CircuitBreakerLockStore(deadlineLockStore);
+        lockStore.setMinimumCalls(5);
+        lockStore.setFailureRateThreshold(0.5);
+        lockStore.setSlowCallMillis(10 * 1000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        deadlineLockStore.destroy();
+    }
+
+    @Test
+    public void exhaustedBudgetDoesNotOpenBreaker() {
+        for (int i = 0; i < 10; i++) {
+            Long previous = StoreDeadline.enter(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(i % 2 == 0
+                                                                                                     ? 0
+                                                                                                     : 20));
+            try {
+                lockStore.get("k");
+                fail();
+            } catch (StoreDeadlineExceededException expected) {
+            } finally {
+                StoreDeadline.exit(previous);
+            }
+        }
+        assertEquals(CircuitBreakerLockStore.State.CLOSED, lockStore.getState());
+        assertEquals(0, lockStore.getFailureRate(), 0);
+    }
+
+    @Test
+    public void slowStoreOpensBreaker() {
+        for (int i = 0; i < 5; i++) {
+            try {
+                lockStore.get("k");
+                fail();
+            } catch (StoreTimeoutException expected) {
+                assertFalse(expected instanceof StoreDeadlineExceededException);
+            }
+        }
+        assertEquals(CircuitBreakerLockStore.State.OPEN, lockStore.getState());
+        try {
+            lockStore.get("k");
+            fail();
+        } catch (StoreUnavailableException expected) {
+        }
+    }
+
+    @Test
+    public void abandonedAddIsRevoked() throws InterruptedException {
+        LocalLockStore local = new LocalLockStore();
+        DeadlineLockStore store = new DeadlineLockStore(new LatencyLockStore(local, 100 * 1000, 0));
+        store.setDefaultTimeoutMillis(20);
+        try {
+            store.afterPropertiesSet();
+            store.add("k", "v", 10 * 1000);
+            fail();
+        } catch (StoreTimeoutException expected) {
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertNull(local.get("k"));
+        assertTrue(store.getRevokedCount() == 1);
+    }
+}
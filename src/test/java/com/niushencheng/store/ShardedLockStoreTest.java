@@ -0,0 +1,181 @@
+package com.niushencheng.store;
+
+import com.niushencheng.interceptor.LockFailedException;
+import com.niushencheng.interceptor.LockOperation;
+import com.niushencheng.interceptor.LockOperationInvoker;
+import com.niushencheng.simulation.SimulatedNode;
+import com.niushencheng.support.RedisLockManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link ShardedLockStore} 在多个进程内存储上的路由、跨分片批量执行失败时的撤销，以及多节点加锁时各分片的负载
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class ShardedLockStoreTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedLockStoreTest.class);
+
+    private static final int SHARDS = 4;
+
+    private Map<String, LocalLockStore> stores;
+
+    @Before
+    public void setUp() {
+        stores = new LinkedHashMap<String, LocalLockStore>();
+        for (int i = 0; i < SHARDS; i++) {
+            stores.put("shard-" + i, new LocalLockStore() {
+                @Override
+                public String get(String key) {
+                    if (key.startsWith("broken")) {
+                        throw new StoreUnavailableException("broken");
+                    }
+                    return super.get(key);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void routing() {
+        ShardedLockStore lockStore = new ShardedLockStore(stores);
+        assertEquals(lockStore.shardOf("{user-1}:a"), lockStore.shardOf("{user-1}:b"));
+        assertTrue(lockStore.add("k", "owner", 10 * 1000));
+        assertEquals("owner", stores.get(lockStore.getShardNames().get(lockStore.shardOf("k"))).get("k"));
+
+        // 增加一个分片时只有约1/(N+1)的key迁移
+        Map<String, LocalLockStore> grown = new LinkedHashMap<String, LocalLockStore>(stores);
+        grown.put("shard-" + SHARDS, new LocalLockStore());
+        ShardedLockStore grownStore = new ShardedLockStore(grown);
+        int keys = 10 * 1000;
+        int moved = 0;
+        for (int i = 0; i < keys; i++) {
+            String key = "key-" + i;
+            if (lockStore.shardOf(key) != grownStore.shardOf(key)) {
+                moved++;
+                assertEquals(SHARDS, grownStore.shardOf(key));
+            }
+        }
+        assertEquals(1.0 / (SHARDS + 1), (double) moved / keys, 0.02);
+    }
+
+    @Test
+    public void crossShardFailureCompensatesAppliedSegments() {
+        ShardedLockStore lockStore = new ShardedLockStore(stores);
+        String broken = null;
+        for (int i = 0; broken == null; i++) {
+            if (lockStore.shardOf("broken-" + i) != lockStore.shardOf("lock")) {
+                broken = "broken-" + i;
+            }
+        }
+        lockStore.incr("{lock}:intent", 1, 10 * 1000);
+        try {
+            lockStore.execute(Arrays.asList(StoreCommand.incr("{lock}:intent", 1, 10 * 1000),
+                                            StoreCommand.add("lock", "owner", 10 * 1000),
+                                            StoreCommand.get(broken)));
+            fail();
+        } catch (StoreUnavailableException expected) {
+        }
+        assertNull(lockStore.get("lock"));
+        assertEquals(1, lockStore.incr("{lock}:intent", 0, 10 * 1000));
+    }
+
+    /**
+     * 两个节点共用4个分片，32个线程在1000个key上并发加锁，检查互斥以及各分片的负载
+     */
+    @Test
+    public void balancedAcrossShards() throws Exception {
+        final int keyCount = 1000;
+        final int threadsPerNode = 16;
+        final long durationMillis = 1000;
+        LockOperation operation = new LockOperation("sharded", "#p0", "加锁失败", 1000L, 10 * 1000L);
+        List<ShardedLockStore> shardedStores = new ArrayList<ShardedLockStore>();
+        List<SimulatedNode> nodes = new ArrayList<SimulatedNode>();
+        for (int i = 0; i < 2; i++) {
+            ShardedLockStore lockStore = new ShardedLockStore(stores);
+            shardedStores.add(lockStore);
+            RedisLockManager lockManager = new RedisLockManager();
+            lockManager.setLockStore(lockStore);
+            lockManager.afterPropertiesSet();
+            nodes.add(new SimulatedNode(i, lockManager, operation, threadsPerNode));
+        }
+
+        final ConcurrentMap<String, Thread> holders = new ConcurrentHashMap<String, Thread>();
+        final AtomicLong acquisitions = new AtomicLong();
+        final AtomicLong violations = new AtomicLong();
+        final long deadline = System.currentTimeMillis() + durationMillis;
+        final CountDownLatch done = new CountDownLatch(nodes.size() * threadsPerNode);
+        for (final SimulatedNode node : nodes) {
+            for (int i = 0; i < threadsPerNode; i++) {
+                node.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (System.currentTimeMillis() < deadline) {
+                                final String key = "key-" + ThreadLocalRandom.current().nextInt(keyCount);
+                                try {
+                                    node.invoke(key, new LockOperationInvoker() {
+                                        @Override
+                                        public Object invoke() {
+                                            if (holders.putIfAbsent(key, Thread.currentThread()) != null) {
+                                                violations.incrementAndGet();
+                                                return null;
+                                            }
+                                            holders.remove(key);
+                                            acquisitions.incrementAndGet();
+                                            return null;
+                                        }
+                                    });
+                                } catch (LockFailedException e) {
+                                    // 超时不影响互斥和负载的检查
+                                }
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+        }
+        assertTrue(done.await(durationMillis + 10 * 1000, TimeUnit.MILLISECONDS));
+        for (SimulatedNode node : nodes) {
+            node.shutdown(1000);
+            ((RedisLockManager) node.getLockManager()).destroy();
+        }
+
+        assertEquals(0, violations.get());
+        assertTrue(acquisitions.get() > 0);
+        for (ShardedLockStore lockStore : shardedStores) {
+            LOGGER.info("分片负载, commandCounts -->> {}, imbalance -->> {}",
+                        lockStore.getCommandCounts(),
+                        lockStore.getImbalance());
+            assertEquals(SHARDS, lockStore.getCommandCounts().size());
+            for (Long count : lockStore.getCommandCounts().values()) {
+                assertNotEquals(0L, count.longValue());
+            }
+            assertTrue("imbalance " + lockStore.getImbalance(), lockStore.getImbalance() < 1.3);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LocalLockStore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link AdmissionController} 的每一种拒绝原因，被拒绝的加锁立即失败且不影响持有者和已经在等待的线程
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class AdmissionControllerTest {
+
+    private static final String NAME = "order:";
+
+    private final LocalLockStore lockStore = new LocalLockStore();
+
+    private final AdmissionController admissionController = new AdmissionController();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void rejectsWhenKeyHasTooManyWaiters() throws Exception {
+        admissionController.setMaxWaitersPerKey(1);
+        StoreLock lock = this.lock("1");
+        assertTrue(lock.lock());
+        try {
+            Future<Boolean> waiter = this.waitInside(lock);
+            this.assertRejected(lock);
+            assertEquals(1, admissionController.getRejectedCount(AdmissionController.Rejection.KEY_WAITERS));
+            lock.unlock();
+            assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        } finally {
+            lock.unlock();
+        }
+        this.assertNoWaiters();
+    }
+
+    /**
+     * 同一个锁名称下其他key的等待者也会占用名额，空闲的key同样被拒绝
+     */
+    @Test
+    public void rejectsWhenNameHasTooManyWaiters() throws Exception {
+        admissionController.setMaxWaitersPerName(1);
+        StoreLock held = this.lock("1");
+        StoreLock idle = this.lock("2");
+        assertTrue(held.lock());
+        try {
+            Future<Boolean> waiter = this.waitInside(held);
+            this.assertRejected(idle);
+            assertEquals(1, admissionController.getRejectedCount(AdmissionController.Rejection.NAME_WAITERS));
+            assertEquals(0, admissionController.getRejectedCount(AdmissionController.Rejection.KEY_WAITERS));
+            held.unlock();
+            assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        } finally {
+            held.unlock();
+        }
+        this.assertNoWaiters();
+        // 等待者离开后恢复准入
+        assertTrue(this.attempt(idle).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectsWhenEstimatedQueueWaitIsTooLong() throws Exception {
+        admissionController.setMaxQueueWaitMillis(100);
+        StoreLock lock = this.lock("1");
+        assertTrue(lock.lock());
+        try {
+            // 还没有持有记录，不估计
+            long admitted = admissionController.getAdmittedCount();
+            assertFalse(this.attempt(this.lock("1", 50)).get(5, TimeUnit.SECONDS));
+            assertEquals(admitted + 1, admissionController.getAdmittedCount());
+
+            // 持有者平均持有200ms，前面还有一个持有者
+            admissionController.recordHold(NAME, TimeUnit.MILLISECONDS.toNanos(200));
+            this.assertRejected(lock);
+            assertEquals(1, admissionController.getRejectedCount(AdmissionController.Rejection.QUEUE_WAIT));
+        } finally {
+            lock.unlock();
+        }
+        // 没有持有者也没有等待者时估计为0
+        assertTrue(this.attempt(lock).get(5, TimeUnit.SECONDS));
+        assertEquals(1, admissionController.getRejectedCount());
+        this.assertNoWaiters();
+    }
+
+    private StoreLock lock(String key) {
+        return this.lock(key, 5000);
+    }
+
+    private StoreLock lock(String key, long timeout) {
+        StoreLock lock = new StoreLock(NAME, key, timeout, 60 * 1000, "e", lockStore);
+        lock.setAdmissionController(admissionController);
+        return lock;
+    }
+
+    /** 在其他线程加锁并在mainLock上排队，返回前确认已经在等待 */
+    private Future<Boolean> waitInside(StoreLock lock) throws InterruptedException {
+        Future<Boolean> waiter = this.attempt(lock);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lock.getWaiterCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, lock.getWaiterCount());
+        return waiter;
+    }
+
+    private void assertRejected(StoreLock lock) throws Exception {
+        long start = System.nanoTime();
+        assertFalse(this.attempt(lock).get(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + elapsed + "ms", elapsed < 1000);
+    }
+
+    private void assertNoWaiters() {
+        String description = admissionController.describe().get(NAME);
+        assertTrue(description, description.startsWith("waiters=0 "));
+    }
+
+    private Future<Boolean> attempt(final StoreLock lock) {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                try {
+                    return lock.lock();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,86 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LocalLockStore;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link DeadlockDetector} 按线程名和线程id区分线程，同名的线程不会被误判为环
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class DeadlockDetectorTest {
+
+    private final DeadlockDetector detector = new DeadlockDetector(new LocalLockStore(), "test:");
+
+    @Test
+    public void sameNameThreadsAreDistinct() throws Exception {
+        LockOwner first = this.inThread("worker", new Callable<LockOwner>() {
+            @Override
+            public LockOwner call() {
+                return LockOwner.current();
+            }
+        });
+        final LockOwner second = this.inThread("worker", new Callable<LockOwner>() {
+            @Override
+            public LockOwner call() {
+                return LockOwner.current();
+            }
+        });
+        assertEquals(first.getThread().substring(0, 7), second.getThread().substring(0, 7));
+        assertNotEquals(first.getThread(), second.getThread());
+
+        // worker(1) -> other -> worker(2)，worker(2)没有等待，不是环
+        final LockOwner other = this.inThread("other", new Callable<LockOwner>() {
+            @Override
+            public LockOwner call() {
+                detector.held();
+                assertFalse(detector.isVictim("b", second));
+                return LockOwner.current();
+            }
+        });
+        assertFalse(this.inThread("worker", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                detector.held();
+                return detector.isVictim("a", other);
+            }
+        }));
+        assertEquals(0, detector.getVictimCount());
+    }
+
+    @Test
+    public void cycleIsDetected() throws Exception {
+        final LockOwner self = LockOwner.current();
+        // other持有b等待a，当前线程持有a等待b，当前线程使环闭合
+        LockOwner other = this.inThread("other", new Callable<LockOwner>() {
+            @Override
+            public LockOwner call() {
+                detector.held();
+                assertFalse(detector.isVictim("a", self));
+                return LockOwner.current();
+            }
+        });
+        detector.held();
+        assertTrue(detector.isVictim("b", other));
+        assertEquals(1, detector.getVictimCount());
+        detector.clearWaiting();
+    }
+
+    private <T> T inThread(String name, Callable<T> body) throws InterruptedException, ExecutionException {
+        FutureTask<T> task = new FutureTask<T>(body);
+        Thread thread = new Thread(task, name);
+        thread.start();
+        thread.join();
+        return task.get();
+    }
+}
@@ -0,0 +1,143 @@
+package com.niushencheng.support;
+
+import com.niushencheng.annotation.DistributeLock;
+import com.niushencheng.interceptor.LockFailedException;
+import com.niushencheng.interceptor.LockInterceptor;
+import com.niushencheng.store.CircuitBreakerLockStore;
+import com.niushencheng.store.LocalLockStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 存储熔断降级为本机锁期间，持有中的锁对象不会被锁对象缓存淘汰，本机的互斥仍然有效
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class DegradedLockTest {
+
+    private RedisLockManager lockManager;
+
+    private LockInterceptor interceptor;
+
+    private DefaultService target;
+
+    private Service service;
+
+    @Before
+    public void setUp() throws Exception {
+        lockManager = new RedisLockManager();
+        lockManager.setLockStore(new LocalLockStore() {
+            @Override
+            public boolean add(String key, String value, long expireMillis) {
+                throw new IllegalStateException("down");
+            }
+        });
+        lockManager.setCircuitBreakerEnabled(true);
+        lockManager.setBreakerMinimumCalls(1);
+        lockManager.setBreakerOpenMillis(60 * 1000);
+        lockManager.setDegradableLockNames(Collections.singleton("*"));
+        lockManager.afterPropertiesSet();
+        interceptor = new LockInterceptor();
+        interceptor.setLockManager(lockManager);
+        interceptor.afterPropertiesSet();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(target = new DefaultService());
+        proxyFactory.addAspect(interceptor);
+        service = proxyFactory.getProxy();
+        try {
+            service.run("warmup", null);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(CircuitBreakerLockStore.State.OPEN, lockManager.getCircuitBreaker().getState());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        interceptor.destroy();
+        lockManager.destroy();
+    }
+
+    @Test
+    public void heldLockSurvivesCacheChurn() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                service.run("k", new Runnable() {
+                    @Override
+                    public void run() {
+                        entered.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+        });
+        holder.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        // 超过原来按大小淘汰的上限，并触发回收
+        for (int i = 0; i < 2048; i++) {
+            service.run("other-" + i, null);
+        }
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        try {
+            service.run("k", null);
+            fail();
+        } catch (LockFailedException expected) {
+        }
+        release.countDown();
+        holder.join(5000);
+        service.run("k", null);
+        assertEquals(1, target.maxConcurrent.get());
+    }
+
+    public interface Service {
+
+        void run(String key, Runnable body);
+    }
+
+    public static class DefaultService implements Service {
+
+        private final AtomicInteger concurrent = new AtomicInteger();
+
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        @Override
+        @DistributeLock(name = "degraded", key = "#p0", timeout = 200, expire = 5000)
+        public void run(String key, Runnable body) {
+            if (!"k".equals(key)) {
+                return;
+            }
+            int current = concurrent.incrementAndGet();
+            if (current > maxConcurrent.get()) {
+                maxConcurrent.set(current);
+            }
+            try {
+                if (body != null) {
+                    body.run();
+                }
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+    }
+}
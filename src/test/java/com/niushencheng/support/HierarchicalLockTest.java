@@ -0,0 +1,78 @@
+package com.niushencheng.support;
+
+import com.niushencheng.interceptor.LockArgIllegalException;
+import com.niushencheng.store.LocalLockStore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link HierarchicalLock} 祖先与后代之间的互斥，以及宕机的持有者留下的意向计数不会被兄弟节点的加锁续命
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class HierarchicalLockTest {
+
+    private static final long TIMEOUT = 100;
+
+    private static final long EXPIRE = 300;
+
+    private static final long HORIZON = 800;
+
+    private final LocalLockStore lockStore = new LocalLockStore();
+
+    @Test
+    public void ancestorAndDescendantExclude() {
+        HierarchicalLock tenant = this.lock("tenant:1");
+        HierarchicalLock order = this.lock("tenant:1/order:1");
+        HierarchicalLock otherOrder = this.lock("tenant:1/order:2");
+        HierarchicalLock otherTenant = this.lock("tenant:2/order:1");
+
+        assertTrue(order.lock());
+        assertFalse(tenant.lock());
+        // 不同的子节点之间互不影响
+        assertTrue(otherOrder.lock());
+        assertTrue(otherTenant.lock());
+        order.unlock();
+        assertFalse(tenant.lock());
+        otherOrder.unlock();
+        assertTrue(tenant.lock());
+
+        assertFalse(order.lock());
+        tenant.unlock();
+        assertTrue(order.lock());
+        order.unlock();
+        otherTenant.unlock();
+    }
+
+    @Test
+    public void crashedHolderIntentionExpires() throws InterruptedException {
+        // 持有后不释放，模拟宕机
+        assertTrue(this.lock("tenant:1/order:crashed").lock());
+        HierarchicalLock tenant = this.lock("tenant:1");
+        assertFalse(tenant.lock());
+
+        // 兄弟节点持续加锁释放，不能延长宕机持有者的计数
+        long deadline = System.currentTimeMillis() + EXPIRE + 2 * HORIZON / HierarchicalLock.INTENTION_BUCKETS + 500;
+        HierarchicalLock sibling = this.lock("tenant:1/order:sibling");
+        boolean acquired = false;
+        while (!acquired && System.currentTimeMillis() < deadline) {
+            assertTrue(sibling.lock());
+            sibling.unlock();
+            acquired = tenant.lock();
+        }
+        assertTrue(acquired);
+        tenant.unlock();
+    }
+
+    @Test(expected = LockArgIllegalException.class)
+    public void expireBeyondHorizon() {
+        new HierarchicalLock(HierarchicalLock.NAMESPACE, "tenant:1", TIMEOUT, HORIZON + 1, "e", lockStore, HORIZON);
+    }
+
+    private HierarchicalLock lock(String key) {
+        return new HierarchicalLock(HierarchicalLock.NAMESPACE, key, TIMEOUT, EXPIRE, "e", lockStore, HORIZON);
+    }
+}
@@ -0,0 +1,132 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LocalLockStore;
+import com.niushencheng.util.SpaceSaving;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link HotKeyProfiler} 在偏斜分布下找出的top-k与真实值的比较，以及通过 {@link StoreLock} 记录的等待和持有
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class HotKeyProfilerTest {
+
+    private static final int KEYS = 2000;
+
+    private static final int TOP = 10;
+
+    /**
+     * zipf分布的加锁，真实的top-k都要找出，估计值不低于真实值且高估量不超过error
+     */
+    @Test
+    public void reportsTrueTopKUnderZipfLoad() {
+        HotKeyProfiler profiler = new HotKeyProfiler(64, 4, 60 * 1000);
+        Map<String, Long> truth = new HashMap<String, Long>();
+        double[] cumulative = this.zipf(KEYS, 1.1);
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            String key = "MTLock:order:" + (index < 0
+                    ? -index - 1
+                    : index);
+            profiler.recordAcquire(key, 0, 1);
+            Long count = truth.get(key);
+            truth.put(key, count == null
+                    ? 1
+                    : count + 1);
+        }
+
+        List<SpaceSaving.Entry> top = profiler.top(HotKeyProfiler.Metric.ATTEMPTS, TOP);
+        assertEquals(TOP, top.size());
+        Set<String> reported = new HashSet<String>();
+        for (SpaceSaving.Entry entry : top) {
+            reported.add(entry.getItem());
+            long actual = truth.get(entry.getItem());
+            assertTrue(entry.toString(), entry.getCount() >= actual);
+            assertTrue(entry.toString(), entry.getCount() - entry.getError() <= actual);
+        }
+        assertEquals(this.trueTop(truth, TOP), reported);
+    }
+
+    @Test
+    public void recordsWaitAndHoldThroughStoreLock() throws Exception {
+        LocalLockStore lockStore = new LocalLockStore();
+        HotKeyProfiler profiler = new HotKeyProfiler(16, 1, 60 * 1000);
+        StoreLock contended = this.lock("contended", lockStore, profiler);
+        StoreLock held = this.lock("held", lockStore, profiler);
+        StoreLock idle = this.lock("idle", lockStore, profiler);
+
+        // 其他节点持有，需要轮询到过期
+        lockStore.add(contended.getLockKey(), "other", 150);
+        assertTrue(contended.lock());
+        contended.unlock();
+        assertTrue(held.lock());
+        Thread.sleep(100);
+        held.unlock();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(idle.lock());
+            idle.unlock();
+        }
+
+        SpaceSaving.Entry wait = profiler.top(HotKeyProfiler.Metric.WAIT, 1).get(0);
+        assertEquals(contended.getLockKey(), wait.getItem());
+        assertTrue(wait.toString(), wait.getCount() >= TimeUnit.MILLISECONDS.toMicros(100));
+        assertEquals(contended.getLockKey(), profiler.top(HotKeyProfiler.Metric.ATTEMPTS, 1).get(0).getItem());
+        SpaceSaving.Entry hold = profiler.top(HotKeyProfiler.Metric.HOLD, 1).get(0);
+        assertEquals(held.getLockKey(), hold.getItem());
+        assertTrue(hold.toString(), hold.getCount() >= TimeUnit.MILLISECONDS.toMicros(100));
+
+        profiler.reset();
+        assertTrue(profiler.top(HotKeyProfiler.Metric.WAIT, 1).isEmpty());
+    }
+
+    private StoreLock lock(String key, LocalLockStore lockStore, HotKeyProfiler profiler) {
+        StoreLock lock = new StoreLock("profile:", key, 2000, 5000, "e", lockStore);
+        lock.setProfiler(profiler);
+        return lock;
+    }
+
+    private double[] zipf(int n, double exponent) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private Set<String> trueTop(Map<String, Long> truth, int k) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(truth.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        Set<String> top = new HashSet<String>();
+        for (Map.Entry<String, Long> entry : entries.subList(0, k)) {
+            top.add(entry.getKey());
+        }
+        return top;
+    }
+}
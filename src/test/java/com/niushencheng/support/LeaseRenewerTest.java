@@ -0,0 +1,117 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LocalLockStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link HoldTimeTracker} 计算的租期，以及 {@link LeaseRenewer} 续租时累计的租期不超过expire
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LeaseRenewerTest {
+
+    private static final long EXPIRE = 600;
+
+    private static final long MIN_LEASE = 100;
+
+    private final LocalLockStore lockStore = new LocalLockStore();
+
+    private final HoldTimeTracker holdTimeTracker = new HoldTimeTracker();
+
+    private final LeaseRenewer leaseRenewer = new LeaseRenewer();
+
+    @Before
+    public void setUp() throws Exception {
+        holdTimeTracker.setWarmupSamples(10);
+        holdTimeTracker.setMarginMillis(50);
+        holdTimeTracker.setMinLeaseMillis(MIN_LEASE);
+        leaseRenewer.setIntervalMillis(10);
+        leaseRenewer.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        leaseRenewer.destroy();
+    }
+
+    @Test
+    public void leaseFollowsHoldTimeWithinExpire() {
+        assertEquals(EXPIRE, holdTimeTracker.lease("order", EXPIRE));
+        this.warmUp("order", 20);
+        assertEquals(MIN_LEASE, holdTimeTracker.lease("order", EXPIRE));
+
+        this.warmUp("slow", 300);
+        // 直方图的相对误差不超过1/16
+        long lease = holdTimeTracker.lease("slow", EXPIRE);
+        assertTrue(String.valueOf(lease), lease >= 300 * 15 / 16 + 50 && lease <= 300 * 17 / 16 + 50);
+        // 租期不超过expire，expire为0(永不过期)时不使用租期
+        assertEquals(200, holdTimeTracker.lease("slow", 200));
+        assertEquals(0, holdTimeTracker.lease("slow", 0));
+    }
+
+    /**
+     * 持有时间超过租期的持有者被续租，但加锁后累计的租期到expire为止，之后锁在存储中过期
+     */
+    @Test
+    public void renewalStopsAtExpire() throws Exception {
+        this.warmUp("order", 20);
+        StoreLock lock = new StoreLock("order", ":1", 1000, EXPIRE, "e", lockStore);
+        lock.setHoldTimeTracker(holdTimeTracker);
+        lock.setLeaseRenewer(leaseRenewer);
+        assertTrue(lock.lock());
+        try {
+            assertEquals(MIN_LEASE, lock.getLease());
+            long acquiredAt = lock.getOwner().getAcquiredAt();
+            // 超过租期后仍然持有
+            while (System.currentTimeMillis() < acquiredAt + EXPIRE - 100) {
+                assertNotNull(lockStore.get(lock.getLockKey()));
+                long remaining = lock.getRemainingLeaseMillis();
+                long cap = acquiredAt + EXPIRE - System.currentTimeMillis();
+                assertTrue(remaining + " > " + cap, remaining <= Math.max(cap, 0) + 5);
+                assertTrue(String.valueOf(remaining), remaining <= MIN_LEASE);
+                Thread.sleep(10);
+            }
+            assertTrue(leaseRenewer.getRenewedCount() > 0);
+
+            Thread.sleep(acquiredAt + EXPIRE + 50 - System.currentTimeMillis());
+            assertNull(lockStore.get(lock.getLockKey()));
+            assertEquals(0, lock.getRemainingLeaseMillis());
+            assertEquals(0, leaseRenewer.getFailedCount());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放后不再续租
+     */
+    @Test
+    public void releasedLockIsNotRenewed() throws Exception {
+        this.warmUp("order", 20);
+        StoreLock lock = new StoreLock("order", ":2", 1000, EXPIRE, "e", lockStore);
+        lock.setHoldTimeTracker(holdTimeTracker);
+        lock.setLeaseRenewer(leaseRenewer);
+        assertTrue(lock.lock());
+        lock.unlock();
+        long renewed = leaseRenewer.getRenewedCount();
+        Thread.sleep(MIN_LEASE * 2);
+        assertEquals(renewed, leaseRenewer.getRenewedCount());
+        assertNull(lockStore.get(lock.getLockKey()));
+    }
+
+    private void warmUp(String name, long holdMillis) {
+        for (int i = 0; i < 10; i++) {
+            holdTimeTracker.record(name, TimeUnit.MILLISECONDS.toNanos(holdMillis));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LocalLockStore;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LockKeyEncoder} 的两种编码、前缀id冲突时的回退、长key的哈希，以及登记失败后的退避
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LockKeyEncoderTest {
+
+    private static final String PREFIX = "MTLock:";
+
+    private static final String NAME = "com.foo.OrderService:pay:";
+
+    @Test
+    public void readableKeepsNameAndKey() {
+        LockKeyEncoder encoder = new LockKeyEncoder(LockKeyEncoder.Mode.READABLE, PREFIX, new LocalLockStore());
+        String longKey = this.repeat('k', 100);
+        assertEquals(PREFIX + NAME, encoder.encodeName(NAME));
+        assertEquals(longKey, encoder.encodeKey(longKey));
+        assertEquals("~1", encoder.encodeKey("~1"));
+        assertEquals(PREFIX + NAME + "1", encoder.decode(PREFIX + NAME + "1"));
+    }
+
+    @Test
+    public void compactUsesStablePrefixIdAndDecodes() {
+        LocalLockStore lockStore = new LocalLockStore();
+        LockKeyEncoder encoder = new LockKeyEncoder(LockKeyEncoder.Mode.COMPACT, PREFIX, lockStore);
+        String encoded = encoder.encodeName(NAME);
+        assertTrue(encoded, encoded.matches("MTLock:@[A-Za-z0-9_-]{11}:"));
+        // 不同节点不需要协调就能算出相同的id
+        assertEquals(encoded,
+                     new LockKeyEncoder(LockKeyEncoder.Mode.COMPACT, PREFIX, new LocalLockStore()).encodeName(NAME));
+        assertNotEquals(encoded, encoder.encodeName("com.foo.OrderService:refund:"));
+
+        assertEquals(PREFIX + NAME + "42", encoder.decode(encoded + "42"));
+        // 本机没有用过的前缀从存储中的登记反查
+        LockKeyEncoder other = new LockKeyEncoder(LockKeyEncoder.Mode.COMPACT, PREFIX, lockStore);
+        assertEquals(PREFIX + NAME + "42", other.decode(encoded + "42"));
+        assertEquals("other:1", other.decode("other:1"));
+    }
+
+    @Test
+    public void collidingPrefixFallsBackToReadable() {
+        String encoded = new LockKeyEncoder(LockKeyEncoder.Mode.COMPACT, PREFIX, new LocalLockStore()).encodeName(NAME);
+        String registryKey = PREFIX + "prefix:" + this.id(encoded);
+
+        // 另一个名称已经用同一个id登记过
+        LocalLockStore collided = new LocalLockStore();
+        collided.add(registryKey, "com.foo.Other:run:", 0);
+        assertEquals(PREFIX + NAME,
+                     new LockKeyEncoder(LockKeyEncoder.Mode.COMPACT, PREFIX, collided).encodeName(NAME));
+
+        // 同一个名称已经登记过，继续使用id
+        LocalLockStore registered = new LocalLockStore();
+        registered.add(registryKey, NAME, 0);
+        assertEquals(encoded, new LockKeyEncoder(LockKeyEncoder.Mode.COMPACT, PREFIX, registered).encodeName(NAME));
+    }
+
+    @Test
+    public void shortKeysStayRawAndLongKeysAreHashed() {
+        LockKeyEncoder encoder = new LockKeyEncoder(LockKeyEncoder.Mode.COMPACT, PREFIX, new LocalLockStore());
+        String raw = this.repeat('k', LockKeyEncoder.MAX_RAW_KEY_LENGTH);
+        assertEquals(raw, encoder.encodeKey(raw));
+        assertEquals("", encoder.encodeKey(""));
+
+        String hashed = encoder.encodeKey(raw + "k");
+        assertTrue(hashed, hashed.matches("~[A-Za-z0-9_-]{22}"));
+        assertEquals(hashed, encoder.encodeKey(raw + "k"));
+        assertNotEquals(hashed, encoder.encodeKey(raw + "j"));
+        // 以标记开头的短key也要哈希，不会和哈希后的key混淆
+        assertTrue(encoder.encodeKey("~1").matches("~[A-Za-z0-9_-]{22}"));
+        assertNotEquals(hashed, encoder.encodeKey(hashed));
+    }
+
+    @Test
+    public void failedRegistrationBacksOff() throws Exception {
+        final AtomicInteger adds = new AtomicInteger();
+        final AtomicBoolean down = new AtomicBoolean(true);
+        LocalLockStore lockStore = new LocalLockStore() {
+            @Override
+            public boolean add(String key, String value, long expireMillis) {
+                adds.incrementAndGet();
+                if (down.get()) {
+                    throw new IllegalStateException("down");
+                }
+                return super.add(key, value, expireMillis);
+            }
+        };
+        LockKeyEncoder encoder = new LockKeyEncoder(LockKeyEncoder.Mode.COMPACT, PREFIX, lockStore);
+        String encoded = encoder.encodeName(NAME);
+        assertTrue(encoded.startsWith(PREFIX + "@"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(encoded, encoder.encodeName(NAME));
+        }
+        assertEquals(1, adds.get());
+
+        // 退避结束后重试，成功后不再访问存储
+        down.set(false);
+        Thread.sleep(LockKeyEncoder.REGISTER_BACKOFF_MILLIS + 100);
+        assertEquals(encoded, encoder.encodeName(NAME));
+        assertEquals(2, adds.get());
+        assertEquals(encoded, encoder.encodeName(NAME));
+        assertEquals(2, adds.get());
+        assertEquals(NAME, lockStore.get(PREFIX + "prefix:" + this.id(encoded)));
+    }
+
+    private String id(String encoded) {
+        return encoded.substring((PREFIX + "@").length(), encoded.length() - 1);
+    }
+
+    private String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
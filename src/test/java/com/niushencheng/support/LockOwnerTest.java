@@ -0,0 +1,85 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LocalLockStore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LockOwner} 的编码和解析，以及 {@link LockIntrospection} 对存储中的值的解析
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LockOwnerTest {
+
+    @Test
+    public void encodeAndDecodeRoundTrip() {
+        LockOwner owner = new LockOwner("123@host:abcd1234", "pool-1-thread-2#17", "token", 1500000000000L);
+        assertEquals("token|1500000000000|123@host:abcd1234|pool-1-thread-2#17", owner.encode());
+        assertEquals(owner, LockOwner.decode(owner.encode()));
+
+        LockOwner current = LockOwner.current(true);
+        LockOwner decoded = LockOwner.decode(current.encode());
+        assertEquals(current, decoded);
+        assertEquals(LockOwner.LOCAL_NODE_ID, decoded.getNodeId());
+        assertEquals(LockOwner.currentThread(), decoded.getThread());
+        assertTrue(decoded.isHeartbeatTagged());
+        assertFalse(LockOwner.decode(LockOwner.current().encode()).isHeartbeatTagged());
+    }
+
+    /**
+     * 线程名可能包含分隔符，放在最后原样保留
+     */
+    @Test
+    public void threadNameMayContainSeparator() {
+        LockOwner owner = new LockOwner("node", "worker|a|b#3", "token", 1L);
+        LockOwner decoded = LockOwner.decode(owner.encode());
+        assertEquals("worker|a|b#3", decoded.getThread());
+        assertEquals("node", decoded.getNodeId());
+        assertEquals(owner, decoded);
+    }
+
+    @Test
+    public void malformedValuesDecodeToNull() {
+        assertNull(LockOwner.decode(null));
+        // 旧版本写入的时间戳
+        assertNull(LockOwner.decode("1500000000000"));
+        assertNull(LockOwner.decode("token|1|node"));
+        assertNull(LockOwner.decode("token|notANumber|node|t#1"));
+    }
+
+    @Test
+    public void introspectionDecodesStoredValue() throws Exception {
+        LocalLockStore lockStore = new LocalLockStore();
+        RedisLockManager lockManager = new RedisLockManager();
+        lockManager.setLockStore(lockStore);
+        lockManager.afterPropertiesSet();
+        try {
+            LockOwner owner = new LockOwner("other", "t#1", "token", System.currentTimeMillis());
+            lockStore.add("MTLock:order:1", owner.encode(), 60 * 1000);
+            lockStore.add("MTLock:order:2", "1500000000000", 60 * 1000);
+
+            LockInfo info = lockManager.inspect("MTLock:order:1");
+            assertEquals(owner, info.getOwner());
+            assertEquals(owner.encode(), info.getValue());
+            assertFalse(info.isLocal());
+            assertEquals(-1, info.getRemainingLeaseMillis());
+
+            // 不是持有者格式的值仍然原样返回
+            LockInfo legacy = lockManager.inspect("MTLock:order:2");
+            assertNull(legacy.getOwner());
+            assertEquals("1500000000000", legacy.getValue());
+
+            LockIntrospection introspection = new LockIntrospection(lockManager);
+            assertEquals(owner.encode(), introspection.getHolder("MTLock:order:1"));
+            assertNull(introspection.getHolder("MTLock:order:3"));
+            assertEquals(0, introspection.getHeldCount());
+        } finally {
+            lockManager.destroy();
+        }
+    }
+}
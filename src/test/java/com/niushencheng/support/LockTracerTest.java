@@ -0,0 +1,232 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LocalLockStore;
+import com.niushencheng.trace.LockSpan;
+import com.niushencheng.trace.LockTracer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link StoreLock} 上报的 {@link LockTracer} span：每个span都有开始和结束，结果与加锁的过程一致
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class LockTracerTest {
+
+    private static final String NAME = "order:";
+
+    private final LocalLockStore lockStore = new LocalLockStore();
+
+    private final RecordingTracer tracer = new RecordingTracer();
+
+    @Test
+    public void uncontendedLockReportsQueueAttemptAndHold() {
+        StoreLock lock = this.lock("1", 1000, 5000);
+        assertTrue(lock.lock());
+        // 持有期间hold已经开始，还没有结束
+        assertEquals(3, tracer.spans.size());
+        RecordedSpan hold = tracer.spans.get(2);
+        assertEquals(LockTracer.SPAN_HOLD, hold.name);
+        assertFalse(hold.ended);
+        lock.unlock();
+
+        this.assertSpans(LockTracer.SPAN_QUEUE, LockSpan.OUTCOME_ENTERED,
+                         LockTracer.SPAN_ATTEMPT, LockSpan.OUTCOME_ACQUIRED,
+                         LockTracer.SPAN_HOLD, LockSpan.OUTCOME_RELEASED);
+        assertEquals(1L, tracer.spans.get(1).attributes.get(LockTracer.ATTR_ATTEMPT));
+        assertEquals(1L, hold.attributes.get(LockTracer.ATTR_ATTEMPT));
+        for (RecordedSpan span : tracer.spans) {
+            assertEquals(NAME, span.lockName);
+            // key中可能有业务数据，只上报哈希
+            assertNotNull(span.keyHash);
+            assertFalse(span.keyHash.contains(lock.getLockKey()));
+        }
+    }
+
+    /**
+     * 每一次存储调用一个attempt span，持有者过期前的尝试为busy
+     */
+    @Test
+    public void contendedLockReportsEachAttempt() {
+        StoreLock lock = this.lock("2", 2000, 5000);
+        lockStore.add(lock.getLockKey(), "other", 100);
+        assertTrue(lock.lock());
+        lock.unlock();
+
+        int last = tracer.spans.size() - 1;
+        assertTrue(tracer.spans.toString(), last > 3);
+        assertEquals(LockTracer.SPAN_QUEUE, tracer.spans.get(0).name);
+        assertEquals(LockSpan.OUTCOME_ENTERED, tracer.spans.get(0).attributes.get(LockTracer.ATTR_OUTCOME));
+        for (int i = 1; i < last; i++) {
+            RecordedSpan span = tracer.spans.get(i);
+            assertEquals(LockTracer.SPAN_ATTEMPT, span.name);
+            assertEquals((long) i, span.attributes.get(LockTracer.ATTR_ATTEMPT));
+            assertEquals(i < last - 1
+                                 ? LockSpan.OUTCOME_BUSY
+                                 : LockSpan.OUTCOME_ACQUIRED, span.attributes.get(LockTracer.ATTR_OUTCOME));
+        }
+        RecordedSpan hold = tracer.spans.get(last);
+        assertEquals(LockTracer.SPAN_HOLD, hold.name);
+        assertEquals((long) last - 1, hold.attributes.get(LockTracer.ATTR_ATTEMPT));
+        assertEquals(LockSpan.OUTCOME_RELEASED, hold.attributes.get(LockTracer.ATTR_OUTCOME));
+        this.assertAllEnded();
+    }
+
+    @Test
+    public void timedOutLockReportsNoHold() {
+        StoreLock lock = this.lock("5", 100, 5000);
+        lockStore.add(lock.getLockKey(), "other", 60 * 1000);
+        assertFalse(lock.lock());
+        lock.unlock();
+        this.assertSpans(LockTracer.SPAN_QUEUE, LockSpan.OUTCOME_ENTERED,
+                         LockTracer.SPAN_ATTEMPT, LockSpan.OUTCOME_BUSY);
+    }
+
+    @Test
+    public void expiredHoldReportsLost() throws Exception {
+        StoreLock lock = this.lock("3", 1000, 100);
+        assertTrue(lock.lock());
+        Thread.sleep(200);
+        lock.unlock();
+        this.assertSpans(LockTracer.SPAN_QUEUE, LockSpan.OUTCOME_ENTERED,
+                         LockTracer.SPAN_ATTEMPT, LockSpan.OUTCOME_ACQUIRED,
+                         LockTracer.SPAN_HOLD, LockSpan.OUTCOME_LOST);
+    }
+
+    @Test
+    public void queueTimeoutAndRejectionEndQueueSpan() throws Exception {
+        final StoreLock lock = this.lock("4", 100, 5000);
+        assertTrue(lock.lock());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            tracer.spans.clear();
+            // 本机的其他线程持有，等待mainLock超时
+            assertFalse(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    try {
+                        return lock.lock();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }).get(5, TimeUnit.SECONDS));
+            this.assertSpans(LockTracer.SPAN_QUEUE, LockSpan.OUTCOME_TIMEOUT);
+
+            tracer.spans.clear();
+            AdmissionController admissionController = new AdmissionController();
+            admissionController.setMaxQueueWaitMillis(1);
+            admissionController.recordHold(NAME, TimeUnit.SECONDS.toNanos(1));
+            lock.setAdmissionController(admissionController);
+            assertFalse(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return lock.lock();
+                }
+            }).get(5, TimeUnit.SECONDS));
+            this.assertSpans(LockTracer.SPAN_QUEUE, LockSpan.OUTCOME_REJECTED);
+        } finally {
+            executor.shutdownNow();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按顺序给出每个span的名称和结果
+     */
+    private void assertSpans(String... expected) {
+        assertEquals(tracer.spans.toString(), expected.length / 2, tracer.spans.size());
+        for (int i = 0; i < expected.length / 2; i++) {
+            RecordedSpan span = tracer.spans.get(i);
+            assertEquals(expected[2 * i], span.name);
+            assertEquals(span.name, expected[2 * i + 1], span.attributes.get(LockTracer.ATTR_OUTCOME));
+        }
+        this.assertAllEnded();
+    }
+
+    private void assertAllEnded() {
+        for (RecordedSpan span : tracer.spans) {
+            assertTrue(span.name, span.ended);
+        }
+    }
+
+    private StoreLock lock(String key, long timeout, long expire) {
+        StoreLock lock = new StoreLock(NAME, key, timeout, expire, "e", lockStore);
+        lock.setTracer(tracer);
+        return lock;
+    }
+
+    private static class RecordingTracer implements LockTracer {
+
+        /** span按开始的顺序记录，同一时刻只有一个线程在加锁或释放 */
+        private final List<RecordedSpan> spans = new ArrayList<RecordedSpan>();
+
+        @Override
+        public synchronized LockSpan startSpan(String spanName, String lockName, String keyHash) {
+            RecordedSpan span = new RecordedSpan(spanName, lockName, keyHash);
+            spans.add(span);
+            return span;
+        }
+    }
+
+    private static class RecordedSpan implements LockSpan {
+
+        private final String name;
+
+        private final String lockName;
+
+        private final String keyHash;
+
+        private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+        private volatile boolean ended;
+
+        private RecordedSpan(String name, String lockName, String keyHash) {
+            this.name = name;
+            this.lockName = lockName;
+            this.keyHash = keyHash;
+        }
+
+        @Override
+        public void setAttribute(String key, long value) {
+            this.check();
+            attributes.put(key, value);
+        }
+
+        @Override
+        public void setAttribute(String key, String value) {
+            this.check();
+            attributes.put(key, value);
+        }
+
+        @Override
+        public void end() {
+            this.check();
+            ended = true;
+        }
+
+        /** 结束后不能再修改 */
+        private void check() {
+            assertFalse(name + " already ended", ended);
+        }
+
+        @Override
+        public String toString() {
+            return name + attributes;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.niushencheng.support;
+
+import com.niushencheng.annotation.DistributeLock;
+import com.niushencheng.interceptor.LockInterceptor;
+import com.niushencheng.store.LocalLockStore;
+import com.niushencheng.store.StoreCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link NodeHeartbeat} 的过期、接管宕机节点的锁，以及关闭时持有中的锁的批量释放
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class NodeHeartbeatTest {
+
+    private static final String PREFIX = "MTLock:";
+
+    private static final long INTERVAL = 50;
+
+    private static final long TTL = 200;
+
+    /** 记录批量调用的次数 */
+    private final AtomicInteger executeCalls = new AtomicInteger();
+
+    private final LocalLockStore lockStore = new LocalLockStore() {
+        @Override
+        public List<Object> execute(List<StoreCommand> commands) {
+            executeCalls.incrementAndGet();
+            return super.execute(commands);
+        }
+    };
+
+    private static final String LOCAL_NODE_KEY = PREFIX + NodeHeartbeat.NODE_PREFIX + LockOwner.LOCAL_NODE_ID;
+
+    private NodeHeartbeat heartbeat;
+
+    @Before
+    public void setUp() throws Exception {
+        heartbeat = new NodeHeartbeat(lockStore, PREFIX);
+        heartbeat.setIntervalMillis(INTERVAL);
+        heartbeat.setTtlMillis(TTL);
+        heartbeat.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        heartbeat.destroy();
+    }
+
+    @Test
+    public void heartbeatExpiresWhenNotRefreshed() throws Exception {
+        // 本机的心跳一直在刷新
+        Thread.sleep(TTL * 2);
+        assertEquals(LockOwner.LOCAL_NODE_ID, lockStore.get(LOCAL_NODE_KEY));
+        assertTrue(heartbeat.isAlive(LockOwner.LOCAL_NODE_ID));
+
+        // 其他节点只写了一次心跳，之后宕机
+        lockStore.add(PREFIX + NodeHeartbeat.NODE_PREFIX + "dead", "dead", TTL);
+        assertTrue(heartbeat.isAlive("dead"));
+        Thread.sleep(TTL + INTERVAL * 2);
+        assertFalse(heartbeat.isAlive("dead"));
+
+        heartbeat.destroy();
+        assertNull(lockStore.get(LOCAL_NODE_KEY));
+    }
+
+    @Test
+    public void reclaimsLockOfDeadNode() {
+        StoreLock lock = this.storeLock(":dead");
+        lockStore.add(lock.getLockKey(), this.taggedOwner("dead").encode(), 60 * 1000);
+        long start = System.nanoTime();
+        assertTrue(lock.lock());
+        try {
+            // 不需要等到锁过期，也不需要等满timeout
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+            assertEquals(1, heartbeat.getReclaimedCount());
+            assertEquals(LockOwner.LOCAL_NODE_ID, LockOwner.decode(lockStore.get(lock.getLockKey())).getNodeId());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Test
+    public void keepsLockOfAliveOrUntaggedNode() {
+        lockStore.add(PREFIX + NodeHeartbeat.NODE_PREFIX + "alive", "alive", 60 * 1000);
+        StoreLock alive = this.storeLock(":alive");
+        lockStore.add(alive.getLockKey(), this.taggedOwner("alive").encode(), 60 * 1000);
+        assertFalse(alive.lock());
+        alive.unlock();
+
+        // 没有开启心跳的节点加的锁无法判断存活，不接管
+        StoreLock untagged = this.storeLock(":untagged");
+        lockStore.add(untagged.getLockKey(),
+                      new LockOwner("dead", "t#1", UUID.randomUUID().toString(), System.currentTimeMillis()).encode(),
+                      60 * 1000);
+        assertFalse(untagged.lock());
+        untagged.unlock();
+        assertEquals(0, heartbeat.getReclaimedCount());
+    }
+
+    /**
+     * 层级锁的持有者在祖先上有意向计数，只删除锁本身会让祖先提前可用，不接管
+     */
+    @Test
+    public void doesNotReclaimHierarchicalLock() {
+        HierarchicalLock lock = new HierarchicalLock(HierarchicalLock.NAMESPACE, "tenant:1/order:1", 300, 5000, "e",
+                                                     lockStore, 60 * 1000);
+        lock.setNodeHeartbeat(heartbeat);
+        lockStore.add(lock.getLockKey(), this.taggedOwner("dead").encode(), 60 * 1000);
+        assertFalse(lock.lock());
+        lock.unlock();
+        assertEquals(0, heartbeat.getReclaimedCount());
+        assertNotNull(lockStore.get(lock.getLockKey()));
+    }
+
+    @Test
+    public void shutdownReleasesHeldLocksInOneBatch() throws Exception {
+        RedisLockManager lockManager = new RedisLockManager();
+        lockManager.setLockStore(lockStore);
+        lockManager.setHeartbeatEnabled(true);
+        lockManager.setShutdownDrainMillis(100);
+        lockManager.afterPropertiesSet();
+        LockInterceptor interceptor = new LockInterceptor();
+        interceptor.setLockManager(lockManager);
+        interceptor.afterPropertiesSet();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new DefaultService());
+        proxyFactory.addAspect(interceptor);
+        final Service service = proxyFactory.getProxy();
+
+        final int holders = 3;
+        final CountDownLatch entered = new CountDownLatch(holders);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < holders; i++) {
+            final String key = "k" + i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    service.hold(key, entered, release);
+                }
+            }).start();
+        }
+        try {
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            assertEquals(holders, lockManager.getHeldLockRegistry().size());
+            List<String> lockKeys = new ArrayList<String>();
+            for (AbstractStoreLock lock : lockManager.getHeldLockRegistry().snapshot()) {
+                lockKeys.add(lock.getLockKey());
+                assertNotNull(lockStore.get(lock.getLockKey()));
+            }
+            int before = executeCalls.get();
+            interceptor.destroy();
+            lockManager.destroy();
+            assertEquals(1, executeCalls.get() - before);
+            for (String lockKey : lockKeys) {
+                assertNull(lockKey, lockStore.get(lockKey));
+            }
+            // 心跳在释放之后删除
+            assertNull(lockStore.get(LOCAL_NODE_KEY));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private StoreLock storeLock(String key) {
+        StoreLock lock = new StoreLock("heartbeat", key, 300, 5000, "e", lockStore);
+        lock.setNodeHeartbeat(heartbeat);
+        return lock;
+    }
+
+    private LockOwner taggedOwner(String nodeId) {
+        return new LockOwner(nodeId,
+                             "t#1",
+                             LockOwner.HEARTBEAT_TAG + UUID.randomUUID().toString(),
+                             System.currentTimeMillis());
+    }
+
+    public interface Service {
+
+        void hold(String key, CountDownLatch entered, CountDownLatch release);
+    }
+
+    public static class DefaultService implements Service {
+
+        @Override
+        @DistributeLock(name = "heartbeat", key = "#p0", timeout = 1000, expire = 60 * 1000)
+        public void hold(String key, CountDownLatch entered, CountDownLatch release) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LocalLockStore;
+import com.niushencheng.store.StoreCommand;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link RetryScheduler} 安排的等待时间的上下界、提前放弃，以及在 {@link StoreLock} 中减少的尝试次数
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class RetrySchedulerTest {
+
+    private static final long MIN_RETRY = 5;
+
+    private final HoldTimeTracker holdTimeTracker = new HoldTimeTracker();
+
+    private final RetryScheduler retryScheduler = new RetryScheduler(holdTimeTracker);
+
+    /** 加锁尝试的次数，开启了持有者估计时每次尝试是一次批量调用 */
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private final LocalLockStore lockStore = new LocalLockStore() {
+        @Override
+        public List<Object> execute(List<StoreCommand> commands) {
+            attempts.incrementAndGet();
+            return super.execute(commands);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        holdTimeTracker.setWarmupSamples(10);
+        retryScheduler.setMinRetryMillis(MIN_RETRY);
+    }
+
+    @Test
+    public void delayIsBoundedByMinRetryAndRemaining() {
+        long remaining = millis(1000);
+        long defaultDelay = millis(300);
+        // 样本不足，使用原来的轮询间隔，不超过剩余时间
+        assertEquals(defaultDelay, retryScheduler.nextDelayNanos("order", this.holder(0), remaining, defaultDelay));
+        assertEquals(millis(100), retryScheduler.nextDelayNanos("order", this.holder(0), millis(100), defaultDelay));
+        // 持有者已经释放，按最小间隔重试
+        assertEquals(millis(MIN_RETRY), retryScheduler.nextDelayNanos("order", null, remaining, defaultDelay));
+        assertEquals(millis(1), retryScheduler.nextDelayNanos("order", null, millis(1), defaultDelay));
+
+        this.warmUp("order", 200);
+        // 已经持有了50ms，按分布还要持有150ms左右
+        long delay = retryScheduler.nextDelayNanos("order", this.holder(50), remaining, defaultDelay);
+        assertTrue(String.valueOf(delay), delay >= millis(100) && delay <= millis(200));
+        // 不超过剩余时间
+        delay = retryScheduler.nextDelayNanos("order", this.holder(150), millis(100), defaultDelay);
+        assertTrue(String.valueOf(delay), delay >= millis(MIN_RETRY) && delay <= millis(100));
+        // 持有者马上释放时也不小于最小间隔
+        delay = retryScheduler.nextDelayNanos("order", this.holder(180), remaining, defaultDelay);
+        assertTrue(String.valueOf(delay), delay >= millis(MIN_RETRY) && delay <= millis(50));
+        // 持有者超过了所有样本，无法估计
+        assertEquals(defaultDelay, retryScheduler.nextDelayNanos("order", this.holder(1000), remaining, defaultDelay));
+    }
+
+    @Test
+    public void givesUpWhenReleaseWithinTimeoutIsUnlikely() {
+        this.warmUp("order", 2000);
+        assertEquals(-1, retryScheduler.nextDelayNanos("order", this.holder(0), millis(300), millis(100)));
+        assertTrue(retryScheduler.nextDelayNanos("order", this.holder(1900), millis(300), millis(100)) > 0);
+    }
+
+    /**
+     * 按持有者的剩余持有时间等待，几次尝试即拿到锁；timeout为2s时原来的轮询间隔为1ms，需要上百次尝试
+     */
+    @Test
+    public void storeLockWaitsForEstimatedRelease() {
+        this.warmUp("order", 200);
+        StoreLock lock = this.lock(":1", 2000);
+        lockStore.add(lock.getLockKey(), this.holder(50).encode(), 150);
+        long start = System.nanoTime();
+        assertTrue(lock.lock());
+        try {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("took " + elapsed + "ms", elapsed >= 100 && elapsed < 1000);
+            assertTrue("attempts " + attempts.get(), attempts.get() <= 10);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Test
+    public void storeLockGivesUpEarly() {
+        this.warmUp("order", 2000);
+        StoreLock lock = this.lock(":2", 300);
+        lockStore.add(lock.getLockKey(), this.holder(0).encode(), 60 * 1000);
+        long start = System.nanoTime();
+        assertFalse(lock.lock());
+        lock.unlock();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + elapsed + "ms", elapsed < 200);
+        assertEquals(1, attempts.get());
+    }
+
+    private StoreLock lock(String key, long timeout) {
+        StoreLock lock = new StoreLock("order", key, timeout, 5000, "e", lockStore);
+        lock.setHoldTimeTracker(holdTimeTracker);
+        lock.setRetryScheduler(retryScheduler);
+        return lock;
+    }
+
+    private LockOwner holder(long heldMillis) {
+        return new LockOwner("other", "t#1", "token", System.currentTimeMillis() - heldMillis);
+    }
+
+    private void warmUp(String name, long holdMillis) {
+        for (int i = 0; i < 10; i++) {
+            holdTimeTracker.record(name, millis(holdMillis));
+        }
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,169 @@
+package com.niushencheng.support;
+
+import com.niushencheng.store.LocalLockStore;
+import com.niushencheng.store.StoreCommand;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link StoreLock} 一次往返的加锁、交给存储的过期，以及在本机线程间共享时的加锁和释放
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class StoreLockTest {
+
+    /** 记录add以外的存储调用，加锁时不应该出现 */
+    private final AtomicInteger otherCalls = new AtomicInteger();
+
+    private final AtomicInteger adds = new AtomicInteger();
+
+    private final LocalLockStore lockStore = new LocalLockStore() {
+        @Override
+        public boolean add(String key, String value, long expireMillis) {
+            adds.incrementAndGet();
+            return super.add(key, value, expireMillis);
+        }
+
+        @Override
+        public String get(String key) {
+            otherCalls.incrementAndGet();
+            return super.get(key);
+        }
+
+        @Override
+        public boolean del(String key) {
+            otherCalls.incrementAndGet();
+            return super.del(key);
+        }
+
+        @Override
+        public List<Object> execute(List<StoreCommand> commands) {
+            otherCalls.incrementAndGet();
+            return super.execute(commands);
+        }
+    };
+
+    @Test
+    public void acquiresWithSingleAddOfOwnerToken() {
+        StoreLock lock = new StoreLock("order", ":1", 1000, 5000, "e", lockStore);
+        assertTrue(lock.lock());
+        try {
+            assertEquals(1, adds.get());
+            assertEquals(0, otherCalls.get());
+            LockOwner owner = LockOwner.decode(lockStore.get(lock.getLockKey()));
+            assertNotNull(owner);
+            assertEquals(lock.getOwner().getToken(), owner.getToken());
+            assertEquals(LockOwner.LOCAL_NODE_ID, owner.getNodeId());
+        } finally {
+            lock.unlock();
+        }
+        assertNull(lockStore.get(lock.getLockKey()));
+
+        // 每次加锁使用新的token
+        assertTrue(lock.lock());
+        try {
+            assertEquals(2, adds.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 旧持有者的记录由存储的TTL过期，等待者只重复add，不读取也不删除旧的记录
+     */
+    @Test
+    public void takesOverExpiredHolderThroughStoreTtl() {
+        StoreLock lock = new StoreLock("order", ":2", 2000, 5000, "e", lockStore);
+        LockOwner holder = new LockOwner("other", "t#1", "token", System.currentTimeMillis());
+        lockStore.add(lock.getLockKey(), holder.encode(), 200);
+        adds.set(0);
+        otherCalls.set(0);
+
+        long start = System.nanoTime();
+        assertTrue(lock.lock());
+        try {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("took " + elapsed + "ms", elapsed >= 150 && elapsed < 2000);
+            assertTrue(adds.get() >= 1);
+            assertEquals(0, otherCalls.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 租期已过的持有者释放时按token比较删除，不会删掉下一个持有者的锁
+     */
+    @Test
+    public void expiredHolderDoesNotReleaseSuccessor() throws Exception {
+        StoreLock expired = new StoreLock("order", ":3", 1000, 100, "e", lockStore);
+        StoreLock successor = new StoreLock("order", ":3", 1000, 5000, "e", lockStore);
+        assertTrue(expired.lock());
+        Thread.sleep(200);
+        assertTrue(successor.lock());
+        try {
+            String value = lockStore.get(successor.getLockKey());
+            expired.unlock();
+            assertEquals(value, lockStore.get(successor.getLockKey()));
+        } finally {
+            successor.unlock();
+        }
+        assertNull(lockStore.get(successor.getLockKey()));
+    }
+
+    /**
+     * 等待mainLock超时的线程仍然会在finally中调用unlock，不能释放持有者的锁，也不能让mainLock泄漏
+     */
+    @Test
+    public void timedOutWaiterDoesNotReleaseHolder() throws Exception {
+        final StoreLock lock = new StoreLock("order", ":1", 100, 5000, "e", lockStore);
+        assertTrue(lock.lock());
+        String holder = lockStore.get(lock.getLockKey());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            boolean waiterLocked = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    try {
+                        return lock.lock();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }).get(5, TimeUnit.SECONDS);
+            assertFalse(waiterLocked);
+            assertTrue(lock.isLocked());
+            assertEquals(holder, lockStore.get(lock.getLockKey()));
+
+            lock.unlock();
+            assertNull(lockStore.get(lock.getLockKey()));
+            // mainLock已经释放，其他线程可以加锁
+            boolean nextLocked = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    try {
+                        return lock.lock();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }).get(5, TimeUnit.SECONDS);
+            assertTrue(nextLocked);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.niushencheng.support;
+
+import com.niushencheng.simulation.LatencyLockStore;
+import com.niushencheng.store.LocalLockStore;
+import com.niushencheng.store.StoreUnavailableException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link StoreRateLimiter} 并发下不超过限制，同一个key同时只有一次预取
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class StoreRateLimiterTest {
+
+    private static final long PERMITS = 100;
+
+    private static final long LEASE_SIZE = 10;
+
+    /** 足够长的窗口，测试期间不会切换 */
+    private static final long WINDOW_MILLIS = 60 * 60 * 1000;
+
+    @Test
+    public void concurrentAcquireSharesOneRefill() throws InterruptedException {
+        final StoreRateLimiter rateLimiter = new StoreRateLimiter(new LatencyLockStore(new LocalLockStore(), 5000, 0));
+        final AtomicLong acquired = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < 16; i++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 50; j++) {
+                        if (rateLimiter.tryAcquire("k", PERMITS, WINDOW_MILLIS, LEASE_SIZE)) {
+                            acquired.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(PERMITS, acquired.get());
+        // 10次拿到额度，1次发现额度用完，之后在retryAt之前直接拒绝
+        assertEquals(PERMITS / LEASE_SIZE + 1, rateLimiter.getLeaseCount());
+    }
+
+    @Test
+    public void storeFailure() {
+        StoreRateLimiter rateLimiter = new StoreRateLimiter(new LocalLockStore() {
+            @Override
+            public long incr(String key, long delta, long expireMillis) {
+                throw new StoreUnavailableException("unavailable");
+            }
+        });
+        assertTrue(rateLimiter.tryAcquire("k", PERMITS, WINDOW_MILLIS, LEASE_SIZE));
+        rateLimiter.setFailOpen(false);
+        assertFalse(rateLimiter.tryAcquire("k", PERMITS, WINDOW_MILLIS, LEASE_SIZE));
+    }
+}
@@ -0,0 +1,178 @@
+package com.niushencheng.support;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link ZookeeperLock} 在进程内的zookeeper上的排队、会话关闭后的释放，以及创建节点时连接中断不留下孤儿节点
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class ZookeeperLockTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerCnxnFactory serverFactory;
+
+    private String connectString;
+
+    private final List<ZookeeperLockManager> managers = new ArrayList<ZookeeperLockManager>();
+
+    @Before
+    public void setUp() throws Exception {
+        File dataDir = folder.newFolder("zookeeper");
+        ZooKeeperServer server = new ZooKeeperServer(dataDir, dataDir, 2000);
+        serverFactory = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", 0), 100);
+        serverFactory.startup(server);
+        connectString = "127.0.0.1:" + serverFactory.getLocalPort();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (ZookeeperLockManager manager : managers) {
+            manager.destroy();
+        }
+        serverFactory.shutdown();
+    }
+
+    @Test
+    public void closedSessionReleasesWaiter() throws Exception {
+        ZookeeperLockManager holderManager = this.manager();
+        ZookeeperLockManager waiterManager = this.manager();
+        assertTrue(new ZookeeperLock("n:", "k/1", 5000, "e", holderManager).lock());
+        assertFalse(new ZookeeperLock("n:", "k/1", 200, "e", waiterManager).lock());
+
+        final ZookeeperLock waiter = new ZookeeperLock("n:", "k/1", 5000, "e", waiterManager);
+        final AtomicLong acquired = new AtomicLong();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (waiter.lock()) {
+                    acquired.set(System.nanoTime());
+                }
+            }
+        });
+        thread.start();
+        Thread.sleep(300);
+        long closedAt = System.nanoTime();
+        // 持有者的会话关闭，临时节点立即删除
+        holderManager.destroy();
+        managers.remove(holderManager);
+        thread.join();
+        assertTrue(acquired.get() > closedAt);
+        waiter.unlock();
+    }
+
+    @Test
+    public void mutualExclusion() throws Exception {
+        final ZookeeperLockManager manager = this.manager();
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        final AtomicInteger acquisitions = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        for (int i = 0; i < 200; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ZookeeperLock lock = new ZookeeperLock("n:", "hot", 20 * 1000, "e", manager);
+                    if (lock.lock()) {
+                        if (inside.incrementAndGet() != 1) {
+                            violations.incrementAndGet();
+                        }
+                        inside.decrementAndGet();
+                        acquisitions.incrementAndGet();
+                    }
+                    lock.unlock();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals(0, violations.get());
+        assertEquals(200, acquisitions.get());
+    }
+
+    @Test
+    public void connectionLossOnCreateLeavesNoOrphan() throws Exception {
+        ZookeeperLockManager manager = this.manager();
+        final ZooKeeper lossy = this.lossyClient(1);
+        ZookeeperLockManager lossyManager = new ZookeeperLockManager() {
+            @Override
+            ZooKeeper zooKeeper() {
+                return lossy;
+            }
+        };
+        lossyManager.setConnectString(connectString);
+        lossyManager.afterPropertiesSet();
+        managers.add(lossyManager);
+
+        ZookeeperLock lock = new ZookeeperLock("n:", "k/2", 5000, "e", lossyManager);
+        assertTrue(lock.lock());
+        String lockPath = manager.lockPath("n:", "k/2");
+        List<String> children = manager.zooKeeper().getChildren(lockPath, false);
+        // 响应丢失的那次创建就是自己的节点，没有再创建第二个
+        assertEquals(1, children.size());
+        assertTrue(children.get(0).startsWith("_c_"));
+        lock.unlock();
+        lossy.close();
+
+        assertTrue(new ZookeeperLock("n:", "k/2", 1000, "e", manager).lock());
+    }
+
+    private ZookeeperLockManager manager() throws Exception {
+        ZookeeperLockManager manager = new ZookeeperLockManager();
+        manager.setConnectString(connectString);
+        manager.afterPropertiesSet();
+        managers.add(manager);
+        return manager;
+    }
+
+    /**
+     * 前losses次创建在服务端生效后抛出连接中断，模拟响应丢失
+     */
+    private ZooKeeper lossyClient(final int losses) throws Exception {
+        final AtomicInteger remaining = new AtomicInteger(losses);
+        return new ZooKeeper(connectString, 10 * 1000, new Watcher() {
+            @Override
+            public void process(WatchedEvent event) {
+            }
+        }) {
+            @Override
+            public String create(String path, byte[] data, List<ACL> acl, CreateMode createMode)
+                    throws KeeperException, InterruptedException {
+                String created = super.create(path, data, acl, createMode);
+                if (createMode.isSequential() && remaining.getAndDecrement() > 0) {
+                    throw new KeeperException.ConnectionLossException();
+                }
+                return created;
+            }
+        };
+    }
+}
@@ -0,0 +1,211 @@
+package com.niushencheng.support.jdbc;
+
+import com.niushencheng.interceptor.LockFailedException;
+import com.niushencheng.interceptor.LockOperation;
+import com.niushencheng.interceptor.LockOperationInvoker;
+import com.niushencheng.simulation.SimulatedNode;
+import com.niushencheng.support.JdbcLockManager;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 使用内嵌H2验证 {@link JdbcLockStore} 的加锁、释放、接管、清理以及多key并发下的吞吐
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class JdbcLockStoreTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdbcLockStoreTest.class);
+
+    private JdbcConnectionPool dataSource;
+
+    private JdbcLockStore lockStore;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:lock" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        dataSource.setMaxConnections(64);
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : this.loadDdl()) {
+                statement.execute(sql);
+            }
+        }
+        lockStore = new JdbcLockStore(dataSource);
+        lockStore.setSweepIntervalMillis(60 * 1000);
+        lockStore.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        lockStore.destroy();
+        dataSource.dispose();
+    }
+
+    @Test
+    public void addIsExclusiveUntilOwnerReleases() {
+        assertTrue(lockStore.add("k", "owner-1", 10 * 1000));
+        assertFalse(lockStore.add("k", "owner-2", 10 * 1000));
+        assertEquals("owner-1", lockStore.get("k"));
+
+        assertFalse(lockStore.compareAndDelete("k", "owner-2"));
+        assertTrue(lockStore.compareAndDelete("k", "owner-1"));
+        assertNull(lockStore.get("k"));
+        assertTrue(lockStore.add("k", "owner-2", 10 * 1000));
+    }
+
+    @Test
+    public void expiredRowIsTakenOverAndSwept() throws Exception {
+        assertTrue(lockStore.add("expired", "owner-1", 50));
+        assertTrue(lockStore.add("swept", "owner-1", 50));
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertNull(lockStore.get("expired"));
+        assertFalse(lockStore.compareAndExpire("expired", "owner-1", 10 * 1000));
+        assertTrue(lockStore.add("expired", "owner-2", 10 * 1000));
+        assertEquals("owner-2", lockStore.get("expired"));
+
+        // 只有swept已经过期，接管后的记录不能被清理
+        assertEquals(1, lockStore.sweepExpired());
+        assertEquals("owner-2", lockStore.get("expired"));
+    }
+
+    /**
+     * READABLE编码下的key包含类名、方法名和业务key，超过255个字符也能加锁
+     */
+    @Test
+    public void longReadableKeyFits() {
+        StringBuilder key = new StringBuilder("MTLock:com.foo.order.service.impl.OrderSettlementServiceImpl:settle:");
+        while (key.length() < 700) {
+            key.append("tenant-0001/order-0001/");
+        }
+        assertTrue(lockStore.add(key.toString(), "owner-1", 10 * 1000));
+        assertEquals("owner-1", lockStore.get(key.toString()));
+        assertTrue(lockStore.compareAndDelete(key.toString(), "owner-1"));
+    }
+
+    @Test
+    public void incrRemovesRowAtZero() {
+        assertEquals(1, lockStore.incr("counter", 1, 10 * 1000));
+        assertEquals(2, lockStore.incr("counter", 1, 10 * 1000));
+        assertEquals(1, lockStore.incr("counter", -1, 10 * 1000));
+        assertEquals(0, lockStore.incr("counter", -1, 10 * 1000));
+        assertNull(lockStore.get("counter"));
+    }
+
+    /**
+     * 两个节点共用一个库，32个线程在1000个key上并发加锁，检查互斥，并且几乎没有超时
+     */
+    @Test
+    public void throughputWithManyConcurrentKeys() throws Exception {
+        final int keyCount = 1000;
+        final int threadsPerNode = 16;
+        final long durationMillis = 2000;
+        LockOperation operation = new LockOperation("jdbc", "#p0", "加锁失败", 1000L, 10 * 1000L);
+        List<SimulatedNode> nodes = new ArrayList<SimulatedNode>();
+        for (int i = 0; i < 2; i++) {
+            JdbcLockManager lockManager = new JdbcLockManager();
+            lockManager.setDataSource(dataSource);
+            lockManager.afterPropertiesSet();
+            nodes.add(new SimulatedNode(i, lockManager, operation, threadsPerNode));
+        }
+
+        final ConcurrentMap<String, Thread> holders = new ConcurrentHashMap<String, Thread>();
+        final AtomicLong acquisitions = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong violations = new AtomicLong();
+        final long deadline = System.currentTimeMillis() + durationMillis;
+        final CountDownLatch done = new CountDownLatch(nodes.size() * threadsPerNode);
+        for (final SimulatedNode node : nodes) {
+            for (int i = 0; i < threadsPerNode; i++) {
+                node.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (System.currentTimeMillis() < deadline) {
+                                final String key = "key-" + ThreadLocalRandom.current().nextInt(keyCount);
+                                try {
+                                    node.invoke(key, new LockOperationInvoker() {
+                                        @Override
+                                        public Object invoke() {
+                                            if (holders.putIfAbsent(key, Thread.currentThread()) != null) {
+                                                violations.incrementAndGet();
+                                                return null;
+                                            }
+                                            holders.remove(key);
+                                            acquisitions.incrementAndGet();
+                                            return null;
+                                        }
+                                    });
+                                } catch (LockFailedException e) {
+                                    timeouts.incrementAndGet();
+                                }
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+        }
+        assertTrue(done.await(durationMillis + 10 * 1000, TimeUnit.MILLISECONDS));
+        for (SimulatedNode node : nodes) {
+            node.shutdown(1000);
+            ((JdbcLockManager) node.getLockManager()).destroy();
+        }
+
+        LOGGER.info("jdbc(h2) keys -->> {}, threads -->> {}, acquisitions/s -->> {}, timeouts -->> {}",
+                    keyCount,
+                    nodes.size() * threadsPerNode,
+                    acquisitions.get() * 1000 / durationMillis,
+                    timeouts.get());
+        assertEquals(0, violations.get());
+        assertTrue(acquisitions.get() > 0);
+        // key远多于线程，几乎没有争抢，超时说明行锁或连接池在互相阻塞
+        assertTrue("acquisitions " + acquisitions.get() + ", timeouts " + timeouts.get(),
+                   timeouts.get() * 100 <= acquisitions.get());
+    }
+
+    private List<String> loadDdl() {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("distribute-lock-jdbc.sql");
+        StringBuilder sql = new StringBuilder();
+        try (Scanner scanner = new Scanner(in, "UTF-8")) {
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine().trim();
+                if (!line.startsWith("--")) {
+                    sql.append(line).append('\n');
+                }
+            }
+        }
+        List<String> statements = new ArrayList<String>();
+        for (String statement : sql.toString().split(";")) {
+            if (!statement.trim().isEmpty()) {
+                statements.add(statement.trim());
+            }
+        }
+        return statements;
+    }
+}
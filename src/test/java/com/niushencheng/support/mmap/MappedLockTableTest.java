@@ -0,0 +1,152 @@
+package com.niushencheng.support.mmap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 多个fork出来的jvm通过 {@link MappedLockTable} 争抢同一个key，以及持有者进程崩溃后租约到期被接管
+ * <p>
+ * 子进程在持有锁时对另一个映射文件中的计数做非原子的读改写，互斥失效时计数会丢失
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class MappedLockTableTest {
+
+    private static final int SLOT_COUNT = 1024;
+
+    private static final String KEY = "MTLock:mmap:k";
+
+    private static final int PROCESSES = 4;
+
+    private static final int ITERATIONS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mutualExclusionAcrossProcesses() throws Exception {
+        File tableFile = folder.newFile("locks.mmap");
+        File counterFile = folder.newFile("counter");
+        List<Process> workers = new ArrayList<Process>();
+        for (int i = 0; i < PROCESSES; i++) {
+            workers.add(fork(tableFile, counterFile, "count", String.valueOf(ITERATIONS)));
+        }
+        for (Process worker : workers) {
+            assertEquals(0, await(worker));
+        }
+        MappedByteBuffer counter = map(counterFile);
+        assertEquals(0, counter.getLong(0));
+        assertEquals(PROCESSES * ITERATIONS, counter.getLong(8));
+    }
+
+    @Test
+    public void crashedHolderExpires() throws Exception {
+        File tableFile = folder.newFile("locks.mmap");
+        File counterFile = folder.newFile("counter");
+        Process crashed = fork(tableFile, counterFile, "crash", "3000");
+        // 子进程加锁后直接退出，不释放
+        assertEquals(0, await(crashed));
+
+        MappedLockTable table = new MappedLockTable(tableFile, SLOT_COUNT);
+        long slot = table.slot(MappedLockTable.hash(KEY));
+        assertNotEquals(0, table.holderPid(slot));
+        long owner = table.nextOwner();
+        assertEquals(0, table.tryAcquire(slot, owner, 1000));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        long state;
+        while ((state = table.tryAcquire(slot, owner, 1000)) == 0) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        assertTrue(table.release(slot, state));
+        assertEquals(0, table.holderPid(slot));
+    }
+
+    private static Process fork(File tableFile, File counterFile, String mode, String argument) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        return new ProcessBuilder(java,
+                                  "-cp", System.getProperty("java.class.path"),
+                                  Worker.class.getName(),
+                                  tableFile.getPath(),
+                                  counterFile.getPath(),
+                                  mode,
+                                  argument).redirectErrorStream(true).start();
+    }
+
+    private static int await(Process process) throws Exception {
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                                                                              StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+        }
+        int exit = process.waitFor();
+        if (exit != 0) {
+            System.out.println(output);
+        }
+        return exit;
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        }
+    }
+
+    /**
+     * 子进程，参数为 锁表文件 计数文件 模式 模式参数
+     */
+    public static class Worker {
+
+        public static void main(String[] args) throws Exception {
+            MappedLockTable table = new MappedLockTable(new File(args[0]), SLOT_COUNT);
+            MappedByteBuffer counter = map(new File(args[1]));
+            long slot = table.slot(MappedLockTable.hash(KEY));
+            long owner = table.nextOwner();
+            if ("crash".equals(args[2])) {
+                table.tryAcquire(slot, owner, Long.parseLong(args[3]));
+                Runtime.getRuntime().halt(0);
+            }
+            int iterations = Integer.parseInt(args[3]);
+            for (int i = 0; i < iterations; i++) {
+                long state;
+                while ((state = table.tryAcquire(slot, owner, 5000)) == 0) {
+                    Thread.yield();
+                }
+                // 0: 当前持有者，8: 计数；互斥失效时另一个进程会看到非0的持有者，或者计数丢失
+                if (counter.getLong(0) != 0) {
+                    System.out.println("发现其他持有者 -->> " + counter.getLong(0));
+                    System.exit(1);
+                }
+                counter.putLong(0, owner);
+                counter.putLong(8, counter.getLong(8) + 1);
+                counter.putLong(0, 0);
+                if (!table.release(slot, state)) {
+                    System.out.println("释放失败");
+                    System.exit(2);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.niushencheng.support.redis;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.niushencheng.store.StoreCommand;
+import com.niushencheng.store.StoreTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 使用本地的RESP服务验证 {@link RedisClient} 和 {@link RedisLockStore}
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+public class RedisLockStoreTest {
+
+    private RespStandInServer server;
+
+    private RedisClient redisClient;
+
+    private RedisLockStore lockStore;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RespStandInServer();
+        redisClient = new RedisClient("127.0.0.1", server.getPort(), 1);
+        redisClient.setCommandTimeoutMillis(200);
+        redisClient.start();
+        lockStore = new RedisLockStore(redisClient);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        redisClient.close();
+        server.close();
+    }
+
+    @Test
+    public void lockCommands() {
+        assertTrue(lockStore.add("k", "owner-1", 10 * 1000));
+        assertFalse(lockStore.add("k", "owner-2", 10 * 1000));
+        assertEquals("owner-1", lockStore.get("k"));
+        assertTrue(lockStore.compareAndExpire("k", "owner-1", 10 * 1000));
+        assertFalse(lockStore.compareAndDelete("k", "owner-2"));
+        assertTrue(lockStore.compareAndDelete("k", "owner-1"));
+        assertNull(lockStore.get("k"));
+
+        assertEquals(2, lockStore.incr("counter", 2, 10 * 1000));
+        assertEquals(0, lockStore.incr("counter", -2, 10 * 1000));
+        assertNull(lockStore.get("counter"));
+    }
+
+    @Test
+    public void pipelinedExecute() {
+        List<Object> results = lockStore.execute(Arrays.asList(StoreCommand.add("a", "1", 10 * 1000),
+                                                               StoreCommand.add("b", "2", 10 * 1000),
+                                                               StoreCommand.get("a"),
+                                                               StoreCommand.del("b"),
+                                                               StoreCommand.get("b")));
+        assertEquals(Arrays.<Object>asList(true, true, "1", true, null), results);
+    }
+
+    @Test
+    public void commandDeadline() throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            lockStore.get("slow");
+            fail();
+        } catch (StoreTimeoutException expected) {
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 400);
+        // 迟到的回复按顺序匹配给已经超时的命令，不会错配给后面的命令
+        TimeUnit.MILLISECONDS.sleep(400);
+        assertTrue(lockStore.add("after-slow", "v", 10 * 1000));
+        assertEquals("v", lockStore.get("after-slow"));
+    }
+
+    /**
+     * 整批命令超时，截止时间之前已经成功的加锁和计数也要撤销
+     */
+    @Test
+    public void abandonedBatchIsCompensated() throws InterruptedException {
+        try {
+            lockStore.execute(Arrays.asList(StoreCommand.add("early", "owner", 10 * 1000),
+                                            StoreCommand.incr("count", 1, 10 * 1000),
+                                            StoreCommand.get("slow")));
+            fail();
+        } catch (StoreTimeoutException expected) {
+        }
+        TimeUnit.MILLISECONDS.sleep(600);
+        assertNull(lockStore.get("early"));
+        assertNull(lockStore.get("count"));
+    }
+
+    /**
+     * 非法的回复之后数据无法再和命令对应：连接被关闭，同一管道中的其他命令立即失败，之后的命令使用新的连接
+     */
+    @Test
+    public void protocolErrorClosesConnection() throws Exception {
+        assertTrue(lockStore.add("k", "v", 10 * 1000));
+        List<ListenableFuture<Object>> futures = redisClient.sendAll(5000, Arrays.asList(new String[]{"GET", "garbage"},
+                                                                                         new String[]{"GET", "k"}));
+        long start = System.nanoTime();
+        for (ListenableFuture<Object> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RedisException);
+                assertFalse(e.getCause() instanceof RedisTimeoutException);
+            }
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+
+        assertEquals("v", lockStore.get("k"));
+        assertEquals(2, server.getAcceptedCount());
+    }
+}
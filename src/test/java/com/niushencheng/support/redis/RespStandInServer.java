@@ -0,0 +1,223 @@
+package com.niushencheng.support.redis;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 测试用的本地RESP服务，只实现 {@link RedisLockStore} 用到的命令，EVAL按脚本内容识别
+ * <p>
+ * 两个特殊的key用于模拟异常：GET slow 延迟500ms回复，GET garbage 回复一个非法的RESP类型
+ *
+ * @version 1.0
+ * @since JDK 1.7
+ */
+class RespStandInServer {
+
+    private final ServerSocket serverSocket;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    RespStandInServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        accepted.incrementAndGet();
+                        Thread handler = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }, "resp-stand-in-connection");
+                        handler.setDaemon(true);
+                        handler.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        }, "resp-stand-in-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /** 接受过的连接数 */
+    int getAcceptedCount() {
+        return accepted.get();
+    }
+
+    void close() throws IOException {
+        running = false;
+        serverSocket.close();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            String[] args;
+            while ((args = this.readCommand(in)) != null) {
+                out.write(this.apply(args).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // 客户端关闭连接
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    private String apply(String[] args) throws InterruptedException {
+        String command = args[0].toUpperCase();
+        switch (command) {
+            case "GET":
+                if ("slow".equals(args[1])) {
+                    TimeUnit.MILLISECONDS.sleep(500);
+                } else if ("garbage".equals(args[1])) {
+                    return "?garbage\r\n";
+                }
+                return bulk(this.value(args[1]));
+            case "SET": {
+                boolean nx = false;
+                long px = 0;
+                for (int i = 3; i < args.length; i++) {
+                    if ("NX".equalsIgnoreCase(args[i])) {
+                        nx = true;
+                    } else if ("PX".equalsIgnoreCase(args[i])) {
+                        px = Long.parseLong(args[++i]);
+                    }
+                }
+                if (nx && this.value(args[1]) != null) {
+                    return "$-1\r\n";
+                }
+                entries.put(args[1], new Entry(args[2], px));
+                return "+OK\r\n";
+            }
+            case "DEL":
+                return this.value(args[1]) != null && entries.remove(args[1]) != null
+                        ? ":1\r\n"
+                        : ":0\r\n";
+            case "EVAL":
+                return this.eval(args[1], args[3], args);
+            default:
+                return "-ERR unknown command '" + args[0] + "'\r\n";
+        }
+    }
+
+    private synchronized String eval(String script, String key, String[] args) {
+        String current = this.value(key);
+        if (script.contains("incrby")) {
+            long count = (current == null
+                    ? 0
+                    : Long.parseLong(current)) + Long.parseLong(args[4]);
+            if (count <= 0) {
+                entries.remove(key);
+            } else {
+                entries.put(key, new Entry(String.valueOf(count), Long.parseLong(args[5])));
+            }
+            return ":" + count + "\r\n";
+        }
+        if (current == null || !current.equals(args[4])) {
+            return ":0\r\n";
+        }
+        if (script.contains("pexpire")) {
+            entries.put(key, new Entry(current, Long.parseLong(args[5])));
+        } else {
+            entries.remove(key);
+        }
+        return ":1\r\n";
+    }
+
+    private String value(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt > 0 && entry.expireAt <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private String[] readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null) {
+            return null;
+        }
+        String[] args = new String[Integer.parseInt(header.substring(1))];
+        for (int i = 0; i < args.length; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            byte[] bytes = new byte[length + 2];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+            args[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return args;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\r') {
+                in.read();
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+        return null;
+    }
+
+    private static String bulk(String value) {
+        if (value == null) {
+            return "$-1\r\n";
+        }
+        return "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+    }
+
+    private static class Entry {
+
+        private final String value;
+
+        private final long expireAt;
+
+        private Entry(String value, long expireMillis) {
+            this.value = value;
+            this.expireAt = expireMillis > 0
+                    ? System.currentTimeMillis() + expireMillis
+                    : 0;
+        }
+    }
+}